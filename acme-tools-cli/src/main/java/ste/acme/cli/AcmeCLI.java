@@ -0,0 +1,1565 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.shredzone.acme4j.Account;
+import org.shredzone.acme4j.AccountBuilder;
+import org.shredzone.acme4j.Certificate;
+import org.shredzone.acme4j.Session;
+import org.shredzone.acme4j.exception.AcmeException;
+import org.shredzone.acme4j.provider.AcmeProvider;
+import org.shredzone.acme4j.toolbox.JSONBuilder;
+import org.shredzone.acme4j.util.KeyPairUtils;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.IExecutionExceptionHandler;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.ParseResult;
+import ste.acme.cli.challenge.ChallengeSelfCheck;
+import ste.acme.cli.challenge.ChallengeServer;
+import ste.acme.cli.challenge.ChallengeTokenStore;
+import ste.acme.cli.challenge.DnsProvider;
+import ste.acme.cli.challenge.DnsRecord;
+import ste.acme.cli.challenge.FileDnsProvider;
+import ste.acme.cli.challenge.FileTokenStore;
+import ste.acme.cli.client.AcmeClient;
+import ste.acme.cli.client.CertificateOutput;
+import ste.acme.cli.client.ChallengeException;
+import ste.acme.cli.client.DirectoryCache;
+import ste.acme.cli.client.RenewListener;
+import ste.acme.cli.client.RenewRequest;
+import ste.acme.cli.inventory.CertificateFilter;
+import ste.acme.cli.inventory.CertificateIndex;
+import ste.acme.cli.inventory.CertificateInfo;
+import ste.acme.cli.inventory.CertificateReader;
+import ste.acme.cli.inventory.CertificateScanner;
+import ste.acme.cli.inventory.CertificateWatcher;
+import ste.acme.cli.inventory.ChainVerifier;
+import ste.acme.cli.jfr.KeyIOEvent;
+import ste.acme.cli.log.AsyncLog;
+import ste.acme.cli.log.LogContext;
+import ste.acme.cli.metrics.RenewalMetrics;
+import ste.acme.cli.metrics.RenewalTimer;
+import ste.acme.cli.ocsp.OcspCache;
+import ste.acme.cli.ocsp.OcspClient;
+import ste.acme.cli.store.Artifact;
+import ste.acme.cli.tls.TlsScanner;
+import ste.acme.cli.store.CertificateStore;
+import ste.acme.cli.store.ChainSelector;
+import ste.acme.cli.store.CertificateWriter;
+import ste.acme.cli.store.KeyCache;
+import ste.acme.cli.store.KeyStoreBenchmark;
+import ste.acme.cli.store.KeyStoreFile;
+import ste.acme.cli.store.KeyStoreProtection;
+import static ste.acme.cli.Format.PEM;
+
+/**
+ *
+ */
+@CommandLine.Command(
+        name = "acme-tools",
+        versionProvider = AcmeCLI.AcmeToolsVersion.class,
+        header = {
+            "@|blue  ▗▄▖  ▗▄▄▖▗▖  ▗▖▗▄▄▄▖    ▗▄▄▄▖▗▄▖  ▗▄▖ ▗▖    ▗▄▄▖ |@",
+            "@|blue ▐▌ ▐▌▐▌   ▐▛▚▞▜▌▐▌         █ ▐▌ ▐▌▐▌ ▐▌▐▌   ▐▌    |@",
+            "@|blue ▐▛▀▜▌▐▌   ▐▌  ▐▌▐▛▀▀▘      █ ▐▌ ▐▌▐▌ ▐▌▐▌    ▝▀▚▖ |@",
+            "@|blue ▐▌ ▐▌▝▚▄▄▖▐▌  ▐▌▐▙▄▄▖      █ ▝▚▄▞▘▝▚▄▞▘▐▙▄▄▖▗▄▄▞▘ |@",
+            "@|white                                                  |@"
+        }
+)
+public class AcmeCLI {
+
+    private static final long SLEEP = 3000;
+
+    private static final Logger LOG = Logger.getLogger("ste.acme-tools");
+
+    //
+    // progress and output lines are written by a single thread, so that
+    // renewals running in parallel never wait for the console or the log
+    //
+    private static final AsyncLog OUT = new AsyncLog(LOG);
+
+    //
+    // shared by all the commands run by this process, e.g. by a WarmServer
+    //
+    private static final DirectoryCache DIRECTORIES = new DirectoryCache();
+    private static final KeyCache KEYS = new KeyCache();
+
+    //
+    // renewals run on daemon threads, so that a renewal still waiting for
+    // the CA never keeps the process alive
+    //
+    private static final Executor RENEWALS = Executors.newCachedThreadPool((task) -> {
+        final Thread thread = new Thread(task, "acme-tools-renewal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @CommandLine.Option(names = Constants.OPT_HELP, usageHelp = true, description = "display this help and exit")
+    boolean printHelp;
+
+    @CommandLine.Option(names = Constants.OPT_VERSION, versionHelp = true, description = "show version information")
+    private boolean printVersion;
+
+    private ChallengeSelfCheck selfCheck = null; // created only if needed
+    private OcspCache ocsp = null; // created only if needed
+    private final RenewalMetrics metrics = new RenewalMetrics(); // all renewals of this process
+    private final AcmeClient client = new AcmeClient(RENEWALS, metrics, DIRECTORIES);
+    private final PathResolver paths = new PathResolver(); // archives are written back when closed
+
+    public static void main(String... args) {
+        execute(args);
+    }
+
+    /**
+     * Runs the command given by the arguments as main does, writing on
+     * System.out; when this returns, all output has been written.
+     *
+     * @param args the command line arguments
+     *
+     * @return the exit code of the command
+     */
+    public static int execute(final String... args) {
+        Security.addProvider(new BouncyCastleProvider());
+        final AcmeCLI cli = new AcmeCLI();
+        try (PathResolver paths = cli.paths) {
+            return new CommandLine(cli)
+                .setCaseInsensitiveEnumValuesAllowed(true)
+                .setExecutionExceptionHandler(new CLIExceptionHandler())
+                .execute(args);
+        } catch (Throwable x) {
+            err(x);
+            return CommandLine.ExitCode.SOFTWARE;
+        } finally {
+            OUT.json(null);
+            OUT.flush();
+        }
+    }
+
+    @Command(name = "new-account", description = "create a new account", usageHelpWidth = 300)
+    protected void newAccount(
+        @CommandLine.Parameters(
+            arity = "1",
+            paramLabel = "<endpoint>",
+            description = "ACME CA endpoint or URI e.g. https://someca.com, acme://example.org/staging")
+        String endpoint,
+        @CommandLine.Option(
+            names=Constants.OPT_ACCOUNT_KEYS,
+            required=false,
+            description="optional account keys file (default: account.pem)",
+            defaultValue = Constants.DEFAULT_ACCOUNT_KEYS)
+        String accountKeys,
+        @CommandLine.Option(
+            names=Constants.OPT_CONTACT,
+            required=false,
+            description="optional contact email to provide to the CA"
+        )
+        String email
+    ) throws IOException, AcmeException {
+        Session session = client.session(endpoint);
+        AcmeProvider provider = session.provider();
+
+        out(
+            "Creating new account and credentials for " +
+            provider.resolve(session.getServerUri()) +
+            ((email != null) ? " with contact " + email : "")
+        );
+        final Path accountFile = paths.resolveForWriting(accountKeys);
+        out("Storing the new credentials in " + PathResolver.describe(accountFile));
+
+        KeyPair accountKeyPair = KeyPairUtils.createKeyPair();
+
+        AccountBuilder accountBuilder = new AccountBuilder()
+            .agreeToTermsOfService()
+            .useKeyPair(accountKeyPair);
+        if (email != null) {
+            accountBuilder.addEmail(email);
+        }
+
+        Account account = accountBuilder.create(session);
+        final KeyIOEvent event = new KeyIOEvent();
+        event.begin();
+        try (Writer writer = Files.newBufferedWriter(accountFile)) {
+            KeyPairUtils.writeKeyPair(accountKeyPair, writer);
+        } finally {
+            event.commit(accountFile, KeyIOEvent.KEY, KeyIOEvent.WRITE);
+        }
+
+        out("New account created with URL " + account.getLocation());
+    }
+
+    @Command(name = "renew", description = "renew a previously created certificate", usageHelpWidth = 300)
+    protected void renew(
+            @Mixin AcmePreferences preferences,
+            @CommandLine.Parameters(
+                arity = "1",
+                index = "0",
+                paramLabel = "<endpoint>",
+                description = "ACME CA endpoint or URI e.g. https://someca.com, acme://example.org/staging")
+            String endpoint,
+            @CommandLine.Parameters(
+                arity = "0..1",
+                index = "1",
+                paramLabel = "<domain>",
+                description = "the domain to renew the certificate for; not needed with " + Constants.OPT_DOMAINS_FROM)
+            String domain
+    ) throws IOException, AcmeException, GeneralSecurityException {
+        checkRenewOptions(preferences);
+        if (preferences.logJson() != null) {
+            OUT.json(Path.of(preferences.logJson()));
+        }
+
+        if (preferences.domainsFrom() == null) {
+            if (domain == null) {
+                throw new IllegalArgumentException(
+                    "A domain to renew must be provided (or use " + Constants.OPT_DOMAINS_FROM + ")"
+                );
+            }
+        } else if (domain != null) {
+            throw new IllegalArgumentException(
+                "A domain can not be provided together with " + Constants.OPT_DOMAINS_FROM
+            );
+        }
+
+        //
+        // with a certificate store, certificates and keys are written in the
+        // store instead of the output file
+        //
+        final CertificateStore store = (preferences.store() == null)
+                                     ? null : new CertificateStore(Path.of(preferences.store()));
+        if (store != null) {
+            store.open();
+        }
+        try {
+            //
+            // when updating a keystore, it is loaded once, all renewed domains
+            // are put in it and it is written back once
+            //
+            final KeyStoreFile keyStore = preferences.updateKeyStore()
+                                        ? new KeyStoreFile(
+                                              paths.resolveForWriting(preferences.out()),
+                                              preferences.format().keyStoreType(),
+                                              preferences.secret().toCharArray()
+                                          )
+                                        : null;
+            if (keyStore != null) {
+                keyStore.protection(keyStoreProtection(preferences));
+                keyStore.load();
+            }
+
+            if (domain != null) {
+                final Path domainKeys = paths.resolve(preferences.domainKeys());
+                renew(
+                    preferences, endpoint, List.of(domain), domainKeys,
+                    output(
+                        preferences, (store == null && keyStore == null) ? paths.resolveForWriting(preferences.out()) : null,
+                        domainKeys, store, keyStore
+                    )
+                );
+            } else {
+                renewExpiring(preferences, endpoint, store, keyStore);
+            }
+
+            if (keyStore != null && !keyStore.updated().isEmpty()) {
+                keyStore.store();
+                out(
+                    "Keystore " + PathResolver.describe(keyStore.file()) + " updated with " +
+                    String.join(", ", keyStore.updated())
+                );
+            }
+        } finally {
+            if (store != null) {
+                store.close();
+            }
+        }
+    }
+
+    @Command(name = "info", description = "print information in the provided certificates", usageHelpWidth = 300)
+    protected void info(
+        @CommandLine.Parameters(
+            arity = "0..*",
+            paramLabel = "<certificate>",
+            description = "the filepath of the certificate; directories are scanned recursively and glob patterns (e.g. 'certs/**/*.crt') are expanded; with " + Constants.OPT_STORE + " the domains to show (default: all)")
+        List<String> certificates,
+        @CommandLine.Option(
+            names=Constants.OPT_OUT_FORMAT,
+            required=false,
+            description="optional output format; one of 'text', 'json' (one object per line), 'csv' (default: text)",
+            defaultValue = Constants.DEFAULT_INFO_FORMAT)
+        InfoFormat format,
+        @CommandLine.Option(
+            names=Constants.OPT_EXPIRED,
+            required=false,
+            description="optional; if given only expired certificates are shown")
+        boolean expired,
+        @CommandLine.Option(
+            names=Constants.OPT_EXPIRING_WITHIN,
+            required=false,
+            description="optional; if given only certificates expiring within the given period in human readable form are shown (e.g. 14d)")
+        String expiringWithin,
+        @CommandLine.Option(
+            names=Constants.OPT_ISSUER,
+            required=false,
+            description="optional; if given only certificates whose issuer contains the given text (ignoring case) are shown")
+        String issuer,
+        @CommandLine.Option(
+            names=Constants.OPT_MMAP,
+            required=false,
+            description="optional; if given files are read through memory mapped buffers (faster for large bundles)")
+        boolean mmap,
+        @CommandLine.Option(
+            names=Constants.OPT_STORE,
+            required=false,
+            description="optional; if given the certificates of the given domains are read from the certificate store")
+        String store,
+        @CommandLine.Option(
+            names=Constants.OPT_VERIFY,
+            required=false,
+            description="optional; if given, instead of showing the certificates, each file is verified to chain to a trusted root and to match the key next to it with the same name (e.g. domain.pem for domain.crt); filters do not apply")
+        boolean verify,
+        @CommandLine.Option(
+            names=Constants.OPT_TRUST_STORE,
+            required=false,
+            description="optional; with " + Constants.OPT_VERIFY + ", a file with the trusted root certificates (e.g. a PEM bundle; default: the trusted roots of the JVM)")
+        String trustStore,
+        @CommandLine.Option(
+            names=Constants.OPT_REVOCATION,
+            required=false,
+            description="optional; with " + Constants.OPT_VERIFY + ", the revocation of the certificates is checked with their OCSP responder, using the response cached next to them (e.g. domain.crt.ocsp) while still valid")
+        boolean revocation
+    ) throws IOException {
+        final CertificateFilter filter = new CertificateFilter();
+        filter.expired(expired);
+        if (expiringWithin != null) {
+            filter.expiringWithin(AcmePreferences.period("expiringWithin", expiringWithin));
+        }
+        filter.issuer(issuer);
+
+        if (certificates == null) {
+            certificates = List.of();
+        }
+        if (verify && store != null) {
+            throw new IllegalArgumentException(
+                "Certificates in a certificate store (" + Constants.OPT_STORE + ") can not be verified"
+            );
+        }
+        if (store != null) {
+            info(Path.of(store), certificates, format, filter);
+            return;
+        }
+        if (certificates.isEmpty()) {
+            throw new IllegalArgumentException(
+                "At least a certificate must be provided (or use " + Constants.OPT_STORE + ")"
+            );
+        }
+        if (verify) {
+            verify(certificates, format, mmap, trustStore, revocation);
+            return;
+        }
+
+        //
+        // a single certificate file is shown in full
+        //
+        final String location = certificates.get(0);
+        if (InfoFormat.TEXT.equals(format) && filter.isEmpty() && certificates.size() == 1
+            && !CertificateScanner.isGlob(location)) {
+            final Path path = paths.resolve(location);
+            if (!Files.isDirectory(path)) {
+                info(path, mmap);
+                return;
+            }
+        }
+
+        //
+        // many certificates are streamed in compact form, one row per
+        // certificate; rows are not logged
+        //
+        if (InfoFormat.CSV.equals(format)) {
+            print(CertificateInfo.CSV_HEADER);
+        }
+        final LongAdder count = new LongAdder(), errors = new LongAdder();
+        final CertificateScanner scanner = new CertificateScanner();
+        scanner.filter(filter);
+        scanner.mmap(mmap);
+        scanner.resolver((certificate) -> {
+            try {
+                return paths.resolve(certificate);
+            } catch (IOException x) {
+                throw new UncheckedIOException(x);
+            }
+        });
+        scanner.scan(certificates, new CertificateScanner.Listener() {
+            @Override
+            public void certificate(final CertificateInfo info) {
+                count.increment();
+                print(row(format, info));
+            }
+
+            @Override
+            public void error(final Path path, final Exception x) {
+                errors.increment();
+                print(errorRow(
+                    format, path,
+                    (x instanceof CertificateException)
+                    ? "Invalid certificate, it does not seem to be a X509 certificate: " + x.getMessage()
+                    : "Invalid certificate file " + path.toAbsolutePath() + ": " + x
+                ));
+            }
+        });
+        LOG.info(() -> count.sum() + " certificates read, " + errors.sum() + " errors");
+    }
+
+    @Command(name = "challenge-responder", description = "serve the HTTP challenge tokens published in a shared token store", usageHelpWidth = 300)
+    protected void challengeResponder(
+        @CommandLine.Option(
+            names=Constants.OPT_TOKEN_STORE,
+            required=true,
+            description="directory shared with the nodes running renew where challenge tokens are published")
+        File tokenStore,
+        @CommandLine.Option(
+            names=Constants.OPT_PORT,
+            required=false,
+            description="tcp port to use to listen for CA challenge requests (default: 80)",
+            defaultValue = Constants.DEFAULT_RESPONDER_PORT)
+        int port
+    ) throws IOException, InterruptedException {
+        final ChallengeServer server = new ChallengeServer(new FileTokenStore(tokenStore.toPath()));
+        server.start(port);
+
+        out("Listener started on port " + server.port());
+        out("Serving challenge tokens from " + tokenStore.getAbsolutePath());
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            stopped.countDown();
+        }));
+        stopped.await();
+    }
+
+    @Command(name = "index", description = "update the index of the certificates in the given locations", usageHelpWidth = 300)
+    protected void index(
+        @CommandLine.Parameters(
+            arity = "1..*",
+            paramLabel = "<location>",
+            description = "certificate files, directories (scanned recursively) or glob patterns (e.g. 'certs/**/*.crt')")
+        List<String> locations,
+        @CommandLine.Option(
+            names=Constants.OPT_INDEX,
+            required=false,
+            description="optional index file (default: certificates.index)",
+            defaultValue = Constants.DEFAULT_INDEX)
+        File indexFile,
+        @CommandLine.Option(
+            names=Constants.OPT_WATCH,
+            required=false,
+            description="optional; if given, after the update the locations are watched and the index is updated as files change, until stopped")
+        boolean watch,
+        @CommandLine.Option(
+            names=Constants.OPT_DEBOUNCE,
+            required=false,
+            description="with " + Constants.OPT_WATCH + ", time without changes to wait for before updating the index in human readable form (e.g. 500ms, default: 1s)",
+            defaultValue = Constants.DEFAULT_DEBOUNCE)
+        String debounce
+    ) throws IOException, InterruptedException {
+        final CertificateIndex index = new CertificateIndex(indexFile.toPath());
+        index.load();
+
+        final CertificateScanner scanner = new CertificateScanner();
+        final CertificateIndex.Update update = index.update(locations, scanner);
+        index.save();
+
+        out("Index " + indexFile.getAbsolutePath() + " updated");
+        out(summary(update));
+
+        if (!watch) {
+            return;
+        }
+
+        final CertificateWatcher watcher = new CertificateWatcher(
+            index, scanner, AcmePreferences.period("debounce", debounce)
+        );
+        watcher.start(locations, (changes, touched) -> {
+            if (changes.parsed() + changes.removed() + changes.unchanged() == 0) {
+                return;
+            }
+            try {
+                index.save();
+                out(touched.size() + " files changed, " + summary(changes));
+            } catch (IOException x) {
+                err(x);
+            }
+        });
+        out("Watching " + watcher.directories() + " directories for changes");
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            watcher.close();
+            stopped.countDown();
+        }));
+        stopped.await();
+    }
+
+    @Command(name = "expiring", description = "show the indexed certificates expiring within the given period", usageHelpWidth = 300)
+    protected void expiring(
+        @CommandLine.Option(
+            names=Constants.OPT_WITHIN,
+            required=true,
+            description="period in human readable form (e.g. 14d); already expired certificates are shown too")
+        String within,
+        @CommandLine.Option(
+            names=Constants.OPT_INDEX,
+            required=false,
+            description="optional index file (default: certificates.index)",
+            defaultValue = Constants.DEFAULT_INDEX)
+        File indexFile,
+        @CommandLine.Option(
+            names=Constants.OPT_OUT_FORMAT,
+            required=false,
+            description="optional output format; one of 'text', 'json' (one object per line), 'csv' (default: text)",
+            defaultValue = Constants.DEFAULT_INFO_FORMAT)
+        InfoFormat format,
+        @CommandLine.Option(
+            names=Constants.OPT_ISSUER,
+            required=false,
+            description="optional; if given only certificates whose issuer contains the given text (ignoring case) are shown")
+        String issuer
+    ) throws IOException {
+        if (!indexFile.exists()) {
+            throw new FileNotFoundException(
+                "index " + indexFile.getAbsolutePath() + " not found, create it with the index command"
+            );
+        }
+
+        final CertificateFilter filter = new CertificateFilter();
+        filter.expiringWithin(AcmePreferences.period("within", within));
+        filter.issuer(issuer);
+
+        final CertificateIndex index = new CertificateIndex(indexFile.toPath());
+        index.load();
+
+        if (InfoFormat.CSV.equals(format)) {
+            print(CertificateInfo.CSV_HEADER);
+        }
+        final List<CertificateInfo> expiring = index.certificates(filter);
+        for (CertificateInfo info: expiring) {
+            print(row(format, info));
+        }
+        LOG.info(() -> expiring.size() + " certificates expiring within " + within);
+    }
+
+    @Command(name = "scan", description = "fetch the certificates served by TLS endpoints and compare them with the indexed ones", usageHelpWidth = 300)
+    protected void scan(
+        @CommandLine.Parameters(
+            arity = "0..*",
+            paramLabel = "<target>",
+            description = "the endpoints to scan as host[:port] (default port: 443); the host is also sent as SNI")
+        List<String> targets,
+        @CommandLine.Option(
+            names=Constants.OPT_TARGETS_FROM,
+            required=false,
+            description="optional file with the endpoints to scan, one per line (empty lines and lines starting with # are ignored)")
+        File targetsFrom,
+        @CommandLine.Option(
+            names=Constants.OPT_INDEX,
+            required=false,
+            description="optional index file (see the index command) of the certificates on disk the served ones are compared with; if missing no comparison is done (default: certificates.index)",
+            defaultValue = Constants.DEFAULT_INDEX)
+        File indexFile,
+        @CommandLine.Option(
+            names=Constants.OPT_EXPIRING_WITHIN,
+            required=false,
+            description="optional period in human readable form within which served certificates are reported as expiring (default: 30d)",
+            defaultValue = Constants.DEFAULT_RENEW_WITHIN)
+        String expiringWithin,
+        @CommandLine.Option(
+            names=Constants.OPT_OUT_FORMAT,
+            required=false,
+            description="optional output format; one of 'text', 'json' (one object per line), 'csv' (default: text)",
+            defaultValue = Constants.DEFAULT_INFO_FORMAT)
+        InfoFormat format,
+        @CommandLine.Option(
+            names=Constants.OPT_CONCURRENCY,
+            required=false,
+            description="optional maximum number of connections in flight (default: 1000)",
+            defaultValue = Constants.DEFAULT_SCAN_CONCURRENCY)
+        int concurrency,
+        @CommandLine.Option(
+            names=Constants.OPT_TIMEOUT,
+            required=false,
+            description="optional time within which an endpoint must complete the TLS handshake in human readable form (default: 10s)",
+            defaultValue = Constants.DEFAULT_SCAN_TIMEOUT)
+        String timeout
+    ) throws IOException {
+        final List<TlsScanner.Target> endpoints = new ArrayList<>();
+        for (String target: (targets == null) ? List.<String>of() : targets) {
+            endpoints.add(TlsScanner.Target.parse(target));
+        }
+        if (targetsFrom != null) {
+            for (String line: Files.readAllLines(targetsFrom.toPath())) {
+                if (!line.isBlank() && !line.trim().startsWith("#")) {
+                    endpoints.add(TlsScanner.Target.parse(line));
+                }
+            }
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException(
+                "At least a target must be provided (or use " + Constants.OPT_TARGETS_FROM + ")"
+            );
+        }
+
+        //
+        // the indexed leaf certificates by SAN, to find the ones on disk
+        // for a host with a lookup
+        //
+        final Map<String, List<CertificateInfo>> onDisk = new HashMap<>();
+        if (indexFile.exists()) {
+            final CertificateIndex index = new CertificateIndex(indexFile.toPath());
+            index.load();
+            for (CertificateInfo info: index.certificates((info) -> info.index() == 0)) {
+                for (String san: info.sans().isEmpty() ? Collections.singletonList(info.domain()) : info.sans()) {
+                    if (san != null) {
+                        onDisk.computeIfAbsent(san.toLowerCase(Locale.ROOT), (k) -> new ArrayList<>()).add(info);
+                    }
+                }
+            }
+        }
+
+        final CertificateFilter expiring = new CertificateFilter();
+        expiring.expiringWithin(AcmePreferences.period("expiringWithin", expiringWithin));
+
+        final TlsScanner scanner = new TlsScanner();
+        scanner.concurrency(concurrency);
+        scanner.timeout(AcmePreferences.period("timeout", timeout));
+
+        if (InfoFormat.CSV.equals(format)) {
+            print(CertificateInfo.CSV_HEADER);
+        }
+        final long[] counts = new long[4]; // errors, expiring, differ, not on disk
+        scanner.scan(endpoints, (result) -> {
+            final Path path = Path.of(result.target().toString());
+            if (result.error() != null || result.chain().isEmpty()) {
+                ++counts[0];
+                print(errorRow(format, path, "Unable to scan " + result.target() + ": " + result.error()));
+                return;
+            }
+
+            final CertificateInfo served;
+            try {
+                served = CertificateInfo.of(path, 0, result.chain().get(0));
+            } catch (CertificateException x) {
+                ++counts[0];
+                print(errorRow(format, path, "Invalid certificate served by " + result.target() + ": " + x.getMessage()));
+                return;
+            }
+            print(row(format, served));
+
+            if (expiring.test(served)) {
+                ++counts[1];
+                print(errorRow(
+                    format, path, result.target() + " serves a certificate expiring on " + served.notAfter()
+                ));
+            }
+
+            final List<CertificateInfo> candidates = new ArrayList<>();
+            final String host = result.target().host().toLowerCase(Locale.ROOT);
+            candidates.addAll(onDisk.getOrDefault(host, List.of()));
+            if (host.indexOf('.') > 0) {
+                candidates.addAll(onDisk.getOrDefault("*" + host.substring(host.indexOf('.')), List.of()));
+            }
+            if (candidates.isEmpty()) {
+                ++counts[3];
+            } else if (candidates.stream().noneMatch((info) -> info.fingerprint().equals(served.fingerprint()))) {
+                ++counts[2];
+                final CertificateInfo latest = candidates.stream().max(Comparator.comparing(CertificateInfo::notAfter)).get();
+                print(errorRow(
+                    format, path, result.target() + " serves a certificate different from " + latest.path() +
+                    " (valid to " + latest.notAfter() + ", served valid to " + served.notAfter() + ")"
+                ));
+            }
+        });
+        out(
+            endpoints.size() + " endpoints scanned, " + counts[0] + " errors, " + counts[1] + " expiring within " +
+            expiringWithin + ", " + counts[2] + " different from the certificates on disk, " + counts[3] + " not on disk"
+        );
+    }
+
+    @Command(name = "ocsp-refresh", description = "fetch the OCSP responses of the given certificates unless still fresh", usageHelpWidth = 300)
+    protected void ocspRefresh(
+        @CommandLine.Parameters(
+            arity = "1..*",
+            paramLabel = "<certificate>",
+            description = "the certificate files, each with its issuer (e.g. as written by renew; a leaf certificate artifact is completed with the full chain artifact next to it); the response is saved in <certificate>.ocsp")
+        List<String> certificates,
+        @CommandLine.Option(
+            names=Constants.OPT_FORCE,
+            required=false,
+            description="optional; if given the responses are fetched even if the saved ones are still fresh (by default they are fetched once half of their validity has passed)")
+        boolean force
+    ) throws IOException {
+        int fetched = 0;
+        for (String location: certificates) {
+            final Path file = paths.resolve(location);
+            try {
+                List<X509Certificate> chain = chain(file);
+                if (chain.isEmpty()) {
+                    throw new IOException("no certificates found");
+                }
+                if (chain.size() == 1) {
+                    //
+                    // e.g. the leaf artifact written by renew, its issuer is
+                    // in the full chain artifact
+                    //
+                    final Path fullChain = file.resolveSibling(Artifact.FULLCHAIN.fileName(baseName(file)));
+                    if (!fullChain.equals(file) && Files.isRegularFile(fullChain)) {
+                        final List<X509Certificate> full = chain(fullChain);
+                        if (!full.isEmpty() && full.get(0).equals(chain.get(0))) {
+                            chain = full;
+                        }
+                    }
+                }
+
+                final OcspCache.Result result = ocsp().refresh(OcspCache.file(file), chain, force);
+                if (result.fetched()) {
+                    ++fetched;
+                }
+                out(result.summary());
+            } catch (IOException | CertificateException x) {
+                out("Unable to refresh the OCSP response of " + PathResolver.describe(file) + ": " + x.getMessage());
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        out(fetched + " of " + certificates.size() + " OCSP responses fetched");
+    }
+
+    @Command(name = "keystore-benchmark", description = "measure the time to write and read keystores of growing size with the given protection", usageHelpWidth = 300)
+    protected void keyStoreBenchmark(
+        @CommandLine.Option(
+            names=Constants.OPT_OUT_FORMAT,
+            required=false,
+            description="optional keystore format; one of 'pkcs12', 'jks', 'bcfks' (default: pkcs12)",
+            defaultValue = Constants.DEFAULT_BENCHMARK_FORMAT)
+        Format format,
+        @CommandLine.Option(
+            names=Constants.OPT_KEYSTORE_ENCRYPTION,
+            required=false,
+            description="optional encryption algorithm (default: the default of the format)")
+        String encryption,
+        @CommandLine.Option(
+            names=Constants.OPT_KEYSTORE_MAC,
+            required=false,
+            description="optional integrity algorithm (default: the default of the format)")
+        String mac,
+        @CommandLine.Option(
+            names=Constants.OPT_KEYSTORE_ITERATIONS,
+            required=false,
+            split=",",
+            description="optional comma separated numbers of iterations to compare (default: the default of the format)")
+        List<Integer> iterations,
+        @CommandLine.Option(
+            names=Constants.OPT_ENTRIES,
+            required=false,
+            split=",",
+            description="optional comma separated keystore sizes in number of entries (default: 1,10,100)",
+            defaultValue = Constants.DEFAULT_BENCHMARK_ENTRIES)
+        List<Integer> entries,
+        @CommandLine.Option(
+            names=Constants.OPT_ROUNDS,
+            required=false,
+            description="optional number of times each measure is repeated, the median is shown (default: 3)",
+            defaultValue = Constants.DEFAULT_BENCHMARK_ROUNDS)
+        int rounds
+    ) throws IOException, GeneralSecurityException {
+        if (!format.isKeyStore()) {
+            throw new IllegalArgumentException("A keystore format must be provided (use " + Constants.OPT_OUT_FORMAT + ")");
+        }
+
+        final List<KeyStoreProtection> protections = new ArrayList<>();
+        if (iterations == null || iterations.isEmpty()) {
+            protections.add(KeyStoreProtection.of(format.keyStoreType(), encryption, mac, null));
+        } else {
+            for (Integer i: iterations) {
+                protections.add(KeyStoreProtection.of(format.keyStoreType(), encryption, mac, i));
+            }
+        }
+
+        final Path dir = Files.createTempDirectory("acme-tools-benchmark");
+        try {
+            final KeyStoreBenchmark benchmark = new KeyStoreBenchmark(dir, format.keyStoreType(), "changeit".toCharArray());
+            benchmark.rounds(rounds);
+
+            print(String.format(
+                "%-6s  %-64s  %8s  %10s  %10s  %10s", "format", "protection", "entries", "bytes", "store ms", "load ms"
+            ));
+            for (KeyStoreProtection protection: protections) {
+                for (int n: entries) {
+                    final KeyStoreBenchmark.Result result = benchmark.run(protection, n);
+                    print(String.format(
+                        "%-6s  %-64s  %8d  %10d  %10d  %10d",
+                        format, (result.protection() == null) ? "-" : result.protection(), result.entries(),
+                        result.bytes(), result.store().toMillis(), result.load().toMillis()
+                    ));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Renews the leaf certificates in the index expiring soon; each
+     * certificate is replaced in place (or written in the store or keystore)
+     * and, if domain keys is a directory, the keys of each domain are taken
+     * from &lt;domain&gt;.pem
+     */
+    private void renewExpiring(
+        final AcmePreferences preferences, final String endpoint,
+        final CertificateStore store, final KeyStoreFile keyStore
+    ) throws IOException {
+        final CertificateIndex index = new CertificateIndex(paths.resolve(preferences.domainsFrom()));
+        index.load();
+
+        final CertificateFilter filter = new CertificateFilter();
+        filter.expiringWithin(preferences.renewWithin());
+        final List<CertificateInfo> expiring = index.certificates(
+            filter.and((info) -> info.index() == 0 && info.domain() != null)
+        );
+
+        out(
+            "Renewing " + expiring.size() + " certificates expiring within " +
+            preferences.renewWithin().toString().substring(2) + " from " + PathResolver.describe(index.file())
+        );
+
+        final Path keys = paths.resolve(preferences.domainKeys());
+        int renewed = 0;
+        for (CertificateInfo info: expiring) {
+            //
+            // the renewed certificate must cover all the names of the expiring
+            // one, those that can not be ordered (e.g. IP addresses) can not be
+            // dropped silently
+            //
+            final List<String> domains = info.sans().isEmpty() ? List.of(info.domain()) : info.sans();
+            final List<String> unorderable = domains.stream().filter((name) -> !RenewRequest.orderable(name)).toList();
+            if (!unorderable.isEmpty()) {
+                out(
+                    "Skipping " + PathResolver.describe(info.path()) + ": " +
+                    String.join(", ", unorderable) + " can not be ordered"
+                );
+                continue;
+            }
+
+            final Path domainKeys = Files.isDirectory(keys) ? keys.resolve(info.domain() + ".pem") : keys;
+            try {
+                if (renew(
+                    preferences, endpoint, domains, domainKeys,
+                    output(preferences, info.path(), domainKeys, store, keyStore)
+                )) {
+                    ++renewed;
+                }
+            } catch (IOException | AcmeException x) {
+                err(x);
+            }
+        }
+
+        out(renewed + " of " + expiring.size() + " certificates renewed");
+    }
+
+    /**
+     * Renews the certificate of the given domains, the first being the one
+     * the certificate is for, with the {@link AcmeClient}, printing its
+     * progress; the timings of the renewal are added to the metrics, which
+     * are then written where requested. The progress is tagged with the
+     * domain and a new correlation ID.
+     *
+     * @return true if the certificate has been renewed, false if the CA did
+     *         not validate the challenge or the certificate could not be stored
+     */
+    private boolean renew(
+        final AcmePreferences preferences, final String endpoint, final List<String> domains,
+        final Path domainKeys, final CertificateOutput output
+    ) throws IOException, AcmeException {
+        final String domain = domains.get(0);
+        try (LogContext.Scope scope = LogContext.open(domain)) {
+            final Path accountKeys = paths.resolve(preferences.accountKeys());
+            out("using account credentials in " + PathResolver.describe(accountKeys));
+            out("using domain credentials in " + PathResolver.describe(domainKeys));
+            out("storing the new certificate in " + output.description());
+
+            //
+            // the renewal runs on the threads of the client, its progress is
+            // printed with the context of this one
+            //
+            final String correlation = LogContext.correlation();
+            final RenewListener listener = new RenewListener() {
+                @Override
+                public void progress(final String renewed, final String message) {
+                    try (LogContext.Scope renewal = LogContext.open(renewed, correlation)) {
+                        out(message);
+                    }
+                }
+
+                @Override
+                public void completed(final RenewalTimer timer) {
+                    try (LogContext.Scope renewal = LogContext.open(domain, correlation)) {
+                        writeMetrics(preferences, timer);
+                    }
+                }
+            };
+
+            //
+            // the keys are read only when needed, so that an unknown CA or
+            // account is reported before missing domain keys
+            //
+            final RenewRequest request = new RenewRequest(
+                endpoint, domain, () -> readKeyPair(accountKeys), () -> readKeyPair(domainKeys)
+            );
+            request.domains(domains);
+            challenges(preferences, request, listener);
+            request.pollingInterval(Duration.ofMillis(preferences.pollingInterval()));
+            request.timeout(preferences.challengeTimeout());
+            request.preferredChain(preferences.preferredChain());
+            request.output(output);
+            if (preferences.ocsp()) {
+                request.ocsp(ocsp());
+            }
+            request.listener(listener);
+
+            try {
+                client.renew(request).join();
+                return true;
+            } catch (CompletionException x) {
+                final Throwable cause = x.getCause();
+                if (cause instanceof ChallengeException) {
+                    return false; // already told by the client
+                }
+                if (cause instanceof GeneralSecurityException) {
+                    err(cause);
+                    return false;
+                }
+                if (cause instanceof IOException io) {
+                    throw io;
+                }
+                if (cause instanceof AcmeException acme) {
+                    throw acme;
+                }
+                if (cause instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new AcmeException(cause.getMessage(), cause);
+            }
+        }
+    }
+
+    /**
+     * Tells the request how to satisfy the challenges: DNS records published
+     * in the records file, TLS-ALPN certificates or HTTP tokens served by a
+     * local listener, or HTTP tokens published in the shared token store;
+     * where the records and tokens are published is told to the listener
+     */
+    private void challenges(
+        final AcmePreferences preferences, final RenewRequest request, final RenewListener listener
+    ) throws IOException {
+        final String domain = request.domain();
+        if (ChallengeType.DNS.equals(preferences.challengeType())) {
+            final FileDnsProvider dns = new FileDnsProvider(
+                Path.of(preferences.dnsRecords()), preferences.dnsPropagationDelay()
+            );
+            request.dnsProvider(new DnsProvider() {
+                @Override
+                public void publish(final Collection<DnsRecord> records) throws IOException {
+                    dns.publish(records);
+                    listener.progress(domain, "Challenge records published in " + dns.file().toAbsolutePath());
+                }
+
+                /**
+                 * The records are looked up only after the propagation delay,
+                 * which therefore does not count in the challenge timeout
+                 */
+                @Override
+                public boolean awaitPropagation(final Collection<DnsRecord> records, final Duration timeout)
+                throws IOException, InterruptedException {
+                    return dns.awaitPropagation(records, dns.propagationDelay().plus(timeout));
+                }
+
+                @Override
+                public void remove(final Collection<DnsRecord> records) throws IOException {
+                    dns.remove(records);
+                }
+            });
+        } else if (ChallengeType.TLS_ALPN.equals(preferences.challengeType())) {
+            request.tlsAlpn(true);
+            request.port(preferences.port());
+        } else if (preferences.tokenStore() != null) {
+            //
+            // the token is published for the challenge responders running on
+            // all nodes, no listener is started
+            //
+            final FileTokenStore tokens = new FileTokenStore(Path.of(preferences.tokenStore()));
+            request.tokenStore(new ChallengeTokenStore() {
+                @Override
+                public void put(final String token, final String authorization) throws IOException {
+                    tokens.put(token, authorization);
+                    listener.progress(domain, "Challenge token published in " + tokens.dir().toAbsolutePath());
+                }
+
+                @Override
+                public Optional<String> get(final String token) throws IOException {
+                    return tokens.get(token);
+                }
+
+                @Override
+                public void remove(final String token) throws IOException {
+                    tokens.remove(token);
+                }
+            });
+        } else {
+            request.port(preferences.port());
+        }
+        if (preferences.selfCheck()) {
+            request.selfCheck(selfCheck());
+        }
+    }
+
+    private void info(final Path certificateFile, final boolean mmap) {
+        try {
+            try (
+                CertificateReader reader = (mmap || !PathResolver.isLocal(certificateFile))
+                                         ? CertificateReader.open(certificateFile, mmap)
+                                         : new CertificateReader(new FileInputStream(certificateFile.toFile()))
+            ) {
+                out("Reading certificate " + PathResolver.describe(certificateFile));
+                X509Certificate certificate;
+                while ((certificate = reader.next()) != null) {
+                    out(certificate);
+                }
+            }
+
+        } catch (CertificateException x) {
+            out("Invalid certificate, it does not seem to be a X509 certificate: " + x.getMessage());
+        } catch (FileNotFoundException | NoSuchFileException x) {
+            out("Invalid certificate file " + PathResolver.describe(certificateFile) + ": " + x.getMessage());
+        } catch (IOException x) {
+            out("Error reading the certificate: " + x.getMessage());
+        }
+    }
+
+    private void info(
+        final Path storeFile, final List<String> domains, final InfoFormat format, final CertificateFilter filter
+    ) throws IOException {
+        try (CertificateStore store = new CertificateStore(storeFile)) {
+            store.open();
+
+            //
+            // a single domain is shown in full
+            //
+            if (InfoFormat.TEXT.equals(format) && filter.isEmpty() && domains.size() == 1) {
+                final String domain = domains.get(0);
+                final CertificateStore.Entry entry = store.get(domain);
+                if (entry == null) {
+                    out("Domain " + domain + " not found in store " + store.file());
+                    return;
+                }
+                out("Reading certificates of " + entry.domain() + " from store " + store.file());
+                entry.chain().forEach((certificate) -> out(certificate));
+                return;
+            }
+
+            if (InfoFormat.CSV.equals(format)) {
+                print(CertificateInfo.CSV_HEADER);
+            }
+            long count = 0;
+            for (String domain: domains.isEmpty() ? store.domains() : domains) {
+                final Path path = store.file().resolve(domain);
+                final CertificateStore.Entry entry = store.get(domain);
+                if (entry == null) {
+                    print(errorRow(format, path, "Domain " + domain + " not found in store " + store.file()));
+                    continue;
+                }
+                for (int i = 0; i < entry.chain().size(); ++i) {
+                    final CertificateInfo info = CertificateInfo.of(path, i, entry.chain().get(i));
+                    if (filter.test(info)) {
+                        ++count;
+                        print(row(format, info));
+                    }
+                }
+            }
+            final long read = count;
+            LOG.info(() -> read + " certificates read from " + storeFile);
+        } catch (CertificateException x) {
+            out("Invalid certificate, it does not seem to be a X509 certificate: " + x.getMessage());
+        }
+    }
+
+    private void verify(
+        final List<String> certificates, final InfoFormat format, final boolean mmap, final String trustStore,
+        final boolean revocation
+    ) throws IOException {
+        final ChainVerifier verifier;
+        try {
+            verifier = new ChainVerifier(
+                (trustStore == null) ? ChainVerifier.defaultAnchors()
+                                     : ChainVerifier.anchors(paths.resolve(trustStore)),
+                Clock.systemUTC(), revocation ? new OcspClient() : null
+            );
+        } catch (GeneralSecurityException x) {
+            out("Invalid trust store: " + x.getMessage());
+            return;
+        }
+        LOG.info(() -> "verifying certificates against " + verifier.anchors() + " trusted roots");
+
+        //
+        // files are verified in parallel, one row per file; rows are not
+        // logged
+        //
+        if (InfoFormat.CSV.equals(format)) {
+            print(ChainVerifier.CSV_HEADER);
+        }
+        final LongAdder count = new LongAdder(), invalid = new LongAdder(), mismatches = new LongAdder();
+        final CertificateScanner scanner = new CertificateScanner();
+        scanner.resolver((certificate) -> {
+            try {
+                return paths.resolve(certificate);
+            } catch (IOException x) {
+                throw new UncheckedIOException(x);
+            }
+        });
+        scanner.walk(certificates, new CertificateScanner.Visitor() {
+            @Override
+            public void file(final Path file) {
+                final ChainVerifier.Result result = verifier.verify(file, mmap);
+                if (result != null) {
+                    count.increment();
+                    if (!result.valid()) {
+                        invalid.increment();
+                    }
+                    if (Boolean.FALSE.equals(result.keyMatches())) {
+                        mismatches.increment();
+                    }
+                    print(verifyRow(format, result));
+                }
+            }
+
+            @Override
+            public void error(final Path path, final Exception x) {
+                count.increment(); invalid.increment();
+                print(verifyRow(format, new ChainVerifier.Result(
+                    path, null, null, null, null, List.of("Invalid certificate file " + path.toAbsolutePath() + ": " + x)
+                )));
+            }
+        });
+        out(
+            count.sum() + " certificates verified, " + invalid.sum() + " invalid, " + mismatches.sum() +
+            " key mismatches, " + verifier.cached() + " intermediates cached"
+        );
+    }
+
+    /**
+     * @return where to write a renewed certificate: the store or the keystore
+     *         if given, the output file in the requested format otherwise
+     */
+    private CertificateOutput output(
+        final AcmePreferences preferences, final Path outFile, final Path domainKeys,
+        final CertificateStore store, final KeyStoreFile keyStore
+    ) {
+        if (store != null) {
+            return new CertificateOutput() {
+                @Override
+                public String description() {
+                    return "store " + store.file();
+                }
+
+                @Override
+                public void write(final String domain, final Certificate certificate)
+                throws IOException, GeneralSecurityException {
+                    store.put(domain, certificate.getCertificateChain(), Files.readAllBytes(domainKeys));
+                }
+
+                @Override
+                public Path ocspFile(final String domain) {
+                    return store.file().resolveSibling(domain + OcspCache.SUFFIX);
+                }
+            };
+        }
+        if (keyStore != null) {
+            return new CertificateOutput() {
+                @Override
+                public String description() {
+                    return "keystore " + PathResolver.describe(keyStore.file()) + " (alias updated)";
+                }
+
+                @Override
+                public void write(final String domain, final Certificate certificate)
+                throws IOException, GeneralSecurityException {
+                    keyStore.put(domain, readPrivateKey(domainKeys), fullChain(certificate));
+                }
+
+                @Override
+                public Path ocspFile(final String domain) {
+                    return keyStore.file().resolveSibling(domain + OcspCache.SUFFIX);
+                }
+            };
+        }
+        if (!preferences.artifacts().isEmpty()) {
+            final Map<Artifact, Path> artifacts = new LinkedHashMap<>();
+            final String base = baseName(outFile);
+            for (Artifact artifact: preferences.artifacts()) {
+                artifacts.put(artifact, outFile.resolveSibling(artifact.fileName(base)));
+            }
+            return new CertificateOutput() {
+                @Override
+                public String description() {
+                    return PathResolver.describe(outFile.resolveSibling(base)) + " " + artifacts.keySet();
+                }
+
+                @Override
+                public void write(final String domain, final Certificate certificate)
+                throws IOException, GeneralSecurityException {
+                    final CertificateWriter writer = new CertificateWriter(certificate.getCertificateChain());
+                    if (artifacts.keySet().stream().anyMatch(Artifact::needsKey)) {
+                        writer.key(readPrivateKey(domainKeys));
+                    }
+                    if (artifacts.containsKey(Artifact.PKCS12)) {
+                        writer.keyStore(domain, preferences.secret().toCharArray(), keyStoreProtection(preferences));
+                    }
+                    writer.write(artifacts);
+                }
+
+                @Override
+                public Path ocspFile(final String domain) {
+                    //
+                    // next to the leaf certificate, where ocsp-refresh and
+                    // info --revocation look for it
+                    //
+                    return OcspCache.file(
+                        artifacts.getOrDefault(Artifact.LEAF, artifacts.values().iterator().next())
+                    );
+                }
+            };
+        }
+        return new CertificateOutput() {
+            @Override
+            public String description() {
+                return PathResolver.describe(outFile);
+            }
+
+            @Override
+            public void write(final String domain, final Certificate certificate)
+            throws IOException, GeneralSecurityException {
+                if (PEM.equals(preferences.format())) {
+                    try (Writer out = Files.newBufferedWriter(outFile)) {
+                        certificate.writeCertificate(out);
+                    }
+                    return;
+                }
+
+                //
+                // a new keystore with the renewed domain only
+                //
+                final KeyStoreFile keyStore = new KeyStoreFile(
+                    outFile, preferences.format().keyStoreType(), preferences.secret().toCharArray()
+                );
+                keyStore.protection(keyStoreProtection(preferences));
+                keyStore.create();
+                keyStore.put(domain, readPrivateKey(domainKeys), fullChain(certificate));
+                keyStore.store();
+            }
+
+            @Override
+            public Path ocspFile(final String domain) {
+                return OcspCache.file(outFile);
+            }
+        };
+    }
+
+    /**
+     * Appends the timings of the given renewal to the JSON metrics file and
+     * rewrites the Prometheus metrics file with the histograms of all the
+     * renewals so far, if requested; a metrics file that can not be written
+     * does not fail the renewal
+     */
+    private void writeMetrics(final AcmePreferences preferences, final RenewalTimer timer) {
+        if (preferences.metricsJson() != null) {
+            final Path file = Path.of(preferences.metricsJson());
+            try {
+                Files.writeString(
+                    file, timer.toJSON() + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND
+                );
+            } catch (IOException x) {
+                out("Unable to write the metrics in " + PathResolver.describe(file) + ": " + x.getMessage());
+            }
+        }
+        if (preferences.metricsPrometheus() != null) {
+            final Path file = Path.of(preferences.metricsPrometheus());
+            try {
+                metrics.writePrometheus(file);
+            } catch (IOException x) {
+                out("Unable to write the metrics in " + PathResolver.describe(file) + ": " + x.getMessage());
+            }
+        }
+    }
+
+    private OcspCache ocsp() {
+        if (ocsp == null) {
+            ocsp = new OcspCache(new OcspClient());
+        }
+        return ocsp;
+    }
+
+    /**
+     * @return the certificate chain downloaded from the CA, leaf first
+     */
+    private static java.security.cert.Certificate[] fullChain(final Certificate certificate) {
+        return certificate.getCertificateChain().toArray(new java.security.cert.Certificate[0]);
+    }
+
+    /**
+     * @return the file name without the usual certificate extensions (e.g.
+     *         example.com.crt gives example.com)
+     */
+    private static List<X509Certificate> chain(final Path file) throws IOException, CertificateException {
+        final List<X509Certificate> chain = new ArrayList<>();
+        try (CertificateReader reader = CertificateReader.open(file, false)) {
+            for (X509Certificate certificate = reader.next(); certificate != null; certificate = reader.next()) {
+                chain.add(certificate);
+            }
+        }
+        return chain;
+    }
+
+    private static String baseName(final Path file) {
+        String name = file.getFileName().toString();
+        for (String extension: new String[] {".crt", ".cer", ".pem", ".der", ".p12", ".pfx"}) {
+            if (name.endsWith(extension) && name.length() > extension.length()) {
+                return name.substring(0, name.length() - extension.length());
+            }
+        }
+        return name;
+    }
+
+    private static PrivateKey readPrivateKey(final Path file) throws IOException {
+        return readKeyPair(file).getPrivate();
+    }
+
+    private static KeyPair readKeyPair(final Path file) throws IOException {
+        final KeyIOEvent event = new KeyIOEvent();
+        event.begin();
+        try {
+            return KEYS.read(file);
+        } finally {
+            event.commit(file, KeyIOEvent.KEY, KeyIOEvent.READ);
+        }
+    }
+
+    private static String summary(final CertificateIndex.Update update) {
+        return update.files() + " files indexed, " + update.parsed() + " parsed, " + update.unchanged() +
+               " unchanged, " + update.removed() + " removed, " + update.errors() + " errors";
+    }
+
+    private static String row(final InfoFormat format, final CertificateInfo info) {
+        return switch (format) {
+            case JSON -> info.toJSON();
+            case CSV -> info.toCSV();
+            default -> info.path() + "[" + info.index() + "]: " + info.subject() + ", valid from " + info.notBefore() + " to " + info.notAfter();
+        };
+    }
+
+    private static String verifyRow(final InfoFormat format, final ChainVerifier.Result result) {
+        return switch (format) {
+            case JSON -> result.toJSON();
+            case CSV -> result.toCSV();
+            default -> result.path() + ": " + (
+                result.valid()
+                ? "valid, chains to " + result.anchor() + (
+                    Boolean.TRUE.equals(result.keyMatches()) ? ", matches key " + result.keyFile().getFileName() : ""
+                  )
+                : "INVALID, " + String.join("; ", result.problems())
+            );
+        };
+    }
+
+    private static String errorRow(final InfoFormat format, final Path path, final String message) {
+        return switch (format) {
+            case JSON -> new JSONBuilder().put("path", path.toString()).put("error", message).toString();
+            case CSV -> CertificateInfo.csv(path.toString()) + ",,,,,,,,," + CertificateInfo.csv(message);
+            default -> message;
+        };
+    }
+
+    private void checkRenewOptions(final AcmePreferences preferences) throws IllegalArgumentException {
+        final Format format = preferences.format();
+        if (format.isKeyStore() && (preferences.store() != null)) {
+            throw new IllegalArgumentException(
+                "Output " + format + " can not be written to a certificate store (" + Constants.OPT_STORE + ")"
+            );
+        }
+        if (preferences.updateKeyStore() && !format.isKeyStore()) {
+            throw new IllegalArgumentException(
+                "A keystore format must be provided with " + Constants.OPT_UPDATE_KEYSTORE + " (use " + Constants.OPT_OUT_FORMAT + ")"
+            );
+        }
+        if (format.isKeyStore()) {
+            if (StringUtils.isEmpty(preferences.secret())) {
+                throw new IllegalArgumentException(
+                    "A keystore password must be provided for output " + format + " (use " + Constants.OPT_SECRET + ")"
+                );
+            }
+        }
+        final List<Artifact> artifacts = preferences.artifacts();
+        if (!artifacts.isEmpty()) {
+            if (preferences.store() != null) {
+                throw new IllegalArgumentException(
+                    "Artifacts can not be written to a certificate store (" + Constants.OPT_STORE + ")"
+                );
+            }
+            if (format.isKeyStore()) {
+                throw new IllegalArgumentException(
+                    "Artifacts can not be written together with output " + format + " (use " + Constants.OPT_ARTIFACTS + " pkcs12)"
+                );
+            }
+            if (artifacts.contains(Artifact.PKCS12) && StringUtils.isEmpty(preferences.secret())) {
+                throw new IllegalArgumentException(
+                    "A keystore password must be provided for artifact " + Artifact.PKCS12 + " (use " + Constants.OPT_SECRET + ")"
+                );
+            }
+        }
+        if (!format.isKeyStore() && !artifacts.contains(Artifact.PKCS12) && (
+            preferences.keyStoreEncryption() != null || preferences.keyStoreMac() != null || preferences.keyStoreIterations() != null
+        )) {
+            throw new IllegalArgumentException(
+                "The keystore protection can be given for keystore outputs only (use " + Constants.OPT_OUT_FORMAT + ")"
+            );
+        }
+        keyStoreProtection(preferences); // fails early on unsupported values
+        if (preferences.preferredChain() != null) {
+            new ChainSelector(preferences.preferredChain());
+        }
+    }
+
+    /**
+     * @return the protection of the keystore output; null if not given
+     */
+    private static KeyStoreProtection keyStoreProtection(final AcmePreferences preferences) {
+        return KeyStoreProtection.of(
+            preferences.format().isKeyStore() ? preferences.format().keyStoreType() : Format.PKCS12.keyStoreType(),
+            preferences.keyStoreEncryption(), preferences.keyStoreMac(), preferences.keyStoreIterations()
+        );
+    }
+
+    private ChallengeSelfCheck selfCheck() {
+        if (selfCheck == null) {
+            selfCheck = new ChallengeSelfCheck();
+        }
+        return selfCheck;
+    }
+
+    private static void out(final Object o) {
+        OUT.info(String.valueOf(o));
+    }
+
+    private static void print(final Object o) {
+        OUT.print(String.valueOf(o));
+    }
+
+    private static void err(Throwable t) {
+        out("Something went wrong: " + t.getMessage());
+        LOG.severe(() -> ExceptionUtils.getStackTrace(t));
+    }
+
+    // ---------------------------------------------------------AcmeToolsVersion
+
+    protected static class AcmeToolsVersion implements CommandLine.IVersionProvider {
+
+        @CommandLine.Spec
+        CommandLine.Model.CommandSpec spec; // injected by picocli
+
+        @Override
+        public String[] getVersion() throws Exception {
+            return new String[]{
+                spec.name() + " v" + version()
+            };
+        }
+
+        public String version() {
+            Properties p = new Properties();
+            try {
+                p.load(AcmePreferences.class.getResourceAsStream("/version.properties"));
+            } catch (IOException | NullPointerException x) {
+                //
+                // nothing we can do about it, N/A will be used
+                //
+            }
+            return p.getProperty("version", "N/A");
+        }
+    }
+
+    // ----------------------------------------------------- CLIExceptionHandler
+
+    protected static class CLIExceptionHandler implements IExecutionExceptionHandler {
+        @Override
+        public int handleExecutionException(Exception x, CommandLine commandLine, ParseResult parseResult) {
+            err(x);
+            return commandLine.getCommandSpec().exitCodeOnExecutionException();
+        }
+    }
+
+}
@@ -0,0 +1,580 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+import picocli.CommandLine.Option;
+import ste.acme.cli.store.Artifact;
+
+/**
+ *
+ */
+
+public class AcmePreferences {
+
+    /**
+     * @return the secret
+     */
+    public String secret() {
+        return secret;
+    }
+
+    /**
+     * @param secret the secret to set
+     */
+    public void secret(String secret) {
+        this.secret = secret;
+    }
+
+    private static final Pattern PERIOD_PATTERN = Pattern.compile("([0-9]+)(ms|[dhms])");
+
+    @Option(names=Constants.OPT_ACCOUNT_KEYS, required=false, description="optional account keys file (default: account.pem)", defaultValue = Constants.DEFAULT_ACCOUNT_KEYS)
+    private String accountkeys = Constants.DEFAULT_ACCOUNT_KEYS;
+
+    @Option(names=Constants.OPT_DOMAIN_KEYS, required=false, description="optional domain keys file (default: domain.pem)", defaultValue = Constants.DEFAULT_DOMAIN_KEYS)
+    private String domainKeys = Constants.DEFAULT_DOMAIN_KEYS;
+
+    @Option(names=Constants.OPT_OUT, required=false, description="optional filename for the certificate (default: domain.crt)", defaultValue = Constants.DEFAULT_CERTIFICATE)
+    private String out = Constants.DEFAULT_CERTIFICATE;
+
+    @Option(names=Constants.OPT_POLLING_INTERVAL, required=false, description="optional interval in millisecond used when polling for events (default: 3000)", defaultValue = Constants.DEFAULT_POLLING_INTERVAL)
+    private int pollingInterval = Integer.parseInt(Constants.DEFAULT_POLLING_INTERVAL);
+
+    @Option(names=Constants.OPT_PORT, required=false, description="tcp port to use to listen for CA challenge request; if not provided an available port will be picked randomly")
+    private int port = 0; // randomly pick an available port
+
+    /* see challengeTimeout(String) */
+    private Duration challengeTimeout = Duration.ofSeconds(30);
+
+    @Option(names=Constants.OPT_OUT_FORMAT, required=false, description="optional format for the output file; one of 'pem', 'pkcs12', 'jks', 'bcfks' (default: pem)")
+    private Format format = Constants.DEFAULT_OUT_FORMAT;
+
+    @Option(names=Constants.OPT_SECRET, required=false, description="optional password for the output file (e.g. PKCS12 keystore password)")
+    private String secret = null;
+
+    @Option(names=Constants.OPT_TOKEN_STORE, required=false, description="optional directory shared with the challenge responders where to publish HTTP challenge tokens; if not provided tokens are served by a listener started by renew")
+    private String tokenStore = null;
+
+    @Option(names=Constants.OPT_CHALLENGE_TYPE, required=false, description="optional type of challenge to satisfy; one of 'http', 'dns', 'tls_alpn' (default: http)")
+    private ChallengeType challengeType = Constants.DEFAULT_CHALLENGE_TYPE;
+
+    @Option(names=Constants.OPT_DNS_RECORDS, required=false, description="optional file where to write the DNS challenge records as a nsupdate script (default: acme-challenge.nsupdate)", defaultValue = Constants.DEFAULT_DNS_RECORDS)
+    private String dnsRecords = Constants.DEFAULT_DNS_RECORDS;
+
+    /* see dnsPropagationDelay(String) */
+    private Duration dnsPropagationDelay = Duration.ZERO;
+
+    @Option(names=Constants.OPT_DOMAINS_FROM, required=false, description="optional certificate index (see the index command) to renew, in place, the certificates expiring within " + Constants.OPT_EXPIRING_WITHIN + " instead of a single domain")
+    private String domainsFrom = null;
+
+    /* see renewWithin(String) */
+    private Duration renewWithin = Duration.ofDays(30);
+
+    @Option(names=Constants.OPT_UPDATE_KEYSTORE, required=false, description="optional; with keystore formats, the renewed domains are added to or replaced in the keystore given with " + Constants.OPT_OUT + " (one alias per domain) instead of writing a new keystore")
+    private boolean updateKeyStore = false;
+
+    @Option(names=Constants.OPT_ARTIFACTS, required=false, split=",", description="optional comma separated files to write next to " + Constants.OPT_OUT + " instead of it, named after it without extension; any of 'leaf' (.crt), 'fullchain' (-fullchain.pem), 'bundle' (key and full chain, -bundle.pem), 'pkcs12' (.p12), 'der' (.der)")
+    private List<Artifact> artifacts = new ArrayList<>();
+
+    @Option(names=Constants.OPT_PREFERRED_CHAIN, required=false, description="optional chain to take among the ones offered by the CA; 'shortest' for the chain with the fewest bytes or the common name of the issuer of its top certificate (e.g. 'ISRG Root X1'); if not offered the default chain is taken")
+    private String preferredChain = null;
+
+    @Option(names=Constants.OPT_OCSP, required=false, description="optional; if given the OCSP response of the renewed certificate is fetched and saved next to it (e.g. domain.crt.ocsp) to be stapled by web servers; see the ocsp-refresh command to keep it fresh")
+    private boolean ocsp = false;
+
+    @Option(names=Constants.OPT_METRICS_JSON, required=false, description="optional file where the timings of the phases of each renewal are appended as a JSON object per line")
+    private String metricsJson = null;
+
+    @Option(names=Constants.OPT_METRICS_PROMETHEUS, required=false, description="optional file where the histograms of the timings of the renewals are written in the Prometheus text format (e.g. <textfile collector dir>/acme-tools.prom)")
+    private String metricsPrometheus = null;
+
+    @Option(names=Constants.OPT_LOG_JSON, required=false, description="optional file where the progress of the renewals is appended as a JSON object per line tagged with domain and correlation ID")
+    private String logJson = null;
+
+    @Option(names=Constants.OPT_KEYSTORE_ENCRYPTION, required=false, description="optional encryption algorithm of the keys and certificates of keystore outputs; pkcs12: PBEWithHmacSHA256AndAES_256 (default), PBEWithHmacSHA256AndAES_128, PBEWithHmacSHA512AndAES_256, ..., PBEWithSHA1AndDESede (legacy); bcfks: AES256_CCM (default), AES256_KWP")
+    private String keyStoreEncryption = null;
+
+    @Option(names=Constants.OPT_KEYSTORE_MAC, required=false, description="optional integrity algorithm of keystore outputs; pkcs12: HmacPBESHA256 (default), HmacPBESHA1 (legacy); bcfks: HmacSHA512 (default), HmacSHA3_512")
+    private String keyStoreMac = null;
+
+    @Option(names=Constants.OPT_KEYSTORE_ITERATIONS, required=false, description="optional number of iterations of the password based key derivation of keystore outputs (default: 10000 for pkcs12, 51200 for bcfks); see the keystore-benchmark command for its cost")
+    private Integer keyStoreIterations = null;
+
+    @Option(names=Constants.OPT_STORE, required=false, description="optional certificate store where to write the renewed certificate chain and the domain keys instead of " + Constants.OPT_OUT + "; created if missing")
+    private String store = null;
+
+    @Option(names=Constants.OPT_SELF_CHECK, required=false, description="optional; if given the challenge URL is fetched locally before asking the CA to validate it, so that unreachable domains fail fast")
+    private boolean selfCheck = false;
+
+    /**
+     * @return the account keys file
+     */
+    public String accountKeys() {
+        return accountkeys;
+    }
+
+    /**
+     * @param accountKeys the account keys file to set
+     */
+    public void accountKeys(String accountKeys) {
+        this.accountkeys = accountKeys;
+    }
+
+    /**
+     * @return the domain keys file
+     */
+    public String domainKeys() {
+        return domainKeys;
+    }
+
+    /**
+     * @param domainKeys the domain keys file to set
+     */
+    public void domainKeys(String domainKeys) {
+        this.domainKeys = domainKeys;
+    }
+
+    /**
+     * @return the output file
+     */
+    public String out() {
+        return out;
+    }
+
+    /**
+     * @param out the output file
+     */
+    public void out(String out) {
+        this.out = out;
+    }
+
+    /**
+     * @return the pollingInterval
+     */
+    public int pollingInterval() {
+        return pollingInterval;
+    }
+
+    /**
+     * @param pollingInterval the pollingInterval to set
+     */
+    public void pollingInterval(int pollingInterval) {
+        this.pollingInterval = pollingInterval;
+    }
+
+    /**
+     * @return the port
+     */
+    public int port() {
+        return port;
+    }
+
+    /**
+     * @param port the port to set
+     */
+    public void port(int port) {
+        this.port = port;
+    }
+
+    /**
+     * @return the challengeTimeout
+     */
+    public Duration challengeTimeout() {
+        return challengeTimeout;
+    }
+
+    /**
+     * @param challengeTimeout the challengeTimeout to set
+     */
+    public void challengeTimeout(Duration challengeTimeout) {
+        this.challengeTimeout = challengeTimeout;
+    }
+
+    /**
+     * @param challengeTimeout the challengeTimeout to set as a string (e.i. 1m 30s 10ms)
+     */
+    @Option(
+        names=Constants.OPT_CHALLENGE_TIMEOUT,
+        required=false,
+        description="max time to wait for a challenge in human readable form (e.g. 1m 30s, default: 30s)",
+        defaultValue = Constants.DEFAULT_CHALLENGE_TIMEOUT
+    )
+    public void challengeTimeout(String challengeTimeout) {
+        this.challengeTimeout = period("challengeTimeout", challengeTimeout);
+    }
+
+    /**
+     * @return the format
+     */
+    public Format format() {
+        return format;
+    }
+
+    /**
+     * @param format the format to set
+     */
+    public void format(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * @return the token store directory
+     */
+    public String tokenStore() {
+        return tokenStore;
+    }
+
+    /**
+     * @param tokenStore the token store directory to set
+     */
+    public void tokenStore(String tokenStore) {
+        this.tokenStore = tokenStore;
+    }
+
+    /**
+     * @return true if the challenge URL shall be checked before triggering the challenge
+     */
+    public boolean selfCheck() {
+        return selfCheck;
+    }
+
+    /**
+     * @param selfCheck the selfCheck to set
+     */
+    public void selfCheck(boolean selfCheck) {
+        this.selfCheck = selfCheck;
+    }
+
+    /**
+     * @return the challengeType
+     */
+    public ChallengeType challengeType() {
+        return challengeType;
+    }
+
+    /**
+     * @param challengeType the challengeType to set
+     */
+    public void challengeType(ChallengeType challengeType) {
+        this.challengeType = challengeType;
+    }
+
+    /**
+     * @return the DNS records file
+     */
+    public String dnsRecords() {
+        return dnsRecords;
+    }
+
+    /**
+     * @param dnsRecords the DNS records file to set
+     */
+    public void dnsRecords(String dnsRecords) {
+        this.dnsRecords = dnsRecords;
+    }
+
+    /**
+     * @return the dnsPropagationDelay
+     */
+    public Duration dnsPropagationDelay() {
+        return dnsPropagationDelay;
+    }
+
+    /**
+     * @param dnsPropagationDelay the dnsPropagationDelay to set
+     */
+    public void dnsPropagationDelay(Duration dnsPropagationDelay) {
+        this.dnsPropagationDelay = dnsPropagationDelay;
+    }
+
+    /**
+     * @param dnsPropagationDelay the dnsPropagationDelay to set as a string (e.i. 1m 30s)
+     */
+    @Option(
+        names=Constants.OPT_DNS_PROPAGATION_DELAY,
+        required=false,
+        description="time to wait for the DNS challenge records to propagate in human readable form (e.g. 1m 30s, default: 0s)",
+        defaultValue = Constants.DEFAULT_DNS_PROPAGATION_DELAY
+    )
+    public void dnsPropagationDelay(String dnsPropagationDelay) {
+        this.dnsPropagationDelay = period("dnsPropagationDelay", dnsPropagationDelay);
+    }
+
+    /**
+     * @return the certificate index to take the domains to renew from
+     */
+    public String domainsFrom() {
+        return domainsFrom;
+    }
+
+    /**
+     * @param domainsFrom the certificate index to take the domains to renew from
+     */
+    public void domainsFrom(String domainsFrom) {
+        this.domainsFrom = domainsFrom;
+    }
+
+    /**
+     * @return the renewWithin
+     */
+    public Duration renewWithin() {
+        return renewWithin;
+    }
+
+    /**
+     * @param renewWithin the renewWithin to set
+     */
+    public void renewWithin(Duration renewWithin) {
+        this.renewWithin = renewWithin;
+    }
+
+    /**
+     * @param renewWithin the renewWithin to set as a string (e.i. 14d)
+     */
+    @Option(
+        names=Constants.OPT_EXPIRING_WITHIN,
+        required=false,
+        description="with " + Constants.OPT_DOMAINS_FROM + ", renew the certificates expiring within the given period in human readable form (e.g. 14d, default: 30d)",
+        defaultValue = Constants.DEFAULT_RENEW_WITHIN
+    )
+    public void renewWithin(String renewWithin) {
+        this.renewWithin = period("renewWithin", renewWithin);
+    }
+
+    /**
+     * @return the certificate store to write to instead of the output file
+     */
+    public String store() {
+        return store;
+    }
+
+    /**
+     * @param store the certificate store to write to instead of the output file
+     */
+    public void store(String store) {
+        this.store = store;
+    }
+
+    /**
+     * @return true if the renewed domains shall be updated in an existing keystore
+     */
+    public boolean updateKeyStore() {
+        return updateKeyStore;
+    }
+
+    /**
+     * @param updateKeyStore the updateKeyStore to set
+     */
+    public void updateKeyStore(boolean updateKeyStore) {
+        this.updateKeyStore = updateKeyStore;
+    }
+
+    /**
+     * @return the artifacts to write instead of the output file; empty if none
+     */
+    public List<Artifact> artifacts() {
+        return artifacts;
+    }
+
+    /**
+     * @param artifacts the artifacts to write instead of the output file
+     */
+    public void artifacts(List<Artifact> artifacts) {
+        this.artifacts = (artifacts == null) ? new ArrayList<>() : artifacts;
+    }
+
+    /**
+     * @return the preferred certificate chain; null for the default chain
+     */
+    public String preferredChain() {
+        return preferredChain;
+    }
+
+    /**
+     * @param preferredChain the preferred certificate chain
+     */
+    public void preferredChain(String preferredChain) {
+        this.preferredChain = preferredChain;
+    }
+
+    /**
+     * @return true if the OCSP response of the renewed certificate shall be fetched
+     */
+    public boolean ocsp() {
+        return ocsp;
+    }
+
+    /**
+     * @param ocsp the ocsp to set
+     */
+    public void ocsp(boolean ocsp) {
+        this.ocsp = ocsp;
+    }
+
+    /**
+     * @return the file where the timings of each renewal are appended as
+     *         JSON; null for none
+     */
+    public String metricsJson() {
+        return metricsJson;
+    }
+
+    /**
+     * @param metricsJson the file where the timings of each renewal are
+     *        appended as JSON
+     */
+    public void metricsJson(String metricsJson) {
+        this.metricsJson = metricsJson;
+    }
+
+    /**
+     * @return the file where the histograms of the renewal timings are
+     *         written in the Prometheus text format; null for none
+     */
+    public String metricsPrometheus() {
+        return metricsPrometheus;
+    }
+
+    /**
+     * @param metricsPrometheus the file where the histograms of the renewal
+     *        timings are written in the Prometheus text format
+     */
+    public void metricsPrometheus(String metricsPrometheus) {
+        this.metricsPrometheus = metricsPrometheus;
+    }
+
+    /**
+     * @return the file where the progress of the renewals is appended as
+     *         JSON; null for none
+     */
+    public String logJson() {
+        return logJson;
+    }
+
+    /**
+     * @param logJson the file where the progress of the renewals is appended
+     *        as JSON
+     */
+    public void logJson(String logJson) {
+        this.logJson = logJson;
+    }
+
+    /**
+     * @return the encryption algorithm of keystore outputs; null for the default
+     */
+    public String keyStoreEncryption() {
+        return keyStoreEncryption;
+    }
+
+    /**
+     * @param keyStoreEncryption the encryption algorithm of keystore outputs
+     */
+    public void keyStoreEncryption(String keyStoreEncryption) {
+        this.keyStoreEncryption = keyStoreEncryption;
+    }
+
+    /**
+     * @return the MAC algorithm of keystore outputs; null for the default
+     */
+    public String keyStoreMac() {
+        return keyStoreMac;
+    }
+
+    /**
+     * @param keyStoreMac the MAC algorithm of keystore outputs
+     */
+    public void keyStoreMac(String keyStoreMac) {
+        this.keyStoreMac = keyStoreMac;
+    }
+
+    /**
+     * @return the key derivation iterations of keystore outputs; null for the default
+     */
+    public Integer keyStoreIterations() {
+        return keyStoreIterations;
+    }
+
+    /**
+     * @param keyStoreIterations the key derivation iterations of keystore outputs
+     */
+    public void keyStoreIterations(Integer keyStoreIterations) {
+        this.keyStoreIterations = keyStoreIterations;
+    }
+
+    // --------------------------------------------------------- static methods
+
+    /**
+     * Parses a period in human readable form (e.i. 1d 2h 1m 30s 10ms)
+     *
+     * @param name the name of the value, used in error messages
+     * @param value the period to parse
+     *
+     * @return the parsed period
+     */
+    public static Duration period(final String name, String value) {
+        if (StringUtils.isBlank(value)) {
+            throw new IllegalArgumentException(name + " can not be blank");
+        }
+        value = value.toLowerCase().replace(" ", "");
+        Matcher matcher = PERIOD_PATTERN.matcher(value);
+
+        Duration period = Duration.ofSeconds(0);
+
+        boolean found = false;
+        while(matcher.find()) {
+            found = true;
+
+            int amount = Integer.parseInt(matcher.group(1));
+            String type = matcher.group(2);
+
+            switch (type) {
+                case "d":
+                    period = period.plusDays(amount);
+                    break;
+                case "h":
+                    period = period.plusHours(amount);
+                    break;
+                case "m":
+                    period = period.plusMinutes(amount);
+                    break;
+                case "s":
+                    period = period.plusSeconds(amount);
+                    break;
+                case "ms":
+                    period = period.plusMillis(amount);
+                    break;
+            }
+        }
+
+        if (!found) {
+            throw new IllegalArgumentException(
+                String.format("%s '%s' does not contain any time period", name, value)
+            );
+        }
+
+        return period;
+    }
+}
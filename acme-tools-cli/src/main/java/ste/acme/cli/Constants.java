@@ -0,0 +1,96 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+
+package ste.acme.cli;
+
+import static ste.acme.cli.ChallengeType.HTTP;
+import static ste.acme.cli.Format.PEM;
+
+/**
+ *
+ */
+public class Constants {
+    public static final String DEFAULT_ACCOUNT_KEYS = "account.pem";
+    public static final String DEFAULT_DOMAIN_KEYS = "domain.pem";
+    public static final String DEFAULT_CERTIFICATE = "domain.crt";
+    public static final String DEFAULT_POLLING_INTERVAL = "3000";
+    public static final String DEFAULT_CHALLENGE_TIMEOUT = "30s";
+    public static final Format DEFAULT_OUT_FORMAT = PEM;
+    public static final String DEFAULT_RESPONDER_PORT = "80";
+    public static final ChallengeType DEFAULT_CHALLENGE_TYPE = HTTP;
+    public static final String DEFAULT_DNS_RECORDS = "acme-challenge.nsupdate";
+    public static final String DEFAULT_DNS_PROPAGATION_DELAY = "0s";
+    public static final String DEFAULT_INFO_FORMAT = "text";
+    public static final String DEFAULT_INDEX = "certificates.index";
+    public static final String DEFAULT_RENEW_WITHIN = "30d";
+    public static final String DEFAULT_DEBOUNCE = "1s";
+    public static final String DEFAULT_BENCHMARK_FORMAT = "pkcs12";
+    public static final String DEFAULT_BENCHMARK_ENTRIES = "1,10,100";
+    public static final String DEFAULT_BENCHMARK_ROUNDS = "3";
+    public static final String DEFAULT_SCAN_CONCURRENCY = "1000";
+    public static final String DEFAULT_SCAN_TIMEOUT = "10s";
+
+    public static final String OPT_HELP = "--help";
+    public static final String OPT_VERSION = "--version";
+    public static final String OPT_ACCOUNT_KEYS = "--account-keys";
+    public static final String OPT_DOMAIN_KEYS = "--domain-keys";
+    public static final String OPT_OUT = "--out";
+    public static final String OPT_OUT_FORMAT = "--format";
+    public static final String OPT_POLLING_INTERVAL = "--polling-interval";
+    public static final String OPT_PORT = "--port";
+    public static final String OPT_CHALLENGE_TIMEOUT = "--challenge-timeout";
+    public static final String OPT_CONTACT = "--contact";
+    public static final String OPT_SECRET = "--secret";
+    public static final String OPT_TOKEN_STORE = "--token-store";
+    public static final String OPT_SELF_CHECK = "--self-check";
+    public static final String OPT_CHALLENGE_TYPE = "--challenge-type";
+    public static final String OPT_DNS_RECORDS = "--dns-records";
+    public static final String OPT_DNS_PROPAGATION_DELAY = "--dns-propagation-delay";
+    public static final String OPT_EXPIRED = "--expired";
+    public static final String OPT_EXPIRING_WITHIN = "--expiring-within";
+    public static final String OPT_ISSUER = "--issuer";
+    public static final String OPT_MMAP = "--mmap";
+    public static final String OPT_VERIFY = "--verify";
+    public static final String OPT_TRUST_STORE = "--trust-store";
+    public static final String OPT_REVOCATION = "--revocation";
+    public static final String OPT_INDEX = "--index";
+    public static final String OPT_WITHIN = "--within";
+    public static final String OPT_DOMAINS_FROM = "--domains-from";
+    public static final String OPT_WATCH = "--watch";
+    public static final String OPT_DEBOUNCE = "--debounce";
+    public static final String OPT_STORE = "--store";
+    public static final String OPT_UPDATE_KEYSTORE = "--update-keystore";
+    public static final String OPT_KEYSTORE_ENCRYPTION = "--keystore-encryption";
+    public static final String OPT_KEYSTORE_MAC = "--keystore-mac";
+    public static final String OPT_KEYSTORE_ITERATIONS = "--keystore-iterations";
+    public static final String OPT_ENTRIES = "--entries";
+    public static final String OPT_ROUNDS = "--rounds";
+    public static final String OPT_ARTIFACTS = "--artifacts";
+    public static final String OPT_PREFERRED_CHAIN = "--preferred-chain";
+    public static final String OPT_OCSP = "--ocsp";
+    public static final String OPT_FORCE = "--force";
+    public static final String OPT_METRICS_JSON = "--metrics-json";
+    public static final String OPT_METRICS_PROMETHEUS = "--metrics-prometheus";
+    public static final String OPT_LOG_JSON = "--log-json";
+    public static final String OPT_TARGETS_FROM = "--targets-from";
+    public static final String OPT_CONCURRENCY = "--concurrency";
+    public static final String OPT_TIMEOUT = "--timeout";
+}
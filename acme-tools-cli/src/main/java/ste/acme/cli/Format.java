@@ -0,0 +1,52 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+
+package ste.acme.cli;
+
+/**
+ *
+ */
+public enum Format {
+    PEM(null),
+    PKCS12("PKCS12"),
+    JKS("JKS"),
+    BCFKS("BCFKS");
+
+    private final String keyStoreType;
+
+    Format(final String keyStoreType) {
+        this.keyStoreType = keyStoreType;
+    }
+
+    /**
+     * @return the keystore type of the format, null if it is not a keystore
+     */
+    public String keyStoreType() {
+        return keyStoreType;
+    }
+
+    /**
+     * @return true if the format is a keystore
+     */
+    public boolean isKeyStore() {
+        return keyStoreType != null;
+    }
+}
@@ -18,13 +18,13 @@
  * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
  * THIS SOFTWARE OR ITS DERIVATIVES.
  */
-
 package ste.acme.cli;
 
 /**
  *
  */
-public enum Format {
-    PEM,
-    PKCS12
+public enum InfoFormat {
+    TEXT,
+    JSON,
+    CSV
 }
@@ -0,0 +1,184 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the locations given on the command line into NIO {@link Path}s, so
+ * that certificates and keys can be read and written inside archives and
+ * virtual filesystems as well as on the local disk:
+ *
+ * <ul>
+ *   <li><code>bundle.zip!/certs/domain.crt</code> - an entry of a local zip
+ *       or jar archive, opened with the JDK zip filesystem</li>
+ *   <li><code>scheme:...</code> - any URI supported by an installed
+ *       filesystem provider (e.g. <code>jar:file:///tmp/bundle.zip!/domain.crt</code>
+ *       or the schemes provided by vfs2nio)</li>
+ *   <li>anything else is a local path</li>
+ * </ul>
+ *
+ * Filesystems opened to resolve a location are kept open until the resolver
+ * is closed; archives are written back only then, therefore the resolver must
+ * be closed when done.
+ */
+public class PathResolver implements Closeable {
+
+    public static final String ARCHIVE_SEPARATOR = "!/";
+
+    //
+    // at least two characters, so that windows drive letters are not schemes
+    //
+    private static final Pattern URI_PATTERN = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]+:.+");
+
+    private final Map<Object, FileSystem> opened = new LinkedHashMap<>();
+
+    /**
+     * Resolves a location to read from; missing archives are not created.
+     *
+     * @param location the location
+     *
+     * @return the path of the location
+     *
+     * @throws IOException if the filesystem of the location can not be opened
+     */
+    public Path resolve(final String location) throws IOException {
+        return resolve(location, false);
+    }
+
+    /**
+     * Resolves a location to write to; a missing zip archive is created.
+     *
+     * @param location the location
+     *
+     * @return the path of the location
+     *
+     * @throws IOException if the filesystem of the location can not be opened
+     */
+    public Path resolveForWriting(final String location) throws IOException {
+        return resolve(location, true);
+    }
+
+    /**
+     * Closes all filesystems opened to resolve locations, writing back any
+     * changes to the archives
+     *
+     * @throws IOException if a filesystem can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException error = null;
+        for (FileSystem fs: opened.values()) {
+            try {
+                fs.close();
+            } catch (IOException x) {
+                error = x;
+            }
+        }
+        opened.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * @param path a path
+     *
+     * @return the given path as shown to the user: the absolute path for local
+     *         files, the URI otherwise
+     */
+    public static String describe(final Path path) {
+        return isLocal(path)
+             ? path.toAbsolutePath().toString()
+             : path.toUri().toString();
+    }
+
+    /**
+     * @param path a path
+     *
+     * @return true if the given path is on the local disk
+     */
+    public static boolean isLocal(final Path path) {
+        return path.getFileSystem() == FileSystems.getDefault();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private synchronized Path resolve(final String location, final boolean create) throws IOException {
+        if (location == null) {
+            throw new IllegalArgumentException("location can not be null");
+        }
+
+        if (URI_PATTERN.matcher(location).matches()) {
+            return uri(location);
+        }
+
+        final int pos = location.indexOf(ARCHIVE_SEPARATOR);
+        if (pos > 0) {
+            final Path archive = Path.of(location.substring(0, pos)).toAbsolutePath().normalize();
+            if (Files.isRegularFile(archive) || (create && !Files.exists(archive))) {
+                FileSystem fs = opened.get(archive);
+                if (fs == null) {
+                    fs = FileSystems.newFileSystem(archive, Map.of("create", String.valueOf(create)));
+                    opened.put(archive, fs);
+                }
+                return fs.getPath("/" + location.substring(pos + ARCHIVE_SEPARATOR.length()));
+            }
+        }
+
+        return Path.of(location);
+    }
+
+    private Path uri(final String location) throws IOException {
+        final URI uri;
+        try {
+            uri = new URI(location);
+        } catch (URISyntaxException x) {
+            throw new IOException("invalid location " + location + ": " + x.getMessage(), x);
+        }
+        try {
+            try {
+                return Path.of(uri);
+            } catch (FileSystemNotFoundException x) {
+                //
+                // the provider is there, but the filesystem must be opened first
+                //
+                final FileSystem fs = FileSystems.newFileSystem(uri, Map.of());
+                opened.put(uri, fs);
+                return Path.of(uri);
+            }
+        } catch (ProviderNotFoundException | FileSystemNotFoundException | IllegalArgumentException x) {
+            throw new IOException("no filesystem available for " + location, x);
+        }
+    }
+}
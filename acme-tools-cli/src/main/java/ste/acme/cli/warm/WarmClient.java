@@ -0,0 +1,279 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.warm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forwards a command line to a {@link WarmServer} and writes back its output,
+ * returning its exit code; if no server is listening on the socket, one is
+ * started in background with the given command and waited for.
+ *
+ * The client is meant to be started with a small heap and no JIT tuning, as
+ * it only copies bytes; the JVM options of the server (e.g. -Xmx) are given
+ * with the system property {@link #SERVER_OPTIONS}.
+ */
+public class WarmClient {
+
+    public static final String SERVER_OPTIONS = "ste.acme.cli.warm.server.options";
+    public static final String SERVER_LOG = "acme-tools-server.log";
+    public static final Duration DEFAULT_STARTUP = Duration.ofSeconds(30);
+
+    private static final long RETRY = 50;
+    private static final int ATTEMPTS = 2;
+    private static final Path SETSID = Path.of("/usr/bin/setsid");
+
+    private final Path socket;
+    private final List<String> serverCommand;
+    private final Duration startup;
+
+    /**
+     * @param socket the path of the socket of the server
+     * @param serverCommand the command starting the server if not running;
+     *        null or empty not to start any
+     * @param startup how long to wait for a server started to listen
+     */
+    public WarmClient(final Path socket, final List<String> serverCommand, final Duration startup) {
+        if (socket == null) {
+            throw new IllegalArgumentException("socket can not be null");
+        }
+        if (startup == null || startup.isNegative()) {
+            throw new IllegalArgumentException("startup can not be null or negative");
+        }
+        this.socket = socket.toAbsolutePath();
+        this.serverCommand = (serverCommand == null) ? List.of() : List.copyOf(serverCommand);
+        this.startup = startup;
+    }
+
+    /**
+     * Runs the given command line in the server
+     *
+     * @param out where to write the output of the command
+     * @param args the command line arguments
+     *
+     * @return the exit code of the command
+     *
+     * @throws IOException if the server can not be reached or started, or
+     *         the connection drops before the command completes
+     */
+    public int execute(final OutputStream out, final String... args) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out can not be null");
+        }
+        if (args == null) {
+            throw new IllegalArgumentException("args can not be null");
+        }
+        if (args.length > WarmServer.MAX_ARGS) {
+            throw new IllegalArgumentException("too many arguments (max " + WarmServer.MAX_ARGS + ")");
+        }
+
+        //
+        // an idle server may close just after accepting this client in its
+        // backlog: a connection dropped before the first frame did not run
+        // anything and is tried once more, starting a fresh server if needed
+        //
+        for (int attempt = 1; ; ++attempt) {
+            try (SocketChannel channel = connect()) {
+                final Integer exitCode = exchange(channel, out, args);
+                if (exitCode != null) {
+                    return exitCode;
+                }
+            }
+            if (attempt == ATTEMPTS) {
+                throw new IOException("the server closed the connection before the command completed");
+            }
+        }
+    }
+
+    /**
+     * Runs the command line in a server listening on run/acme-tools.sock
+     * (relative to the current directory, as the paths on the command
+     * line), started with the java and class path of this JVM if needed;
+     * exits with the exit code of the command.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String... args) {
+        final Path socket = Path.of("run", WarmServer.SOCKET);
+
+        final List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option: System.getProperty(SERVER_OPTIONS, "").trim().split("\\s+")) {
+            if (!option.isEmpty()) {
+                command.add(option);
+            }
+        }
+        command.add("-cp"); command.add(System.getProperty("java.class.path"));
+        command.add(WarmServer.class.getName());
+        command.add(socket.toAbsolutePath().toString());
+
+        int exitCode;
+        try {
+            exitCode = new WarmClient(socket, command, DEFAULT_STARTUP).execute(System.out, args);
+        } catch (IOException x) {
+            System.out.println("Something went wrong: " + x.getMessage());
+            exitCode = 1;
+        }
+        System.exit(exitCode);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * @return the exit code of the command; null if the connection dropped
+     *         before the first frame of the response
+     */
+    private Integer exchange(final SocketChannel channel, final OutputStream out, final String... args)
+    throws IOException {
+        final DataInputStream response = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(channel))
+        );
+        byte type;
+        try {
+            final DataOutputStream request = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel))
+            );
+            request.writeInt(args.length);
+            for (String arg: args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            type = response.readByte();
+        } catch (IOException x) {
+            return null; // closed before reading the request
+        }
+
+        final byte[] buffer = new byte[8192];
+        try {
+            while (true) {
+                if (type == WarmServer.EXIT) {
+                    out.flush();
+                    return response.readInt();
+                }
+                if (type != WarmServer.OUTPUT) {
+                    throw new IOException("unexpected frame " + type + " from the server");
+                }
+                int left = response.readInt();
+                while (left > 0) {
+                    final int n = response.read(buffer, 0, Math.min(left, buffer.length));
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    out.write(buffer, 0, n);
+                    left -= n;
+                }
+                out.flush();
+                type = response.readByte();
+            }
+        } catch (EOFException x) {
+            throw new IOException("the server closed the connection before the command completed");
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel channel = tryConnect();
+        if (channel != null) {
+            return channel;
+        }
+        if (serverCommand.isEmpty()) {
+            throw new IOException("no server listening on " + socket);
+        }
+
+        Process server = start();
+
+        final long deadline = System.nanoTime() + startup.toNanos();
+        while ((channel = tryConnect()) == null) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException(
+                    "the server did not start listening on " + socket + ", see "
+                    + socket.resolveSibling(SERVER_LOG)
+                );
+            }
+            try {
+                Thread.sleep(RETRY);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted waiting for the server");
+            }
+            if (!server.isAlive()) {
+                //
+                // the server exits at once if the lock is still held by an
+                // idle server shutting down; start another one
+                //
+                server = start();
+            }
+        }
+        return channel;
+    }
+
+    private SocketChannel tryConnect() throws IOException {
+        if (!Files.exists(socket)) {
+            return null;
+        }
+        final SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            return channel;
+        } catch (IOException x) {
+            channel.close(); // stale socket or server still binding
+            return null;
+        }
+    }
+
+    /**
+     * The server is started in a session of its own where setsid is
+     * available, so that it survives the terminal of the client (hang up)
+     * and is not interrupted with it (CTRL+C); its standard input is closed
+     */
+    private Process start() throws IOException {
+        Files.createDirectories(socket.getParent());
+
+        final List<String> command = new ArrayList<>();
+        if (Files.isExecutable(SETSID)) {
+            command.add(SETSID.toString());
+        }
+        command.addAll(serverCommand);
+
+        final Process server = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(socket.resolveSibling(SERVER_LOG).toFile()))
+            .start();
+        server.getOutputStream().close();
+
+        return server;
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.warm;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+import ste.acme.cli.AcmeCLI;
+
+/**
+ * Runs the commands forwarded by {@link WarmClient}s in a JVM that stays up,
+ * so that invocations after the first one pay neither the start of a JVM
+ * with a large heap nor the loading of picocli, BouncyCastle and acme4j; the
+ * directories of the CAs and the keys read are also cached across commands
+ * (see {@link AcmeCLI}).
+ *
+ * The server listens on a Unix domain socket and runs the commands one at a
+ * time, as they all write on System.out: for the time of a command
+ * System.out and System.err are forwarded to its client. Only clients of the
+ * same user of the server are served; the directory of the socket is
+ * readable by that user only. The server exits when not used for the given
+ * idle time; a lock next to the socket ensures a single server per socket.
+ *
+ * The protocol is a request with the number of arguments followed by each
+ * argument (as DataOutput.writeUTF) and a response of {@link #OUTPUT} frames
+ * (type, length, bytes) closed by an {@link #EXIT} frame (type, exit code).
+ * An empty output frame is sent as soon as the request is read, so that a
+ * client dropped before any frame knows the command was not run (e.g. the
+ * server went idle with the client still in the backlog) and can retry.
+ */
+public class WarmServer implements Closeable {
+
+    public static final String SOCKET = "acme-tools.sock";
+    public static final Duration DEFAULT_IDLE = Duration.ofMinutes(15);
+
+    public static final byte EXIT = 0;
+    public static final byte OUTPUT = 1;
+
+    public static final int MAX_ARGS = 4096;
+
+    private static final Logger LOG = Logger.getLogger("ste.acme-tools");
+
+    private final Path socket;
+    private final Duration idle;
+    private final Command command;
+
+    private ServerSocketChannel server = null;
+    private volatile long lastUsed = System.nanoTime();
+    private volatile boolean busy = false;
+
+    /**
+     * A command line run by the server
+     */
+    @FunctionalInterface
+    public interface Command {
+        /**
+         * @param args the command line arguments
+         *
+         * @return the exit code
+         */
+        int execute(String... args);
+    }
+
+    /**
+     * @param socket the path of the socket to listen on
+     * @param idle how long to wait for a command before exiting
+     * @param command what to run for each command line received
+     */
+    public WarmServer(final Path socket, final Duration idle, final Command command) {
+        if (socket == null) {
+            throw new IllegalArgumentException("socket can not be null");
+        }
+        if (idle == null || idle.isNegative() || idle.isZero()) {
+            throw new IllegalArgumentException("idle must be greater than 0");
+        }
+        if (command == null) {
+            throw new IllegalArgumentException("command can not be null");
+        }
+        this.socket = socket.toAbsolutePath();
+        this.idle = idle;
+        this.command = command;
+    }
+
+    /**
+     * Binds the socket and serves the clients until closed or idle for too
+     * long; returns at once if another server holds the lock of the socket.
+     *
+     * @throws IOException if the socket can not be bound
+     */
+    public void serve() throws IOException {
+        Files.createDirectories(socket.getParent());
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(socket.getParent(), PosixFilePermissions.fromString("rwx------"));
+        }
+
+        final Path lockFile = lockFile(socket);
+        try (
+            FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = tryLock(lockChannel)
+        ) {
+            if (lock == null) {
+                LOG.info(() -> "another server is listening on " + socket);
+                return;
+            }
+
+            Files.deleteIfExists(socket); // left by a server killed before cleaning up
+            synchronized (this) {
+                server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                server.bind(UnixDomainSocketAddress.of(socket));
+            }
+            LOG.info(() -> "listening on " + socket);
+
+            final UserPrincipal owner = Files.getOwner(socket);
+            final ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor((r) -> {
+                final Thread thread = new Thread(r, "acme-tools-idle");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long period = Math.max(1, Math.min(idle.toMillis(), 60_000) / 2);
+            watcher.scheduleAtFixedRate(this::closeIfIdle, period, period, TimeUnit.MILLISECONDS);
+
+            try {
+                while (true) {
+                    try (SocketChannel client = server.accept()) {
+                        busy = true;
+                        if (trusted(client, owner)) {
+                            serve(client);
+                        }
+                    } catch (ClosedChannelException x) {
+                        break; // idle or closed
+                    } catch (IOException x) {
+                        LOG.log(Level.WARNING, "client dropped: " + x.getMessage(), x);
+                    } finally {
+                        lastUsed = System.nanoTime();
+                        busy = false;
+                    }
+                }
+            } finally {
+                watcher.shutdownNow();
+                close();
+                Files.deleteIfExists(socket);
+                LOG.info(() -> "stopped listening on " + socket);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting clients; the command running (if any) completes
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * @param socket the path of a socket
+     *
+     * @return the lock file a server holds while listening on the given socket
+     */
+    public static Path lockFile(final Path socket) {
+        return socket.resolveSibling(socket.getFileName() + ".lock");
+    }
+
+    /**
+     * Runs the server in the current directory, which is where the paths
+     * given on the command line are relative to, as with the launcher.
+     *
+     * @param args the path of the socket (run/acme-tools.sock by default)
+     *
+     * @throws IOException if the socket can not be bound
+     */
+    public static void main(String... args) throws IOException {
+        final Path socket = (args.length > 0) ? Path.of(args[0]) : Path.of("run", SOCKET);
+        new WarmServer(socket, DEFAULT_IDLE, AcmeCLI::execute).serve();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void serve(final SocketChannel client) throws IOException {
+        final DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+
+        final int n = in.readInt();
+        if (n < 0 || n > MAX_ARGS) {
+            throw new IOException("invalid number of arguments " + n);
+        }
+        final String[] args = new String[n];
+        for (int i = 0; i < n; ++i) {
+            args[i] = in.readUTF();
+        }
+        synchronized (out) {
+            out.writeByte(OUTPUT);
+            out.writeInt(0);
+            out.flush();
+        }
+
+        final PrintStream stdout = System.out, stderr = System.err;
+        final PrintStream console = new PrintStream(
+            new BufferedOutputStream(new FrameOutputStream(out)), true, StandardCharsets.UTF_8
+        );
+        int exitCode;
+        System.setOut(console); System.setErr(console);
+        try {
+            exitCode = command.execute(args);
+        } catch (RuntimeException x) {
+            LOG.log(Level.SEVERE, "command failed: " + x.getMessage(), x);
+            exitCode = 1;
+        } finally {
+            console.flush();
+            System.setOut(stdout); System.setErr(stderr);
+        }
+
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+    }
+
+    /**
+     * The directory of the socket already keeps other users out; the
+     * credentials of the peer are checked as well where available
+     */
+    private static boolean trusted(final SocketChannel client, final UserPrincipal owner) throws IOException {
+        try {
+            final UnixDomainPrincipal peer = client.getOption(ExtendedSocketOptions.SO_PEERCRED);
+            if (!peer.user().getName().equals(owner.getName())) {
+                LOG.warning(() -> "refused client of user " + peer.user().getName());
+                return false;
+            }
+        } catch (UnsupportedOperationException x) {
+            // not available on this platform
+        }
+        return true;
+    }
+
+    private static FileLock tryLock(final FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException x) {
+            return null; // held by another server of this JVM
+        }
+    }
+
+    private void closeIfIdle() {
+        if (!busy && (System.nanoTime() - lastUsed) >= idle.toNanos()) {
+            try {
+                close();
+            } catch (IOException x) {
+                LOG.log(Level.WARNING, "unable to stop the server: " + x.getMessage(), x);
+            }
+        }
+    }
+
+    // ------------------------------------------------------ FrameOutputStream
+
+    /**
+     * Sends what is written as {@link #OUTPUT} frames
+     */
+    private static class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+
+        FrameOutputStream(final DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (out) {
+                out.writeByte(OUTPUT);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
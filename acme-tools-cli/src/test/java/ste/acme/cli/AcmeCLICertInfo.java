@@ -0,0 +1,238 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.contrib.java.lang.system.SystemOutRule;
+import ste.acme.cli.inventory.CertificateInfo;
+import ste.acme.cli.store.CertificateStore;
+
+/**
+ *
+ */
+public class AcmeCLICertInfo extends AcmeCLIExec {
+
+    @Rule
+    public final SystemOutRule OUT = new SystemOutRule().enableLog();
+
+    @Before
+    public void before() throws IOException {
+        super.before();
+        OUT.clearLog();
+    }
+
+    @Test
+    public void check_certificate_info_with_relative_path() throws Exception {
+        //
+        // We use exec here because default file names are relative therefore
+        // we want them created in the temporary HOME
+        //
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        execJava("info", "domain.crt");
+
+        //System.out.println(err());
+        //System.out.println(out());
+
+        then(out())
+            .contains("Reading certificate " + new File(HOME, "domain.crt").getAbsolutePath())
+            .contains("Subject: CN=domain, L=Minas Tirith, ST=Gondor, C=XX")
+            .contains("Validity: [From: Sat Oct 05 11:20:43 CEST 2024,")
+            .contains("To: Tue Oct 03 11:20:43 CEST 2034]");
+    }
+
+    @Test
+    public void check_certificate_invalid_path() throws Exception {
+        AcmeCLI.main("info", "domain.crt");
+
+        then(OUT.getLog())
+            .contains("Invalid certificate file " + new File("domain.crt").getAbsolutePath() + ": domain.crt (No such file or directory)")
+            .doesNotContain("Subject: CN=domain, L=Minas Tirith, ST=Gondor, C=XX");
+
+        OUT.clearLog();
+
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        final File F = new File(HOME, "domain.crt"); F.setReadable(false);
+
+        AcmeCLI.main("info", F.getAbsolutePath());
+
+        then(OUT.getLog())
+            .contains("Invalid certificate file " + F.getAbsolutePath() + ": ")
+            .doesNotContain("Subject: CN=domain, L=Minas Tirith, ST=Gondor, C=XX");
+    }
+
+    @Test
+    public void check_certificate_invalid_certificate() throws Exception {
+        AcmeCLI.main("info", new File("src/test/data/default/account.pem").getAbsolutePath());
+
+        then(OUT.getLog())
+            .contains("Invalid certificate, it does not seem to be a X509 certificate: signed overrun, bytes = 918")
+            .doesNotContain("Subject: CN=domain, L=Minas Tirith, ST=Gondor, C=XX");
+    }
+
+    @Test
+    public void show_many_certificates_as_json_or_csv() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        FileUtils.copyFile(new File(HOME, "domain.crt"), new File(HOME, "certs/domain1.crt"));
+        FileUtils.copyFile(new File(HOME, "domain.crt"), new File(HOME, "certs/domain2.crt"));
+
+        AcmeCLI.main("info", "--format", "json", new File(HOME, "certs").getAbsolutePath());
+
+        then(OUT.getLog().split("\n")).hasSize(2).allSatisfy((line) -> {
+            then(line)
+                .startsWith("{\"")
+                .contains("\"subject\":\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\"")
+                .contains("\"notAfter\":\"2034-10-03T09:20:43Z\"")
+                .contains("\"keyType\":\"RSA 4096\"");
+        });
+
+        OUT.clearLog();
+        AcmeCLI.main("info", "--format", "csv", HOME.getAbsolutePath() + "/*.pem", new File(HOME, "domain.crt").getAbsolutePath());
+
+        final String[] lines = OUT.getLog().split("\n");
+        then(lines).hasSize(4);
+        then(lines[0]).isEqualTo("path,index,subject,sans,issuer,notBefore,notAfter,keyType,fingerprint,error");
+        then(lines).filteredOn((line) -> line.startsWith(new File(HOME, "domain.crt").getAbsolutePath() + ",0,")).singleElement().satisfies((line) -> {
+            then(line).contains(",2024-10-05T09:20:43Z,2034-10-03T09:20:43Z,RSA 4096,").endsWith(",");
+        });
+        then(lines).filteredOn((line) -> line.startsWith(new File(HOME, "account.pem").getAbsolutePath() + ",,,,,,,,,")).singleElement().satisfies((line) -> {
+            then(line).contains("Invalid certificate, it does not seem to be a X509 certificate");
+        });
+    }
+
+    @Test
+    public void show_all_certificates_in_a_bundle() throws Exception {
+        FileUtils.copyFile(new File("src/test/resources/cert.pem"), new File(HOME, "fullchain.pem"));
+
+        AcmeCLI.main("info", new File(HOME, "fullchain.pem").getAbsolutePath());
+
+        then(OUT.getLog())
+            .contains("Reading certificate " + new File(HOME, "fullchain.pem").getAbsolutePath())
+            .contains("Subject: CN=example.com")
+            .contains("Subject: CN=Pebble Intermediate CA 645fc5");
+
+        OUT.clearLog();
+        AcmeCLI.main("info", "--mmap", "--expired", "--issuer", "pebble", new File(HOME, "fullchain.pem").getAbsolutePath());
+
+        then(OUT.getLog().split("\n")).singleElement().satisfies((line) -> {
+            then(line).isEqualTo(
+                new File(HOME, "fullchain.pem").getAbsolutePath() +
+                "[0]: CN=example.com, valid from 2017-04-26T11:44:13Z to 2022-04-26T11:44:13Z"
+            );
+        });
+
+        OUT.clearLog();
+        AcmeCLI.main("info", "--expiring-within", "14d", "--format", "json", new File(HOME, "fullchain.pem").getAbsolutePath());
+        then(OUT.getLog()).contains("\"subject\":\"CN=example.com\"").doesNotContain("Pebble Intermediate CA 645fc5\",\"sans");
+    }
+
+    @Test
+    public void show_certificates_inside_archives() throws Exception {
+        final File ARCHIVE = new File(HOME, "bundle.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(ARCHIVE))) {
+            zip.putNextEntry(new ZipEntry("certs/domain.crt"));
+            zip.write(FileUtils.readFileToByteArray(new File("src/test/data/default/domain.crt")));
+            zip.putNextEntry(new ZipEntry("certs/fullchain.pem"));
+            zip.write(FileUtils.readFileToByteArray(new File("src/test/resources/cert.pem")));
+        }
+
+        AcmeCLI.main("info", ARCHIVE.getAbsolutePath() + "!/certs/domain.crt");
+
+        then(OUT.getLog())
+            .contains("Reading certificate jar:" + ARCHIVE.toURI().toString().replace("file:/", "file:///") + "!/certs/domain.crt")
+            .contains("Subject: CN=domain, L=Minas Tirith, ST=Gondor, C=XX");
+
+        OUT.clearLog();
+        AcmeCLI.main("info", "--format", "csv", ARCHIVE.getAbsolutePath() + "!/certs");
+
+        then(OUT.getLog().split("\n")).hasSize(4).contains(
+            "/certs/domain.crt,0,\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\",,\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\"," +
+            "2024-10-05T09:20:43Z,2034-10-03T09:20:43Z,RSA 4096,2bc76088638c3aa374ae3426d94064d9584066f5a00fb5f5e9029338546604eb,"
+        );
+    }
+
+    @Test
+    public void show_certificates_in_a_store() throws Exception {
+        final File STORE = new File(HOME, "certificates.store");
+        final CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        try (
+            CertificateStore store = new CertificateStore(STORE.toPath());
+            FileInputStream in = new FileInputStream("src/test/data/default/domain.crt")
+        ) {
+            store.open();
+            store.put("domain", List.of((X509Certificate)factory.generateCertificate(in)), null);
+        }
+
+        AcmeCLI.main("info", "--store", STORE.getAbsolutePath(), "domain");
+        then(OUT.getLog())
+            .contains("Reading certificates of domain from store " + STORE.getAbsolutePath())
+            .contains("Subject: CN=domain, L=Minas Tirith, ST=Gondor, C=XX");
+
+        OUT.clearLog();
+        AcmeCLI.main("info", "--store", STORE.getAbsolutePath(), "missing.com");
+        then(OUT.getLog()).contains("Domain missing.com not found in store " + STORE.getAbsolutePath());
+
+        OUT.clearLog();
+        AcmeCLI.main("info", "--store", STORE.getAbsolutePath(), "--format", "csv");
+        then(OUT.getLog().split("\\n")).containsExactly(
+            CertificateInfo.CSV_HEADER,
+            STORE.getAbsolutePath() + "/domain,0,\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\",,\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\"," +
+            "2024-10-05T09:20:43Z,2034-10-03T09:20:43Z,RSA 4096,2bc76088638c3aa374ae3426d94064d9584066f5a00fb5f5e9029338546604eb,"
+        );
+
+        OUT.clearLog();
+        AcmeCLI.main("info");
+        then(OUT.getLog()).contains("At least a certificate must be provided (or use --store)");
+    }
+
+    @Test
+    public void verify_chains_and_keys() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), new File(HOME, "certs"));
+        FileUtils.copyFile(new File("src/test/resources/cert.pem"), new File(HOME, "certs/sub/cert.pem"));
+
+        AcmeCLI.main(
+            "info", "--verify", "--trust-store", new File(HOME, "certs/domain.crt").getAbsolutePath(),
+            new File(HOME, "certs").getAbsolutePath()
+        );
+
+        then(OUT.getLog())
+            .contains(new File(HOME, "certs/domain.crt").getAbsolutePath() + ": INVALID, the key in domain.pem does not match the certificate")
+            .contains(new File(HOME, "certs/sub/cert.pem").getAbsolutePath() + ": INVALID, CN=example.com expired on ")
+            .contains("2 certificates verified, 2 invalid, 1 key mismatches, 0 intermediates cached")
+            .doesNotContain("account.pem");
+
+        OUT.clearLog();
+        AcmeCLI.main("info", "--verify", "--store", new File(HOME, "certificates.store").getAbsolutePath());
+        then(OUT.getLog()).contains("Certificates in a certificate store (--store) can not be verified");
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+import ste.xtest.concurrent.WaitFor;
+
+/**
+ *
+ */
+public class AcmeCLIIndexTest extends AcmeCLIExec {
+
+    @Test
+    public void index_and_query_expiring_certificates() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        FileUtils.copyFile(new File(HOME, "domain.crt"), new File(HOME, "certs/domain.crt"));
+        FileUtils.copyFile(new File("src/test/resources/cert.pem"), new File(HOME, "certs/sub/cert.pem"));
+        FileUtils.copyFile(new File(HOME, "account.pem"), new File(HOME, "certs/account.pem"));
+
+        execJava("index", "certs");
+
+        then(out())
+            .contains("Index " + new File(HOME, "certificates.index").getAbsolutePath() + " updated")
+            .contains("3 files indexed, 3 parsed, 0 unchanged, 0 removed, 1 errors");
+        then(new File(HOME, "certificates.index")).exists();
+
+        execJava("index", "certs");
+        then(out()).contains("3 files indexed, 0 parsed, 3 unchanged, 0 removed, 1 errors");
+
+        //
+        // the leaf in cert.pem is expired, domain.crt expires in 2034
+        //
+        execJava("expiring", "--within", "14d");
+        then(out().trim().split("\n")).singleElement().asString()
+            .startsWith(new File(HOME, "certs/sub/cert.pem").getAbsolutePath() + "[0]: CN=example.com, valid from ");
+
+        execJava("expiring", "--within", "5000d", "--format", "csv", "--issuer", "gondor");
+        final String[] lines = out().trim().split("\n");
+        then(lines).hasSize(2);
+        then(lines[0]).isEqualTo("path,index,subject,sans,issuer,notBefore,notAfter,keyType,fingerprint,error");
+        then(lines[1]).startsWith(new File(HOME, "certs/domain.crt").getAbsolutePath() + ",0,").contains(",2034-10-03T09:20:43Z,");
+    }
+
+    @Test
+    public void watch_and_update_the_index_as_files_change() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        FileUtils.copyFile(new File(HOME, "domain.crt"), new File(HOME, "certs/domain.crt"));
+
+        final Process P = startJava("index", "certs", "--watch", "--debounce", "100ms");
+        try {
+            new WaitFor(5000, () -> out().contains("Watching 1 directories for changes"));
+            then(out()).contains("1 files indexed, 1 parsed, 0 unchanged, 0 removed, 0 errors");
+
+            FileUtils.copyFile(new File(HOME, "domain.crt"), new File(HOME, "certs/new.crt"));
+            new WaitFor(5000, () -> out().contains("1 files changed, 2 files indexed, 1 parsed, 0 unchanged, 0 removed, 0 errors"));
+            then(out()).contains("1 files changed, 2 files indexed, 1 parsed, 0 unchanged, 0 removed, 0 errors");
+        } finally {
+            P.destroy(); P.waitFor(5, TimeUnit.SECONDS);
+        }
+
+        execJava("expiring", "--within", "5000d");
+        then(out()).contains(new File(HOME, "certs/new.crt").getAbsolutePath() + "[0]: CN=domain");
+    }
+
+    @Test
+    public void expiring_requires_an_index() throws Exception {
+        execJava("expiring", "--within", "14d", "--index", "missing.index");
+
+        then(out()).contains(
+            "index " + new File(HOME, "missing.index").getAbsolutePath() + " not found, create it with the index command"
+        );
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+import ste.acme.cli.ocsp.OcspResponderStub;
+
+/**
+ *
+ */
+public class AcmeCLIOcspTest extends AcmeCLIExec {
+
+    @Test
+    public void refresh_ocsp_responses() throws Exception {
+        try (OcspResponderStub responder = new OcspResponderStub(Duration.ofDays(4))) {
+            final File CERT = new File(HOME, "example.com.crt");
+            final File OCSP = new File(HOME, "example.com.crt.ocsp");
+            write(CERT, responder.leaf("example.com", 100), responder.issuer);
+            write(new File(HOME, "lonely.crt"), responder.leaf("lonely.com", 101));
+
+            AcmeCLI.main("ocsp-refresh", CERT.getAbsolutePath());
+            then(STDOUT.getLog())
+                .contains("OCSP response GOOD saved in " + OCSP.getAbsolutePath() + " (next update ")
+                .contains("1 of 1 OCSP responses fetched");
+            then(OCSP).exists();
+            then(responder.requests()).isEqualTo(1);
+
+            STDOUT.clearLog();
+            AcmeCLI.main("ocsp-refresh", CERT.getAbsolutePath(), new File(HOME, "lonely.crt").getAbsolutePath());
+            then(STDOUT.getLog())
+                .contains("OCSP response GOOD still fresh in " + OCSP.getAbsolutePath())
+                .contains("Unable to refresh the OCSP response of " + new File(HOME, "lonely.crt").getAbsolutePath() + ": the issuer of CN=lonely.com is not in the chain")
+                .contains("0 of 2 OCSP responses fetched");
+            then(responder.requests()).isEqualTo(1);
+
+            STDOUT.clearLog();
+            AcmeCLI.main("ocsp-refresh", CERT.getAbsolutePath(), "--force");
+            then(STDOUT.getLog()).contains("1 of 1 OCSP responses fetched");
+            then(responder.requests()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void verify_revocation() throws Exception {
+        try (OcspResponderStub responder = new OcspResponderStub(Duration.ofDays(4))) {
+            final File CERT = new File(HOME, "example.com.crt");
+            final File ROOTS = new File(HOME, "roots.crt");
+            write(CERT, responder.leaf("example.com", 100), responder.issuer);
+            write(ROOTS, responder.issuer);
+
+            AcmeCLI.main("info", "--verify", "--trust-store", ROOTS.getAbsolutePath(), CERT.getAbsolutePath());
+            then(STDOUT.getLog()).contains("1 certificates verified, 0 invalid");
+            then(responder.requests()).isZero();
+
+            STDOUT.clearLog();
+            AcmeCLI.main("info", "--verify", "--revocation", "--trust-store", ROOTS.getAbsolutePath(), CERT.getAbsolutePath());
+            then(STDOUT.getLog()).contains("1 certificates verified, 0 invalid");
+            then(responder.requests()).isEqualTo(1);
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void write(final File file, final X509Certificate... chain) throws Exception {
+        try (JcaPEMWriter out = new JcaPEMWriter(new FileWriter(file))) {
+            for (X509Certificate certificate: chain) {
+                out.writeObject(certificate);
+            }
+        }
+    }
+}
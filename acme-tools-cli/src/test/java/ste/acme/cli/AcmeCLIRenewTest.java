@@ -0,0 +1,1041 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.MacData;
+import org.bouncycastle.asn1.pkcs.Pfx;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.shredzone.acme4j.challenge.TlsAlpn01Challenge;
+import org.shredzone.acme4j.connector.Resource;
+import static ste.acme.cli.Format.PKCS12;
+import ste.acme.cli.ocsp.OcspCache;
+import ste.acme.cli.store.CertificateStore;
+import ste.xtest.concurrent.WaitFor;
+import ste.xtest.net.NetTools;
+
+/**
+ *
+ */
+public class AcmeCLIRenewTest extends AcmeCLIExec {
+
+    private static final char[] PASSWORD = "keystore".toCharArray();
+
+    @Test
+    public void renew_acme_certificate_with_defaults() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        execJava("renew", "acmetest:renew://cacert1.com", "mydomain.com");
+
+        //System.out.println(err());
+        //System.out.println(out());
+
+        then(out())
+            .contains("Renewing SSL certificates for domain mydomain.com from https://cacert1.com/" + Resource.NEW_ORDER)
+            .contains("using account credentials in " + new File(HOME, "account.pem").getAbsolutePath())
+            .contains("using domain credentials in " + new File(HOME, "domain.pem").getAbsolutePath())
+            .contains("storing the new certificate in " + new File(HOME, "domain.crt").getAbsolutePath())
+            ;
+
+        then(new File(HOME, "domain.crt")).exists().hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+    }
+
+    @Test
+    public void renew_acme_certificate_with_parameters() throws Exception {
+        //
+        // default domain, output
+        //
+
+        //
+        // Prepare file system
+        //
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        FileUtils.moveFile(new File(HOME, "account.pem"), new File(HOME, "account2.pem"));
+
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "account2.pem"
+        );
+
+        System.out.println(err());
+        System.out.println(out());
+
+        then(out())
+            .contains("Renewing SSL certificates for domain mydomain.com from https://cacert1.com/" + Resource.NEW_ORDER)
+            .contains("using account credentials in " + new File(HOME, "account2.pem").getAbsolutePath())
+            .contains("using domain credentials in " + new File(HOME, "domain.pem").getAbsolutePath())
+            .contains("storing the new certificate in " + new File(HOME, "domain.crt").getAbsolutePath())
+            ;
+
+        then(new File(HOME, "domain.crt")).exists().hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+
+        //
+        // default account, output
+        //
+
+        //
+        // Prepare file system
+        //
+        FileUtils.deleteDirectory(HOME);
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        FileUtils.moveFile(new File(HOME, "domain.pem"), new File(HOME, "domain2.pem"));
+
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--domain-keys", "domain2.pem"
+        );
+
+        then(out())
+            .contains("Renewing SSL certificates for domain mydomain.com from https://cacert1.com/" + Resource.NEW_ORDER)
+            .contains("using account credentials in " + new File(HOME, "account.pem").getAbsolutePath())
+            .contains("using domain credentials in " + new File(HOME, "domain2.pem").getAbsolutePath())
+            .contains("storing the new certificate in " + new File(HOME, "domain.crt").getAbsolutePath())
+            ;
+
+        then(new File(HOME, "domain.crt")).exists().hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+
+        //
+        // default account, domain
+        //
+
+        //
+        // Prepare file system
+        //
+        FileUtils.deleteDirectory(HOME);
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--out", "newcert.crt"
+        );
+
+        //System.out.println(err());
+        //System.out.println(out());
+
+        then(out())
+            .contains("Renewing SSL certificates for domain mydomain.com from https://cacert1.com/" + Resource.NEW_ORDER)
+            .contains("using account credentials in " + new File(HOME, "account.pem").getAbsolutePath())
+            .contains("using domain credentials in " + new File(HOME, "domain.pem").getAbsolutePath())
+            .contains("storing the new certificate in " + new File(HOME, "newcert.crt").getAbsolutePath())
+            ;
+
+        then(new File(HOME, "newcert.crt")).exists().hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+
+        //
+        // no defaults
+        //
+
+        //
+        // Prepare file system
+        //
+        FileUtils.deleteDirectory(HOME);
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        FileUtils.moveFile(new File(HOME, "account.pem"), new File(HOME, "account2.pem"));
+        FileUtils.moveFile(new File(HOME, "domain.pem"), new File(HOME, "domain2.pem"));
+
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--domain-keys", "domain2.pem", "--account-keys", "account2.pem", "--out", "newcert.crt"
+        );
+
+        then(out())
+            .contains("Renewing SSL certificates for domain mydomain.com from https://cacert1.com/" + Resource.NEW_ORDER)
+            .contains("using account credentials in " + new File(HOME, "account2.pem").getAbsolutePath())
+            .contains("using domain credentials in " + new File(HOME, "domain2.pem").getAbsolutePath())
+            .contains("storing the new certificate in " + new File(HOME, "newcert.crt").getAbsolutePath())
+            ;
+
+        then(new File(HOME, "newcert.crt")).exists().hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+    }
+
+    @Test
+    public void renew_with_challenge() throws Exception {
+        //
+        // Prepare file system
+        //
+        FileUtils.deleteDirectory(HOME);
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        //
+        // Run the tool, the output shall tell us how to satisfy the challenge
+        //
+        final Process P = startJava(
+            "renew", "acmetest:renew-with-challenge://cacert1.com", "mydomain.com",
+            "--out", "newcert.crt",
+            "--polling-interval", "1000"
+        );
+
+        new WaitFor(5000, () -> out().contains("Please make sure that the above URL is accessible from internet."));
+
+        //System.out.println(err());
+        //System.out.println(out());
+
+        String out = out();
+
+        then(out)
+            .contains("HTTP challenge")
+            .contains("Listener started on port ")
+            .contains("http://mydomain.com/.well-known/acme-challenge/rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ");
+
+        //
+        // Retrieve the challenge
+        //
+        final String port = extractChallengePort(out);
+        final HttpClient client = HttpClient.newHttpClient();
+        final HttpRequest request = HttpRequest.newBuilder().uri(
+            URI.create("http://localhost:" + port + "/.well-known/acme-challenge/rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ")
+        ).build();
+        final HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).isNotBlank();
+
+        final File cert = new File(HOME, "newcert.crt");
+        P.waitFor(5, TimeUnit.SECONDS);
+
+        then(out()).contains("Challenge token served to ")
+                   .contains("Finalizing the order with the CA")
+                   .contains("Order processed, getting the certificate")
+                   .contains("Writing the certificate to " + cert.getAbsolutePath())
+                   .contains("Congratulations! Your renewed certificated is ready.");
+
+        then(cert).hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+
+        //
+        // The process will not exit if any daemon thread is still running. We
+        // want to make sure the the server used for the challenge is properly
+        // shut down.
+        //
+        P.waitFor(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void renew_with_challenge_on_given_port() throws Exception {
+        //
+        // Prepare file system
+        //
+        FileUtils.deleteDirectory(HOME);
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        //
+        // Pick an available port. Note that race conditions are possible...
+        //
+        final int PORT = new NetTools().pickAvailablePort();
+
+        //
+        // Run the tool, the output shall tell us how to satisfy the challenge
+        //
+        final Process P = startJava(
+            "renew", "acmetest:renew-with-challenge://cacert1.com", "mydomain.com",
+            "--out", "newcert.crt",
+            "--polling-interval", "1000", "--port", String.valueOf(PORT)
+        );
+
+        new WaitFor(5000, () -> out().contains("Listener started on port "));
+
+        //System.out.println(err());
+        //System.out.println(out());
+
+        then(out()).contains("Listener started on port " + PORT);
+
+        //
+        // Retrieve the challenge
+        //
+        final HttpClient client = HttpClient.newHttpClient();
+        final HttpRequest request = HttpRequest.newBuilder().uri(
+            URI.create("http://localhost:" + PORT + "/.well-known/acme-challenge/rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ")
+        ).build();
+        final HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).isNotBlank();
+
+        final File cert = new File(HOME, "newcert.crt");
+        new WaitFor(5000, () -> { return cert.exists(); } );
+
+        then(cert).hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+
+        //
+        // The process will not exit if any daemon thread is still running. We
+        // want to make sure the the server used for the challenge is properly
+        // shut down.
+        //
+        P.waitFor(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void renew_with_challenge_in_shared_token_store() throws Exception {
+        //
+        // Prepare file system
+        //
+        FileUtils.deleteDirectory(HOME);
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        final File TOKENS = new File(HOME, "tokens");
+        final File TOKEN = new File(TOKENS, "rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ");
+
+        //
+        // No listener is started, the token is published in the store for the
+        // challenge responders
+        //
+        final Process P = startJava(
+            "renew", "acmetest:renew-with-challenge://cacert1.com", "mydomain.com",
+            "--out", "newcert.crt",
+            "--polling-interval", "1000", "--token-store", "tokens"
+        );
+
+        new WaitFor(5000, () -> TOKEN.exists());
+        then(TOKEN).content().startsWith("rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ.");
+
+        final File cert = new File(HOME, "newcert.crt");
+        P.waitFor(5, TimeUnit.SECONDS);
+
+        then(out())
+            .contains("Challenge token published in " + TOKENS.getAbsolutePath())
+            .doesNotContain("Listener started on port ")
+            .contains("Congratulations! Your renewed certificated is ready.");
+        then(cert).hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+        then(TOKEN).doesNotExist();
+    }
+
+    @Test
+    public void renew_with_challenge_timeout() throws Exception {
+        //
+        // Prepare file system
+        //
+        FileUtils.deleteDirectory(HOME);
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        //
+        // Run the tool, the output shall tell us how to satisfy the challenge
+        //
+        final Process P = startJava(
+            "renew", "acmetest:renew-with-missing-challenge://cacert1.com", "mydomain.com",
+            "--out", "newcert.crt",
+            "--polling-interval", "1000", "--challenge-timeout", "500ms"
+        );
+
+        P.waitFor(5, TimeUnit.SECONDS);
+
+        //System.out.println(err());
+        //System.out.println(out());
+
+        then(out()).contains("Unsuccessful challenge: no challenge received for mydomain.com in 0.5S");
+        then(new File(HOME, "newcert.crt")).doesNotExist();
+    }
+
+    @Test
+    public void renew_with_dns_challenge() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        final File RECORDS = new File(HOME, "records.nsupdate");
+
+        execJava(
+            "renew", "acmetest:renew-with-dns-challenge://cacert1.com", "mydomain.com",
+            "--challenge-type", "dns", "--dns-records", "records.nsupdate",
+            "--dns-propagation-delay", "100ms", "--polling-interval", "100"
+        );
+
+        //System.out.println(err());
+        //System.out.println(out());
+
+        then(out())
+            .contains("DNS challenge")
+            .contains("Challenge records published in " + RECORDS.getAbsolutePath())
+            .contains("_acme-challenge.mydomain.com. TXT \"")
+            .contains("Waiting for the challenge records to propagate")
+            .contains("Challenge passed successfully for mydomain.com")
+            .contains("Congratulations! Your renewed certificated is ready.")
+            .doesNotContain("Listener started on port");
+
+        //
+        // Once done, the records are removed
+        //
+        then(RECORDS).content().matches(
+            "update delete _acme-challenge\\.mydomain\\.com\\. IN TXT \"[A-Za-z0-9_-]+\"\nsend\n"
+        );
+        then(new File(HOME, "domain.crt")).hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+    }
+
+    @Test
+    public void renew_with_tls_alpn_challenge() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        final Process P = startJava(
+            "renew", "acmetest:renew-with-tls-alpn-challenge://cacert1.com", "mydomain.com",
+            "--out", "newcert.crt", "--challenge-type", "tls_alpn", "--polling-interval", "2000"
+        );
+
+        new WaitFor(5000, () -> out().contains("Listener started on port "));
+
+        //
+        // Validate as the CA would do
+        //
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[] { new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+            @Override
+            public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+        }}, null);
+
+        try (SSLSocket socket = (SSLSocket)context.getSocketFactory().createSocket("localhost", Integer.parseInt(extractChallengePort(out())))) {
+            final SSLParameters parameters = socket.getSSLParameters();
+            parameters.setServerNames(List.of(new SNIHostName("mydomain.com")));
+            parameters.setApplicationProtocols(new String[] { "acme-tls/1" });
+            socket.setSSLParameters(parameters);
+            socket.startHandshake();
+
+            final X509Certificate certificate = (X509Certificate)socket.getSession().getPeerCertificates()[0];
+            then(certificate.getExtensionValue(TlsAlpn01Challenge.ACME_VALIDATION_OID)).isNotNull();
+        }
+
+        final File cert = new File(HOME, "newcert.crt");
+        P.waitFor(5, TimeUnit.SECONDS);
+
+        then(out())
+            .contains("TLS-ALPN challenge")
+            .contains("to connect with TLS-ALPN to port 443 of mydomain.com")
+            .contains("Challenge token served to ")
+            .contains("Challenge passed successfully for mydomain.com")
+            .contains("Congratulations! Your renewed certificated is ready.");
+        then(cert).hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+    }
+
+    @Test
+    public void renew_fails_if_the_challenge_type_is_not_offered() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        execJava(
+            "renew", "acmetest:renew-with-challenge://cacert1.com", "mydomain.com",
+            "--challenge-type", "dns", "--out", "newcert.crt", "--polling-interval", "100"
+        );
+
+        then(out())
+            .contains("Unsuccessful challenge: no dns challenge offered for mydomain.com")
+            .doesNotContain("Congratulations!");
+        then(new File(HOME, "newcert.crt")).doesNotExist();
+    }
+
+    @Test
+    public void renew_certificates_expiring_in_index() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        FileUtils.copyFile(new File(HOME, "domain.crt"), new File(HOME, "certs/domain.crt"));
+        FileUtils.copyFile(new File(HOME, "domain.pem"), new File(HOME, "keys/domain.pem"));
+
+        execJava("index", "certs");
+
+        //
+        // domain.crt expires in 2034
+        //
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "--domains-from", "certificates.index"
+        );
+        then(out())
+            .contains("Renewing 0 certificates expiring within 720H from " + new File(HOME, "certificates.index").getAbsolutePath())
+            .contains("0 of 0 certificates renewed");
+
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "--domains-from", "certificates.index",
+            "--expiring-within", "5000d", "--domain-keys", "keys"
+        );
+        then(out())
+            .contains("Renewing 1 certificates expiring within 120000H")
+            .contains("Renewing SSL certificates for domain domain from https://cacert1.com/" + Resource.NEW_ORDER)
+            .contains("using domain credentials in " + new File(HOME, "keys/domain.pem").getAbsolutePath())
+            .contains("storing the new certificate in " + new File(HOME, "certs/domain.crt").getAbsolutePath())
+            .contains("1 of 1 certificates renewed");
+        then(new File(HOME, "certs/domain.crt")).hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+    }
+
+    @Test
+    public void renew_certificates_expiring_in_index_with_all_their_names() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        FileUtils.copyFile(new File(HOME, "domain.crt"), new File(HOME, "certs/domain.crt"));
+        FileUtils.copyFile(new File(HOME, "domain.crt"), new File(HOME, "certs/address.crt"));
+
+        execJava("index", "certs");
+
+        //
+        // domain.crt has no SANs, let's pretend it has two names and
+        // address.crt an IP address
+        //
+        final File index = new File(HOME, "certificates.index");
+        final List<String> lines = new ArrayList<>();
+        for (String line: Files.readAllLines(index.toPath())) {
+            lines.add(line.replaceFirst(
+                "\"sans\":\\s*\\[[^\\]]*\\]",
+                line.contains("address.crt") ? "\"sans\":[\"192.168.0.1\"]" : "\"sans\":[\"domain\",\"www.domain\"]"
+            ));
+        }
+        Files.write(index.toPath(), lines);
+
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "--domains-from", "certificates.index",
+            "--expiring-within", "5000d"
+        );
+        then(out())
+            .contains("Renewing 2 certificates expiring within 120000H")
+            .contains("Skipping " + new File(HOME, "certs/address.crt").getAbsolutePath() + ": 192.168.0.1 can not be ordered")
+            .contains("Ordering a certificate for domain, www.domain")
+            .contains("storing the new certificate in " + new File(HOME, "certs/domain.crt").getAbsolutePath())
+            .contains("1 of 2 certificates renewed");
+        then(new File(HOME, "certs/domain.crt")).hasContent(
+            IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+        );
+        then(new File(HOME, "certs/address.crt")).hasSameTextualContentAs(new File(HOME, "domain.crt"));
+    }
+
+    @Test
+    public void renew_into_an_archive() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(HOME, "bundle.zip")))) {
+            zip.putNextEntry(new ZipEntry("keys/domain.pem"));
+            zip.write(FileUtils.readFileToByteArray(new File(HOME, "domain.pem")));
+        }
+
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--domain-keys", "bundle.zip!/keys/domain.pem", "--out", "bundle.zip!/domain.crt"
+        );
+
+        then(out())
+            .contains("using domain credentials in jar:" + new File(HOME, "bundle.zip").toURI().toString().replace("file:/", "file:///") + "!/keys/domain.pem")
+            .contains("Congratulations! Your renewed certificated is ready.");
+        try (ZipFile zip = new ZipFile(new File(HOME, "bundle.zip"))) {
+            then(zip.getEntry("keys/domain.pem")).isNotNull();
+            then(IOUtils.toString(zip.getInputStream(zip.getEntry("domain.crt")), Charset.defaultCharset())).isEqualTo(
+                IOUtils.resourceToString("/cert.pem", Charset.defaultCharset())
+            );
+        }
+    }
+
+    @Test
+    public void renew_into_a_certificate_store() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com", "--store", "certificates.store"
+        );
+
+        then(out())
+            .contains("storing the new certificate in store " + new File(HOME, "certificates.store").getAbsolutePath())
+            .contains("Congratulations! Your renewed certificated is ready.");
+        then(new File(HOME, "domain.crt")).hasSameTextualContentAs(new File("src/test/data/default/domain.crt"));
+
+        try (CertificateStore store = new CertificateStore(new File(HOME, "certificates.store").toPath())) {
+            store.open();
+            final CertificateStore.Entry entry = store.get("mydomain.com");
+            then(entry.chain()).hasSize(2);
+            then(entry.chain().get(0).getSubjectX500Principal().getName()).isEqualTo("CN=example.com");
+            then(entry.keys()).isEqualTo(FileUtils.readFileToByteArray(new File(HOME, "domain.pem")));
+        }
+
+        execJava(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com", "--store", "certificates.store",
+            "--format", "pkcs12", "--secret", "abc"
+        );
+        then(out()).contains("Output PKCS12 can not be written to a certificate store (--store)");
+    }
+
+    @Test
+    public void renew_requires_a_domain_or_an_index() throws Exception {
+        FileUtils.copyDirectory(new File("src/test/data/default"), HOME);
+
+        execJava("renew", "acmetest:renew://cacert1.com");
+        then(out()).contains("A domain to renew must be provided (or use --domains-from)");
+
+        execJava("renew", "acmetest:renew://cacert1.com", "mydomain.com", "--domains-from", "certificates.index");
+        then(out()).contains("A domain can not be provided together with --domains-from");
+    }
+
+    @Test
+    public void renew_and_store_in_p12_keystore() throws Exception {
+        final File KEYSTORE = new File(HOME, "keystore.p12");
+        final String SECRET = "1234567890";
+
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", KEYSTORE.getAbsolutePath(), "--format", PKCS12.toString(), "--secret", SECRET
+        );
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12", "BC");
+        keyStore.load(new FileInputStream(KEYSTORE), SECRET.toCharArray());
+
+        then(STDOUT.getLog()).contains("Congratulations! Your renewed certificated is ready.");
+
+        then(keyStore.containsAlias("mydomain.com")).isTrue();
+        then(keyStore.getCertificateChain("mydomain.com")).hasSize(2); // leaf + intermediate
+    }
+
+    @Test
+    public void renew_and_write_many_artifacts() throws Exception {
+        final String SECRET = "1234567890";
+
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", new File(HOME, "mydomain.com.crt").getAbsolutePath(), "--secret", SECRET,
+            "--artifacts", "leaf,fullchain,bundle,pkcs12,der"
+        );
+
+        then(STDOUT.getLog())
+            .contains("Writing the certificate to " + new File(HOME, "mydomain.com").getAbsolutePath() + " [LEAF, FULLCHAIN, BUNDLE, PKCS12, DER]")
+            .contains("Congratulations! Your renewed certificated is ready.");
+        then(HOME.list()).containsExactlyInAnyOrder(
+            "mydomain.com.crt", "mydomain.com-fullchain.pem", "mydomain.com-bundle.pem", "mydomain.com.p12", "mydomain.com.der"
+        );
+
+        final CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        try (FileInputStream in = new FileInputStream(new File(HOME, "mydomain.com.crt"))) {
+            then(factory.generateCertificates(in)).hasSize(1);
+        }
+        try (FileInputStream in = new FileInputStream(new File(HOME, "mydomain.com-fullchain.pem"))) {
+            then(factory.generateCertificates(in)).hasSize(2);
+        }
+        try (FileInputStream in = new FileInputStream(new File(HOME, "mydomain.com.der"))) {
+            then(((X509Certificate)factory.generateCertificate(in)).getSubjectX500Principal().getName()).isEqualTo("CN=example.com");
+        }
+        then(FileUtils.readFileToString(new File(HOME, "mydomain.com-bundle.pem"), "US-ASCII")).contains("PRIVATE KEY-----");
+
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12", "BC");
+        try (FileInputStream in = new FileInputStream(new File(HOME, "mydomain.com.p12"))) {
+            keyStore.load(in, SECRET.toCharArray());
+        }
+        then(keyStore.getCertificateChain("mydomain.com")).hasSize(2);
+    }
+
+    @Test
+    public void renew_with_preferred_chain() throws Exception {
+        for (String preferred: new String[] {"shortest", "Root X1"}) {
+            AcmeCLI.main(
+                "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+                "--account-keys", "src/test/data/default/account.pem",
+                "--domain-keys", "src/test/data/default/domain.pem",
+                "--out", new File(HOME, "mydomain.com.crt").getAbsolutePath(),
+                "--preferred-chain", preferred
+            );
+        }
+
+        then(STDOUT.getLog())
+            .contains("Taking the default chain (1 of 1) issued by Pebble Intermediate CA 645fc5, 2 certificates, ")
+            .contains("No chain issued by Root X1 among the 1 offered, taking the default chain issued by Pebble Intermediate CA 645fc5");
+        then(new File(HOME, "mydomain.com.crt")).exists();
+    }
+
+    @Test
+    public void renew_with_ocsp_without_responder() throws Exception {
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", new File(HOME, "mydomain.com.crt").getAbsolutePath(),
+            "--ocsp"
+        );
+
+        //
+        // the test CA does not tell any OCSP responder, the certificate is
+        // renewed anyway
+        //
+        then(STDOUT.getLog())
+            .contains("Unable to save the OCSP response in " + new File(HOME, "mydomain.com.crt.ocsp").getAbsolutePath() + ": no OCSP responder in certificate CN=example.com")
+            .contains("Congratulations! Your renewed certificated is ready.");
+        then(new File(HOME, "mydomain.com.crt")).exists();
+        then(new File(HOME, "mydomain.com.crt.ocsp")).doesNotExist();
+    }
+
+    @Test
+    public void renew_artifacts_with_ocsp() throws Exception {
+        final File LEAF = new File(HOME, "mydomain.com.crt");
+        final File OCSP = OcspCache.file(LEAF.toPath()).toFile();
+
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", LEAF.getAbsolutePath(), "--artifacts", "fullchain,leaf", "--ocsp"
+        );
+
+        //
+        // the response goes where ocsp-refresh looks for it; the test CA
+        // does not tell any OCSP responder, therefore it is not saved
+        //
+        then(OCSP.getName()).isEqualTo("mydomain.com.crt.ocsp");
+        then(STDOUT.getLog())
+            .contains("Unable to save the OCSP response in " + OCSP.getAbsolutePath() + ": no OCSP responder in certificate CN=example.com")
+            .contains("Congratulations! Your renewed certificated is ready.");
+
+        //
+        // the leaf artifact is refreshed with the issuer in the full chain one
+        //
+        STDOUT.clearLog();
+        AcmeCLI.main("ocsp-refresh", LEAF.getAbsolutePath());
+        then(STDOUT.getLog())
+            .contains("Unable to refresh the OCSP response of " + LEAF.getAbsolutePath() + ": no OCSP responder in certificate CN=example.com")
+            .contains("0 of 1 OCSP responses fetched");
+
+        new File(HOME, "mydomain.com-fullchain.pem").delete();
+        STDOUT.clearLog();
+        AcmeCLI.main("ocsp-refresh", LEAF.getAbsolutePath());
+        then(STDOUT.getLog())
+            .contains("Unable to refresh the OCSP response of " + LEAF.getAbsolutePath() + ": the issuer of CN=example.com is not in the chain");
+    }
+
+    @Test
+    public void renew_with_metrics() throws Exception {
+        final File json = new File(HOME, "renewals.json");
+        final File prometheus = new File(HOME, "acme-tools.prom");
+        final String[] ARGS = {
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", new File(HOME, "mydomain.com.crt").getAbsolutePath(),
+            "--metrics-json", json.getAbsolutePath(),
+            "--metrics-prometheus", prometheus.getAbsolutePath()
+        };
+
+        AcmeCLI.main(ARGS);
+
+        then(STDOUT.getLog()).containsPattern(
+            "Renewal of mydomain.com completed in \\d+ms \\(directory \\d+ms, login \\d+ms, new_order \\d+ms, " +
+            "finalize \\d+ms, order_polling \\d+ms, download \\d+ms, write \\d+ms\\)"
+        );
+        List<String> lines = Files.readAllLines(json.toPath());
+        then(lines).hasSize(1);
+        then(lines.get(0))
+            .startsWith("{\"domain\":\"mydomain.com\",\"started\":")
+            .contains("\"outcome\":\"renewed\"")
+            .contains("{\"phase\":\"finalize\",\"seconds\":");
+        then(Files.readString(prometheus.toPath()))
+            .contains("acme_tools_renewal_phase_seconds_count{phase=\"login\"} 1\n")
+            .contains("acme_tools_renewal_seconds_count{outcome=\"renewed\"} 1\n")
+            .contains("acme_tools_ca_responses_total{resource=\"newOrder\",status=\"200\"} 1\n")
+            .contains("acme_tools_ca_request_seconds_count{resource=\"certificate\"} 1\n");
+
+        //
+        // JSON lines are appended, histograms are rewritten
+        //
+        AcmeCLI.main(ARGS);
+
+        then(Files.readAllLines(json.toPath())).hasSize(2);
+        then(Files.readString(prometheus.toPath()))
+            .contains("acme_tools_renewal_seconds_count{outcome=\"renewed\"} 1\n");
+    }
+
+    @Test
+    public void renew_with_log_json() throws Exception {
+        final File json = new File(HOME, "acme-tools.json");
+
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", new File(HOME, "mydomain.com.crt").getAbsolutePath(),
+            "--log-json", json.getAbsolutePath()
+        );
+
+        then(STDOUT.getLog()).contains("Congratulations! Your renewed certificated is ready.");
+
+        final List<String> lines = Files.readAllLines(json.toPath());
+        then(lines).isNotEmpty();
+        then(lines).allSatisfy((line) -> then(line)
+            .startsWith("{\"time\":\"")
+            .contains("\"level\":\"INFO\"")
+            .contains("\"domain\":\"mydomain.com\"")
+            .containsPattern("\"correlation\":\"[0-9a-f]{8}\"")
+        );
+        then(lines).anySatisfy((line) -> then(line).contains("\"message\":\"Finalizing the order with the CA\""));
+        then(lines).last().asString().contains("\"message\":\"Renewal of mydomain.com completed in ");
+
+        //
+        // all events of a renewal share the correlation ID
+        //
+        then(lines.stream().map((line) -> line.replaceAll(".*\"correlation\":\"([0-9a-f]{8})\".*", "$1")).distinct())
+            .hasSize(1);
+    }
+
+    @Test
+    public void artifacts_sanity_check() throws Exception {
+        final String[] COMMON = {
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", new File(HOME, "mydomain.com.crt").getAbsolutePath()
+        };
+
+        AcmeCLI.main(ArrayUtils.addAll(COMMON, "--artifacts", "pkcs12"));
+        AcmeCLI.main(ArrayUtils.addAll(COMMON, "--artifacts", "leaf", "--format", "jks", "--secret", "abc"));
+        AcmeCLI.main(ArrayUtils.addAll(COMMON, "--artifacts", "leaf", "--store", new File(HOME, "certificates.store").getAbsolutePath()));
+
+        then(STDOUT.getLog())
+            .contains("A keystore password must be provided for artifact PKCS12 (use --secret)")
+            .contains("Artifacts can not be written together with output JKS (use --artifacts pkcs12)")
+            .contains("Artifacts can not be written to a certificate store (--store)");
+        then(HOME.list()).isEmpty();
+    }
+
+    @Test
+    public void renew_and_update_aliases_in_keystore() throws Exception {
+        final File KEYSTORE = new File(HOME, "keystore.jks");
+        final String SECRET = "1234567890";
+
+        for (String domain: new String[] {"mydomain.com", "otherdomain.com", "mydomain.com"}) {
+            AcmeCLI.main(
+                "renew", "acmetest:renew://cacert1.com", domain,
+                "--account-keys", "src/test/data/default/account.pem",
+                "--domain-keys", "src/test/data/default/domain.pem",
+                "--out", KEYSTORE.getAbsolutePath(), "--format", "jks", "--secret", SECRET, "--update-keystore"
+            );
+        }
+
+        then(STDOUT.getLog())
+            .contains("storing the new certificate in keystore " + KEYSTORE.getAbsolutePath() + " (alias updated)")
+            .contains("Keystore " + KEYSTORE.getAbsolutePath() + " updated with otherdomain.com");
+        then(new File(HOME, "keystore.jks.tmp")).doesNotExist();
+
+        final KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (FileInputStream in = new FileInputStream(KEYSTORE)) {
+            keyStore.load(in, SECRET.toCharArray());
+        }
+        then(Collections.list(keyStore.aliases())).containsExactlyInAnyOrder("mydomain.com", "otherdomain.com");
+        then(keyStore.getKey("otherdomain.com", SECRET.toCharArray())).isNotNull();
+    }
+
+    @Test
+    public void renew_and_store_in_bcfks_keystore() throws Exception {
+        final File KEYSTORE = new File(HOME, "keystore.bcfks");
+        final String SECRET = "1234567890";
+
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", KEYSTORE.getAbsolutePath(), "--format", "bcfks", "--secret", SECRET
+        );
+
+        final KeyStore keyStore = KeyStore.getInstance("BCFKS", "BC");
+        try (FileInputStream in = new FileInputStream(KEYSTORE)) {
+            keyStore.load(in, SECRET.toCharArray());
+        }
+        then(Collections.list(keyStore.aliases())).containsExactly("mydomain.com");
+    }
+
+    @Test
+    public void update_keystore_requires_a_keystore_format() throws Exception {
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", new File(HOME, "domain.crt").getAbsolutePath(), "--update-keystore"
+        );
+
+        then(STDOUT.getLog()).contains("A keystore format must be provided with --update-keystore (use --format)");
+        then(new File(HOME, "domain.crt")).doesNotExist();
+    }
+
+    @Test
+    public void renew_and_store_in_p12_keystore_with_given_protection() throws Exception {
+        final File KEYSTORE = new File(HOME, "keystore.p12");
+        final String SECRET = "1234567890";
+
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", KEYSTORE.getAbsolutePath(), "--format", PKCS12.toString(), "--secret", SECRET,
+            "--keystore-mac", "hmacpbesha1", "--keystore-iterations", "2048"
+        );
+
+        final MacData mac = Pfx.getInstance(Files.readAllBytes(KEYSTORE.toPath())).getMacData();
+        then(mac.getIterationCount()).isEqualTo(2048);
+        then(mac.getMac().getAlgorithmId().getAlgorithm()).isEqualTo(OIWObjectIdentifiers.idSHA1);
+
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12", "BC");
+        try (FileInputStream in = new FileInputStream(KEYSTORE)) {
+            keyStore.load(in, SECRET.toCharArray());
+        }
+        then(keyStore.getKey("mydomain.com", SECRET.toCharArray())).isNotNull();
+    }
+
+    @Test
+    public void keystore_protection_requires_a_tunable_keystore_format() throws Exception {
+        for (String format: new String[] {"pem", "jks"}) {
+            AcmeCLI.main(
+                "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+                "--account-keys", "src/test/data/default/account.pem",
+                "--domain-keys", "src/test/data/default/domain.pem",
+                "--out", new File(HOME, "domain." + format).getAbsolutePath(), "--format", format, "--secret", "1234567890",
+                "--keystore-iterations", "2048"
+            );
+            then(new File(HOME, "domain." + format)).doesNotExist();
+        }
+
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", new File(HOME, "domain.p12").getAbsolutePath(), "--format", "pkcs12", "--secret", "1234567890",
+            "--keystore-mac", "md5"
+        );
+
+        then(STDOUT.getLog())
+            .contains("The keystore protection can be given for keystore outputs only (use --format)")
+            .contains("the protection of JKS keystores can not be tuned")
+            .contains("mac md5 is not supported by PKCS12 keystores; one of HmacPBESHA256, HmacPBESHA1");
+        then(new File(HOME, "domain.p12")).doesNotExist();
+    }
+
+    @Test
+    public void renew_and_store_in_p12_keystore_with_missing_password() throws Exception {
+        final File KEYSTORE = new File(HOME, "keystore.p12");
+        final String SECRET = "1234567890";
+
+        AcmeCLI.main(
+            "renew", "acmetest:renew://cacert1.com", "mydomain.com",
+            "--account-keys", "src/test/data/default/account.pem",
+            "--domain-keys", "src/test/data/default/domain.pem",
+            "--out", KEYSTORE.getAbsolutePath(), "--format", PKCS12.toString()
+        );
+
+        then(STDOUT.getLog()).contains("A keystore password must be provided for output " + PKCS12 + " (use " + Constants.OPT_SECRET + ")");
+        then(KEYSTORE).doesNotExist();
+    }
+
+    @Ignore
+    @Test
+    public void testSomeMethod() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        PEMParser pemParser = new PEMParser(new FileReader("/opt/uzz-api-0.0.1-SNAPSHOT/config/uzz.fornari.net.pem"));
+        //PEMParser pemParser = new PEMParser(new FileReader("/opt/uzz-api-0.0.1-SNAPSHOT/config/letsencrypt-8bca605269b3fe4e71909d77bf5d9a86.pem"));
+        JcaPEMKeyConverter converter = new JcaPEMKeyConverter().setProvider("BC");
+        PEMKeyPair object = (PEMKeyPair)pemParser.readObject();
+        System.out.println("prvate info: " + object.getPrivateKeyInfo().getAttributes());
+        System.out.println("public info: " + object.getPublicKeyInfo().getPublicKeyData());
+        KeyPair kp = converter.getKeyPair(object);
+        PrivateKey privateKey = kp.getPrivate();
+
+        System.out.println(privateKey);
+        pemParser.close();
+
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        List<Certificate> chainList = new ArrayList<>();
+
+        // Load the main certificate
+        try (FileInputStream fis = new FileInputStream("/opt/uzz-api-0.0.1-SNAPSHOT/config/domain.crt")) {
+            chainList.add(cf.generateCertificate(fis));
+        }
+
+        // Convert list to array
+        Certificate[] chain = chainList.toArray(new Certificate[0]);
+
+        // Create PKCS12 keystore
+        KeyStore keyStore = KeyStore.getInstance("PKCS12", "BC");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("tomcat", privateKey, PASSWORD, chain);
+
+        // Save keystore to file
+        try (FileOutputStream fos = new FileOutputStream("keystore.p12")) {
+            keyStore.store(fos, PASSWORD);
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private String extractChallengePort(final String s) throws Exception {
+        Pattern p = Pattern.compile("Listener started on port (\\d+)\\n");
+        Matcher m = p.matcher(s);
+
+        if (m.find()) {
+            return m.group(1);
+        }
+
+        throw new Exception("challenge uri not found");
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.time.Duration;
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.Test;
+import ste.acme.cli.tls.TlsServerStub;
+
+/**
+ *
+ */
+public class AcmeCLIScanTest extends AcmeCLIExec {
+
+    @Test
+    public void scan_and_compare_with_certificates_on_disk() throws Exception {
+        try (
+            TlsServerStub deployed = new TlsServerStub("localhost", Duration.ofDays(90), false);
+            TlsServerStub stale = new TlsServerStub("localhost", Duration.ofDays(10), false)
+        ) {
+            final File CERT = new File(HOME, "certs/localhost.crt");
+            CERT.getParentFile().mkdirs();
+            try (JcaPEMWriter out = new JcaPEMWriter(new FileWriter(CERT))) {
+                out.writeObject(deployed.certificate);
+            }
+            final File INDEX = new File(HOME, "certificates.index");
+            AcmeCLI.main("index", CERT.getParent(), "--index", INDEX.getAbsolutePath());
+
+            final File TARGETS = new File(HOME, "targets.txt");
+            FileUtils.writeStringToFile(TARGETS, "# endpoints\n\nlocalhost:" + stale.port() + "\n", "UTF-8");
+
+            STDOUT.clearLog();
+            AcmeCLI.main(
+                "scan", "localhost:" + deployed.port(), "--targets-from", TARGETS.getAbsolutePath(),
+                "--index", INDEX.getAbsolutePath()
+            );
+
+            then(STDOUT.getLog())
+                .contains("localhost:" + deployed.port() + "[0]: CN=localhost, valid from ")
+                .contains("localhost:" + stale.port() + "[0]: CN=localhost, valid from ")
+                .contains("localhost:" + stale.port() + " serves a certificate expiring on ")
+                .contains("localhost:" + stale.port() + " serves a certificate different from " + CERT.getAbsolutePath())
+                .doesNotContain("localhost:" + deployed.port() + " serves")
+                .contains("2 endpoints scanned, 0 errors, 1 expiring within 30d, 1 different from the certificates on disk, 0 not on disk");
+        }
+    }
+
+    @Test
+    public void scan_without_index() throws Exception {
+        try (TlsServerStub server = new TlsServerStub("localhost", Duration.ofDays(90), false)) {
+            AcmeCLI.main(
+                "scan", "localhost:" + server.port(), "unknown.invalid:443", "--format", "json",
+                "--index", new File(HOME, "missing.index").getAbsolutePath(), "--timeout", "2s"
+            );
+
+            then(STDOUT.getLog())
+                .contains("{\"path\":\"localhost:" + server.port() + "\",\"index\":0,\"subject\":\"CN=localhost\"")
+                .contains("{\"path\":\"unknown.invalid:443\",\"error\":\"Unable to scan unknown.invalid:443: unknown host ")
+                .contains("2 endpoints scanned, 1 errors, 0 expiring within 30d, 0 different from the certificates on disk, 1 not on disk");
+        }
+
+        STDOUT.clearLog();
+        AcmeCLI.main("scan");
+        then(STDOUT.getLog()).contains("At least a target must be provided (or use --targets-from)");
+    }
+}
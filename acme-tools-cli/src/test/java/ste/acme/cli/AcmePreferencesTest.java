@@ -24,6 +24,8 @@ import java.time.Duration;
 import org.assertj.core.api.BDDAssertions;
 import static org.assertj.core.api.BDDAssertions.then;
 import org.junit.Test;
+import static ste.acme.cli.ChallengeType.DNS;
+import static ste.acme.cli.ChallengeType.HTTP;
 import static ste.acme.cli.Format.PEM;
 import static ste.acme.cli.Format.PKCS12;
 import static ste.xtest.Constants.BLANKS;
@@ -80,6 +82,69 @@ public class AcmePreferencesTest {
 
         then(p.secret()).isNull();
         p.secret("123456"); then(p.secret()).isEqualTo("123456");
+
+        then(p.tokenStore()).isNull();
+        p.tokenStore(FILE); then(p.tokenStore()).isEqualTo(FILE);
+
+        then(p.selfCheck()).isFalse();
+        p.selfCheck(true); then(p.selfCheck()).isTrue();
+
+        then(p.updateKeyStore()).isFalse();
+        p.updateKeyStore(true); then(p.updateKeyStore()).isTrue();
+
+        then(p.store()).isNull();
+        p.store(FILE); then(p.store()).isEqualTo(FILE);
+
+        then(p.preferredChain()).isNull();
+        p.preferredChain("shortest"); then(p.preferredChain()).isEqualTo("shortest");
+
+        then(p.ocsp()).isFalse();
+        p.ocsp(true); then(p.ocsp()).isTrue();
+
+        then(p.metricsJson()).isNull();
+        p.metricsJson(FILE); then(p.metricsJson()).isEqualTo(FILE);
+
+        then(p.metricsPrometheus()).isNull();
+        p.metricsPrometheus(FILE); then(p.metricsPrometheus()).isEqualTo(FILE);
+
+        then(p.logJson()).isNull();
+        p.logJson(FILE); then(p.logJson()).isEqualTo(FILE);
+
+        then(p.keyStoreEncryption()).isNull();
+        p.keyStoreEncryption("AES256_KWP"); then(p.keyStoreEncryption()).isEqualTo("AES256_KWP");
+
+        then(p.keyStoreMac()).isNull();
+        p.keyStoreMac("HmacPBESHA1"); then(p.keyStoreMac()).isEqualTo("HmacPBESHA1");
+
+        then(p.keyStoreIterations()).isNull();
+        p.keyStoreIterations(2048); then(p.keyStoreIterations()).isEqualTo(2048);
+
+        then(p.challengeType()).isEqualTo(HTTP);
+        p.challengeType(DNS); then(p.challengeType()).isEqualTo(DNS);
+
+        then(p.dnsRecords()).isEqualTo(Constants.DEFAULT_DNS_RECORDS);
+        p.dnsRecords(FILE); then(p.dnsRecords()).isEqualTo(FILE);
+
+        then(p.dnsPropagationDelay()).isZero();
+        p.dnsPropagationDelay(Duration.ofSeconds(10)); then(p.dnsPropagationDelay()).isEqualTo(Duration.ofSeconds(10));
+        p.dnsPropagationDelay("1m"); then(p.dnsPropagationDelay()).isEqualTo(Duration.ofMinutes(1));
+        BDDAssertions.thenThrownBy(() -> {
+            p.dnsPropagationDelay("never");
+        }).isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("dnsPropagationDelay 'never' does not contain any time period");
+    }
+
+    @Test
+    public void parse_periods() {
+        then(AcmePreferences.period("p", "1d 2h")).isEqualTo(Duration.ofHours(26));
+        then(AcmePreferences.period("p", "14d")).isEqualTo(Duration.ofDays(14));
+        then(AcmePreferences.period("p", "1m30s")).isEqualTo(Duration.ofSeconds(90));
+        then(AcmePreferences.period("p", "0s")).isZero();
+
+        BDDAssertions.thenThrownBy(() -> {
+            AcmePreferences.period("p", " ");
+        }).isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("p can not be blank");
     }
 
 }
@@ -0,0 +1,129 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli;
+
+import java.io.File;
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class PathResolverTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private Path archive;
+
+    @Before
+    public void before() throws Exception {
+        archive = TMP.getRoot().toPath().resolve("bundle.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("certs/domain.crt"));
+            zip.write(Files.readAllBytes(Path.of("src/test/data/default/domain.crt")));
+            zip.closeEntry();
+        }
+    }
+
+    @Test
+    public void resolve_local_paths() throws Exception {
+        try (PathResolver paths = new PathResolver()) {
+            then(paths.resolve("domain.crt")).isEqualTo(Path.of("domain.crt"));
+            then(paths.resolve("/tmp/domain.crt")).isEqualTo(Path.of("/tmp/domain.crt"));
+            then(paths.resolve("file:///tmp/domain.crt")).isEqualTo(Path.of("/tmp/domain.crt"));
+            then(PathResolver.describe(Path.of("domain.crt"))).isEqualTo(new File("domain.crt").getAbsolutePath());
+            then(PathResolver.isLocal(Path.of("domain.crt"))).isTrue();
+
+            //
+            // not an archive, just a strange name
+            //
+            then(paths.resolve("missing.zip!/domain.crt")).isEqualTo(Path.of("missing.zip!/domain.crt"));
+        }
+    }
+
+    @Test
+    public void read_entries_in_archives() throws Exception {
+        try (PathResolver paths = new PathResolver()) {
+            final Path entry = paths.resolve(archive + "!/certs/domain.crt");
+
+            then(PathResolver.isLocal(entry)).isFalse();
+            then(Files.readAllBytes(entry)).isEqualTo(Files.readAllBytes(Path.of("src/test/data/default/domain.crt")));
+            then(Files.isDirectory(paths.resolve(archive + "!/certs"))).isTrue();
+            then(PathResolver.describe(entry)).startsWith("jar:").endsWith("bundle.zip!/certs/domain.crt");
+
+            //
+            // same archive, same filesystem
+            //
+            then(paths.resolve(archive + "!/other.crt").getFileSystem()).isSameAs(entry.getFileSystem());
+        }
+    }
+
+    @Test
+    public void write_entries_in_archives_when_closed() throws Exception {
+        final Path newArchive = TMP.getRoot().toPath().resolve("new.zip");
+
+        final PathResolver paths = new PathResolver();
+        Files.writeString(paths.resolveForWriting(archive + "!/certs/new.crt"), "new certificate");
+        Files.writeString(paths.resolveForWriting(newArchive + "!/domain.crt"), "domain certificate");
+        paths.close();
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            then(zip.getEntry("certs/domain.crt")).isNotNull();
+            then(new String(zip.getInputStream(zip.getEntry("certs/new.crt")).readAllBytes(), UTF_8)).isEqualTo("new certificate");
+        }
+        try (ZipFile zip = new ZipFile(newArchive.toFile())) {
+            then(new String(zip.getInputStream(zip.getEntry("domain.crt")).readAllBytes(), UTF_8)).isEqualTo("domain certificate");
+        }
+    }
+
+    @Test
+    public void resolve_uris_with_installed_providers() throws Exception {
+        try (PathResolver paths = new PathResolver()) {
+            final Path entry = paths.resolve("jar:" + archive.toUri() + "!/certs/domain.crt");
+            then(Files.exists(entry)).isTrue();
+
+            thenThrownBy(() -> paths.resolve("nofs:/some/where"))
+                .isInstanceOf(IOException.class)
+                .hasMessage("no filesystem available for nofs:/some/where");
+        }
+    }
+
+    @Test
+    public void sanity_check() throws Exception {
+        try (PathResolver paths = new PathResolver()) {
+            thenThrownBy(() -> paths.resolve(null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("location can not be null");
+        }
+    }
+}
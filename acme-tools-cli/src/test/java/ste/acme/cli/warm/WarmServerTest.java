@@ -0,0 +1,207 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.warm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class WarmServerTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private Path socket;
+
+    @Before
+    public void before() {
+        socket = TMP.getRoot().toPath().resolve("run").resolve(WarmServer.SOCKET);
+    }
+
+    @Test
+    public void sanity_check() {
+        final WarmServer.Command command = (args) -> 0;
+
+        thenThrownBy(() -> new WarmServer(null, Duration.ofMinutes(1), command))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("socket can not be null");
+        thenThrownBy(() -> new WarmServer(socket, null, command))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("idle must be greater than 0");
+        thenThrownBy(() -> new WarmServer(socket, Duration.ZERO, command))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("idle must be greater than 0");
+        thenThrownBy(() -> new WarmServer(socket, Duration.ofMinutes(1), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("command can not be null");
+
+        thenThrownBy(() -> new WarmClient(null, List.of(), Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("socket can not be null");
+        thenThrownBy(() -> new WarmClient(socket, List.of(), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("startup can not be null or negative");
+        thenThrownBy(() -> new WarmClient(socket, null, Duration.ZERO).execute(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("out can not be null");
+        thenThrownBy(() -> new WarmClient(socket, null, Duration.ZERO).execute(new ByteArrayOutputStream(), (String[])null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("args can not be null");
+    }
+
+    @Test
+    public void forward_command_line_output_and_exit_code() throws Exception {
+        final WarmServer server = new WarmServer(socket, Duration.ofMinutes(1), (args) -> {
+            System.out.println("args: " + String.join(",", args));
+            System.err.print("àèì");
+            return args.length;
+        });
+        final Thread thread = serve(server);
+
+        final WarmClient client = new WarmClient(socket, null, Duration.ZERO);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        then(client.execute(out, "renew", "example.com")).isEqualTo(2);
+        then(out.toString(StandardCharsets.UTF_8)).isEqualTo("args: renew,example.com\nàèì");
+
+        //
+        // the JVM is reused by the next invocations
+        //
+        out.reset();
+        then(client.execute(out)).isEqualTo(0);
+        then(out.toString(StandardCharsets.UTF_8)).isEqualTo("args: \nàèì");
+
+        server.close();
+        thread.join(5000);
+        then(thread.isAlive()).isFalse();
+        then(socket).doesNotExist();
+    }
+
+    @Test
+    public void one_server_per_socket() throws Exception {
+        final WarmServer server = new WarmServer(socket, Duration.ofMinutes(1), (args) -> 0);
+        final Thread thread = serve(server);
+
+        //
+        // a second server finds the lock taken and returns at once
+        //
+        new WarmServer(socket, Duration.ofMinutes(1), (args) -> 1).serve();
+        then(new WarmClient(socket, null, Duration.ZERO).execute(new ByteArrayOutputStream())).isEqualTo(0);
+
+        server.close();
+        thread.join(5000);
+    }
+
+    @Test
+    public void exit_when_idle() throws Exception {
+        final Thread thread = serve(new WarmServer(socket, Duration.ofMillis(200), (args) -> 0));
+
+        thread.join(5000);
+        then(thread.isAlive()).isFalse();
+        then(socket).doesNotExist();
+    }
+
+    @Test
+    public void retry_if_dropped_before_the_first_frame() throws Exception {
+        Files.createDirectories(socket.getParent());
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            final Thread thread = new Thread(() -> {
+                try {
+                    server.accept().close(); // e.g. closed when idle
+                    try (SocketChannel client = server.accept()) {
+                        final DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+                        for (int i = in.readInt(); i > 0; --i) {
+                            in.readUTF();
+                        }
+                        final DataOutputStream out = new DataOutputStream(Channels.newOutputStream(client));
+                        out.writeByte(WarmServer.EXIT); out.writeInt(7);
+                    }
+                } catch (IOException x) {
+                    x.printStackTrace();
+                }
+            });
+            thread.start();
+
+            then(new WarmClient(socket, null, Duration.ZERO).execute(new ByteArrayOutputStream(), "renew")).isEqualTo(7);
+            thread.join(5000);
+        }
+    }
+
+    @Test
+    public void error_if_no_server_and_none_to_start() throws Exception {
+        thenThrownBy(() -> new WarmClient(socket, null, Duration.ZERO).execute(new ByteArrayOutputStream()))
+            .isInstanceOf(IOException.class)
+            .hasMessage("no server listening on " + socket);
+    }
+
+    @Test
+    public void error_if_the_server_does_not_start() throws Exception {
+        final WarmClient client = new WarmClient(socket, List.of("true"), Duration.ofMillis(200));
+
+        thenThrownBy(() -> client.execute(new ByteArrayOutputStream()))
+            .isInstanceOf(IOException.class)
+            .hasMessage(
+                "the server did not start listening on " + socket + ", see "
+                + socket.resolveSibling(WarmClient.SERVER_LOG)
+            );
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Thread serve(final WarmServer server) throws Exception {
+        final Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException x) {
+                x.printStackTrace();
+            }
+        });
+        thread.start();
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!Files.exists(socket) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        then(socket).exists();
+
+        return thread;
+    }
+}
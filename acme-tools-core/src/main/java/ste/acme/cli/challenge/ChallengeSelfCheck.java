@@ -0,0 +1,149 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fetches a HTTP-01 challenge URL the same way the CA would do, before the
+ * challenge is triggered; a misconfigured domain (wrong DNS, port 80 not
+ * forwarded, no responder) is detected in a few milliseconds instead of
+ * waiting for the challenge timeout and costing a failed authorization.
+ *
+ * Passed checks are cached per domain and token for a while, so that the
+ * same challenge is not fetched again (e.g. when retried). Failed checks are
+ * not cached: the responder may be fixed or started in the meantime, and a
+ * success for a token tells nothing about another one.
+ */
+public class ChallengeSelfCheck {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes(5);
+
+    private final Duration timeout;
+    private final Duration cacheTTL;
+    private final HttpClient client;
+    private final Map<Key, Result> cache = new ConcurrentHashMap<>();
+
+    public ChallengeSelfCheck() {
+        this(DEFAULT_TIMEOUT, DEFAULT_CACHE_TTL);
+    }
+
+    public ChallengeSelfCheck(final Duration timeout, final Duration cacheTTL) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be a positive duration");
+        }
+        if (cacheTTL == null || cacheTTL.isNegative()) {
+            throw new IllegalArgumentException("cacheTTL can not be null or negative");
+        }
+        this.timeout = timeout;
+        this.cacheTTL = cacheTTL;
+        this.client = HttpClient.newBuilder()
+            .connectTimeout(timeout)
+            .followRedirects(HttpClient.Redirect.NORMAL) // as the CA does
+            .build();
+    }
+
+    /**
+     * Checks that <code>http://{domain}/.well-known/acme-challenge/{token}</code>
+     * returns the expected key authorization.
+     *
+     * @param domain the domain to check (e.g. example.com or example.com:8080)
+     * @param token the challenge token
+     * @param authorization the expected key authorization
+     *
+     * @return the result of the check, possibly the one cached for the domain
+     *         and token
+     *
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    public Result check(final String domain, final String token, final String authorization)
+    throws InterruptedException {
+        final Key key = new Key(domain, token);
+        final Result cached = cache.get(key);
+        if (cached != null && (System.nanoTime() - cached.nanoTime()) < cacheTTL.toNanos()) {
+            return cached.asCached();
+        }
+
+        final String url = "http://" + domain + ChallengeServer.CHALLENGE_PATH + token;
+        final long start = System.nanoTime();
+
+        Result result;
+        try {
+            final HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create(url)).timeout(timeout).GET().build(),
+                HttpResponse.BodyHandlers.ofString()
+            );
+            if (response.statusCode() != 200) {
+                result = new Result(false, url + " returned HTTP status " + response.statusCode(), start, false);
+            } else if (!authorization.equals(response.body().trim())) {
+                result = new Result(false, url + " did not return the expected key authorization", start, false);
+            } else {
+                result = new Result(true, url + " is reachable", start, false);
+            }
+        } catch (HttpTimeoutException x) {
+            result = new Result(false, url + " did not respond in " + timeout.toMillis() + "ms", start, false);
+        } catch (IOException | IllegalArgumentException x) {
+            result = new Result(false, url + " is not reachable (" + x + ")", start, false);
+        }
+
+        if (result.passed()) {
+            cache.put(key, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Forgets any cached result for the given domain
+     *
+     * @param domain the domain
+     */
+    public void invalidate(final String domain) {
+        cache.keySet().removeIf((key) -> key.domain().equals(domain));
+    }
+
+    // ------------------------------------------------------------------ Result
+
+    /**
+     * @param passed true if the challenge URL returned the expected content
+     * @param message a human readable description of the outcome
+     * @param nanoTime monotonic time of the check
+     * @param cached true if this result comes from the cache
+     */
+    public record Result(boolean passed, String message, long nanoTime, boolean cached) {
+        Result asCached() {
+            return new Result(passed, message, nanoTime, true);
+        }
+    }
+
+    // --------------------------------------------------------------------- Key
+
+    private record Key(String domain, String token) {}
+}
@@ -0,0 +1,188 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import ste.acme.cli.jfr.ChallengeHitEvent;
+
+/**
+ * HTTP-01 responder serving <code>/.well-known/acme-challenge/{token}</code>
+ * from a {@link ChallengeTokenStore}.
+ *
+ * Interested parties can be notified when a token is served to a client (most
+ * likely the CA validating the challenge) with {@link #served(String)}.
+ */
+public class ChallengeServer {
+
+    public static final String CHALLENGE_PATH = "/.well-known/acme-challenge/";
+
+    private static final Logger LOG = Logger.getLogger("ste.acme-tools");
+
+    private final ChallengeTokenStore store;
+    private final Map<String, CompletableFuture<InetSocketAddress>> served = new ConcurrentHashMap<>();
+    private HttpServer server = null;
+
+    public ChallengeServer(final ChallengeTokenStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("store can not be null");
+        }
+        this.store = store;
+    }
+
+    /**
+     * @return the token store tokens are served from
+     */
+    public ChallengeTokenStore store() {
+        return store;
+    }
+
+    /**
+     * Starts listening on the given port.
+     *
+     * @param port the port to listen on; if 0 an available port is picked
+     *
+     * @throws IOException if the server can not be started
+     */
+    public synchronized void start(final int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("challenge server already started");
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(CHALLENGE_PATH, this::handle);
+        server.start();
+    }
+
+    /**
+     * @return the port the server is listening on (useful if started on port 0)
+     */
+    public synchronized int port() {
+        if (server == null) {
+            throw new IllegalStateException("challenge server not started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Returns a future completed with the address of the client the first
+     * time the given token is successfully served after this call.
+     *
+     * @param token the challenge token
+     *
+     * @return the served event for the token
+     */
+    public CompletableFuture<InetSocketAddress> served(final String token) {
+        return served.computeIfAbsent(token, (t) -> new CompletableFuture<>());
+    }
+
+    /**
+     * Stops tracking the served event of the given token
+     *
+     * @param token the challenge token
+     */
+    public void forget(final String token) {
+        served.remove(token);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final long start = System.nanoTime();
+        int status = 0;
+        try (exchange) {
+            status = serve(exchange);
+        } finally {
+            ChallengeHitEvent.hit(
+                ChallengeHitEvent.HTTP_01, token(exchange), exchange.getRemoteAddress(), status,
+                System.nanoTime() - start
+            );
+        }
+    }
+
+    /**
+     * @return the HTTP status of the response
+     */
+    private int serve(final HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            exchange.sendResponseHeaders(405, -1);
+            return 405;
+        }
+
+        final String token = token(exchange);
+
+        Optional<String> authorization = Optional.empty();
+        try {
+            authorization = store.get(token);
+        } catch (IOException x) {
+            LOG.log(Level.SEVERE, "unable to read challenge token " + token, x);
+        }
+
+        if (authorization.isEmpty()) {
+            LOG.info(() -> "challenge request for unknown token " + token + " from " + exchange.getRemoteAddress());
+            exchange.sendResponseHeaders(404, -1);
+            return 404;
+        }
+
+        final byte[] response = authorization.get().getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        if ("HEAD".equals(method)) {
+            exchange.sendResponseHeaders(200, -1);
+            return 200;
+        }
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+        LOG.info(() -> "challenge token " + token + " served to " + exchange.getRemoteAddress());
+
+        final CompletableFuture<InetSocketAddress> event = served.get(token);
+        if (event != null) {
+            event.complete(exchange.getRemoteAddress());
+        }
+        return 200;
+    }
+
+    private static String token(final HttpExchange exchange) {
+        return exchange.getRequestURI().getPath().substring(CHALLENGE_PATH.length());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Where HTTP-01 challenge tokens and their key authorizations are kept while
+ * a challenge is pending. A {@link ChallengeServer} answers the CA reading
+ * from a store, so that any node sharing the same store can respond.
+ */
+public interface ChallengeTokenStore {
+
+    /**
+     * ACME tokens are base64url encoded (RFC 8555, section 8.1)
+     */
+    static final Pattern TOKEN_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    /**
+     * @param token the challenge token
+     * @param authorization the key authorization to serve for the token
+     *
+     * @throws IOException in case of storage errors
+     */
+    void put(String token, String authorization) throws IOException;
+
+    /**
+     * @param token the challenge token
+     *
+     * @return the key authorization for the given token if any
+     *
+     * @throws IOException in case of storage errors
+     */
+    Optional<String> get(String token) throws IOException;
+
+    /**
+     * @param token the challenge token to remove
+     *
+     * @throws IOException in case of storage errors
+     */
+    void remove(String token) throws IOException;
+
+    /**
+     * @param token the token to check
+     *
+     * @return true if token is a syntactically valid ACME token
+     */
+    static boolean isValidToken(final String token) {
+        return (token != null) && TOKEN_PATTERN.matcher(token).matches();
+    }
+
+    static void checkToken(final String token) {
+        if (!isValidToken(token)) {
+            throw new IllegalArgumentException("invalid challenge token '" + token + "'");
+        }
+    }
+}
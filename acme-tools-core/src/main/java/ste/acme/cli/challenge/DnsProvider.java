@@ -0,0 +1,66 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Publishes the TXT records of DNS-01 challenges. Records are always given
+ * in batches (all the records of an order), so that an implementation can
+ * apply them with a single update and wait for propagation once.
+ */
+public interface DnsProvider {
+
+    /**
+     * Adds the given records in a single update
+     *
+     * @param records the records to add
+     *
+     * @throws IOException in case of errors
+     */
+    void publish(Collection<DnsRecord> records) throws IOException;
+
+    /**
+     * Waits until the given records are visible to the CA, or the timeout
+     * expires.
+     *
+     * @param records the records previously published
+     * @param timeout max time to wait
+     *
+     * @return true if the records are propagated, false if the timeout expired
+     *
+     * @throws IOException in case of errors
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitPropagation(Collection<DnsRecord> records, Duration timeout)
+    throws IOException, InterruptedException;
+
+    /**
+     * Removes the given records in a single update
+     *
+     * @param records the records to remove
+     *
+     * @throws IOException in case of errors
+     */
+    void remove(Collection<DnsRecord> records) throws IOException;
+}
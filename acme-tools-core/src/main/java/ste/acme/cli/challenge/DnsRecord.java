@@ -0,0 +1,49 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+/**
+ * A TXT record to publish for a DNS-01 challenge.
+ *
+ * @param name the fully qualified record name (e.g. _acme-challenge.example.com.)
+ * @param value the record value (the challenge digest)
+ * @param ttl time to live in seconds
+ */
+public record DnsRecord(String name, String value, int ttl) {
+
+    public static final int DEFAULT_TTL = 60;
+
+    public DnsRecord {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("name can not be blank");
+        }
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("value can not be blank");
+        }
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl can not be negative");
+        }
+    }
+
+    public DnsRecord(final String name, final String value) {
+        this(name, value, DEFAULT_TTL);
+    }
+}
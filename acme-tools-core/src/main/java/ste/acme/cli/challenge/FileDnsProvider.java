@@ -0,0 +1,112 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import ste.acme.cli.store.AtomicFiles;
+
+/**
+ * {@link DnsProvider} writing each batch of records as a RFC 2136 dynamic
+ * update script in <code>nsupdate</code> syntax, e.g.:
+ *
+ * <pre>
+ * update add _acme-challenge.example.com. 60 IN TXT "digest1"
+ * update add _acme-challenge.www.example.com. 60 IN TXT "digest2"
+ * send
+ * </pre>
+ *
+ * The file is replaced atomically at each batch, ready to be applied with
+ * <code>nsupdate</code> by whatever watches it (or to be inspected offline);
+ * propagation is assumed to take a fixed delay.
+ */
+public class FileDnsProvider implements DnsProvider {
+
+    private final Path file;
+    private final Duration propagationDelay;
+
+    public FileDnsProvider(final Path file, final Duration propagationDelay) {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        if (propagationDelay == null || propagationDelay.isNegative()) {
+            throw new IllegalArgumentException("propagationDelay can not be null or negative");
+        }
+        this.file = file;
+        this.propagationDelay = propagationDelay;
+    }
+
+    /**
+     * @return the update file
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return the propagation delay
+     */
+    public Duration propagationDelay() {
+        return propagationDelay;
+    }
+
+    @Override
+    public void publish(final Collection<DnsRecord> records) throws IOException {
+        write("add", records);
+    }
+
+    @Override
+    public boolean awaitPropagation(final Collection<DnsRecord> records, final Duration timeout)
+    throws InterruptedException {
+        if (propagationDelay.compareTo(timeout) > 0) {
+            Thread.sleep(timeout.toMillis());
+            return false;
+        }
+        Thread.sleep(propagationDelay.toMillis());
+        return true;
+    }
+
+    @Override
+    public void remove(final Collection<DnsRecord> records) throws IOException {
+        write("delete", records);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void write(final String operation, final Collection<DnsRecord> records) throws IOException {
+        final StringBuilder update = new StringBuilder();
+        for (DnsRecord record: records) {
+            update.append("update ").append(operation).append(' ')
+                  .append(record.name()).append(' ');
+            if ("add".equals(operation)) {
+                update.append(record.ttl()).append(' ');
+            }
+            update.append("IN TXT \"").append(record.value()).append("\"\n");
+        }
+        update.append("send\n");
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        AtomicFiles.writeString(file, update);
+    }
+}
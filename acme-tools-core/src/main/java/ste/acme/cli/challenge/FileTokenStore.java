@@ -0,0 +1,103 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.Optional;
+import ste.acme.cli.store.AtomicFiles;
+
+/**
+ * Token store backed by a directory, typically on a filesystem shared by all
+ * nodes behind a load balancer. Each token is a file named after the token
+ * and containing the key authorization.
+ *
+ * Writers serialize on an exclusive lock of <code>.lock</code> in the store
+ * directory; token files are written aside and atomically renamed in place,
+ * so that readers never see partial content and do not need to lock.
+ */
+public class FileTokenStore implements ChallengeTokenStore {
+
+    public static final String LOCK_FILE = ".lock";
+
+    private final Path dir;
+
+    public FileTokenStore(final Path dir) throws IOException {
+        if (dir == null) {
+            throw new IllegalArgumentException("dir can not be null");
+        }
+        this.dir = Files.createDirectories(dir);
+    }
+
+    /**
+     * @return the store directory
+     */
+    public Path dir() {
+        return dir;
+    }
+
+    @Override
+    public synchronized void put(final String token, final String authorization) throws IOException {
+        ChallengeTokenStore.checkToken(token);
+        if (authorization == null) {
+            throw new IllegalArgumentException("authorization can not be null");
+        }
+
+        try (FileChannel channel = lockChannel(); FileLock lock = channel.lock()) {
+            AtomicFiles.writeString(dir.resolve(token), authorization);
+        }
+    }
+
+    @Override
+    public Optional<String> get(final String token) throws IOException {
+        if (!ChallengeTokenStore.isValidToken(token)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Files.readString(dir.resolve(token), UTF_8));
+        } catch (NoSuchFileException x) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public synchronized void remove(final String token) throws IOException {
+        if (!ChallengeTokenStore.isValidToken(token)) {
+            return;
+        }
+        try (FileChannel channel = lockChannel(); FileLock lock = channel.lock()) {
+            Files.deleteIfExists(dir.resolve(token));
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private FileChannel lockChannel() throws IOException {
+        return FileChannel.open(dir.resolve(LOCK_FILE), CREATE, WRITE);
+    }
+}
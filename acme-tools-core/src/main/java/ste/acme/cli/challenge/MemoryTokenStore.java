@@ -0,0 +1,54 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process token store, visible only to the JVM running the challenge.
+ */
+public class MemoryTokenStore implements ChallengeTokenStore {
+
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(final String token, final String authorization) {
+        ChallengeTokenStore.checkToken(token);
+        if (authorization == null) {
+            throw new IllegalArgumentException("authorization can not be null");
+        }
+        tokens.put(token, authorization);
+    }
+
+    @Override
+    public Optional<String> get(final String token) {
+        return (token == null) ? Optional.empty() : Optional.ofNullable(tokens.get(token));
+    }
+
+    @Override
+    public void remove(final String token) {
+        if (token != null) {
+            tokens.remove(token);
+        }
+    }
+}
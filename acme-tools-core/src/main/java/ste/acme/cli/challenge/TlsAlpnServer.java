@@ -0,0 +1,408 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.X509ExtendedKeyManager;
+import ste.acme.cli.jfr.ChallengeHitEvent;
+import ste.acme.cli.tls.TlsConnection;
+
+/**
+ * TLS-ALPN-01 responder (RFC 8737): during the TLS handshake the CA asks for
+ * the <code>acme-tls/1</code> application protocol and the domain being
+ * validated as SNI; the responder answers with the validation certificate of
+ * that domain, and the challenge is done once the handshake is completed.
+ *
+ * All connections are handled by a single selector thread driving non-blocking
+ * {@link SSLEngine}s, therefore the responder can take many concurrent
+ * validation connections (CAs validate from multiple vantage points) with a
+ * small footprint. Connections that do not complete the handshake within
+ * {@link #HANDSHAKE_TIMEOUT} are dropped.
+ */
+public class TlsAlpnServer {
+
+    public static final String ACME_TLS_PROTOCOL = "acme-tls/1";
+    public static final Duration HANDSHAKE_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final Logger LOG = Logger.getLogger("ste.acme-tools");
+
+    private final Map<String, Validation> validations = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<InetSocketAddress>> served = new ConcurrentHashMap<>();
+    private final SSLContext context;
+
+    private ServerSocketChannel server = null;
+    private Selector selector = null;
+    private Thread loop = null;
+
+    public TlsAlpnServer() {
+        try {
+            context = SSLContext.getInstance("TLS");
+            context.init(new KeyManager[] { new SNIKeyManager() }, null, null);
+        } catch (GeneralSecurityException x) {
+            throw new IllegalStateException("unable to initialize the TLS context: " + x.getMessage(), x);
+        }
+    }
+
+    /**
+     * Creates a key pair suitable for a validation certificate (acme4j signs
+     * validation certificates with SHA256withRSA). The same keys can be used
+     * for the certificates of all domains.
+     *
+     * @return a new 2048 bits RSA key pair
+     */
+    public static KeyPair createKeyPair() {
+        try {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException x) {
+            throw new IllegalStateException("unable to create the validation keys: " + x.getMessage(), x);
+        }
+    }
+
+    /**
+     * Makes the given validation certificate available for the given domain
+     *
+     * @param domain the domain being validated (as in the SNI)
+     * @param key the private key of the certificate
+     * @param certificate the validation certificate
+     */
+    public void put(final String domain, final PrivateKey key, final X509Certificate certificate) {
+        if (domain == null) {
+            throw new IllegalArgumentException("domain can not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key can not be null");
+        }
+        if (certificate == null) {
+            throw new IllegalArgumentException("certificate can not be null");
+        }
+        validations.put(domain.toLowerCase(Locale.ROOT), new Validation(key, certificate));
+    }
+
+    /**
+     * @param domain the domain
+     */
+    public void remove(final String domain) {
+        if (domain != null) {
+            validations.remove(domain.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Starts listening on the given port.
+     *
+     * @param port the port to listen on; if 0 an available port is picked
+     *
+     * @throws IOException if the server can not be started
+     */
+    public synchronized void start(final int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("challenge server already started");
+        }
+        selector = Selector.open();
+        try {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException x) {
+            close();
+            throw x;
+        }
+
+        loop = new Thread(this::loop, "tls-alpn-responder");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * @return the port the server is listening on (useful if started on port 0)
+     */
+    public synchronized int port() {
+        if (server == null) {
+            throw new IllegalStateException("challenge server not started");
+        }
+        return server.socket().getLocalPort();
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            if (server == null) {
+                return;
+            }
+            thread = loop;
+            loop = null;
+            thread.interrupt();
+            selector.wakeup();
+        }
+        try {
+            thread.join(HANDSHAKE_TIMEOUT.toMillis());
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            close();
+        }
+    }
+
+    /**
+     * Returns a future completed with the address of the client the first
+     * time a validation handshake for the given domain is completed after
+     * this call.
+     *
+     * @param domain the domain
+     *
+     * @return the served event for the domain
+     */
+    public CompletableFuture<InetSocketAddress> served(final String domain) {
+        return served.computeIfAbsent(domain.toLowerCase(Locale.ROOT), (d) -> new CompletableFuture<>());
+    }
+
+    /**
+     * Stops tracking the served event of the given domain
+     *
+     * @param domain the domain
+     */
+    public void forget(final String domain) {
+        served.remove(domain.toLowerCase(Locale.ROOT));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void loop() {
+        final long timeout = HANDSHAKE_TIMEOUT.toNanos();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select(1000);
+            } catch (IOException x) {
+                LOG.log(Level.SEVERE, "tls-alpn responder failure", x);
+                return;
+            }
+
+            for (SelectionKey key: selector.selectedKeys()) {
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                } else {
+                    handshake(key);
+                }
+            }
+            selector.selectedKeys().clear();
+
+            //
+            // drop connections stuck in the handshake
+            //
+            final long now = System.nanoTime();
+            for (SelectionKey key: selector.keys()) {
+                if ((key.attachment() instanceof TlsConnection connection) && (now - connection.started() > timeout)) {
+                    LOG.info(() -> "tls-alpn handshake timed out for " + remote(connection));
+                    key.cancel();
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            final SocketChannel channel = server.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+
+            final SSLEngine engine = context.createSSLEngine();
+            engine.setUseClientMode(false);
+            final SSLParameters parameters = engine.getSSLParameters();
+            parameters.setApplicationProtocols(new String[] { ACME_TLS_PROTOCOL });
+            engine.setSSLParameters(parameters);
+            //
+            // anything but acme-tls/1 makes the handshake fail with a
+            // no_application_protocol alert
+            //
+            engine.setHandshakeApplicationProtocolSelector(
+                (e, protocols) -> protocols.contains(ACME_TLS_PROTOCOL) ? ACME_TLS_PROTOCOL : null
+            );
+
+            channel.register(selector, SelectionKey.OP_READ, new TlsConnection(channel, engine));
+        } catch (IOException x) {
+            LOG.log(Level.SEVERE, "unable to accept a tls-alpn connection", x);
+        }
+    }
+
+    private void handshake(final SelectionKey key) {
+        final TlsConnection connection = (TlsConnection)key.attachment();
+        try {
+            if (!connection.handshake()) {
+                key.interestOps(connection.interestOps());
+                return;
+            }
+            final Optional<String> domain = sni(connection.engine().getSession());
+            final InetSocketAddress remote = remote(connection);
+            LOG.info(() -> "tls-alpn validation for " + domain.orElse("?") + " served to " + remote);
+            domain.map(served::get).ifPresent((event) -> event.complete(remote));
+            ChallengeHitEvent.hit(
+                ChallengeHitEvent.TLS_ALPN_01, domain.orElse(null), remote, 200,
+                System.nanoTime() - connection.started()
+            );
+        } catch (IOException x) {
+            LOG.info(() -> "tls-alpn handshake failed for " + remote(connection) + ": " + x.getMessage());
+            ChallengeHitEvent.hit(
+                ChallengeHitEvent.TLS_ALPN_01, null, remote(connection), 0, System.nanoTime() - connection.started()
+            );
+        }
+        key.cancel();
+        connection.close();
+    }
+
+    private void close() {
+        if (selector != null) {
+            for (SelectionKey key: selector.keys()) {
+                if (key.attachment() instanceof TlsConnection connection) {
+                    connection.close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException x) {
+                // nothing to do
+            }
+        }
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException x) {
+                // nothing to do
+            }
+        }
+        server = null; selector = null;
+    }
+
+    private static InetSocketAddress remote(final TlsConnection connection) {
+        return (InetSocketAddress)connection.channel().socket().getRemoteSocketAddress();
+    }
+
+    private static Optional<String> sni(final SSLSession session) {
+        if (session instanceof ExtendedSSLSession extended) {
+            for (SNIServerName name: extended.getRequestedServerNames()) {
+                if (name instanceof SNIHostName host) {
+                    return Optional.of(host.getAsciiName().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    // -------------------------------------------------------------- Validation
+
+    private record Validation(PrivateKey key, X509Certificate certificate) {}
+
+    // ---------------------------------------------------------- SNIKeyManager
+
+    /**
+     * Picks the validation certificate of the domain requested with SNI; the
+     * domain itself is used as alias.
+     */
+    private class SNIKeyManager extends X509ExtendedKeyManager {
+
+        @Override
+        public String chooseEngineServerAlias(final String keyType, final Principal[] issuers, final SSLEngine engine) {
+            final Optional<String> domain = sni(engine.getHandshakeSession());
+            if (domain.isEmpty()) {
+                return null;
+            }
+            final Validation validation = validations.get(domain.get());
+            if (validation == null || !keyType.equals(validation.key().getAlgorithm())) {
+                return null;
+            }
+            return domain.get();
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(final String alias) {
+            final Validation validation = validations.get(alias);
+            return (validation == null) ? null : new X509Certificate[] { validation.certificate() };
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(final String alias) {
+            final Validation validation = validations.get(alias);
+            return (validation == null) ? null : validation.key();
+        }
+
+        @Override
+        public String chooseServerAlias(final String keyType, final Principal[] issuers, final Socket socket) {
+            return null; // only used with SSLEngine
+        }
+
+        @Override
+        public String[] getServerAliases(final String keyType, final Principal[] issuers) {
+            return validations.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        public String[] getClientAliases(final String keyType, final Principal[] issuers) {
+            return null;
+        }
+
+        @Override
+        public String chooseClientAlias(final String[] keyTypes, final Principal[] issuers, final Socket socket) {
+            return null;
+        }
+    }
+}
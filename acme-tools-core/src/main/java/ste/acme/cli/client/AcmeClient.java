@@ -0,0 +1,813 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.shredzone.acme4j.AccountBuilder;
+import org.shredzone.acme4j.Authorization;
+import org.shredzone.acme4j.Certificate;
+import org.shredzone.acme4j.Login;
+import org.shredzone.acme4j.Order;
+import org.shredzone.acme4j.Session;
+import org.shredzone.acme4j.Status;
+import org.shredzone.acme4j.challenge.Challenge;
+import org.shredzone.acme4j.challenge.Dns01Challenge;
+import org.shredzone.acme4j.challenge.Http01Challenge;
+import org.shredzone.acme4j.challenge.TlsAlpn01Challenge;
+import org.shredzone.acme4j.connector.Resource;
+import org.shredzone.acme4j.exception.AcmeException;
+import org.shredzone.acme4j.toolbox.JSON;
+import ste.acme.cli.challenge.ChallengeSelfCheck;
+import ste.acme.cli.challenge.ChallengeServer;
+import ste.acme.cli.challenge.ChallengeTokenStore;
+import ste.acme.cli.challenge.DnsRecord;
+import ste.acme.cli.challenge.MemoryTokenStore;
+import ste.acme.cli.challenge.TlsAlpnServer;
+import ste.acme.cli.jfr.AuthorizationEvent;
+import ste.acme.cli.jfr.ChallengeTriggerEvent;
+import ste.acme.cli.jfr.OrderEvent;
+import ste.acme.cli.jfr.PollingEvent;
+import ste.acme.cli.metrics.InstrumentedAcmeProvider;
+import ste.acme.cli.metrics.RenewalMetrics;
+import ste.acme.cli.metrics.RenewalTimer;
+import ste.acme.cli.store.ChainSelector;
+
+/**
+ * Renews certificates without blocking the caller, so that a server can renew
+ * its own certificates without spawning the command line tool, and the
+ * command line tool renews them the same way: each {@link #renew(RenewRequest)}
+ * returns at once a future completed with the renewed certificate, or
+ * exceptionally with the error that made the renewal fail; challenges that
+ * could not be satisfied are reported as {@link ChallengeException}.
+ *
+ * The exchanges with the CA run on the executor given to the client. Waiting
+ * for the CA (challenge validation, certificate issuance) does not hold any
+ * thread: each status check is scheduled on the executor after the polling
+ * interval (or the Retry-After given by the CA, if longer). As soon as a
+ * local listener serves a challenge, the CA is about to validate it, so the
+ * authorization is checked at once and then at short intervals, doubling at
+ * each round up to the polling interval. The only blocking waits are the
+ * self-check of the HTTP-01 tokens and the propagation of DNS records, which
+ * is up to the {@link ste.acme.cli.challenge.DnsProvider}; both run on the
+ * executor too.
+ *
+ * The account must already exist. Renewals are timed and added to
+ * {@link #metrics()}; the progress is told to the {@link RenewListener} of
+ * the request.
+ */
+public class AcmeClient {
+
+    private static final Logger LOG = Logger.getLogger("ste.acme-tools");
+
+    private static final Duration SHORT_POLL = Duration.ofMillis(100);
+
+    private final Executor executor;
+    private final RenewalMetrics metrics;
+    private final DirectoryCache directories;
+
+    /**
+     * @param executor the executor the renewals run on
+     */
+    public AcmeClient(final Executor executor) {
+        this(executor, new RenewalMetrics());
+    }
+
+    /**
+     * @param executor the executor the renewals run on
+     * @param metrics where the timings of the renewals and the exchanges
+     *        with the CA are recorded
+     */
+    public AcmeClient(final Executor executor, final RenewalMetrics metrics) {
+        this(executor, metrics, new DirectoryCache());
+    }
+
+    /**
+     * @param executor the executor the renewals run on
+     * @param metrics where the timings of the renewals and the exchanges
+     *        with the CA are recorded
+     * @param directories the directories of the CAs, possibly shared with
+     *        other clients
+     */
+    public AcmeClient(final Executor executor, final RenewalMetrics metrics, final DirectoryCache directories) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor can not be null");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics can not be null");
+        }
+        if (directories == null) {
+            throw new IllegalArgumentException("directories can not be null");
+        }
+        this.executor = executor;
+        this.metrics = metrics;
+        this.directories = directories;
+    }
+
+    /**
+     * @return the metrics of the renewals of this client
+     */
+    public RenewalMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @param endpoint the ACME CA endpoint or URI (e.g. acme://letsencrypt.org)
+     *
+     * @return a session to the given CA whose exchanges are recorded in the
+     *         metrics and whose directory is read once per its expiration
+     */
+    public Session session(final String endpoint) {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("endpoint can not be null");
+        }
+        final Session session = InstrumentedAcmeProvider.session(new Session(endpoint), metrics.requests());
+        final JSON directory = directories.directory(session.getServerUri());
+        if (directory != null) {
+            ((InstrumentedAcmeProvider)session.provider()).resources(directory);
+        }
+        return directories.session(session);
+    }
+
+    /**
+     * Starts the renewal of a certificate
+     *
+     * @param request what to renew and how
+     *
+     * @return the future completed with the renewed certificate
+     */
+    public CompletableFuture<RenewResult> renew(final RenewRequest request) {
+        if (request == null) {
+            throw new IllegalArgumentException("request can not be null");
+        }
+        if (request.tokenStore() != null && request.dnsProvider() != null) {
+            throw new IllegalArgumentException("either a token store or a DNS provider can be given, not both");
+        }
+        if (request.dnsProvider() != null && request.port() != null) {
+            throw new IllegalArgumentException("either a port or a DNS provider can be given, not both");
+        }
+        if (request.tlsAlpn()) {
+            if (request.port() == null) {
+                throw new IllegalArgumentException("a port must be given for the TLS-ALPN challenge");
+            }
+            if (request.tokenStore() != null || request.dnsProvider() != null) {
+                throw new IllegalArgumentException(
+                    "the TLS-ALPN challenge can not be given a token store or a DNS provider"
+                );
+            }
+        }
+        return new Renewal(request).start();
+    }
+
+    // ----------------------------------------------------------------- Renewal
+
+    /**
+     * The state of a running renewal; its steps run one after the other on
+     * the executor, never concurrently
+     */
+    private class Renewal {
+        private final RenewRequest request;
+        private final RenewalTimer timer;
+        private final Map<Authorization, Challenge> challenges = new LinkedHashMap<>();
+        private final Map<Authorization, CompletableFuture<InetSocketAddress>> served = new LinkedHashMap<>();
+        private final List<String> tokens = new ArrayList<>(); // as published, triggering updates the challenge
+        private final List<String> domains = new ArrayList<>(); // served by TLS-ALPN, polling updates the authorization
+        private final List<DnsRecord> records = new ArrayList<>();
+
+        private ChallengeTokenStore store = null;
+        private ChallengeServer http = null;
+        private TlsAlpnServer tls = null;
+        private Order order;
+
+        Renewal(final RenewRequest request) {
+            this.request = request;
+            this.timer = new RenewalTimer(request.domain());
+        }
+
+        CompletableFuture<RenewResult> start() {
+            return async(this::order, executor)
+                .thenCompose(this::authorize)
+                .thenCompose((v) -> async(this::finalizeOrder, executor))
+                .thenCompose(this::issued)
+                .thenCompose((v) -> async(this::download, executor))
+                .whenComplete((result, error) -> {
+                    timer.stop(result != null);
+                    metrics.add(timer);
+                    progress(
+                        "Renewal of " + request.domain() + " " + ((result != null) ? "completed" : "failed") +
+                        " in " + RenewalTimer.format(timer.total()) + " (" + timer.summary() + ")"
+                    );
+                    try {
+                        request.listener().completed(timer);
+                    } catch (RuntimeException x) {
+                        LOG.log(Level.WARNING, "renew listener failed: " + x.getMessage(), x);
+                    }
+                });
+        }
+
+        /**
+         * Reads the directory, logs in, creates the order and checks which
+         * authorizations are still pending
+         */
+        private List<Authorization> order() throws AcmeException, IOException {
+            final Session session = session(request.endpoint());
+
+            final URL newOrder;
+            try (RenewalTimer.Phase phase = timer.start(RenewalTimer.DIRECTORY)) {
+                newOrder = session.resourceUrl(Resource.NEW_ORDER);
+            }
+            progress("Renewing SSL certificates for domain " + request.domain() + " from " + newOrder);
+            if (request.domains().size() > 1) {
+                progress("Ordering a certificate for " + String.join(", ", request.domains()));
+            }
+
+            final Login login;
+            try (RenewalTimer.Phase phase = timer.start(RenewalTimer.LOGIN)) {
+                login = new AccountBuilder()
+                    .onlyExisting()
+                    .agreeToTermsOfService()
+                    .useKeyPair(request.accountKeys())
+                    .createLogin(session);
+            }
+
+            final OrderEvent event = new OrderEvent();
+            event.begin();
+            try (RenewalTimer.Phase phase = timer.start(RenewalTimer.NEW_ORDER)) {
+                order = login.newOrder().domains(request.domains()).create();
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.domain = request.domain();
+                    event.endpoint = String.valueOf(newOrder);
+                    event.status = (order == null) ? "" : String.valueOf(order.getStatus());
+                    event.commit();
+                }
+            }
+
+            final List<Authorization> pending = new ArrayList<>();
+            for (Authorization auth: order.getAuthorizations()) {
+                try (RenewalTimer.Phase phase = timer.start(RenewalTimer.AUTHORIZATION)) {
+                    if (auth.getStatus() == Status.PENDING) {
+                        pending.add(auth);
+                    }
+                }
+            }
+            return pending;
+        }
+
+        /**
+         * Publishes the challenges of the pending authorizations, triggers
+         * them all and waits for all of them to be validated; whatever goes
+         * wrong is reported as a {@link ChallengeException}
+         */
+        private CompletableFuture<Void> authorize(final List<Authorization> pending) {
+            if (pending.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            final CompletableFuture<Void> authorized = async(() -> {
+                publish(pending);
+                trigger();
+                return null;
+            }, executor).thenCompose((v) -> {
+                final List<CompletableFuture<Void>> validations = new ArrayList<>();
+                for (Authorization auth: challenges.keySet()) {
+                    validations.add(validated(auth));
+                }
+                return CompletableFuture.allOf(validations.toArray(new CompletableFuture<?>[0]));
+            });
+
+            return authorized.handleAsync((v, error) -> {
+                unpublish();
+                if (error != null) {
+                    final Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+                    final ChallengeException x = (cause instanceof ChallengeException challenge)
+                                               ? challenge : new ChallengeException(cause.getMessage(), cause);
+                    progress("Unsuccessful challenge: " + x.getMessage());
+                    throw new CompletionException(x);
+                }
+                return null;
+            }, executor);
+        }
+
+        private void publish(final List<Authorization> pending) throws Exception {
+            if (request.dnsProvider() != null) {
+                publishRecords(pending);
+            } else if (request.tlsAlpn()) {
+                serveCertificates(pending);
+            } else if (request.tokenStore() != null || request.port() != null) {
+                publishTokens(pending);
+            } else {
+                throw new ChallengeException(
+                    "no token store or DNS provider to satisfy the challenge for " +
+                    pending.get(0).getIdentifier().getDomain()
+                );
+            }
+        }
+
+        /**
+         * Publishes the HTTP-01 tokens in the token store and starts the local
+         * listener if a port is given
+         */
+        private void publishTokens(final List<Authorization> pending) throws Exception {
+            final Map<Authorization, Http01Challenge> offered = new LinkedHashMap<>();
+            for (Authorization auth: pending) {
+                offered.put(auth, challenge(auth, Http01Challenge.class, "http"));
+            }
+
+            progress("HTTP challenge");
+
+            store = (request.tokenStore() != null) ? request.tokenStore() : new MemoryTokenStore();
+            for (Http01Challenge challenge: offered.values()) {
+                store.put(challenge.getToken(), challenge.getAuthorization());
+                tokens.add(challenge.getToken());
+            }
+            if (request.port() != null) {
+                http = new ChallengeServer(store);
+                http.start(request.port());
+                progress("Listener started on port " + http.port()); // if the port was 0 an available port has been randomly picked
+            }
+
+            progress("Acme-tools is now ready to respond to the CA challenge. The CA server will try");
+            for (Map.Entry<Authorization, Http01Challenge> challenge: offered.entrySet()) {
+                progress(
+                    "to connect to the URL http://" + challenge.getKey().getIdentifier().getDomain() +
+                    ChallengeServer.CHALLENGE_PATH + challenge.getValue().getToken()
+                );
+            }
+            progress("Please make sure that the above URL is accessible from internet.");
+
+            if (request.selfCheck() != null) {
+                for (Map.Entry<Authorization, Http01Challenge> challenge: offered.entrySet()) {
+                    selfCheck(challenge.getKey().getIdentifier().getDomain(), challenge.getValue());
+                }
+            }
+
+            //
+            // start tracking hits after the self-check and before the CA
+            // can fetch the tokens
+            //
+            for (Map.Entry<Authorization, Http01Challenge> challenge: offered.entrySet()) {
+                served.put(
+                    challenge.getKey(),
+                    (http == null) ? new CompletableFuture<>() : http.served(challenge.getValue().getToken())
+                );
+            }
+        }
+
+        /**
+         * Serves the validation certificates of all domains by SNI with a
+         * single TLS-ALPN-01 listener
+         */
+        private void serveCertificates(final List<Authorization> pending) throws Exception {
+            final Map<Authorization, TlsAlpn01Challenge> offered = new LinkedHashMap<>();
+            for (Authorization auth: pending) {
+                offered.put(auth, challenge(auth, TlsAlpn01Challenge.class, "tls-alpn"));
+            }
+
+            progress("TLS-ALPN challenge");
+
+            tls = new TlsAlpnServer();
+            final KeyPair keys = TlsAlpnServer.createKeyPair();
+            for (Map.Entry<Authorization, TlsAlpn01Challenge> challenge: offered.entrySet()) {
+                final String domain = challenge.getKey().getIdentifier().getDomain();
+                tls.put(
+                    domain, keys.getPrivate(),
+                    challenge.getValue().createCertificate(keys, challenge.getKey().getIdentifier())
+                );
+                domains.add(domain);
+            }
+
+            tls.start(request.port());
+            progress("Listener started on port " + tls.port()); // if the port was 0 an available port has been randomly picked
+            progress("Acme-tools is now ready to respond to the CA challenge. The CA server will try");
+            progress("to connect with TLS-ALPN to port 443 of " + String.join(", ", domains));
+            progress("Please make sure that the above port is forwarded to the listener.");
+
+            for (Authorization auth: offered.keySet()) {
+                served.put(auth, tls.served(auth.getIdentifier().getDomain()));
+            }
+        }
+
+        /**
+         * Publishes the DNS-01 records of all domains in a single update and
+         * waits once for their propagation
+         */
+        private void publishRecords(final List<Authorization> pending) throws Exception {
+            for (Authorization auth: pending) {
+                final Dns01Challenge challenge = challenge(auth, Dns01Challenge.class, "dns");
+                records.add(new DnsRecord(Dns01Challenge.toRRName(auth.getIdentifier()), challenge.getDigest()));
+            }
+
+            progress("DNS challenge");
+
+            request.dnsProvider().publish(records);
+            for (DnsRecord record: records) {
+                progress(record.name() + " TXT \"" + record.value() + "\"");
+            }
+
+            progress("Waiting for the challenge records to propagate");
+            try (RenewalTimer.Phase phase = timer.start(RenewalTimer.DNS_PROPAGATION)) {
+                if (!request.dnsProvider().awaitPropagation(records, request.timeout())) {
+                    throw new ChallengeException("challenge records not propagated");
+                }
+            }
+        }
+
+        /**
+         * @return the challenge of the given type offered by the CA for the
+         *         given authorization
+         *
+         * @throws ChallengeException if the CA does not offer it
+         */
+        private <T extends Challenge> T challenge(
+            final Authorization auth, final Class<T> type, final String name
+        ) throws ChallengeException {
+            final String domain = auth.getIdentifier().getDomain();
+            progress("Authorizing " + domain);
+            final T challenge = auth.findChallenge(type).orElseThrow(
+                () -> new ChallengeException("no " + name + " challenge offered for " + domain)
+            );
+            challenges.put(auth, challenge);
+            return challenge;
+        }
+
+        private void selfCheck(final String domain, final Http01Challenge challenge) throws ChallengeException {
+            try (RenewalTimer.Phase phase = timer.start(RenewalTimer.SELF_CHECK, domain)) {
+                final ChallengeSelfCheck.Result result = request.selfCheck().check(
+                    domain, challenge.getToken(), challenge.getAuthorization()
+                );
+                if (!result.passed()) {
+                    throw new ChallengeException("self-check failed, " + result.message());
+                }
+                progress("Self-check passed, " + result.message() + (result.cached() ? " (cached)" : ""));
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new ChallengeException("self-check interrupted", x);
+            }
+        }
+
+        private void trigger() throws AcmeException {
+            for (Map.Entry<Authorization, Challenge> challenge: challenges.entrySet()) {
+                final ChallengeTriggerEvent event = new ChallengeTriggerEvent();
+                event.begin();
+                try {
+                    challenge.getValue().trigger();
+                } finally {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.domain = challenge.getKey().getIdentifier().getDomain();
+                        event.type = challenge.getValue().getType();
+                        event.commit();
+                    }
+                }
+            }
+        }
+
+        private void unpublish() {
+            if (http != null) {
+                http.stop();
+                tokens.forEach(http::forget);
+            }
+            if (tls != null) {
+                tls.stop();
+                domains.forEach(tls::forget);
+            }
+            for (String token: tokens) {
+                try {
+                    store.remove(token);
+                } catch (Exception x) {
+                    LOG.log(Level.SEVERE, "unable to remove the challenge token " + token + ": " + x.getMessage(), x);
+                }
+            }
+            if (!records.isEmpty()) {
+                try {
+                    request.dnsProvider().remove(records);
+                } catch (Exception x) {
+                    LOG.log(Level.SEVERE, "unable to remove the challenge records: " + x.getMessage(), x);
+                }
+            }
+        }
+
+        private CompletableFuture<Void> validated(final Authorization auth) {
+            final String domain = auth.getIdentifier().getDomain();
+            final CompletableFuture<InetSocketAddress> hit = served.computeIfAbsent(
+                auth, (a) -> new CompletableFuture<>() // nobody tells when the DNS records are read
+            );
+
+            final RenewalTimer.Phase phase = timer.start(RenewalTimer.CHALLENGE_WAIT, domain);
+            final AuthorizationEvent event = new AuthorizationEvent();
+            event.begin();
+            final Poll poll = new Poll(
+                PollingEvent.AUTHORIZATION, domain, auth::fetch, auth::getStatus, hit, request.timeout(),
+                "Authorization status still processing"
+            );
+            return poll.start()
+                .whenComplete((status, error) -> {
+                    phase.close();
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.domain = domain;
+                        event.status = String.valueOf(status);
+                        event.polls = poll.polls;
+                        event.commit();
+                    }
+                })
+                .thenApply((status) -> {
+                    if (status != Status.VALID) {
+                        final String timeout = request.timeout().toString().substring(2);
+                        throw new CompletionException(new ChallengeException(
+                            (!hit.isDone() && status == Status.PENDING && (http != null || tls != null))
+                            ? "no challenge received for " + domain + " in " + timeout
+                            : "challenge for " + domain + " not validated in " + timeout + " (" + status + ")"
+                        ));
+                    }
+                    progress("Challenge passed successfully for " + domain);
+                    return null;
+                });
+        }
+
+        private Void finalizeOrder() throws AcmeException, IOException {
+            progress("Finalizing the order with the CA");
+            try (RenewalTimer.Phase phase = timer.start(RenewalTimer.FINALIZE)) {
+                order.execute(request.domainKeys());
+            }
+            return null;
+        }
+
+        private CompletableFuture<Void> issued(final Void v) {
+            final RenewalTimer.Phase phase = timer.start(RenewalTimer.ORDER_POLLING);
+            return new Poll(
+                PollingEvent.ORDER, request.domain(), order::fetch, order::getStatus, new CompletableFuture<>(),
+                request.orderTimeout(), "Order still not VALID"
+            ).start()
+                .whenComplete((status, error) -> phase.close())
+                .thenApply((status) -> {
+                    if (status != Status.VALID) {
+                        throw new CompletionException(new AcmeException(
+                            "certificate of " + request.domain() + " not issued" +
+                            (Poll.POLLED.contains(status) ? " in " + request.orderTimeout().toString().substring(2) : "") +
+                            " (" + status + ")"
+                        ));
+                    }
+                    return null;
+                });
+        }
+
+        private RenewResult download() throws Exception {
+            progress("Order processed, getting the certificate");
+            Certificate certificate;
+            try (RenewalTimer.Phase phase = timer.start(RenewalTimer.DOWNLOAD)) {
+                certificate = order.getCertificate();
+                certificate.download();
+                if (request.preferredChain() != null) {
+                    certificate = preferredChain(new ChainSelector(request.preferredChain()), certificate);
+                }
+            }
+
+            if (request.output() != null) {
+                write(request.output(), certificate);
+            }
+
+            return new RenewResult(request.domain(), certificate, timer);
+        }
+
+        /**
+         * @return the certificate with the preferred chain among the default
+         *         and the alternate ones offered by the CA; the given
+         *         certificate if no chain is issued by the preferred issuer
+         */
+        private Certificate preferredChain(final ChainSelector selector, final Certificate certificate) {
+            final List<Certificate> candidates = new ArrayList<>();
+            candidates.add(certificate);
+            candidates.addAll(certificate.getAlternateCertificates());
+
+            final List<List<X509Certificate>> chains = new ArrayList<>();
+            for (Certificate candidate: candidates) {
+                chains.add(candidate.getCertificateChain());
+            }
+
+            final int selected = selector.select(chains);
+            if (selected < 0) {
+                progress(
+                    "No chain issued by " + selector.preference() + " among the " + chains.size() +
+                    " offered, taking the default chain issued by " + ChainSelector.issuer(chains.get(0))
+                );
+                return certificate;
+            }
+
+            final List<X509Certificate> chain = chains.get(selected);
+            progress(
+                "Taking the " + ((selected == 0) ? "default chain" : "alternate chain " + candidates.get(selected).getLocation()) +
+                " (" + (selected + 1) + " of " + chains.size() + ") issued by " + ChainSelector.issuer(chain) +
+                ", " + chain.size() + " certificates, " + ChainSelector.size(chain) + " bytes"
+            );
+            return candidates.get(selected);
+        }
+
+        /**
+         * Writes the certificate and, if requested, saves its OCSP response
+         */
+        private void write(final CertificateOutput output, final Certificate certificate) throws Exception {
+            progress("Writing the certificate to " + output.description());
+            try (RenewalTimer.Phase phase = timer.start(RenewalTimer.WRITE)) {
+                output.write(request.domain(), certificate);
+            }
+
+            if (request.ocsp() != null) {
+                //
+                // the certificate is renewed anyway, servers can still fetch
+                // the OCSP response themselves
+                //
+                final Path file = output.ocspFile(request.domain());
+                try (RenewalTimer.Phase phase = timer.start(RenewalTimer.OCSP)) {
+                    progress(request.ocsp().refresh(file, certificate.getCertificateChain(), true).summary());
+                } catch (IOException x) {
+                    progress("Unable to save the OCSP response in " + describe(file) + ": " + x.getMessage());
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            progress("Congratulations! Your renewed certificated is ready.");
+        }
+
+        private void progress(final String message) {
+            try {
+                request.listener().progress(request.domain(), message);
+            } catch (RuntimeException x) {
+                LOG.log(Level.WARNING, "renew listener failed: " + x.getMessage(), x);
+            }
+        }
+
+        // ------------------------------------------------------------ Poll
+
+        /**
+         * Fetches the status of a resource until it is no more pending or
+         * processing, or the given timeout expires. Each fetch is scheduled on the
+         * executor after the polling interval or the Retry-After of the
+         * previous one; once the given hit is completed (e.g. the local
+         * listener served the challenge), the fetches follow at short
+         * intervals, doubling at each round up to the polling interval.
+         */
+        private class Poll {
+            static final Set<Status> POLLED = EnumSet.of(Status.PENDING, Status.PROCESSING, Status.READY);
+
+            private final String resource;
+            private final String domain;
+            private final Fetch fetch;
+            private final Supplier<Status> status;
+            private final CompletableFuture<?> hit;
+            private final String message;
+            private final long deadline;
+
+            private long shortPoll = SHORT_POLL.toNanos();
+            private boolean hitTold = false;
+            private int polls = 0;
+
+            Poll(
+                final String resource, final String domain, final Fetch fetch, final Supplier<Status> status,
+                final CompletableFuture<?> hit, final Duration timeout, final String message
+            ) {
+                this.resource = resource;
+                this.domain = domain;
+                this.fetch = fetch;
+                this.status = status;
+                this.hit = hit;
+                this.message = message;
+                this.deadline = System.nanoTime() + timeout.toNanos();
+            }
+
+            /**
+             * @return the future completed with the last status fetched
+             */
+            CompletableFuture<Status> start() {
+                return next(Optional.empty());
+            }
+
+            private CompletableFuture<Status> next(final Optional<Instant> retryAfter) {
+                if (hit.isDone() && !hitTold) {
+                    hitTold = true;
+                    progress("Challenge token served to " + hit.join());
+                }
+
+                final long left = deadline - System.nanoTime();
+                if (!POLLED.contains(status.get()) || left <= 0) {
+                    return CompletableFuture.completedFuture(status.get());
+                }
+                progress(message);
+
+                final long interval = request.pollingInterval().toNanos();
+                final long after = retryAfter.map((instant) -> Duration.between(Instant.now(), instant).toNanos()).orElse(0L);
+                final CompletableFuture<?> wait;
+                if (hit.isDone()) {
+                    wait = delay(Math.min(Math.max(shortPoll, after), left));
+                    shortPoll = Math.min(shortPoll * 2, interval);
+                } else {
+                    wait = CompletableFuture.anyOf(hit, delay(Math.min(Math.max(interval, after), left)));
+                }
+                return wait
+                    .thenCompose((v) -> async(this::fetch, executor))
+                    .thenCompose(this::next);
+            }
+
+            private Optional<Instant> fetch() throws AcmeException {
+                final PollingEvent event = new PollingEvent();
+                event.begin();
+                try {
+                    return fetch.fetch();
+                } finally {
+                    event.end();
+                    ++polls;
+                    if (event.shouldCommit()) {
+                        event.resource = resource;
+                        event.domain = domain;
+                        event.iteration = polls;
+                        event.status = String.valueOf(status.get());
+                        event.commit();
+                    }
+                }
+            }
+
+            private CompletableFuture<Void> delay(final long nanos) {
+                return CompletableFuture.runAsync(
+                    () -> {}, CompletableFuture.delayedExecutor(nanos, TimeUnit.NANOSECONDS, executor)
+                );
+            }
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static <T> CompletableFuture<T> async(final Step<T> step, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return step.run();
+            } catch (RuntimeException x) {
+                throw x;
+            } catch (Exception x) {
+                throw new CompletionException(x);
+            }
+        }, executor);
+    }
+
+    /**
+     * @return the absolute path of a local file, its URI otherwise
+     */
+    private static String describe(final Path path) {
+        return (path.getFileSystem() == FileSystems.getDefault())
+             ? path.toAbsolutePath().toString()
+             : path.toUri().toString();
+    }
+
+    // ------------------------------------------------------------------- Steps
+
+    @FunctionalInterface
+    private interface Step<T> {
+        T run() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface Fetch {
+        Optional<Instant> fetch() throws AcmeException;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.client;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import org.shredzone.acme4j.Certificate;
+
+/**
+ * Where a renewed certificate is written (e.g. a PEM file, a keystore or a
+ * certificate store); given to a {@link RenewRequest}, it is written by the
+ * {@link AcmeClient} as last step of the renewal.
+ */
+public interface CertificateOutput {
+
+    /**
+     * @return where the certificate is written, as shown to the user
+     */
+    String description();
+
+    /**
+     * @param domain the domain renewed
+     * @param certificate the certificate issued by the CA, with the
+     *        preferred chain if one was requested
+     *
+     * @throws IOException if the certificate can not be written
+     * @throws GeneralSecurityException if the certificate or the keys can
+     *         not be encoded (e.g. in a keystore)
+     */
+    void write(String domain, Certificate certificate) throws IOException, GeneralSecurityException;
+
+    /**
+     * @param domain the domain renewed
+     *
+     * @return where the OCSP response of the certificate of the given domain
+     *         is saved
+     */
+    Path ocspFile(String domain);
+}
@@ -0,0 +1,47 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.client;
+
+import org.shredzone.acme4j.exception.AcmeException;
+
+/**
+ * The challenges of a renewal could not be satisfied: the challenge type is
+ * not offered, the tokens or records could not be published, the self-check
+ * failed or the CA did not validate the challenge in time. The cause, if
+ * any, is the error that made the challenge fail.
+ */
+public class ChallengeException extends AcmeException {
+
+    /**
+     * @param message why the challenge failed
+     */
+    public ChallengeException(final String message) {
+        super(message);
+    }
+
+    /**
+     * @param message why the challenge failed
+     * @param cause the error that made the challenge fail
+     */
+    public ChallengeException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.client;
+
+import java.net.URI;
+import java.net.URL;
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.shredzone.acme4j.Login;
+import org.shredzone.acme4j.Session;
+import org.shredzone.acme4j.challenge.Challenge;
+import org.shredzone.acme4j.connector.Connection;
+import org.shredzone.acme4j.connector.NetworkSettings;
+import org.shredzone.acme4j.exception.AcmeException;
+import org.shredzone.acme4j.provider.AcmeProvider;
+import org.shredzone.acme4j.toolbox.JSON;
+
+/**
+ * Keeps the directories of the CAs across sessions, so that a process
+ * running many renewals (e.g. a batch or a long running server) fetches the
+ * directory of a CA once per its expiration instead of once per session.
+ *
+ * acme4j caches the directory in the {@link Session} until the expiration
+ * given by the CA; a new session asks its provider again. The sessions
+ * returned by {@link #session(Session)} answer from this cache while the
+ * directory read by a previous session is not expired. Directories without
+ * an expiration are never cached.
+ */
+public class DirectoryCache {
+
+    private final Clock clock;
+    private final Map<URI, Entry> directories = new ConcurrentHashMap<>();
+
+    private record Entry(JSON directory, ZonedDateTime expires, ZonedDateTime lastModified) {}
+
+    public DirectoryCache() {
+        this(Clock.systemUTC());
+    }
+
+    /**
+     * @param clock the clock telling if a directory is expired
+     */
+    public DirectoryCache(final Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock can not be null");
+        }
+        this.clock = clock;
+    }
+
+    /**
+     * @param session a new session
+     *
+     * @return a session to the same CA of the given one whose directory is
+     *         read from this cache when possible
+     */
+    public Session session(final Session session) {
+        if (session == null) {
+            throw new IllegalArgumentException("session can not be null");
+        }
+        return new Session(
+            session.getServerUri(), new CachingProvider(session.provider(), session.getServerUri())
+        );
+    }
+
+    /**
+     * @param serverUri the URI of a CA
+     *
+     * @return the cached directory of the given CA; null if not cached or
+     *         expired
+     */
+    public JSON directory(final URI serverUri) {
+        final Entry entry = fresh(serverUri);
+        return (entry == null) ? null : entry.directory();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Entry fresh(final URI serverUri) {
+        final Entry entry = (serverUri == null) ? null : directories.get(serverUri);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.expires().isAfter(ZonedDateTime.now(clock))) {
+            directories.remove(serverUri, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    // --------------------------------------------------------- CachingProvider
+
+    private class CachingProvider implements AcmeProvider {
+
+        private final AcmeProvider provider;
+        private final URI serverUri;
+
+        CachingProvider(final AcmeProvider provider, final URI serverUri) {
+            this.provider = provider;
+            this.serverUri = serverUri;
+        }
+
+        /**
+         * As for InstrumentedAcmeProvider, the server URI the provider has
+         * been created for is not given to the decorated provider again
+         */
+        @Override
+        public boolean accepts(final URI uri) {
+            return (uri != null && uri.equals(serverUri)) || provider.accepts(uri);
+        }
+
+        @Override
+        public URL resolve(final URI uri) {
+            return provider.resolve(uri);
+        }
+
+        @Override
+        public Connection connect(final URI uri, final NetworkSettings settings) {
+            return provider.connect(uri, settings);
+        }
+
+        @Override
+        public JSON directory(final Session session, final URI uri) throws AcmeException {
+            if (!session.hasDirectory()) {
+                final Entry entry = fresh(uri);
+                if (entry != null) {
+                    //
+                    // the session takes the expiration of the cached
+                    // directory, so that it asks again only once expired
+                    //
+                    session.setDirectoryExpires(entry.expires());
+                    session.setDirectoryLastModified(entry.lastModified());
+                    return entry.directory();
+                }
+            }
+
+            final JSON directory = provider.directory(session, uri);
+            if (directory != null && session.getDirectoryExpires() != null) {
+                directories.put(
+                    uri, new Entry(directory, session.getDirectoryExpires(), session.getDirectoryLastModified())
+                );
+            }
+            return directory;
+        }
+
+        @Override
+        public Challenge createChallenge(final Login login, final JSON data) {
+            return provider.createChallenge(login, data);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.client;
+
+import ste.acme.cli.metrics.RenewalTimer;
+
+/**
+ * Told about the progress of the renewals of an {@link AcmeClient}; called
+ * from the threads of the executor of the client, so implementations must be
+ * thread safe and should return quickly.
+ */
+@FunctionalInterface
+public interface RenewListener {
+
+    /**
+     * @param domain the domain being renewed
+     * @param message what is going on (e.g. "Finalizing the order with the CA")
+     */
+    void progress(String domain, String message);
+
+    /**
+     * Called once a renewal is over, successfully or not, after its timings
+     * have been added to the metrics of the client
+     *
+     * @param timer the timings of the renewal
+     */
+    default void completed(final RenewalTimer timer) {
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.client;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import ste.acme.cli.challenge.ChallengeSelfCheck;
+import ste.acme.cli.challenge.ChallengeTokenStore;
+import ste.acme.cli.challenge.DnsProvider;
+import ste.acme.cli.ocsp.OcspCache;
+
+/**
+ * What to renew and how: the CA, the domain and its keys are required; the
+ * certificate is ordered for the domain and for the other
+ * {@link #domains(Collection) domains} it must cover, if any. The challenges
+ * are satisfied in one of these ways:
+ *
+ * <ul>
+ *   <li>HTTP-01 tokens published in a {@link ChallengeTokenStore} - e.g. one
+ *       the challenge responders of a cluster or the embedding server serve
+ *       from</li>
+ *   <li>HTTP-01 tokens served by a local listener on the given
+ *       {@link #port(Integer) port} - from the token store if given, from
+ *       memory otherwise</li>
+ *   <li>TLS-ALPN-01 certificates served by a local listener on the given
+ *       port - if {@link #tlsAlpn(boolean) tlsAlpn} is set</li>
+ *   <li>DNS-01 records published with a {@link DnsProvider}</li>
+ * </ul>
+ *
+ * If an {@link #output(CertificateOutput) output} is given, the renewed
+ * certificate is written there and, if an {@link #ocsp(OcspCache) OCSP cache}
+ * is given too, its OCSP response is saved next to it.
+ */
+public class RenewRequest {
+
+    public static final Duration DEFAULT_POLLING_INTERVAL = Duration.ofSeconds(3);
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_ORDER_TIMEOUT = Duration.ofMinutes(10);
+
+    //
+    // host names, possibly wildcards; the last label can not be all digits
+    // so that IPv4 addresses are not taken for names
+    //
+    private static final Pattern DOMAIN_PATTERN = Pattern.compile(
+        "(\\*\\.)?([a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?\\.)*(?![0-9]+$)[a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?",
+        Pattern.CASE_INSENSITIVE
+    );
+
+    private final String endpoint;
+    private final String domain;
+    private final Keys accountKeys;
+    private final Keys domainKeys;
+    private List<String> domains;
+
+    private ChallengeTokenStore tokenStore = null;
+    private DnsProvider dnsProvider = null;
+    private Integer port = null;
+    private boolean tlsAlpn = false;
+    private ChallengeSelfCheck selfCheck = null;
+    private Duration pollingInterval = DEFAULT_POLLING_INTERVAL;
+    private Duration timeout = DEFAULT_TIMEOUT;
+    private Duration orderTimeout = DEFAULT_ORDER_TIMEOUT;
+    private String preferredChain = null;
+    private CertificateOutput output = null;
+    private OcspCache ocsp = null;
+    private RenewListener listener = (domain, message) -> {};
+
+    /**
+     * Gives the keys of the account or of the domain when the renewal needs
+     * them, e.g. reading them from a file only once the CA has been reached
+     */
+    @FunctionalInterface
+    public interface Keys {
+        /**
+         * @return the keys
+         *
+         * @throws IOException if the keys can not be read
+         */
+        KeyPair get() throws IOException;
+    }
+
+    /**
+     * @param endpoint the ACME CA endpoint or URI (e.g. acme://letsencrypt.org)
+     * @param domain the domain to renew the certificate for
+     * @param accountKeys the keys of the existing account with the CA
+     * @param domainKeys the keys of the domain
+     */
+    public RenewRequest(
+        final String endpoint, final String domain, final KeyPair accountKeys, final KeyPair domainKeys
+    ) {
+        this(endpoint, domain, keys(accountKeys, "accountKeys"), keys(domainKeys, "domainKeys"));
+    }
+
+    /**
+     * @param endpoint the ACME CA endpoint or URI (e.g. acme://letsencrypt.org)
+     * @param domain the domain to renew the certificate for
+     * @param accountKeys gives the keys of the existing account with the CA
+     *        when logging in
+     * @param domainKeys gives the keys of the domain when finalizing the
+     *        order
+     */
+    public RenewRequest(
+        final String endpoint, final String domain, final Keys accountKeys, final Keys domainKeys
+    ) {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("endpoint can not be null");
+        }
+        if (domain == null) {
+            throw new IllegalArgumentException("domain can not be null");
+        }
+        if (accountKeys == null) {
+            throw new IllegalArgumentException("accountKeys can not be null");
+        }
+        if (domainKeys == null) {
+            throw new IllegalArgumentException("domainKeys can not be null");
+        }
+        this.endpoint = endpoint;
+        this.domain = domain;
+        this.domains = List.of(domain);
+        this.accountKeys = accountKeys;
+        this.domainKeys = domainKeys;
+    }
+
+    /**
+     * @return the ACME CA endpoint or URI
+     */
+    public String endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the domain to renew the certificate for
+     */
+    public String domain() {
+        return domain;
+    }
+
+    /**
+     * @return the domains the certificate is ordered for, the domain first
+     */
+    public List<String> domains() {
+        return domains;
+    }
+
+    /**
+     * @param domains the domains the certificate is ordered for (e.g. all the
+     *        DNS names of the certificate being renewed); they must include
+     *        the domain and the others must be
+     *        {@link #orderable(String) orderable}
+     */
+    public void domains(final Collection<String> domains) {
+        if (domains == null) {
+            throw new IllegalArgumentException("domains can not be null");
+        }
+        if (!domains.contains(domain)) {
+            throw new IllegalArgumentException("domains must include " + domain);
+        }
+        final List<String> ordered = new ArrayList<>(List.of(domain));
+        for (String name: domains) {
+            if (ordered.contains(name)) {
+                continue;
+            }
+            if (!orderable(name)) {
+                throw new IllegalArgumentException(name + " can not be ordered");
+            }
+            ordered.add(name);
+        }
+        this.domains = List.copyOf(ordered);
+    }
+
+    /**
+     * @param name a name of a certificate
+     *
+     * @return true if a certificate can be ordered for the given name: host
+     *         names and wildcards are, IP addresses and anything else are not
+     */
+    public static boolean orderable(final String name) {
+        return (name != null) && (name.length() <= 253) && DOMAIN_PATTERN.matcher(name).matches();
+    }
+
+    /**
+     * @return the keys of the account
+     *
+     * @throws IOException if the keys can not be read
+     */
+    public KeyPair accountKeys() throws IOException {
+        return accountKeys.get();
+    }
+
+    /**
+     * @return the keys of the domain
+     *
+     * @throws IOException if the keys can not be read
+     */
+    public KeyPair domainKeys() throws IOException {
+        return domainKeys.get();
+    }
+
+    /**
+     * @return the store the HTTP-01 tokens are published in; null if the
+     *         DNS-01 challenge is used
+     */
+    public ChallengeTokenStore tokenStore() {
+        return tokenStore;
+    }
+
+    /**
+     * @param tokenStore the store the HTTP-01 tokens are published in
+     */
+    public void tokenStore(final ChallengeTokenStore tokenStore) {
+        this.tokenStore = tokenStore;
+    }
+
+    /**
+     * @return the provider the DNS-01 records are published with; null if
+     *         the HTTP-01 challenge is used
+     */
+    public DnsProvider dnsProvider() {
+        return dnsProvider;
+    }
+
+    /**
+     * @param dnsProvider the provider the DNS-01 records are published with
+     */
+    public void dnsProvider(final DnsProvider dnsProvider) {
+        this.dnsProvider = dnsProvider;
+    }
+
+    /**
+     * @return the port the local listener answering the challenges is
+     *         started on (0 for any available port); null if no listener is
+     *         started
+     */
+    public Integer port() {
+        return port;
+    }
+
+    /**
+     * @param port the port the local listener answering the challenges is
+     *        started on (0 for any available port); null for no listener
+     */
+    public void port(final Integer port) {
+        if (port != null && (port < 0 || port > 65535)) {
+            throw new IllegalArgumentException("port must be between 0 and 65535");
+        }
+        this.port = port;
+    }
+
+    /**
+     * @return true if the challenges are satisfied with TLS-ALPN-01 by the
+     *         local listener
+     */
+    public boolean tlsAlpn() {
+        return tlsAlpn;
+    }
+
+    /**
+     * @param tlsAlpn true to satisfy the challenges with TLS-ALPN-01 by the
+     *        local listener, which requires a port
+     */
+    public void tlsAlpn(final boolean tlsAlpn) {
+        this.tlsAlpn = tlsAlpn;
+    }
+
+    /**
+     * @return the check of the HTTP-01 tokens done before triggering the
+     *         challenges; null if the tokens are not checked
+     */
+    public ChallengeSelfCheck selfCheck() {
+        return selfCheck;
+    }
+
+    /**
+     * @param selfCheck the check of the HTTP-01 tokens done before
+     *        triggering the challenges; null to trigger them unchecked
+     */
+    public void selfCheck(final ChallengeSelfCheck selfCheck) {
+        this.selfCheck = selfCheck;
+    }
+
+    /**
+     * @return how long to wait between two checks of the status of an
+     *         authorization or of the order (default: 3s); a longer
+     *         Retry-After given by the CA takes precedence
+     */
+    public Duration pollingInterval() {
+        return pollingInterval;
+    }
+
+    /**
+     * @param pollingInterval how long to wait between two status checks
+     */
+    public void pollingInterval(final Duration pollingInterval) {
+        if (pollingInterval == null || pollingInterval.isNegative() || pollingInterval.isZero()) {
+            throw new IllegalArgumentException("pollingInterval must be greater than 0");
+        }
+        this.pollingInterval = pollingInterval;
+    }
+
+    /**
+     * @return how long to wait for the DNS records to propagate and for the
+     *         CA to validate the challenges, each (default: 30s)
+     */
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout how long to wait for each step
+     */
+    public void timeout(final Duration timeout) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be greater than 0");
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return how long to wait for the CA to issue the certificate once the
+     *         order is finalized (default: 10m); CAs may take much longer to
+     *         issue than to validate a challenge
+     */
+    public Duration orderTimeout() {
+        return orderTimeout;
+    }
+
+    /**
+     * @param orderTimeout how long to wait for the certificate to be issued
+     */
+    public void orderTimeout(final Duration orderTimeout) {
+        if (orderTimeout == null || orderTimeout.isNegative() || orderTimeout.isZero()) {
+            throw new IllegalArgumentException("orderTimeout must be greater than 0");
+        }
+        this.orderTimeout = orderTimeout;
+    }
+
+    /**
+     * @return 'shortest' or the common name of the issuer of the top
+     *         certificate of the preferred chain; null for the default chain
+     */
+    public String preferredChain() {
+        return preferredChain;
+    }
+
+    /**
+     * @param preferredChain 'shortest' or the common name of the issuer of
+     *        the top certificate of the preferred chain; null for the
+     *        default chain
+     */
+    public void preferredChain(final String preferredChain) {
+        this.preferredChain = preferredChain;
+    }
+
+    /**
+     * @return where the renewed certificate is written; null if it is only
+     *         given back in the result
+     */
+    public CertificateOutput output() {
+        return output;
+    }
+
+    /**
+     * @param output where the renewed certificate is written; null if it is
+     *        only given back in the result
+     */
+    public void output(final CertificateOutput output) {
+        this.output = output;
+    }
+
+    /**
+     * @return the cache the OCSP response of the renewed certificate is
+     *         fetched and saved with; null if not fetched
+     */
+    public OcspCache ocsp() {
+        return ocsp;
+    }
+
+    /**
+     * @param ocsp the cache the OCSP response of the renewed certificate is
+     *        fetched and saved with, in the OCSP file of the output; null
+     *        not to fetch it
+     */
+    public void ocsp(final OcspCache ocsp) {
+        this.ocsp = ocsp;
+    }
+
+    /**
+     * @return who is told about the progress of the renewal
+     */
+    public RenewListener listener() {
+        return listener;
+    }
+
+    /**
+     * @param listener who is told about the progress of the renewal
+     */
+    public void listener(final RenewListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can not be null");
+        }
+        this.listener = listener;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static Keys keys(final KeyPair keys, final String name) {
+        if (keys == null) {
+            throw new IllegalArgumentException(name + " can not be null");
+        }
+        return () -> keys;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.client;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+import org.shredzone.acme4j.Certificate;
+import ste.acme.cli.metrics.RenewalTimer;
+
+/**
+ * A renewed certificate
+ *
+ * @param domain the domain renewed
+ * @param certificate the certificate issued by the CA, already downloaded,
+ *        with the preferred chain if one was requested
+ * @param timer the timings of the phases of the renewal
+ */
+public record RenewResult(String domain, Certificate certificate, RenewalTimer timer) {
+
+    /**
+     * @return the certificate chain, leaf first
+     */
+    public List<X509Certificate> chain() {
+        return certificate.getCertificateChain();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Selects certificates by expiration and issuer; all given criteria must be
+ * met. A filter without criteria accepts any certificate.
+ */
+public class CertificateFilter implements Predicate<CertificateInfo> {
+
+    private final Clock clock;
+
+    private boolean expired = false;
+    private Duration expiringWithin = null;
+    private String issuer = null;
+
+    public CertificateFilter() {
+        this(Clock.systemUTC());
+    }
+
+    public CertificateFilter(final Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock can not be null");
+        }
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if only expired certificates are accepted
+     */
+    public boolean expired() {
+        return expired;
+    }
+
+    /**
+     * @param expired true to accept only expired certificates
+     */
+    public void expired(final boolean expired) {
+        this.expired = expired;
+    }
+
+    /**
+     * @return the period certificates must expire within to be accepted (null if any)
+     */
+    public Duration expiringWithin() {
+        return expiringWithin;
+    }
+
+    /**
+     * @param expiringWithin the period certificates must expire within to be
+     *        accepted (already expired certificates included); null for any
+     */
+    public void expiringWithin(final Duration expiringWithin) {
+        if (expiringWithin != null && expiringWithin.isNegative()) {
+            throw new IllegalArgumentException("expiringWithin can not be negative");
+        }
+        this.expiringWithin = expiringWithin;
+    }
+
+    /**
+     * @return the text the issuer must contain to be accepted (null if any)
+     */
+    public String issuer() {
+        return issuer;
+    }
+
+    /**
+     * @param issuer the text the issuer DN must contain, ignoring case, to be
+     *        accepted (e.g. "Let's Encrypt"); null for any
+     */
+    public void issuer(final String issuer) {
+        this.issuer = (issuer == null) ? null : issuer.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return true if no criteria are set
+     */
+    public boolean isEmpty() {
+        return !expired && expiringWithin == null && issuer == null;
+    }
+
+    @Override
+    public boolean test(final CertificateInfo info) {
+        final Instant now = clock.instant();
+        if (expired && !info.notAfter().isBefore(now)) {
+            return false;
+        }
+        if (expiringWithin != null && info.notAfter().isAfter(now.plus(expiringWithin))) {
+            return false;
+        }
+        return (issuer == null) || info.issuer().toLowerCase(Locale.ROOT).contains(issuer);
+    }
+}
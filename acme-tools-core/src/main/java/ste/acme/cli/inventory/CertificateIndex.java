@@ -0,0 +1,447 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import org.shredzone.acme4j.toolbox.JSON;
+import org.shredzone.acme4j.toolbox.JSONBuilder;
+import ste.acme.cli.store.AtomicFiles;
+
+/**
+ * An on-disk index of the certificates found in a set of locations, so that
+ * queries like "what expires in the next 14 days" do not need to parse the
+ * certificates again.
+ *
+ * Each file is indexed with its size, modification time and SHA-256 content
+ * hash; when the index is updated, files whose size and modification time did
+ * not change are not even read, files that changed are hashed and parsed again
+ * only if the content is actually different. Files that can not be parsed are
+ * indexed with the error, so that they are not parsed again until they change.
+ *
+ * The index is stored as JSON lines, one file per line, and it is replaced
+ * atomically when saved.
+ */
+public class CertificateIndex {
+
+    /**
+     * An indexed file
+     *
+     * @param path the absolute path of the file
+     * @param size the size of the file
+     * @param modified the last modification time of the file
+     * @param hash the SHA-256 of the content of the file (lowercase hex)
+     * @param certificates the certificates in the file
+     * @param error the reason the file could not be parsed or null
+     */
+    public record Entry(
+        Path path, long size, Instant modified, String hash, List<CertificateInfo> certificates, String error
+    ) {}
+
+    /**
+     * The outcome of an update
+     *
+     * @param files the number of files indexed
+     * @param parsed the number of files parsed because new or changed
+     * @param unchanged the number of files not parsed because not changed
+     * @param removed the number of files not found anymore
+     * @param errors the number of files or directories that could not be read
+     */
+    public record Update(long files, long parsed, long unchanged, long removed, long errors) {}
+
+    private final Path file;
+    private volatile Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    public CertificateIndex(final Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        this.file = file;
+    }
+
+    /**
+     * @return the file the index is stored in
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return the indexed files
+     */
+    public Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Loads the index from its file; a missing file is an empty index.
+     *
+     * @throws IOException if the file can not be read or it is not an index
+     */
+    public void load() throws IOException {
+        final Map<Path, Entry> loaded = new ConcurrentHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    final Entry entry = entry(line);
+                    loaded.put(entry.path(), entry);
+                }
+            }
+        } catch (NoSuchFileException x) {
+            //
+            // nothing indexed yet
+            //
+        } catch (RuntimeException x) {
+            throw new IOException(file + " is not a valid certificate index: " + x.getMessage(), x);
+        }
+        entries = loaded;
+    }
+
+    /**
+     * Saves the index to its file, replacing the previous one atomically
+     *
+     * @throws IOException if the index can not be written
+     */
+    public void save() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        AtomicFiles.replace(file, (tmp) -> {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+                for (Entry entry: sorted()) {
+                    writer.write(json(entry));
+                    writer.newLine();
+                }
+            }
+        });
+    }
+
+    /**
+     * Brings the index up to date with the given locations: new and changed
+     * files are parsed, unchanged files are kept as they are and files under
+     * the given locations not found anymore are removed; files indexed from
+     * other locations are kept. Locations are walked with the given scanner,
+     * in parallel; its filter is not applied, all certificates are indexed.
+     * The index file itself and its temporary files are skipped if they are
+     * in one of the locations.
+     *
+     * @param locations files, directories or glob patterns
+     * @param scanner the scanner to walk the locations with
+     *
+     * @return what has been done
+     */
+    public Update update(final Collection<String> locations, final CertificateScanner scanner) {
+        if (locations == null) {
+            throw new IllegalArgumentException("locations can not be null");
+        }
+        if (scanner == null) {
+            throw new IllegalArgumentException("scanner can not be null");
+        }
+
+        final Map<Path, Entry> previous = entries;
+        final Map<Path, Entry> walked = new ConcurrentHashMap<>();
+        final LongAdder parsed = new LongAdder(), errors = new LongAdder();
+
+        scanner.walk(locations, new CertificateScanner.Visitor() {
+            @Override
+            public void file(final Path file) {
+                final Path path = file.toAbsolutePath().normalize();
+                if (owns(path)) {
+                    return;
+                }
+                final Entry old = previous.get(path);
+                try {
+                    final Entry entry = index(path, old);
+                    if (entry.error() != null) {
+                        errors.increment();
+                    }
+                    if (old == null || !old.hash().equals(entry.hash())) {
+                        parsed.increment();
+                    }
+                    walked.put(path, entry);
+                } catch (IOException x) {
+                    error(file, x);
+                }
+            }
+
+            @Override
+            public void error(final Path path, final Exception x) {
+                errors.increment();
+            }
+        });
+
+        final List<Predicate<Path>> covered = new ArrayList<>();
+        for (String location: locations) {
+            covered.add(covers(location, scanner));
+        }
+        final Map<Path, Entry> updated = new ConcurrentHashMap<>(previous);
+        long removed = 0;
+        for (Path path: previous.keySet()) {
+            if (!walked.containsKey(path) && covered.stream().anyMatch((location) -> location.test(path))) {
+                updated.remove(path);
+                ++removed;
+            }
+        }
+        updated.putAll(walked);
+        entries = updated;
+
+        return new Update(
+            walked.size(), parsed.sum(), walked.size() - parsed.sum(), removed, errors.sum()
+        );
+    }
+
+    /**
+     * Brings the given paths up to date without walking all locations, e.g.
+     * when they are known to be touched: existing files are indexed (and
+     * parsed only if changed), missing paths are removed together with the
+     * files indexed under them (i.e. if a whole directory was removed). The
+     * index file itself and its temporary files are skipped.
+     *
+     * @param paths the touched paths
+     *
+     * @return what has been done; files is the number of files in the index
+     */
+    public Update refresh(final Collection<Path> paths) {
+        if (paths == null) {
+            throw new IllegalArgumentException("paths can not be null");
+        }
+
+        long parsed = 0, unchanged = 0, removed = 0, errors = 0;
+        for (Path touched: paths) {
+            final Path path = touched.toAbsolutePath().normalize();
+            if (owns(path)) {
+                continue;
+            }
+            if (Files.isRegularFile(path)) {
+                final Entry old = entries.get(path);
+                try {
+                    final Entry entry = index(path, old);
+                    if (entry.error() != null) {
+                        ++errors;
+                    }
+                    if (old == null || !old.hash().equals(entry.hash())) {
+                        ++parsed;
+                    } else {
+                        ++unchanged;
+                    }
+                    entries.put(path, entry);
+                } catch (IOException x) {
+                    ++errors;
+                }
+            } else if (!Files.exists(path)) {
+                for (Path indexed: List.copyOf(entries.keySet())) {
+                    if (indexed.startsWith(path) && entries.remove(indexed) != null) {
+                        ++removed;
+                    }
+                }
+            }
+        }
+
+        return new Update(entries.size(), parsed, unchanged, removed, errors);
+    }
+
+    /**
+     * @param path a path
+     *
+     * @return true if the given path is the file of this index or one of the
+     *         temporary files it is saved with, which are never indexed
+     */
+    public boolean owns(final Path path) {
+        return path.toAbsolutePath().normalize().equals(file.toAbsolutePath().normalize())
+            || AtomicFiles.isTemporary(path, file);
+    }
+
+    /**
+     * @param filter the filter certificates must pass
+     *
+     * @return the indexed certificates passing the given filter, the ones
+     *         expiring first first
+     */
+    public List<CertificateInfo> certificates(final Predicate<CertificateInfo> filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter can not be null");
+        }
+        final List<CertificateInfo> certificates = new ArrayList<>();
+        for (Entry entry: entries.values()) {
+            for (CertificateInfo info: entry.certificates()) {
+                if (filter.test(info)) {
+                    certificates.add(info);
+                }
+            }
+        }
+        certificates.sort(Comparator.comparing(CertificateInfo::notAfter).thenComparing(CertificateInfo::path));
+        return certificates;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * @return a predicate telling if an indexed (absolute and normalized) path
+     *         would be walked for the given location, as the scanner does
+     */
+    private static Predicate<Path> covers(final String location, final CertificateScanner scanner) {
+        if (!CertificateScanner.isGlob(location)) {
+            final Path resolved;
+            try {
+                resolved = scanner.resolver().apply(location).toAbsolutePath().normalize();
+            } catch (RuntimeException x) {
+                return (path) -> false; // not walked, nothing to remove
+            }
+            return (path) -> path.startsWith(resolved);
+        }
+
+        final CertificateScanner.Location walk = CertificateScanner.location(location);
+        final Path base = walk.base().toAbsolutePath().normalize();
+        return (path) -> {
+            if (!path.startsWith(base) || path.equals(base)) {
+                return false;
+            }
+            final Path relative = base.relativize(path);
+            return relative.getNameCount() <= walk.maxDepth() && walk.matches(walk.base().resolve(relative));
+        };
+    }
+
+    /**
+     * @return the given entry if the file did not change, a new entry otherwise
+     */
+    private Entry index(final Path path, final Entry entry) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final Instant modified = attributes.lastModifiedTime().toInstant();
+
+        if (entry != null && entry.size() == attributes.size() && entry.modified().equals(modified)) {
+            return entry;
+        }
+
+        final byte[] content = Files.readAllBytes(path);
+        final String hash = sha256(content);
+        if (entry != null && entry.hash().equals(hash)) {
+            //
+            // touched but not changed, no need to parse it again
+            //
+            return new Entry(path, content.length, modified, hash, entry.certificates(), entry.error());
+        }
+
+        final List<CertificateInfo> certificates = new ArrayList<>();
+        try (CertificateReader reader = new CertificateReader(new ByteArrayInputStream(content))) {
+            X509Certificate certificate;
+            while ((certificate = reader.next()) != null) {
+                certificates.add(CertificateInfo.of(path, reader.count()-1, certificate));
+            }
+        } catch (IOException | CertificateException x) {
+            return new Entry(path, content.length, modified, hash, List.of(), x.getMessage());
+        }
+        return new Entry(path, content.length, modified, hash, List.copyOf(certificates), null);
+    }
+
+    private List<Entry> sorted() {
+        final List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparing(Entry::path));
+        return sorted;
+    }
+
+    private static String json(final Entry entry) {
+        final List<Map<String, Object>> certificates = new ArrayList<>();
+        for (CertificateInfo info: entry.certificates()) {
+            certificates.add(
+                new JSONBuilder()
+                    .put("index", info.index())
+                    .put("subject", info.subject())
+                    .array("sans", info.sans())
+                    .put("issuer", info.issuer())
+                    .put("notBefore", info.notBefore())
+                    .put("notAfter", info.notAfter())
+                    .put("keyType", info.keyType())
+                    .put("fingerprint", info.fingerprint())
+                    .toMap()
+            );
+        }
+
+        final JSONBuilder json = new JSONBuilder()
+            .put("path", entry.path().toString())
+            .put("size", entry.size())
+            .put("modified", entry.modified().toString()) // with the precision of the filesystem
+            .put("hash", entry.hash())
+            .array("certificates", certificates);
+        if (entry.error() != null) {
+            json.put("error", entry.error());
+        }
+        return json.toString();
+    }
+
+    private static Entry entry(final String line) {
+        final JSON json = JSON.parse(line);
+        final Path path = Path.of(json.get("path").asString());
+
+        final List<CertificateInfo> certificates = new ArrayList<>();
+        for (JSON.Value value: json.get("certificates").asArray()) {
+            final JSON info = value.asObject();
+            certificates.add(new CertificateInfo(
+                path,
+                info.get("index").asInt(),
+                info.get("subject").asString(),
+                info.get("sans").asArray().stream().map(JSON.Value::asString).toList(),
+                info.get("issuer").asString(),
+                info.get("notBefore").asInstant(),
+                info.get("notAfter").asInstant(),
+                info.get("keyType").asString(),
+                info.get("fingerprint").asString()
+            ));
+        }
+
+        return new Entry(
+            path,
+            Long.parseLong(json.get("size").asString()),
+            Instant.parse(json.get("modified").asString()),
+            json.get("hash").asString(),
+            List.copyOf(certificates),
+            json.get("error").optional().map(JSON.Value::asString).orElse(null)
+        );
+    }
+
+    private static String sha256(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException("SHA-256 not available", x); // mandatory in every JRE
+        }
+    }
+}
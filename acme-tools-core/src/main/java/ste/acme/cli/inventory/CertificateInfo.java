@@ -0,0 +1,191 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import org.shredzone.acme4j.toolbox.JSONBuilder;
+
+/**
+ * The essential metadata of a certificate, compact enough to be emitted as a
+ * JSON or CSV row.
+ *
+ * @param path the file the certificate was read from
+ * @param index the position of the certificate in the file (e.g. in a bundle)
+ * @param subject the subject DN (RFC 2253)
+ * @param sans the DNS and IP subject alternative names
+ * @param issuer the issuer DN (RFC 2253)
+ * @param notBefore start of validity
+ * @param notAfter end of validity
+ * @param keyType the public key algorithm and size (e.g. RSA 2048)
+ * @param fingerprint hex SHA-256 of the DER encoding
+ */
+public record CertificateInfo(
+    Path path, int index, String subject, List<String> sans, String issuer,
+    Instant notBefore, Instant notAfter, String keyType, String fingerprint
+) {
+
+    public static final String CSV_HEADER = "path,index,subject,sans,issuer,notBefore,notAfter,keyType,fingerprint,error";
+
+    private static final int SAN_DNS = 2, SAN_IP = 7;
+
+    /**
+     * @param path the file the certificate was read from
+     * @param index the position of the certificate in the file
+     * @param certificate the certificate
+     *
+     * @return the info of the given certificate
+     *
+     * @throws CertificateEncodingException if the certificate can not be encoded
+     */
+    public static CertificateInfo of(final Path path, final int index, final X509Certificate certificate)
+    throws CertificateEncodingException {
+        return new CertificateInfo(
+            path, index,
+            certificate.getSubjectX500Principal().getName(),
+            sans(certificate),
+            certificate.getIssuerX500Principal().getName(),
+            certificate.getNotBefore().toInstant(),
+            certificate.getNotAfter().toInstant(),
+            keyType(certificate.getPublicKey()),
+            fingerprint(certificate)
+        );
+    }
+
+    /**
+     * @return the domain the certificate is for: the first SAN or, if there
+     *         are no SANs, the subject common name (null if none)
+     */
+    public String domain() {
+        if (!sans.isEmpty()) {
+            return sans.get(0);
+        }
+        try {
+            for (Rdn rdn: new LdapName(subject).getRdns()) {
+                if ("CN".equalsIgnoreCase(rdn.getType())) {
+                    return String.valueOf(rdn.getValue());
+                }
+            }
+        } catch (InvalidNameException x) {
+            //
+            // not a RFC 2253 name, no common name then
+            //
+        }
+        return null;
+    }
+
+    /**
+     * @return this info as a single line JSON object
+     */
+    public String toJSON() {
+        return new JSONBuilder()
+            .put("path", String.valueOf(path))
+            .put("index", index)
+            .put("subject", subject)
+            .array("sans", sans)
+            .put("issuer", issuer)
+            .put("notBefore", notBefore)
+            .put("notAfter", notAfter)
+            .put("keyType", keyType)
+            .put("fingerprint", fingerprint)
+            .toString();
+    }
+
+    /**
+     * @return this info as a CSV (RFC 4180) row with the columns in
+     *         {@link #CSV_HEADER} (the error column is left empty); SANs
+     *         are separated by semicolons
+     */
+    public String toCSV() {
+        return String.join(",",
+            csv(String.valueOf(path)), String.valueOf(index), csv(subject), csv(String.join(";", sans)), csv(issuer),
+            notBefore.toString(), notAfter.toString(), csv(keyType), fingerprint, ""
+        );
+    }
+
+    /**
+     * @param value the value to escape
+     *
+     * @return the given value quoted if it contains any CSV special character
+     */
+    public static String csv(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static List<String> sans(final X509Certificate certificate) {
+        final List<String> sans = new ArrayList<>();
+        try {
+            final Collection<List<?>> names = certificate.getSubjectAlternativeNames();
+            if (names != null) {
+                for (List<?> name: names) {
+                    final int type = (Integer)name.get(0);
+                    if (type == SAN_DNS || type == SAN_IP) {
+                        sans.add(String.valueOf(name.get(1)));
+                    }
+                }
+            }
+        } catch (CertificateParsingException x) {
+            //
+            // malformed extension, no SANs then
+            //
+        }
+        return sans;
+    }
+
+    private static String keyType(final PublicKey key) {
+        if (key instanceof RSAPublicKey rsa) {
+            return "RSA " + rsa.getModulus().bitLength();
+        } else if (key instanceof ECPublicKey ec) {
+            return "EC " + ec.getParams().getOrder().bitLength();
+        }
+        return key.getAlgorithm();
+    }
+
+    private static String fingerprint(final X509Certificate certificate) throws CertificateEncodingException {
+        try {
+            return HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded())
+            );
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException("SHA-256 not available", x); // mandatory in every JRE
+        }
+    }
+}
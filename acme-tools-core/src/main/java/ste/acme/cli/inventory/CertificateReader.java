@@ -0,0 +1,380 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.READ;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1OctetStringParser;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1SetParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.cms.ContentInfoParser;
+import org.bouncycastle.asn1.cms.SignedDataParser;
+import org.bouncycastle.util.io.Streams;
+
+/**
+ * Reads the certificates of a file one at a time, so that bundles with
+ * thousands of entries never need to be held in memory at once (as
+ * {@link CertificateFactory#generateCertificates(InputStream)} does).
+ *
+ * Supported are single DER certificates, PKCS#7 bundles (DER or PEM) and PEM
+ * files with any number of blocks; non certificate PEM blocks (e.g. keys in a
+ * combined file) are skipped. The PKCS#7 structure is walked to the
+ * certificates set with the streaming parsers of BouncyCastle and each
+ * certificate is decoded when asked for with {@link #next()}; the other
+ * choices of the set (e.g. attribute certificates) are skipped.
+ *
+ * The file can be read through a memory mapped buffer, which spares the copy
+ * from the kernel buffers for large bundles.
+ */
+public class CertificateReader implements Closeable {
+
+    private static final String PEM_BEGIN = "-----BEGIN ", PEM_END = "-----END ";
+    private static final int SEQUENCE = 0x30, OID = 0x06;
+
+    private final InputStream in;
+    private final CertificateFactory factory;
+
+    private Boolean pem = null;
+    private Pkcs7 pkcs7 = null;
+    private boolean single = false;
+    private int count = 0;
+    private byte[] firstNonCertificate = null;
+
+    /**
+     * @param in the stream to read certificates from; it is closed by {@link #close()}
+     *
+     * @throws CertificateException if X.509 certificates are not supported
+     */
+    public CertificateReader(final InputStream in) throws CertificateException {
+        if (in == null) {
+            throw new IllegalArgumentException("in can not be null");
+        }
+        this.in = in.markSupported() ? in : new BufferedInputStream(in);
+        this.factory = CertificateFactory.getInstance("X.509");
+    }
+
+    /**
+     * @param file the file to read
+     * @param mmap true to read the file through a memory mapped buffer (only
+     *        files on the local disk can be mapped, others are just read)
+     *
+     * @return a reader of the given file
+     *
+     * @throws IOException if the file can not be opened
+     * @throws CertificateException if X.509 certificates are not supported
+     */
+    public static CertificateReader open(final Path file, final boolean mmap)
+    throws IOException, CertificateException {
+        if (!mmap || file.getFileSystem() != FileSystems.getDefault()) {
+            return new CertificateReader(Files.newInputStream(file));
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            return new CertificateReader(
+                new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()))
+            );
+        }
+    }
+
+    /**
+     * @return the next certificate or null if there are no more certificates
+     *
+     * @throws IOException in case of read errors
+     * @throws CertificateException if an entry is not a valid certificate or
+     *         a PKCS#7 bundle is malformed
+     */
+    public X509Certificate next() throws IOException, CertificateException {
+        if (pem == null) {
+            pem = (peek() != SEQUENCE); // DER always starts with a SEQUENCE
+        }
+
+        final X509Certificate certificate = pem ? nextFromPEM() : nextFromDER();
+        if (certificate != null) {
+            ++count;
+        }
+        return certificate;
+    }
+
+    /**
+     * @return how many certificates have been read so far
+     */
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private X509Certificate nextFromPEM() throws IOException, CertificateException {
+        while (true) {
+            if (pkcs7 != null) {
+                final byte[] der = pkcs7.next();
+                if (der != null) {
+                    return certificate(der);
+                }
+                pkcs7 = null;
+            }
+
+            String line;
+            do {
+                line = readLine();
+            } while (line != null && !line.startsWith(PEM_BEGIN));
+
+            if (line == null) {
+                return noMoreCertificates();
+            }
+
+            final String type = line.substring(PEM_BEGIN.length()).replace("-", "").trim();
+            final StringBuilder base64 = new StringBuilder();
+            while ((line = readLine()) != null && !line.startsWith(PEM_END)) {
+                if (line.indexOf(':') < 0) { // skip RFC 1421 headers
+                    base64.append(line.trim());
+                }
+            }
+            if (line == null) {
+                throw new CertificateException("truncated PEM block " + type);
+            }
+
+            final byte[] der;
+            try {
+                der = Base64.getMimeDecoder().decode(base64.toString());
+            } catch (IllegalArgumentException x) {
+                throw new CertificateException("invalid PEM block " + type + ": " + x.getMessage());
+            }
+            if (type.equals("CERTIFICATE") || type.equals("X509 CERTIFICATE")) {
+                return certificate(der);
+            } else if (type.equals("PKCS7") || type.equals("CMS") || type.equals("PKCS #7 SIGNED DATA")) {
+                pkcs7 = Pkcs7.open(new ByteArrayInputStream(der));
+            } else if (firstNonCertificate == null) {
+                firstNonCertificate = der;
+            }
+        }
+    }
+
+    private X509Certificate nextFromDER() throws IOException, CertificateException {
+        if (single) {
+            return null;
+        }
+        if (pkcs7 == null) {
+            in.mark(16);
+            final int tag = in.read();
+            if (tag < 0) {
+                return noMoreCertificates();
+            }
+            final int length = in.read();            // short or long form
+            in.skipNBytes((length > 0x80 && length <= 0x88) ? (length & 0x7F) : 0);
+            final int next = in.read();
+            in.reset();
+            if (tag == SEQUENCE && next == OID) {
+                pkcs7 = Pkcs7.open(in);
+            } else {
+                single = true;
+                return (X509Certificate)factory.generateCertificate(in);
+            }
+        }
+        final byte[] der = pkcs7.next();
+        return (der == null) ? noMoreCertificates() : certificate(der);
+    }
+
+    /**
+     * Like CertificateFactory, a file without certificates is an error; if it
+     * contains other PEM blocks, the error is why the first one is not a
+     * certificate.
+     */
+    private X509Certificate noMoreCertificates() throws CertificateException {
+        if (count > 0) {
+            return null;
+        }
+        if (firstNonCertificate != null) {
+            certificate(firstNonCertificate);
+        }
+        throw new CertificateException("no certificates found");
+    }
+
+    private X509Certificate certificate(final byte[] der) throws CertificateException {
+        return (X509Certificate)factory.generateCertificate(new ByteArrayInputStream(der));
+    }
+
+    private int peek() throws IOException {
+        in.mark(1);
+        final int b = in.read();
+        in.reset();
+        return b;
+    }
+
+    private String readLine() throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(80);
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return (b < 0 && line.size() == 0) ? null : line.toString(US_ASCII);
+    }
+
+    // ------------------------------------------------------------------- Pkcs7
+
+    /**
+     * Walks a PKCS#7 SignedData structure down to its certificates and then
+     * returns them one by one. BouncyCastle rejects lengths that are negative
+     * or beyond the end of the input; any malformed structure is reported as
+     * a CertificateException.
+     */
+    private static class Pkcs7 {
+        private final ASN1SetParser certificates; // null if none
+
+        private Pkcs7(final ASN1SetParser certificates) {
+            this.certificates = certificates;
+        }
+
+        static Pkcs7 open(final InputStream in) throws CertificateException {
+            try {
+                final ASN1Encodable content = new ASN1StreamParser(in).readObject();
+                if (!(content instanceof ASN1SequenceParser)) {
+                    throw new CertificateException("not a PKCS#7 structure");
+                }
+                final ContentInfoParser info = new ContentInfoParser((ASN1SequenceParser)content);
+                if (!CMSObjectIdentifiers.signedData.equals(info.getContentType())) {
+                    throw new CertificateException("not a PKCS#7 signed data structure");
+                }
+                final SignedDataParser data = SignedDataParser.getInstance(info.getContent(BERTags.SEQUENCE));
+
+                //
+                // the elements before the certificates must be consumed in order
+                //
+                final ASN1SetParser algorithms = data.getDigestAlgorithms();
+                while (algorithms.readObject() != null) {
+                    // skipped
+                }
+                final ASN1Encodable encapsulated = data.getEncapContentInfo().getContent(BERTags.OCTET_STRING);
+                if (encapsulated instanceof ASN1OctetStringParser octets) {
+                    Streams.drain(octets.getOctetStream());
+                }
+
+                return new Pkcs7(data.getCertificates());
+            } catch (IOException | RuntimeException x) {
+                throw new CertificateException("invalid PKCS#7 structure: " + x.getMessage(), x);
+            }
+        }
+
+        /**
+         * @return the DER encoding of the next certificate or null if none
+         */
+        byte[] next() throws CertificateException {
+            if (certificates == null) {
+                return null;
+            }
+            try {
+                ASN1Encodable choice;
+                while ((choice = certificates.readObject()) != null) {
+                    final byte[] der = choice.toASN1Primitive().getEncoded(ASN1Encoding.DER);
+                    if (choice instanceof ASN1SequenceParser) {
+                        return der;
+                    }
+                    // [0]..[3]: extended, attribute or other certificate, skipped
+                }
+                return null;
+            } catch (IOException | RuntimeException x) {
+                throw new CertificateException("invalid PKCS#7 structure: " + x.getMessage(), x);
+            }
+        }
+    }
+
+    // --------------------------------------------------- ByteBufferInputStream
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        private int mark = 0;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int skipped = (int)Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(final int limit) {
+            mark = buffer.position();
+        }
+
+        @Override
+        public synchronized void reset() {
+            buffer.position(mark);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Reads the certificates in a set of locations in parallel on a fork-join
+ * pool, handing each one to a {@link Listener} as soon as it is parsed.
+ *
+ * A location can be a file, a directory (scanned recursively) or a glob
+ * pattern (e.g. <code>certs/**&#47;*.crt</code>). Each directory is a task
+ * forking a task per subdirectory and per batch of {@link #BATCH} files, so
+ * that both deep and flat trees are spread across the pool; nothing is
+ * collected, the memory used does not depend on the size of the tree.
+ */
+public class CertificateScanner {
+
+    public static final int BATCH = 64;
+
+    private static final String GLOB_CHARS = "*?[{";
+
+    /**
+     * Receives the scan results; it is called concurrently from the pool
+     * threads, therefore implementations must be thread safe.
+     */
+    public interface Listener {
+        void certificate(CertificateInfo info);
+        void error(Path path, Exception x);
+    }
+
+    /**
+     * Receives the files found walking the locations; like {@link Listener}
+     * it is called concurrently from the pool threads.
+     */
+    public interface Visitor {
+        void file(Path file);
+        void error(Path path, Exception x);
+    }
+
+    private final ForkJoinPool pool;
+    private Predicate<CertificateInfo> filter = (info) -> true;
+    private boolean mmap = false;
+    private Function<String, Path> resolver = Path::of;
+
+    public CertificateScanner() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public CertificateScanner(final ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool can not be null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * @return the filter certificates must pass to be handed to the listener
+     */
+    public Predicate<CertificateInfo> filter() {
+        return filter;
+    }
+
+    /**
+     * @param filter the filter certificates must pass to be handed to the
+     *        listener; it is applied while reading, one certificate at a time
+     */
+    public void filter(final Predicate<CertificateInfo> filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter can not be null");
+        }
+        this.filter = filter;
+    }
+
+    /**
+     * @return true if files are read through memory mapped buffers
+     */
+    public boolean mmap() {
+        return mmap;
+    }
+
+    /**
+     * @param mmap true to read files through memory mapped buffers
+     */
+    public void mmap(final boolean mmap) {
+        this.mmap = mmap;
+    }
+
+    /**
+     * @return the function turning file and directory locations into paths
+     */
+    public Function<String, Path> resolver() {
+        return resolver;
+    }
+
+    /**
+     * @param resolver the function turning file and directory locations into
+     *        paths (e.g. to read from archives); it may throw
+     *        {@link UncheckedIOException}, reported as an error of the
+     *        location. Glob patterns are always on the local disk.
+     */
+    public void resolver(final Function<String, Path> resolver) {
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver can not be null");
+        }
+        this.resolver = resolver;
+    }
+
+    /**
+     * Scans the given locations and returns when all certificates have been
+     * handed to the listener.
+     *
+     * @param locations files, directories or glob patterns
+     * @param listener the listener to call for each certificate or error
+     */
+    public void scan(final Collection<String> locations, final Listener listener) {
+        if (locations == null) {
+            throw new IllegalArgumentException("locations can not be null");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can not be null");
+        }
+        walk(locations, new Visitor() {
+            @Override
+            public void file(final Path file) {
+                read(file, listener);
+            }
+
+            @Override
+            public void error(final Path path, final Exception x) {
+                listener.error(path, x);
+            }
+        });
+    }
+
+    /**
+     * Walks the given locations and returns when all files have been handed
+     * to the visitor; files are not read, which is up to the visitor.
+     *
+     * @param locations files, directories or glob patterns
+     * @param visitor the visitor to call for each file or error
+     */
+    public void walk(final Collection<String> locations, final Visitor visitor) {
+        if (locations == null) {
+            throw new IllegalArgumentException("locations can not be null");
+        }
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor can not be null");
+        }
+
+        final List<RecursiveAction> tasks = new ArrayList<>();
+        for (String location: locations) {
+            try {
+                tasks.add(task(location, visitor));
+            } catch (UncheckedIOException x) {
+                visitor.error(Path.of(location), x.getCause());
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * @param location a location
+     *
+     * @return true if the given location is a glob pattern
+     */
+    public static boolean isGlob(final String location) {
+        for (char c: GLOB_CHARS.toCharArray()) {
+            if (location.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the certificates in the given file one at a time and hands the
+     * ones passing the filter to the listener
+     *
+     * @param file the file to read
+     * @param listener the listener
+     */
+    public void read(final Path file, final Listener listener) {
+        try (CertificateReader reader = CertificateReader.open(file, mmap)) {
+            X509Certificate certificate;
+            while ((certificate = reader.next()) != null) {
+                final CertificateInfo info = CertificateInfo.of(file, reader.count()-1, certificate);
+                if (filter.test(info)) {
+                    listener.certificate(info);
+                }
+            }
+        } catch (IOException | CertificateException x) {
+            listener.error(file, x);
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private RecursiveAction task(final String location, final Visitor visitor) {
+        if (!isGlob(location)) {
+            final Path path = resolver.apply(location);
+            return Files.isDirectory(path)
+                 ? new DirectoryTask(path, 1, Integer.MAX_VALUE, null, visitor)
+                 : new FilesTask(List.of(path), visitor);
+        }
+        final Location walk = location(location);
+        return new DirectoryTask(walk.base(), 1, walk.maxDepth(), walk.matcher(), visitor);
+    }
+
+    /**
+     * @param location a file, a directory or a glob pattern
+     *
+     * @return where to look for the files of the given location
+     */
+    static Location location(final String location) {
+        if (isGlob(location)) {
+            //
+            // walk from the longest directory without glob characters, as
+            // deep as the number of remaining segments unless ** is used
+            //
+            final String[] segments = location.split("/");
+            int i = 0;
+            while (i < segments.length-1 && !isGlob(segments[i])) {
+                ++i;
+            }
+            final String base = String.join("/", List.of(segments).subList(0, i));
+            final int maxDepth = location.contains("**") ? Integer.MAX_VALUE : (segments.length - i);
+            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + location);
+
+            return new Location(
+                (base.isEmpty() && location.startsWith("/")) ? Path.of("/") : Path.of(base),
+                maxDepth, matcher
+            );
+        }
+
+        final Path path = Path.of(location);
+        if (Files.isDirectory(path)) {
+            return new Location(path, Integer.MAX_VALUE, null);
+        }
+        final Path file = path.toAbsolutePath();
+        return new Location(file.getParent(), 1, (candidate) -> candidate.toAbsolutePath().equals(file));
+    }
+
+    // ---------------------------------------------------------------- Location
+
+    /**
+     * Where the files of a location are: the directory to walk (depth 1), how
+     * deep to go and which files to take (null matcher for all files)
+     */
+    record Location(Path base, int maxDepth, PathMatcher matcher) {
+        boolean matches(final Path file) {
+            return (matcher == null) || matcher.matches(file);
+        }
+    }
+
+    // ----------------------------------------------------------- DirectoryTask
+
+    private class DirectoryTask extends RecursiveAction {
+        private final Path dir;
+        private final int depth, maxDepth;
+        private final PathMatcher matcher;
+        private final Visitor visitor;
+
+        DirectoryTask(
+            final Path dir, final int depth, final int maxDepth,
+            final PathMatcher matcher, final Visitor visitor
+        ) {
+            this.dir = dir; this.depth = depth; this.maxDepth = maxDepth;
+            this.matcher = matcher; this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            final List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> batch = new ArrayList<>(BATCH);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry: entries) {
+                    if (Files.isDirectory(entry)) {
+                        if (depth < maxDepth) {
+                            tasks.add(fork(new DirectoryTask(entry, depth+1, maxDepth, matcher, visitor)));
+                        }
+                    } else if (Files.isRegularFile(entry) && (matcher == null || matcher.matches(entry))) {
+                        batch.add(entry);
+                        if (batch.size() == BATCH) {
+                            tasks.add(fork(new FilesTask(batch, visitor)));
+                            batch = new ArrayList<>(BATCH);
+                        }
+                    }
+                }
+            } catch (IOException x) {
+                visitor.error(dir, x);
+            }
+
+            if (!batch.isEmpty()) {
+                new FilesTask(batch, visitor).compute();
+            }
+            for (RecursiveAction task: tasks) {
+                task.join();
+            }
+        }
+
+        private RecursiveAction fork(final RecursiveAction task) {
+            task.fork(); return task;
+        }
+    }
+
+    // --------------------------------------------------------------- FilesTask
+
+    private class FilesTask extends RecursiveAction {
+        private final List<Path> files;
+        private final Visitor visitor;
+
+        FilesTask(final List<Path> files, final Visitor visitor) {
+            this.files = files; this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            for (Path file: files) {
+                visitor.file(file);
+            }
+        }
+    }
+}
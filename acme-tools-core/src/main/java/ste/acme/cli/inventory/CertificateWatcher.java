@@ -0,0 +1,271 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import ste.acme.cli.inventory.CertificateScanner.Location;
+
+/**
+ * Keeps a {@link CertificateIndex} up to date with the changes of a set of
+ * locations as they happen, without rescanning them.
+ *
+ * All directories of the locations are registered with a {@link WatchService}
+ * (new directories as they are created); a single thread waits for the events
+ * and, since tools like editors or certbot touch many files at once, it
+ * collects them until no more come for the debounce period, then it refreshes
+ * only the touched files. If the events overflow, the locations are scanned
+ * again in full. When idle the thread is just blocked on the watch service.
+ */
+public class CertificateWatcher implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger("ste.acme-tools");
+
+    /**
+     * Receives the outcome of each refresh, from the watcher thread
+     */
+    public interface Listener {
+        void updated(CertificateIndex.Update update, Collection<Path> touched);
+    }
+
+    private final CertificateIndex index;
+    private final CertificateScanner scanner;
+    private final Duration debounce;
+    private final Map<WatchKey, Location> keys = new ConcurrentHashMap<>();
+
+    private List<String> locations = List.of();
+    private WatchService watcher = null;
+
+    public CertificateWatcher(final CertificateIndex index, final CertificateScanner scanner, final Duration debounce) {
+        if (index == null) {
+            throw new IllegalArgumentException("index can not be null");
+        }
+        if (scanner == null) {
+            throw new IllegalArgumentException("scanner can not be null");
+        }
+        if (debounce == null || debounce.isNegative()) {
+            throw new IllegalArgumentException("debounce can not be null or negative");
+        }
+        this.index = index;
+        this.scanner = scanner;
+        this.debounce = debounce;
+    }
+
+    /**
+     * @return the watched index
+     */
+    public CertificateIndex index() {
+        return index;
+    }
+
+    /**
+     * @return the time without events to wait for before refreshing the index
+     */
+    public Duration debounce() {
+        return debounce;
+    }
+
+    /**
+     * Starts watching the given locations; the index is not updated until
+     * something changes, therefore it should be up to date already.
+     *
+     * @param locations files, directories or glob patterns
+     * @param listener the listener to call after each refresh
+     *
+     * @throws IOException if the directories can not be registered
+     */
+    public synchronized void start(final Collection<String> locations, final Listener listener) throws IOException {
+        if (locations == null) {
+            throw new IllegalArgumentException("locations can not be null");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can not be null");
+        }
+        if (watcher != null) {
+            throw new IllegalStateException("watcher already started");
+        }
+
+        this.locations = List.copyOf(locations);
+        watcher = FileSystems.getDefault().newWatchService();
+        try {
+            for (String location: locations) {
+                final Location walk = CertificateScanner.location(location);
+                register(walk.base(), walk, 1);
+            }
+        } catch (IOException x) {
+            close();
+            throw x;
+        }
+
+        final WatchService service = watcher;
+        final Thread thread = new Thread(() -> watch(service, listener), "certificate-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the number of directories being watched
+     */
+    public int directories() {
+        return keys.size();
+    }
+
+    public synchronized boolean isRunning() {
+        return watcher != null;
+    }
+
+    /**
+     * Stops watching; a refresh in progress is completed
+     */
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException x) {
+                // nothing to do
+            }
+            watcher = null;
+            keys.clear();
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void watch(final WatchService service, final Listener listener) {
+        try {
+            while (true) {
+                final Set<Path> touched = new LinkedHashSet<>();
+                boolean overflow = collect(service.take(), touched);
+
+                //
+                // debounce: keep collecting until no events come for a while
+                //
+                WatchKey key;
+                while ((key = service.poll(debounce.toNanos(), TimeUnit.NANOSECONDS)) != null) {
+                    overflow |= collect(key, touched);
+                }
+
+                if (!overflow && touched.isEmpty()) {
+                    continue; // e.g. only the index has been saved
+                }
+
+                final CertificateIndex.Update update = overflow
+                                                     ? index.update(locations, scanner)
+                                                     : index.refresh(touched);
+                try {
+                    listener.updated(update, touched);
+                } catch (RuntimeException x) {
+                    LOG.log(Level.SEVERE, "certificate watcher listener failed", x);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException x) {
+            //
+            // closed, we are done
+            //
+        }
+    }
+
+    /**
+     * @return true if events have been lost
+     */
+    private boolean collect(final WatchKey key, final Set<Path> touched) {
+        final Location location = keys.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event: key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (location == null) {
+                continue;
+            }
+            final Path dir = (Path)key.watchable();
+            final Path path = dir.resolve((Path)event.context());
+            if (index.owns(path)) {
+                //
+                // saving the index in a watched directory must not trigger
+                // another refresh
+                //
+                continue;
+            }
+            final int depth = dir.equals(location.base()) ? 1 : location.base().relativize(dir).getNameCount() + 1;
+
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                if (depth < location.maxDepth()) {
+                    try {
+                        //
+                        // files may have been created before the directory
+                        // was registered
+                        //
+                        register(path, location, depth + 1);
+                        try (Stream<Path> files = Files.walk(path, Math.max(location.maxDepth() - depth, 1))) {
+                            files.filter(Files::isRegularFile).filter(location::matches).forEach(touched::add);
+                        }
+                    } catch (IOException x) {
+                        LOG.warning(() -> "unable to watch " + path + ": " + x.getMessage());
+                    }
+                }
+            } else if (event.kind() == ENTRY_DELETE || location.matches(path)) {
+                touched.add(path);
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key); // directory removed
+        }
+        return overflow;
+    }
+
+    private void register(final Path dir, final Location location, final int depth) throws IOException {
+        final List<Path> dirs = new ArrayList<>();
+        final int levels = (location.maxDepth() == Integer.MAX_VALUE)
+                         ? Integer.MAX_VALUE : Math.max(location.maxDepth() - depth, 0);
+        try (Stream<Path> walk = Files.walk(dir, levels)) {
+            walk.filter(Files::isDirectory).forEach(dirs::add);
+        }
+        for (Path d: dirs) {
+            keys.put(d.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), location);
+        }
+    }
+}
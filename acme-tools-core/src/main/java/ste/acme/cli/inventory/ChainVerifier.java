@@ -0,0 +1,570 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.shredzone.acme4j.toolbox.JSONBuilder;
+import ste.acme.cli.ocsp.OcspCache;
+import ste.acme.cli.ocsp.OcspClient;
+import ste.acme.cli.ocsp.OcspResponse;
+
+/**
+ * Verifies that certificates chain to a trusted root and that the keys next
+ * to them (e.g. domain.pem next to domain.crt) match them, meant to be called
+ * concurrently for many files (e.g. from {@link CertificateScanner#walk}).
+ *
+ * Trust anchors are indexed by subject key identifier (by subject for the
+ * ones without it), so that the issuer of a certificate is found from its
+ * authority key identifier with a lookup instead of trying all anchors. The
+ * intermediates verified up to an anchor are cached: the many certificates
+ * issued by the same intermediate are verified with a single signature check
+ * each. The cache is consulted only for the intermediates in the file being
+ * verified, so that the outcome does not depend on the files verified before.
+ *
+ * Intermediates must be CAs allowed to sign certificates (basic constraints
+ * and key usage) and the path length constraints of all of them must hold.
+ * Trust anchors are trusted as they are.
+ *
+ * If an OCSP client is given, the revocation status of leaf certificates with
+ * an OCSP responder is checked too, using the response cached next to the
+ * certificate (see {@link OcspCache#file}) while still valid.
+ */
+public class ChainVerifier {
+
+    public static final int MAX_DEPTH = 8;
+    public static final String CSV_HEADER = "path,subject,valid,anchor,key,keyMatches,problems";
+
+    private static final String SUBJECT = "subject:";
+    private static final int KEY_CERT_SIGN = 5; // in the key usage bits
+    private static final String[] CERTIFICATE_EXTENSIONS = { ".crt", ".cer", ".pem", ".der" };
+    private static final String[] KEY_EXTENSIONS = { ".pem", ".key" };
+
+    private final Map<String, List<X509Certificate>> anchors = new HashMap<>();
+    private final Map<X509Certificate, Issuer> verified = new ConcurrentHashMap<>();
+    private final Clock clock;
+    private final OcspClient ocsp; // null if revocation is not checked
+    private final OcspCache stapled; // idem
+
+    /**
+     * The outcome of a verification
+     *
+     * @param path the certificate file
+     * @param subject the subject DN (RFC 2253) of the leaf certificate
+     * @param anchor the subject DN of the trust anchor the leaf chains to; null if none
+     * @param keyFile the key file next to the certificate; null if none
+     * @param keyMatches true if the key matches the leaf certificate; null if not checked
+     * @param problems what is wrong, empty if the certificate is valid
+     */
+    public record Result(
+        Path path, String subject, String anchor, Path keyFile, Boolean keyMatches, List<String> problems
+    ) {
+        /**
+         * @return true if no problems were found
+         */
+        public boolean valid() {
+            return problems.isEmpty();
+        }
+
+        /**
+         * @return this result as a single line JSON object
+         */
+        public String toJSON() {
+            final JSONBuilder json = new JSONBuilder()
+                .put("path", String.valueOf(path))
+                .put("subject", subject)
+                .put("valid", valid())
+                .put("anchor", anchor);
+            if (keyFile != null) {
+                json.put("key", keyFile.toString());
+                json.put("keyMatches", keyMatches);
+            }
+            return json.array("problems", problems).toString();
+        }
+
+        /**
+         * @return this result as a CSV (RFC 4180) row with the columns in
+         *         {@link #CSV_HEADER}; problems are separated by semicolons
+         */
+        public String toCSV() {
+            return String.join(",",
+                CertificateInfo.csv(String.valueOf(path)), CertificateInfo.csv(String.valueOf(subject)),
+                String.valueOf(valid()), CertificateInfo.csv((anchor == null) ? "" : anchor),
+                CertificateInfo.csv((keyFile == null) ? "" : keyFile.toString()),
+                (keyMatches == null) ? "" : String.valueOf(keyMatches),
+                CertificateInfo.csv(String.join(";", problems))
+            );
+        }
+    }
+
+    /**
+     * An intermediate verified up to an anchor
+     *
+     * @param anchor the subject DN of the trust anchor
+     * @param slack how many intermediates may be below it for the path length
+     *        constraints of it and of the intermediates above it to hold
+     */
+    private record Issuer(String anchor, int slack) {}
+
+    /**
+     * @param anchors the trusted root certificates
+     */
+    public ChainVerifier(final Collection<X509Certificate> anchors) {
+        this(anchors, Clock.systemUTC());
+    }
+
+    /**
+     * @param anchors the trusted root certificates
+     * @param clock the clock used to tell whether certificates are expired
+     */
+    public ChainVerifier(final Collection<X509Certificate> anchors, final Clock clock) {
+        this(anchors, clock, null);
+    }
+
+    /**
+     * @param anchors the trusted root certificates
+     * @param clock the clock used to tell whether certificates are expired
+     * @param ocsp the client used to check the revocation of leaf certificates;
+     *        null not to check it
+     */
+    public ChainVerifier(final Collection<X509Certificate> anchors, final Clock clock, final OcspClient ocsp) {
+        if (anchors == null) {
+            throw new IllegalArgumentException("anchors can not be null");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock can not be null");
+        }
+        for (X509Certificate anchor: anchors) {
+            this.anchors.computeIfAbsent(keyId(anchor), (id) -> new ArrayList<>()).add(anchor);
+        }
+        this.clock = clock;
+        this.ocsp = ocsp;
+        this.stapled = (ocsp == null) ? null : new OcspCache(ocsp, clock);
+    }
+
+    /**
+     * @return the number of trust anchors
+     */
+    public int anchors() {
+        return anchors.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * @return the number of intermediates verified so far and cached
+     */
+    public int cached() {
+        return verified.size();
+    }
+
+    /**
+     * @return the trusted roots of the JDK (e.g. the cacerts keystore)
+     *
+     * @throws GeneralSecurityException if the JDK trust store can not be read
+     */
+    public static List<X509Certificate> defaultAnchors() throws GeneralSecurityException {
+        final TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init((KeyStore)null);
+        final List<X509Certificate> anchors = new ArrayList<>();
+        for (TrustManager manager: factory.getTrustManagers()) {
+            if (manager instanceof X509TrustManager x509) {
+                anchors.addAll(List.of(x509.getAcceptedIssuers()));
+            }
+        }
+        return anchors;
+    }
+
+    /**
+     * @param file a file with the trusted root certificates (e.g. a PEM bundle)
+     *
+     * @return the certificates in the given file
+     *
+     * @throws IOException if the file can not be read
+     * @throws CertificateException if the file does not contain valid certificates
+     */
+    public static List<X509Certificate> anchors(final Path file) throws IOException, CertificateException {
+        final List<X509Certificate> anchors = new ArrayList<>();
+        try (CertificateReader reader = CertificateReader.open(file, false)) {
+            for (X509Certificate certificate = reader.next(); certificate != null; certificate = reader.next()) {
+                anchors.add(certificate);
+            }
+        }
+        if (anchors.isEmpty()) {
+            throw new CertificateException("no certificates found in " + file);
+        }
+        return anchors;
+    }
+
+    /**
+     * Reads the chain in the given file and verifies it, together with the
+     * key next to it if any
+     *
+     * @param file the certificate file, leaf first
+     * @param mmap true to read the file through a memory mapped buffer
+     *
+     * @return the outcome of the verification; null if the file does not
+     *         contain any certificates (e.g. a key file), which is skipped
+     */
+    public Result verify(final Path file, final boolean mmap) {
+        final List<X509Certificate> chain = new ArrayList<>();
+        try (CertificateReader reader = CertificateReader.open(file, mmap)) {
+            for (X509Certificate certificate = reader.next(); certificate != null; certificate = reader.next()) {
+                chain.add(certificate);
+            }
+        } catch (IOException | CertificateException x) {
+            if (chain.isEmpty()) {
+                return null;
+            }
+            return new Result(file, null, null, null, null, List.of("invalid certificate file: " + x.getMessage()));
+        }
+        if (chain.isEmpty()) {
+            return null;
+        }
+
+        return verify(file, chain, keyFile(file));
+    }
+
+    /**
+     * Verifies the given chain and, if given, that the key in the key file
+     * matches its leaf certificate
+     *
+     * @param file the certificate file
+     * @param chain the certificates in the file, leaf first
+     * @param keyFile the key file; null if none
+     *
+     * @return the outcome of the verification
+     */
+    public Result verify(final Path file, final List<X509Certificate> chain, final Path keyFile) {
+        if (chain == null || chain.isEmpty()) {
+            throw new IllegalArgumentException("chain can not be null or empty");
+        }
+
+        final List<String> problems = new ArrayList<>();
+        final List<X509Certificate> path = new ArrayList<>(); // the intermediates, leaf side first
+        final X509Certificate leaf = chain.get(0);
+
+        String anchor = null;
+        X509Certificate leafIssuer = null;
+        Issuer top = null; // the cached intermediate the path ends with, if any
+        X509Certificate current = leaf;
+        for (int depth = 0; anchor == null && depth < MAX_DEPTH; ++depth) {
+            addIfNotNull(problems, validity(current));
+            if (isAnchor(current)) {
+                anchor = name(current);
+                break;
+            }
+            if (current != leaf) {
+                path.add(current);
+            }
+
+            final String issuerId = issuerId(current);
+            X509Certificate issuer = signer(current, anchors.getOrDefault(issuerId, List.of()));
+            if (issuer != null) {
+                anchor = name(issuer);
+                if (current == leaf) {
+                    leafIssuer = issuer;
+                }
+                break;
+            }
+
+            //
+            // the issuer must be in the chain; if it has been verified
+            // already, the rest of the path does not need to be walked again
+            //
+            String rejected = null;
+            Issuer cached = null;
+            for (X509Certificate candidate: chain) {
+                if (candidate == current || !keyId(candidate).equals(issuerId) || !signedBy(current, candidate)) {
+                    continue;
+                }
+                final Issuer known = verified.get(candidate);
+                final String problem = caProblem(
+                    candidate, path.size(), (known == null) ? candidate.getBasicConstraints() : known.slack()
+                );
+                if (problem == null) {
+                    issuer = candidate;
+                    cached = known;
+                    break;
+                }
+                if (rejected == null) {
+                    rejected = problem;
+                }
+            }
+            if (issuer == null) {
+                if (rejected == null) {
+                    rejected = "no trusted issuer found for " + name(current) + " issued by " + current.getIssuerX500Principal().getName();
+                }
+                problems.add(rejected);
+                break;
+            }
+            if (current == leaf) {
+                leafIssuer = issuer;
+            }
+            if (cached != null) {
+                addIfNotNull(problems, validity(issuer));
+                anchor = cached.anchor();
+                top = cached;
+                break;
+            }
+            current = issuer;
+        }
+        if (anchor == null && problems.isEmpty()) {
+            problems.add("no trusted root found within " + MAX_DEPTH + " certificates");
+        }
+
+        if (anchor != null) {
+            int slack = (top == null) ? Integer.MAX_VALUE : top.slack();
+            for (int i = path.size() - 1; i >= 0; --i) {
+                final X509Certificate intermediate = path.get(i);
+                slack = Math.min(intermediate.getBasicConstraints(), (slack == Integer.MAX_VALUE) ? slack : slack - 1);
+                if (validity(intermediate) == null) {
+                    verified.putIfAbsent(intermediate, new Issuer(anchor, slack));
+                }
+            }
+            if (ocsp != null && leafIssuer != null) {
+                addIfNotNull(problems, revocation(file, leaf, leafIssuer));
+            }
+        }
+
+        Boolean keyMatches = null;
+        if (keyFile != null) {
+            try {
+                final byte[] publicKey = publicKey(keyFile);
+                if (publicKey != null) {
+                    keyMatches = Arrays.equals(publicKey, leaf.getPublicKey().getEncoded());
+                    if (!keyMatches) {
+                        problems.add("the key in " + keyFile.getFileName() + " does not match the certificate");
+                    }
+                }
+            } catch (IOException | GeneralSecurityException x) {
+                problems.add("unable to read the key in " + keyFile.getFileName() + ": " + x.getMessage());
+            }
+        }
+
+        return new Result(file, name(leaf), anchor, keyFile, keyMatches, List.copyOf(problems));
+    }
+
+    /**
+     * @param certificate the certificate file (e.g. domain.crt)
+     *
+     * @return the key file next to the given certificate file with the same
+     *         name and extension .pem or .key (e.g. domain.pem); null if none
+     */
+    public static Path keyFile(final Path certificate) {
+        String base = String.valueOf(certificate.getFileName());
+        for (String extension: CERTIFICATE_EXTENSIONS) {
+            if (base.toLowerCase().endsWith(extension)) {
+                base = base.substring(0, base.length() - extension.length());
+                break;
+            }
+        }
+        for (String extension: KEY_EXTENSIONS) {
+            final Path key = certificate.resolveSibling(base + extension);
+            if (!key.equals(certificate) && Files.isRegularFile(key)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * @return why the given certificate is not valid now; null if it is valid
+     */
+    private String validity(final X509Certificate certificate) {
+        if (clock.instant().isAfter(certificate.getNotAfter().toInstant())) {
+            return name(certificate) + " expired on " + certificate.getNotAfter().toInstant();
+        }
+        if (clock.instant().isBefore(certificate.getNotBefore().toInstant())) {
+            return name(certificate) + " not valid before " + certificate.getNotBefore().toInstant();
+        }
+        return null;
+    }
+
+    /**
+     * @param certificate the intermediate
+     * @param below the number of intermediates below it in the path
+     * @param limit how many intermediates may be below it
+     *
+     * @return why the given intermediate can not issue the certificate below
+     *         it; null if it can
+     */
+    private static String caProblem(final X509Certificate certificate, final int below, final int limit) {
+        if (certificate.getBasicConstraints() < 0) {
+            return name(certificate) + " is not a CA";
+        }
+        final boolean[] usage = certificate.getKeyUsage();
+        if (usage != null && (usage.length <= KEY_CERT_SIGN || !usage[KEY_CERT_SIGN])) {
+            return name(certificate) + " is not allowed to sign certificates";
+        }
+        if (below > limit) {
+            return name(certificate) + " allows at most " + limit + " intermediates below it, found " + below;
+        }
+        return null;
+    }
+
+    /**
+     * @return why the leaf certificate is not trusted any more (e.g. it has
+     *         been revoked); null if it is not or it does not have an OCSP
+     *         responder
+     */
+    private String revocation(final Path file, final X509Certificate leaf, final X509Certificate issuer) {
+        if (OcspClient.responder(leaf) == null) {
+            return null;
+        }
+        try {
+            OcspResponse response = stapled.cached(OcspCache.file(file), List.of(leaf, issuer));
+            if (response == null || response.nextUpdate() == null || !clock.instant().isBefore(response.nextUpdate())) {
+                response = ocsp.fetch(leaf, issuer);
+            }
+            return switch (response.status()) {
+                case GOOD -> null;
+                case REVOKED -> name(leaf) + " has been revoked";
+                case UNKNOWN -> name(leaf) + " is unknown to its OCSP responder";
+            };
+        } catch (IOException x) {
+            return "unable to check the revocation of " + name(leaf) + ": " + x.getMessage();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            return "interrupted while checking the revocation of " + name(leaf);
+        }
+    }
+
+    private static void addIfNotNull(final List<String> problems, final String problem) {
+        if (problem != null) {
+            problems.add(problem);
+        }
+    }
+
+    private boolean isAnchor(final X509Certificate certificate) {
+        for (X509Certificate anchor: anchors.getOrDefault(keyId(certificate), List.of())) {
+            if (anchor.equals(certificate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static X509Certificate signer(final X509Certificate certificate, final List<X509Certificate> candidates) {
+        for (X509Certificate candidate: candidates) {
+            if (signedBy(certificate, candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean signedBy(final X509Certificate certificate, final X509Certificate issuer) {
+        try {
+            certificate.verify(issuer.getPublicKey());
+            return true;
+        } catch (GeneralSecurityException x) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the subject key identifier of the given certificate in hex or
+     *         its subject if it does not have one
+     */
+    private static String keyId(final X509Certificate certificate) {
+        final byte[] extension = certificate.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+        if (extension != null) {
+            final byte[] ski = ASN1OctetString.getInstance(
+                ASN1OctetString.getInstance(extension).getOctets()
+            ).getOctets();
+            return HexFormat.of().formatHex(ski);
+        }
+        return SUBJECT + certificate.getSubjectX500Principal().getName();
+    }
+
+    /**
+     * @return the authority key identifier of the given certificate in hex
+     *         or its issuer if it does not have one
+     */
+    private static String issuerId(final X509Certificate certificate) {
+        final byte[] extension = certificate.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+        if (extension != null) {
+            final byte[] aki = AuthorityKeyIdentifier.getInstance(
+                ASN1OctetString.getInstance(extension).getOctets()
+            ).getKeyIdentifier();
+            if (aki != null) {
+                return HexFormat.of().formatHex(aki);
+            }
+        }
+        return SUBJECT + certificate.getIssuerX500Principal().getName();
+    }
+
+    private static String name(final X509Certificate certificate) {
+        return certificate.getSubjectX500Principal().getName();
+    }
+
+    /**
+     * @return the encoded public key of the key pair in the given PEM file;
+     *         null if the file does not hold a key or the public key can not
+     *         be told (e.g. encrypted keys)
+     */
+    private static byte[] publicKey(final Path file) throws IOException, GeneralSecurityException {
+        final Object pem;
+        try (Reader in = Files.newBufferedReader(file); PEMParser parser = new PEMParser(in)) {
+            pem = parser.readObject();
+        }
+
+        final JcaPEMKeyConverter converter = new JcaPEMKeyConverter();
+        if (pem instanceof PEMKeyPair pair) {
+            return pair.getPublicKeyInfo().getEncoded();
+        }
+        if (pem instanceof PrivateKeyInfo info && converter.getPrivateKey(info) instanceof RSAPrivateCrtKey rsa) {
+            return KeyFactory.getInstance("RSA").generatePublic(
+                new RSAPublicKeySpec(rsa.getModulus(), rsa.getPublicExponent())
+            ).getEncoded();
+        }
+        return null;
+    }
+}
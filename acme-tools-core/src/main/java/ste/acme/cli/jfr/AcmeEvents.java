@@ -0,0 +1,46 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.jfr;
+
+/**
+ * The Java Flight Recorder events of acme-tools, so that a recording shows
+ * the ACME activity next to GC, I/O and threads. Events are enabled by
+ * default in any recording (e.g. with the --jfr option of the launcher);
+ * without a recording running, emitting an event costs next to nothing.
+ */
+public final class AcmeEvents {
+
+    public static final String CATEGORY = "ACME Tools";
+    public static final String CA = "CA";
+    public static final String CHALLENGES = "Challenges";
+    public static final String KEYS = "Keys";
+
+    /**
+     * The names of all events
+     */
+    public static final String[] NAMES = {
+        OrderEvent.NAME, ChallengeTriggerEvent.NAME, AuthorizationEvent.NAME,
+        PollingEvent.NAME, ChallengeHitEvent.NAME, KeyIOEvent.NAME
+    };
+
+    private AcmeEvents() {
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The wait for the CA to validate a triggered challenge, until the
+ * authorization is no more pending or the challenge timeout expires
+ */
+@Name(AuthorizationEvent.NAME)
+@Label("Authorization")
+@Category({ AcmeEvents.CATEGORY, AcmeEvents.CA })
+@Description("Wait for the CA to validate a challenge and complete the authorization")
+@StackTrace(false)
+public class AuthorizationEvent extends jdk.jfr.Event {
+    public static final String NAME = "ste.acme.Authorization";
+
+    @Label("Domain")
+    public String domain;
+
+    @Label("Status")
+    @Description("The status of the authorization at the end of the wait")
+    public String status;
+
+    @Label("Polls")
+    @Description("How many times the authorization has been fetched")
+    public int polls;
+}
@@ -0,0 +1,87 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.jfr;
+
+import java.net.InetSocketAddress;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A request to the challenge responders, most likely by the CA validating
+ * the challenge
+ */
+@Name(ChallengeHitEvent.NAME)
+@Label("Challenge Hit")
+@Category({ AcmeEvents.CATEGORY, AcmeEvents.CHALLENGES })
+@Description("Request to a challenge responder (HTTP token or TLS-ALPN handshake)")
+@StackTrace(false)
+public class ChallengeHitEvent extends jdk.jfr.Event {
+    public static final String NAME = "ste.acme.ChallengeHit";
+
+    public static final String HTTP_01 = "http-01";
+    public static final String TLS_ALPN_01 = "tls-alpn-01";
+
+    @Label("Challenge Type")
+    public String type;
+
+    @Label("Token")
+    @Description("The token requested (HTTP) or the domain asked with SNI (TLS-ALPN)")
+    public String token;
+
+    @Label("Remote Address")
+    public String remoteAddress;
+
+    @Label("Status")
+    @Description("The HTTP status of the response; 200 or 0 for completed or failed TLS-ALPN handshakes")
+    public int status;
+
+    @Label("Latency")
+    @Description("From the request (or connection) to the response (or handshake completion)")
+    @Timespan(Timespan.NANOSECONDS)
+    public long latency;
+
+    /**
+     * Commits a hit if the event is enabled in a running recording
+     *
+     * @param type {@link #HTTP_01} or {@link #TLS_ALPN_01}
+     * @param token the token or the domain requested; null if unknown
+     * @param remote the address of the client
+     * @param status the status of the response
+     * @param latency the time taken to respond, in nanoseconds
+     */
+    public static void hit(
+        final String type, final String token, final InetSocketAddress remote, final int status, final long latency
+    ) {
+        final ChallengeHitEvent event = new ChallengeHitEvent();
+        if (event.shouldCommit()) {
+            event.type = type;
+            event.token = token;
+            event.remoteAddress = (remote == null) ? null : remote.toString();
+            event.status = status;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.jfr;
+
+import java.nio.file.Path;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The read or write of a key file or of a keystore, decryption and
+ * encryption included
+ */
+@Name(KeyIOEvent.NAME)
+@Label("Key I/O")
+@Category({ AcmeEvents.CATEGORY, AcmeEvents.KEYS })
+@Description("Read or write of a key file or keystore, including decryption and encryption")
+@StackTrace(false)
+public class KeyIOEvent extends jdk.jfr.Event {
+    public static final String NAME = "ste.acme.KeyIO";
+
+    public static final String KEY = "key";
+    public static final String KEYSTORE = "keystore";
+    public static final String READ = "read";
+    public static final String WRITE = "write";
+
+    @Label("Path")
+    public String path;
+
+    @Label("Kind")
+    @Description("key or keystore")
+    public String kind;
+
+    @Label("Operation")
+    @Description("read or write")
+    public String operation;
+
+    /**
+     * Ends the event begun before the I/O and commits it if it is enabled in
+     * a running recording; the fields are set only in that case
+     *
+     * @param file the file read or written
+     * @param kind {@link #KEY} or {@link #KEYSTORE}
+     * @param operation {@link #READ} or {@link #WRITE}
+     */
+    public void commit(final Path file, final String kind, final String operation) {
+        end();
+        if (shouldCommit()) {
+            this.path = String.valueOf(file);
+            this.kind = kind;
+            this.operation = operation;
+            commit();
+        }
+    }
+}
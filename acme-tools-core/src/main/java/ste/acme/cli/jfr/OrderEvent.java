@@ -0,0 +1,49 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The creation of an order with the CA, from the request to the response
+ */
+@Name(OrderEvent.NAME)
+@Label("Order Creation")
+@Category({ AcmeEvents.CATEGORY, AcmeEvents.CA })
+@Description("Creation of an order with the CA")
+@StackTrace(false)
+public class OrderEvent extends jdk.jfr.Event {
+    public static final String NAME = "ste.acme.Order";
+
+    @Label("Domain")
+    public String domain;
+
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("Status")
+    @Description("The status of the created order, empty if the creation failed")
+    public String status;
+}
@@ -0,0 +1,57 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A fetch of the status of an authorization or of an order while waiting for
+ * the CA
+ */
+@Name(PollingEvent.NAME)
+@Label("Polling")
+@Category({ AcmeEvents.CATEGORY, AcmeEvents.CA })
+@Description("Fetch of the status of an authorization or order while waiting for the CA")
+@StackTrace(false)
+public class PollingEvent extends jdk.jfr.Event {
+    public static final String NAME = "ste.acme.Polling";
+
+    public static final String AUTHORIZATION = "authorization";
+    public static final String ORDER = "order";
+
+    @Label("Resource")
+    @Description("What is polled: authorization or order")
+    public String resource;
+
+    @Label("Domain")
+    public String domain;
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Status")
+    @Description("The status fetched")
+    public String status;
+}
@@ -0,0 +1,310 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Writes the progress events on the console, in the log and optionally in a
+ * file as a JSON object per line, from a single writer thread fed by a
+ * bounded queue; threads emitting events do not wait for the console or the
+ * log handlers, nor contend on their locks, and lines never interleave.
+ *
+ * The console shows the plain messages, the JSON lines carry level, thread,
+ * domain and correlation ID (see {@link LogContext}). If the queue is full,
+ * events are dropped rather than blocking the emitting thread and the number
+ * of dropped events is logged as soon as the writer catches up. Output lines
+ * ({@link #print(String)}, e.g. the rows of a report) are never dropped:
+ * printing waits for room in the queue.
+ */
+public class AsyncLog implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final BlockingQueue<Entry> queue;
+    private final Consumer<String> console;
+    private final Logger logger;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+
+    private volatile boolean closed = false;
+
+    //
+    // used by the writer thread only
+    //
+    private Path jsonFile = null;
+    private Writer json = null;
+    private long reported = 0; // dropped events already reported
+
+    /**
+     * @param logger the logger events are forwarded to
+     */
+    public AsyncLog(final Logger logger) {
+        this(DEFAULT_CAPACITY, (line) -> System.out.println(line), logger);
+    }
+
+    /**
+     * @param capacity the number of events the queue can hold
+     * @param console the renderer of the console lines
+     * @param logger the logger events are forwarded to
+     */
+    public AsyncLog(final int capacity, final Consumer<String> console, final Logger logger) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        if (console == null) {
+            throw new IllegalArgumentException("console can not be null");
+        }
+        if (logger == null) {
+            throw new IllegalArgumentException("logger can not be null");
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.console = console;
+        this.logger = logger;
+        this.writer = new Thread(this::run, "acme-tools-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @param message the message of an INFO event
+     */
+    public void info(final String message) {
+        log(Level.INFO, message);
+    }
+
+    /**
+     * Queues an event tagged with the context of the current thread; the
+     * event is dropped if the queue is full
+     *
+     * @param level the level of the event
+     * @param message the message
+     */
+    public void log(final Level level, final String message) {
+        final LogEvent event = new LogEvent(
+            Instant.now(), level, Thread.currentThread().getName(),
+            LogContext.domain(), LogContext.correlation(), message
+        );
+        if (!queue.offer(new Event(event))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Queues a line for the console only, waiting for room in the queue if
+     * needed
+     *
+     * @param line the line to print
+     */
+    public void print(final String line) {
+        put(new Line(line));
+    }
+
+    /**
+     * Starts appending the events to the given file as a JSON object per
+     * line, or stops if the file is null; the change applies to the events
+     * queued after this call
+     *
+     * @param file the file to append the events to; null to stop
+     */
+    public void json(final Path file) {
+        put(new Json(file));
+    }
+
+    /**
+     * Waits until all events queued so far are written
+     */
+    public void flush() {
+        if (closed) {
+            return;
+        }
+        final CountDownLatch written = new CountDownLatch(1);
+        put(new Flush(written));
+        try {
+            written.await();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of events dropped because the queue was full
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes all events queued so far and stops the writer thread
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void put(final Entry entry) {
+        if (closed) {
+            throw new IllegalStateException("log closed");
+        }
+        try {
+            queue.put(entry);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                final Entry entry = queue.take();
+                try {
+                    write(entry);
+                    if (queue.isEmpty()) {
+                        caughtUp();
+                    }
+                } catch (RuntimeException x) {
+                    logger.log(Level.SEVERE, "unable to write a log event", x);
+                }
+            }
+        } catch (InterruptedException x) {
+            //
+            // closed
+            //
+        } finally {
+            closeJson();
+        }
+    }
+
+    private void write(final Entry entry) {
+        if (entry instanceof Event e) {
+            write(e.event());
+        } else if (entry instanceof Line l) {
+            console.accept(l.line());
+        } else if (entry instanceof Json j) {
+            closeJson();
+            jsonFile = j.file();
+        } else if (entry instanceof Flush f) {
+            try {
+                caughtUp();
+            } finally {
+                f.written().countDown();
+            }
+        }
+    }
+
+    private void write(final LogEvent event) {
+        console.accept(event.message());
+
+        if (logger.isLoggable(event.level())) {
+            final LogRecord record = new LogRecord(event.level(), event.message());
+            record.setInstant(event.time());
+            record.setLoggerName(logger.getName());
+            logger.log(record);
+        }
+
+        if (jsonFile != null) {
+            try {
+                if (json == null) {
+                    json = Files.newBufferedWriter(
+                        jsonFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND
+                    );
+                }
+                json.write(event.toJSON());
+                json.write('\n');
+            } catch (IOException x) {
+                logger.severe(() -> "unable to write the log in " + jsonFile + ": " + x.getMessage());
+                closeJson();
+                jsonFile = null;
+            }
+        }
+    }
+
+    /**
+     * Once the queue is empty the JSON lines are flushed and the events
+     * dropped in the meantime are reported
+     */
+    private void caughtUp() {
+        final long total = dropped.sum();
+        if (total > reported) {
+            final long lost = total - reported;
+            reported = total;
+            write(new LogEvent(
+                Instant.now(), Level.WARNING, writer.getName(), null, null,
+                lost + " log events dropped, the log queue was full"
+            ));
+        }
+        if (json != null) {
+            try {
+                json.flush();
+            } catch (IOException x) {
+                logger.severe(() -> "unable to write the log in " + jsonFile + ": " + x.getMessage());
+            }
+        }
+    }
+
+    private void closeJson() {
+        if (json != null) {
+            try {
+                json.close();
+            } catch (IOException x) {
+                logger.severe(() -> "unable to write the log in " + jsonFile + ": " + x.getMessage());
+            }
+            json = null;
+        }
+    }
+
+    // ------------------------------------------------------------------- Entry
+
+    private interface Entry {}
+
+    private record Event(LogEvent event) implements Entry {}
+
+    private record Line(String line) implements Entry {}
+
+    private record Json(Path file) implements Entry {}
+
+    private record Flush(CountDownLatch written) implements Entry {}
+}
@@ -0,0 +1,106 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.log;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The domain and correlation ID events emitted by the current thread are
+ * tagged with, so that the events of renewals running in parallel can be told
+ * apart. A context is opened for the duration of an operation (typically in
+ * a try-with-resources block) and the previous one is restored when it is
+ * closed.
+ */
+public final class LogContext {
+
+    private static final ThreadLocal<LogContext> CURRENT = new ThreadLocal<>();
+
+    private final String domain;
+    private final String correlation;
+
+    /**
+     * A context open on the current thread; closing it restores the previous
+     * one
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private LogContext(final String domain, final String correlation) {
+        this.domain = domain;
+        this.correlation = correlation;
+    }
+
+    /**
+     * Opens a context for the given domain with a new correlation ID
+     *
+     * @param domain the domain being worked on
+     *
+     * @return the open context
+     */
+    public static Scope open(final String domain) {
+        return open(domain, String.format("%08x", ThreadLocalRandom.current().nextInt()));
+    }
+
+    /**
+     * Opens a context for the given domain and correlation ID
+     *
+     * @param domain the domain being worked on
+     * @param correlation the ID of the operation
+     *
+     * @return the open context
+     */
+    public static Scope open(final String domain, final String correlation) {
+        if (domain == null) {
+            throw new IllegalArgumentException("domain can not be null");
+        }
+        if (correlation == null) {
+            throw new IllegalArgumentException("correlation can not be null");
+        }
+        final LogContext previous = CURRENT.get();
+        CURRENT.set(new LogContext(domain, correlation));
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * @return the domain of the context of the current thread; null if none
+     */
+    public static String domain() {
+        final LogContext context = CURRENT.get();
+        return (context == null) ? null : context.domain;
+    }
+
+    /**
+     * @return the correlation ID of the context of the current thread; null
+     *         if none
+     */
+    public static String correlation() {
+        final LogContext context = CURRENT.get();
+        return (context == null) ? null : context.correlation;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.log;
+
+import java.time.Instant;
+import java.util.logging.Level;
+import org.shredzone.acme4j.toolbox.JSONBuilder;
+
+/**
+ * A progress event, tagged with the thread that emitted it and with the
+ * domain and correlation ID of the {@link LogContext} it was emitted in (if
+ * any)
+ *
+ * @param time when the event was emitted
+ * @param level the level of the event
+ * @param thread the name of the thread that emitted the event
+ * @param domain the domain being worked on; null if none
+ * @param correlation the ID of the operation (e.g. the renewal of a domain)
+ *        the event belongs to; null if none
+ * @param message the message
+ */
+public record LogEvent(
+    Instant time, Level level, String thread, String domain, String correlation, String message
+) {
+
+    /**
+     * @return this event as a single line JSON object; the domain and
+     *         correlation ID are omitted if not given
+     */
+    public String toJSON() {
+        final JSONBuilder json = new JSONBuilder()
+            .put("time", time)
+            .put("level", level.getName())
+            .put("thread", thread);
+        if (domain != null) {
+            json.put("domain", domain);
+        }
+        if (correlation != null) {
+            json.put("correlation", correlation);
+        }
+        return json.put("message", message).toString();
+    }
+}
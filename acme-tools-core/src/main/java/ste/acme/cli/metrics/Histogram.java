@@ -0,0 +1,85 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in seconds that can be observed from many threads
+ * without locking: buckets are atomic counters and sum and count are adders.
+ * A reader may see an observation in a bucket and not yet in the count, so
+ * the count is written as at least the buckets total to keep the histogram
+ * consistent.
+ */
+final class Histogram {
+
+    private final double[] bounds;
+    private final AtomicLongArray buckets;
+    private final DoubleAdder sum = new DoubleAdder();
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * @param bounds the upper bounds of the buckets, ascending
+     */
+    Histogram(final double[] bounds) {
+        this.bounds = bounds;
+        this.buckets = new AtomicLongArray(bounds.length);
+    }
+
+    void observe(final double value) {
+        for (int i = 0; i < bounds.length; ++i) {
+            if (value <= bounds[i]) {
+                buckets.incrementAndGet(i);
+                break;
+            }
+        }
+        sum.add(value);
+        count.increment();
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * Appends the buckets, sum and count in the text format of Prometheus
+     *
+     * @param text where to append
+     * @param name the name of the metric
+     * @param labels the labels of the metric, e.g. phase="login"
+     */
+    void append(final StringBuilder text, final String name, final String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; ++i) {
+            cumulative += buckets.get(i);
+            text.append(name).append("_bucket{").append(labels)
+                .append(",le=\"").append(BigDecimal.valueOf(bounds[i]).stripTrailingZeros().toPlainString())
+                .append("\"} ").append(cumulative).append('\n');
+        }
+        final long total = count();
+        text.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(Math.max(total, cumulative)).append('\n');
+        text.append(name).append("_sum{").append(labels).append("} ").append(sum.sum()).append('\n');
+        text.append(name).append("_count{").append(labels).append("} ").append(Math.max(total, cumulative)).append('\n');
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.net.URI;
+import java.net.URL;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.shredzone.acme4j.Login;
+import org.shredzone.acme4j.Session;
+import org.shredzone.acme4j.challenge.Challenge;
+import org.shredzone.acme4j.connector.Connection;
+import org.shredzone.acme4j.connector.NetworkSettings;
+import org.shredzone.acme4j.connector.Resource;
+import org.shredzone.acme4j.exception.AcmeException;
+import org.shredzone.acme4j.provider.AcmeProvider;
+import org.shredzone.acme4j.toolbox.JSON;
+
+/**
+ * Decorates the provider of a session so that every exchange with the CA is
+ * recorded in a {@link RequestMetrics}: the directory is timed here, all other
+ * requests by the {@link InstrumentedConnection}s handed to acme4j, which tell
+ * the resources of the directory (e.g. newOrder) by the URLs read here.
+ *
+ * acme4j asks the provider for the directory whenever it needs a resource URL
+ * and the provider answers from its cache until the directory expires; those
+ * answers are not exchanges with the CA and are not recorded.
+ */
+public class InstrumentedAcmeProvider implements AcmeProvider {
+
+    public static final String DIRECTORY = "directory";
+
+    private final AcmeProvider provider;
+    private final URI serverUri;
+    private final RequestMetrics metrics;
+    private final Map<String, String> resources = new ConcurrentHashMap<>(); // by URL, filled with the directory
+
+    /**
+     * @param provider the provider to decorate
+     * @param serverUri the server URI the provider has already accepted
+     * @param metrics where to record the exchanges
+     */
+    public InstrumentedAcmeProvider(final AcmeProvider provider, final URI serverUri, final RequestMetrics metrics) {
+        if (provider == null) {
+            throw new IllegalArgumentException("provider can not be null");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics can not be null");
+        }
+        this.provider = provider;
+        this.serverUri = serverUri;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param session a new session
+     * @param metrics where to record the exchanges
+     *
+     * @return a session to the same CA of the given one whose exchanges are
+     *         recorded in the given metrics
+     */
+    public static Session session(final Session session, final RequestMetrics metrics) {
+        if (session == null) {
+            throw new IllegalArgumentException("session can not be null");
+        }
+        return new Session(
+            session.getServerUri(),
+            new InstrumentedAcmeProvider(session.provider(), session.getServerUri(), metrics)
+        );
+    }
+
+    /**
+     * @return the decorated provider
+     */
+    public AcmeProvider provider() {
+        return provider;
+    }
+
+    /**
+     * The server URI the provider has been created for is accepted without
+     * asking the decorated provider again, as providers may do some work
+     * when accepting a URI
+     */
+    @Override
+    public boolean accepts(final URI uri) {
+        return (uri != null && uri.equals(serverUri)) || provider.accepts(uri);
+    }
+
+    @Override
+    public URL resolve(final URI uri) {
+        return provider.resolve(uri);
+    }
+
+    @Override
+    public Connection connect(final URI uri, final NetworkSettings settings) {
+        return new InstrumentedConnection(provider.connect(uri, settings), metrics, resources);
+    }
+
+    @Override
+    public JSON directory(final Session session, final URI uri) throws AcmeException {
+        final ZonedDateTime expires = session.getDirectoryExpires();
+        if (expires != null && expires.isAfter(ZonedDateTime.now())) {
+            return provider.directory(session, uri); // still fresh, from the cache
+        }
+
+        final long start = System.nanoTime();
+        try {
+            final JSON directory = provider.directory(session, uri);
+            metrics.exchange(DIRECTORY, (directory == null) ? 304 : 200, System.nanoTime() - start, false);
+            if (directory != null) {
+                metrics.bytes(DIRECTORY, InstrumentedConnection.size(directory));
+                resources(directory);
+            }
+            return directory;
+        } catch (AcmeException | RuntimeException x) {
+            metrics.exchange(DIRECTORY, InstrumentedConnection.status(x), System.nanoTime() - start, false);
+            throw x;
+        }
+    }
+
+    @Override
+    public Challenge createChallenge(final Login login, final JSON data) {
+        return provider.createChallenge(login, data);
+    }
+
+    /**
+     * Tells the resources of a directory not read through this provider (e.g.
+     * answered from a {@link ste.acme.cli.client.DirectoryCache}), so that
+     * the requests to them are still recorded by resource.
+     *
+     * Connections may be opened before the directory is read (e.g. to send
+     * the first request to newOrder), so they are given the map, which is
+     * filled here
+     *
+     * @param directory the directory of the CA
+     */
+    public void resources(final JSON directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory can not be null");
+        }
+        for (Resource resource: Resource.values()) {
+            directory.get(resource.path()).optional().ifPresent(
+                (url) -> resources.put(url.asString(), resource.path())
+            );
+        }
+    }
+}
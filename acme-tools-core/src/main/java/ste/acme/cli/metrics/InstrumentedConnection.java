@@ -0,0 +1,300 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import org.shredzone.acme4j.Login;
+import org.shredzone.acme4j.Session;
+import org.shredzone.acme4j.connector.Connection;
+import org.shredzone.acme4j.exception.AcmeException;
+import org.shredzone.acme4j.exception.AcmeServerException;
+import org.shredzone.acme4j.toolbox.JSON;
+import org.shredzone.acme4j.toolbox.JSONBuilder;
+
+/**
+ * Decorates a connection to the CA recording each request in a
+ * {@link RequestMetrics} by resource. The resources of the directory (e.g.
+ * newOrder) are told by their URL as given by the directory; the others, whose URLs are given by the CA,
+ * by the request (certificate downloads) or by the usual naming of their URL
+ * paths (e.g. /acme/authz/..., /acme/chall/..., /acme/finalize/...); anything
+ * else is recorded as "other".
+ *
+ * The response bytes are those of the payload read (the JSON document or the
+ * DER encoded certificates), headers excluded. A signed request for which the
+ * session has no nonce left makes acme4j fetch one first, which is recorded
+ * as a nonce fetch; retries after a bad nonce happen within the decorated
+ * connection and are seen as a longer request. They can not be counted here:
+ * acme4j retries with the nonce of the error response, calling neither
+ * {@link #resetNonce(Session)} nor any other method of this decorator, and
+ * reports a bad nonce only once its attempts are exhausted (recorded then with
+ * the status of the error, i.e. 400).
+ */
+public class InstrumentedConnection implements Connection {
+
+    public static final String NEW_NONCE = "newNonce";
+    public static final String AUTHZ = "authz";
+    public static final String CHALLENGE = "challenge";
+    public static final String FINALIZE = "finalize";
+    public static final String ORDER = "order";
+    public static final String ACCOUNT = "account";
+    public static final String CERTIFICATE = "certificate";
+    public static final String OTHER = "other";
+
+    private final Connection connection;
+    private final RequestMetrics metrics;
+    private final Map<String, String> resources;
+
+    private String resource = OTHER; // of the last request, for the response size
+
+    /**
+     * @param connection the connection to decorate
+     * @param metrics where to record the requests
+     */
+    public InstrumentedConnection(final Connection connection, final RequestMetrics metrics) {
+        this(connection, metrics, Map.of());
+    }
+
+    /**
+     * @param connection the connection to decorate
+     * @param metrics where to record the requests
+     * @param resources the resources of the directory (e.g. newOrder) by URL
+     */
+    public InstrumentedConnection(
+        final Connection connection, final RequestMetrics metrics, final Map<String, String> resources
+    ) {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection can not be null");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics can not be null");
+        }
+        this.connection = connection;
+        this.metrics = metrics;
+        this.resources = (resources == null) ? Map.of() : resources;
+    }
+
+    @Override
+    public void resetNonce(final Session session) throws AcmeException {
+        resource = NEW_NONCE;
+        final long start = System.nanoTime();
+        try {
+            connection.resetNonce(session);
+            metrics.exchange(NEW_NONCE, 200, System.nanoTime() - start, false);
+        } catch (AcmeException | RuntimeException x) {
+            metrics.exchange(NEW_NONCE, status(x), System.nanoTime() - start, false);
+            throw x;
+        }
+    }
+
+    @Override
+    public int sendRequest(final URL url, final Session session, final ZonedDateTime ifModifiedSince)
+    throws AcmeException {
+        return record(resource(url, resources), false, () -> connection.sendRequest(url, session, ifModifiedSince));
+    }
+
+    @Override
+    public int sendCertificateRequest(final URL url, final Login login) throws AcmeException {
+        return record(
+            CERTIFICATE, noNonce(login.getSession()), () -> connection.sendCertificateRequest(url, login)
+        );
+    }
+
+    @Override
+    public int sendSignedPostAsGetRequest(final URL url, final Login login) throws AcmeException {
+        return record(
+            resource(url, resources), noNonce(login.getSession()),
+            () -> connection.sendSignedPostAsGetRequest(url, login)
+        );
+    }
+
+    @Override
+    public int sendSignedRequest(final URL url, final JSONBuilder claims, final Login login) throws AcmeException {
+        return record(
+            resource(url, resources), noNonce(login.getSession()),
+            () -> connection.sendSignedRequest(url, claims, login)
+        );
+    }
+
+    @Override
+    public int sendSignedRequest(final URL url, final JSONBuilder claims, final Session session, final KeyPair keypair)
+    throws AcmeException {
+        return record(
+            resource(url, resources), noNonce(session),
+            () -> connection.sendSignedRequest(url, claims, session, keypair)
+        );
+    }
+
+    @Override
+    public JSON readJsonResponse() throws AcmeException {
+        final JSON json = connection.readJsonResponse();
+        if (json != null) {
+            metrics.bytes(resource, size(json));
+        }
+        return json;
+    }
+
+    @Override
+    public List<X509Certificate> readCertificates() throws AcmeException {
+        final List<X509Certificate> certificates = connection.readCertificates();
+        long size = 0;
+        for (X509Certificate certificate: certificates) {
+            try {
+                size += certificate.getEncoded().length;
+            } catch (CertificateEncodingException x) {
+                // not counted
+            }
+        }
+        metrics.bytes(resource, size);
+        return certificates;
+    }
+
+    @Override
+    public Optional<Instant> getRetryAfter() {
+        return connection.getRetryAfter();
+    }
+
+    @Override
+    @Deprecated
+    @SuppressWarnings("deprecation")
+    public void handleRetryAfter(final String message) throws AcmeException {
+        connection.handleRetryAfter(message);
+    }
+
+    @Override
+    public Optional<String> getNonce() {
+        return connection.getNonce();
+    }
+
+    @Override
+    public URL getLocation() {
+        return connection.getLocation();
+    }
+
+    @Override
+    public Optional<ZonedDateTime> getLastModified() {
+        return connection.getLastModified();
+    }
+
+    @Override
+    public Optional<ZonedDateTime> getExpiration() {
+        return connection.getExpiration();
+    }
+
+    @Override
+    public Collection<URL> getLinks(final String relation) {
+        return connection.getLinks(relation);
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    /**
+     * @param url the URL of a request
+     * @param resources the resources of the directory (e.g. newOrder) by URL
+     *
+     * @return the resource requested with the given URL
+     */
+    public static String resource(final URL url, final Map<String, String> resources) {
+        final String resource = resources.get(url.toString());
+        if (resource != null) {
+            return resource;
+        }
+
+        final String path = url.getPath().toLowerCase(Locale.ROOT);
+        if (path.contains("finalize")) {
+            return FINALIZE;
+        }
+        if (path.contains("chal")) {
+            return CHALLENGE;
+        }
+        if (path.contains("authz")) {
+            return AUTHZ;
+        }
+        if (path.contains("cert")) {
+            return CERTIFICATE;
+        }
+        if (path.contains("order")) {
+            return ORDER;
+        }
+        if (path.contains("acct") || path.contains("account")) {
+            return ACCOUNT;
+        }
+        return OTHER;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private int record(final String resource, final boolean nonceFetched, final Request request)
+    throws AcmeException {
+        this.resource = resource;
+        final long start = System.nanoTime();
+        try {
+            final int status = request.send();
+            metrics.exchange(resource, status, System.nanoTime() - start, nonceFetched);
+            return status;
+        } catch (AcmeException | RuntimeException x) {
+            metrics.exchange(resource, status(x), System.nanoTime() - start, nonceFetched);
+            throw x;
+        }
+    }
+
+    private static boolean noNonce(final Session session) {
+        return session.getNonce() == null;
+    }
+
+    static int status(final Exception x) {
+        if (x instanceof AcmeServerException server) {
+            final JSON.Value status = server.getProblem().asJSON().get("status");
+            if (status.isPresent()) {
+                try {
+                    return status.asInt();
+                } catch (RuntimeException e) {
+                    // not a number
+                }
+            }
+        }
+        return RequestMetrics.NO_STATUS;
+    }
+
+    static long size(final JSON json) {
+        return json.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    // ----------------------------------------------------------------- Request
+
+    @FunctionalInterface
+    private interface Request {
+        int send() throws AcmeException;
+    }
+}
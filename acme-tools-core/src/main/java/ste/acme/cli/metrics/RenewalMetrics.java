@@ -0,0 +1,129 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import ste.acme.cli.store.AtomicFiles;
+
+/**
+ * Aggregates the timings of many renewals (e.g. all renewals of a batch) in
+ * histograms: one of the time spent in each phase and one of the total time
+ * of the renewals by outcome; the exchanges with the CA are aggregated in
+ * {@link #requests()}. The histograms can be written in the text
+ * format of Prometheus, e.g. in the directory of the textfile collector of
+ * the node exporter; the file is replaced atomically as the collector
+ * requires.
+ */
+public class RenewalMetrics {
+
+    /**
+     * The upper bounds of the histogram buckets, in seconds: from API calls
+     * taking tens of milliseconds to challenges taking minutes
+     */
+    public static final double[] BUCKETS = {
+        0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300
+    };
+
+    public static final String PHASE_SECONDS = "acme_tools_renewal_phase_seconds";
+    public static final String RENEWAL_SECONDS = "acme_tools_renewal_seconds";
+
+    private final Map<String, Histogram> phases = new TreeMap<>();
+    private final Map<String, Histogram> renewals = new TreeMap<>();
+    private final RequestMetrics requests = new RequestMetrics();
+
+    /**
+     * @return the metrics of the exchanges with the CA
+     */
+    public RequestMetrics requests() {
+        return requests;
+    }
+
+    /**
+     * Adds the timings of a stopped renewal
+     *
+     * @param timer the timer of the renewal
+     */
+    public synchronized void add(final RenewalTimer timer) {
+        if (timer == null) {
+            throw new IllegalArgumentException("timer can not be null");
+        }
+        if (timer.total() == null) {
+            throw new IllegalArgumentException("timer of " + timer.domain() + " not stopped yet");
+        }
+        for (RenewalTimer.Timing timing: timer.timings()) {
+            phases.computeIfAbsent(timing.phase(), (phase) -> new Histogram(BUCKETS))
+                  .observe(RenewalTimer.seconds(timing.elapsed()));
+        }
+        renewals.computeIfAbsent(timer.outcome(), (outcome) -> new Histogram(BUCKETS))
+                .observe(RenewalTimer.seconds(timer.total()));
+    }
+
+    /**
+     * @param outcome {@link RenewalTimer#RENEWED} or {@link RenewalTimer#FAILED}
+     *
+     * @return the number of renewals added with the given outcome
+     */
+    public synchronized long renewals(final String outcome) {
+        final Histogram histogram = renewals.get(outcome);
+        return (histogram == null) ? 0 : histogram.count();
+    }
+
+    /**
+     * @return the histograms, followed by the metrics of the exchanges with
+     *         the CA, in the text format of Prometheus
+     */
+    public synchronized String toPrometheus() {
+        final StringBuilder text = new StringBuilder();
+
+        text.append("# HELP ").append(PHASE_SECONDS).append(" Time spent in each phase of the certificate renewals.\n");
+        text.append("# TYPE ").append(PHASE_SECONDS).append(" histogram\n");
+        for (Map.Entry<String, Histogram> phase: phases.entrySet()) {
+            phase.getValue().append(text, PHASE_SECONDS, "phase=\"" + phase.getKey() + "\"");
+        }
+
+        text.append("# HELP ").append(RENEWAL_SECONDS).append(" Time taken by the certificate renewals by outcome.\n");
+        text.append("# TYPE ").append(RENEWAL_SECONDS).append(" histogram\n");
+        for (Map.Entry<String, Histogram> outcome: renewals.entrySet()) {
+            outcome.getValue().append(text, RENEWAL_SECONDS, "outcome=\"" + outcome.getKey() + "\"");
+        }
+
+        return text.append(requests.toPrometheus()).toString();
+    }
+
+    /**
+     * Writes the histograms in the text format of Prometheus, replacing the
+     * given file atomically
+     *
+     * @param file the file to write (e.g. acme-tools.prom in the directory
+     *        of the textfile collector)
+     *
+     * @throws IOException if the file can not be written
+     */
+    public void writePrometheus(final Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        AtomicFiles.writeString(file, toPrometheus());
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+import org.shredzone.acme4j.toolbox.JSONBuilder;
+
+/**
+ * Times the phases of the renewal of a certificate with a monotonic clock
+ * (System.nanoTime), so that a slow renewal tells where the time went. A
+ * phase is timed from {@link #start(String, String)} to the closing of the
+ * returned {@link Phase}, typically in a try-with-resources block; phases
+ * repeated for each domain (e.g. the challenge wait) carry the domain as
+ * label.
+ */
+public class RenewalTimer {
+
+    public static final String DIRECTORY = "directory";
+    public static final String LOGIN = "login";
+    public static final String NEW_ORDER = "new_order";
+    public static final String AUTHORIZATION = "authorization";
+    public static final String SELF_CHECK = "self_check";
+    public static final String DNS_PROPAGATION = "dns_propagation";
+    public static final String CHALLENGE_WAIT = "challenge_wait";
+    public static final String FINALIZE = "finalize";
+    public static final String ORDER_POLLING = "order_polling";
+    public static final String DOWNLOAD = "download";
+    public static final String WRITE = "write";
+    public static final String OCSP = "ocsp";
+
+    public static final String RENEWED = "renewed";
+    public static final String FAILED = "failed";
+
+    private final String domain;
+    private final LongSupplier ticker;
+    private final Instant started;
+    private final long startedNanos;
+    private final List<Timing> timings = new ArrayList<>();
+
+    private Duration total = null;
+    private String outcome = null;
+
+    /**
+     * The time spent in a phase
+     *
+     * @param phase the phase (e.g. {@link #LOGIN})
+     * @param label what the phase was about (e.g. the domain of a challenge);
+     *        null if the phase happens once per renewal
+     * @param elapsed the time spent
+     */
+    public record Timing(String phase, String label, Duration elapsed) {}
+
+    /**
+     * A running phase; closing it records its timing (once)
+     */
+    public interface Phase extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * @param domain the domain being renewed
+     */
+    public RenewalTimer(final String domain) {
+        this(domain, System::nanoTime, Clock.systemUTC());
+    }
+
+    /**
+     * @param domain the domain being renewed
+     * @param ticker the monotonic clock in nanoseconds the phases are timed with
+     * @param clock the clock telling when the renewal started
+     */
+    public RenewalTimer(final String domain, final LongSupplier ticker, final Clock clock) {
+        if (domain == null) {
+            throw new IllegalArgumentException("domain can not be null");
+        }
+        if (ticker == null) {
+            throw new IllegalArgumentException("ticker can not be null");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock can not be null");
+        }
+        this.domain = domain;
+        this.ticker = ticker;
+        this.started = clock.instant();
+        this.startedNanos = ticker.getAsLong();
+    }
+
+    /**
+     * @return the domain being renewed
+     */
+    public String domain() {
+        return domain;
+    }
+
+    /**
+     * @return when the renewal started (wall clock)
+     */
+    public Instant started() {
+        return started;
+    }
+
+    /**
+     * @param phase the phase to time
+     *
+     * @return the running phase
+     */
+    public Phase start(final String phase) {
+        return start(phase, null);
+    }
+
+    /**
+     * @param phase the phase to time
+     * @param label what the phase is about (e.g. the domain of a challenge)
+     *
+     * @return the running phase
+     */
+    public Phase start(final String phase, final String label) {
+        if (phase == null) {
+            throw new IllegalArgumentException("phase can not be null");
+        }
+        final long start = ticker.getAsLong();
+        return new Phase() {
+            private boolean closed = false;
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    add(new Timing(phase, label, Duration.ofNanos(ticker.getAsLong() - start)));
+                }
+            }
+        };
+    }
+
+    /**
+     * Ends the renewal; further calls are ignored
+     *
+     * @param renewed true if the certificate has been renewed
+     */
+    public synchronized void stop(final boolean renewed) {
+        if (total == null) {
+            total = Duration.ofNanos(ticker.getAsLong() - startedNanos);
+            outcome = renewed ? RENEWED : FAILED;
+        }
+    }
+
+    /**
+     * @return the phases timed so far, in the order they ended
+     */
+    public synchronized List<Timing> timings() {
+        return List.copyOf(timings);
+    }
+
+    /**
+     * @return the time taken by the whole renewal; null if not stopped yet
+     */
+    public synchronized Duration total() {
+        return total;
+    }
+
+    /**
+     * @return {@link #RENEWED} or {@link #FAILED}; null if not stopped yet
+     */
+    public synchronized String outcome() {
+        return outcome;
+    }
+
+    /**
+     * @return the phases as e.g. "directory 120ms, login 310ms,
+     *         challenge_wait example.com 3.2s"
+     */
+    public String summary() {
+        final List<String> phases = new ArrayList<>();
+        for (Timing timing: timings()) {
+            phases.add(
+                timing.phase() + ((timing.label() == null) ? "" : " " + timing.label()) + " " + format(timing.elapsed())
+            );
+        }
+        return String.join(", ", phases);
+    }
+
+    /**
+     * @return this renewal as a single line JSON object; durations are in
+     *         seconds
+     */
+    public String toJSON() {
+        final List<Object> phases = new ArrayList<>();
+        for (Timing timing: timings()) {
+            final JSONBuilder phase = new JSONBuilder().put("phase", timing.phase());
+            if (timing.label() != null) {
+                phase.put("label", timing.label());
+            }
+            phases.add(phase.put("seconds", seconds(timing.elapsed())).toMap());
+        }
+
+        final JSONBuilder json = new JSONBuilder()
+            .put("domain", domain)
+            .put("started", started)
+            .put("outcome", outcome());
+        if (total() != null) {
+            json.put("seconds", seconds(total()));
+        }
+        return json.array("phases", phases).toString();
+    }
+
+    /**
+     * @param duration a duration
+     *
+     * @return the duration e.g. as 850ms or 3.2s
+     */
+    public static String format(final Duration duration) {
+        final long millis = duration.toMillis();
+        return (millis < 1000) ? millis + "ms" : String.format(Locale.ROOT, "%.1fs", millis / 1000.0);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private synchronized void add(final Timing timing) {
+        timings.add(timing);
+    }
+
+    static double seconds(final Duration duration) {
+        return duration.toNanos() / 1_000_000_000.0;
+    }
+}
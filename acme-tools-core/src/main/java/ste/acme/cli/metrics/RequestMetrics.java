@@ -0,0 +1,178 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the HTTP exchanges with the CA by resource (directory, newNonce,
+ * newOrder, authz, challenge, finalize, certificate, ...): latency
+ * histograms, responses by status, response bytes and nonces fetched before
+ * signed requests. Exchanges can be recorded from many threads without
+ * locking, so that recording costs a few atomic increments.
+ *
+ * @see InstrumentedAcmeProvider
+ */
+public class RequestMetrics {
+
+    /**
+     * The upper bounds of the latency buckets, in seconds
+     */
+    public static final double[] BUCKETS = {
+        0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    public static final String REQUEST_SECONDS = "acme_tools_ca_request_seconds";
+    public static final String RESPONSES_TOTAL = "acme_tools_ca_responses_total";
+    public static final String RESPONSE_BYTES_TOTAL = "acme_tools_ca_response_bytes_total";
+    public static final String NONCE_FETCHES_TOTAL = "acme_tools_ca_nonce_fetches_total";
+
+    /**
+     * The status of exchanges failed without a response (e.g. network errors)
+     */
+    public static final int NO_STATUS = 0;
+
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+
+    /**
+     * Records an exchange
+     *
+     * @param resource the resource requested (e.g. newOrder)
+     * @param status the HTTP status of the response; {@link #NO_STATUS} if
+     *        there was no response
+     * @param nanos the time taken by the exchange
+     * @param nonceFetched true if a fresh nonce had to be fetched for the
+     *        exchange (e.g. first signed request or after a bad nonce)
+     */
+    public void exchange(final String resource, final int status, final long nanos, final boolean nonceFetched) {
+        final Resource stats = resource(resource);
+        stats.latency.observe(nanos / 1_000_000_000.0);
+        stats.statuses.computeIfAbsent(status, (s) -> new LongAdder()).increment();
+        if (nonceFetched) {
+            stats.nonceFetches.increment();
+        }
+    }
+
+    /**
+     * Records the size of a response read
+     *
+     * @param resource the resource requested (e.g. certificate)
+     * @param bytes the size of the response payload
+     */
+    public void bytes(final String resource, final long bytes) {
+        resource(resource).bytes.add(bytes);
+    }
+
+    /**
+     * @param resource a resource (e.g. newOrder)
+     *
+     * @return the number of exchanges recorded for the given resource
+     */
+    public long requests(final String resource) {
+        final Resource stats = resources.get(resource);
+        return (stats == null) ? 0 : stats.latency.count();
+    }
+
+    /**
+     * @param resource a resource (e.g. certificate)
+     *
+     * @return the response bytes recorded for the given resource
+     */
+    public long bytes(final String resource) {
+        final Resource stats = resources.get(resource);
+        return (stats == null) ? 0 : stats.bytes.sum();
+    }
+
+    /**
+     * @param resource a resource (e.g. newOrder)
+     *
+     * @return the number of nonces fetched for the given resource
+     */
+    public long nonceFetches(final String resource) {
+        final Resource stats = resources.get(resource);
+        return (stats == null) ? 0 : stats.nonceFetches.sum();
+    }
+
+    /**
+     * @return the metrics in the text format of Prometheus
+     */
+    public String toPrometheus() {
+        final Map<String, Resource> sorted = new TreeMap<>(resources);
+        final StringBuilder text = new StringBuilder();
+
+        text.append("# HELP ").append(REQUEST_SECONDS).append(" Time taken by the requests to the CA by resource.\n");
+        text.append("# TYPE ").append(REQUEST_SECONDS).append(" histogram\n");
+        for (Map.Entry<String, Resource> resource: sorted.entrySet()) {
+            resource.getValue().latency.append(text, REQUEST_SECONDS, label(resource.getKey()));
+        }
+
+        text.append("# HELP ").append(RESPONSES_TOTAL).append(" Responses of the CA by resource and HTTP status (0 if none).\n");
+        text.append("# TYPE ").append(RESPONSES_TOTAL).append(" counter\n");
+        for (Map.Entry<String, Resource> resource: sorted.entrySet()) {
+            for (Map.Entry<Integer, LongAdder> status: new TreeMap<>(resource.getValue().statuses).entrySet()) {
+                text.append(RESPONSES_TOTAL).append('{').append(label(resource.getKey()))
+                    .append(",status=\"").append(status.getKey()).append("\"} ")
+                    .append(status.getValue().sum()).append('\n');
+            }
+        }
+
+        text.append("# HELP ").append(RESPONSE_BYTES_TOTAL).append(" Bytes of the response payloads of the CA by resource.\n");
+        text.append("# TYPE ").append(RESPONSE_BYTES_TOTAL).append(" counter\n");
+        for (Map.Entry<String, Resource> resource: sorted.entrySet()) {
+            text.append(RESPONSE_BYTES_TOTAL).append('{').append(label(resource.getKey())).append("} ")
+                .append(resource.getValue().bytes.sum()).append('\n');
+        }
+
+        text.append("# HELP ").append(NONCE_FETCHES_TOTAL).append(" Nonces fetched before signed requests to the CA by resource.\n");
+        text.append("# TYPE ").append(NONCE_FETCHES_TOTAL).append(" counter\n");
+        for (Map.Entry<String, Resource> resource: sorted.entrySet()) {
+            text.append(NONCE_FETCHES_TOTAL).append('{').append(label(resource.getKey())).append("} ")
+                .append(resource.getValue().nonceFetches.sum()).append('\n');
+        }
+
+        return text.toString();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Resource resource(final String resource) {
+        if (resource == null) {
+            throw new IllegalArgumentException("resource can not be null");
+        }
+        return resources.computeIfAbsent(resource, (r) -> new Resource());
+    }
+
+    private static String label(final String resource) {
+        return "resource=\"" + resource + "\"";
+    }
+
+    // ---------------------------------------------------------------- Resource
+
+    private static class Resource {
+        final Histogram latency = new Histogram(BUCKETS);
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder nonceFetches = new LongAdder();
+    }
+}
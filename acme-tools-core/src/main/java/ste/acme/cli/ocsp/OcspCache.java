@@ -0,0 +1,176 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.ocsp;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.util.List;
+import ste.acme.cli.store.AtomicFiles;
+
+/**
+ * Keeps the OCSP response of a certificate in a file next to it (e.g.
+ * example.com.crt.ocsp), DER encoded as web servers expect it for stapling
+ * (e.g. nginx ssl_stapling_file), so that servers do not fetch the response
+ * themselves on the first handshakes.
+ *
+ * A cached response is refreshed once half of its validity (from thisUpdate
+ * to nextUpdate) has passed, well before servers would have to drop it.
+ */
+public class OcspCache {
+
+    public static final String SUFFIX = ".ocsp";
+
+    private final OcspClient client;
+    private final Clock clock;
+
+    /**
+     * @param client the client used to fetch the responses
+     */
+    public OcspCache(final OcspClient client) {
+        this(client, Clock.systemUTC());
+    }
+
+    /**
+     * @param client the client used to fetch the responses
+     * @param clock the clock used to tell whether a response must be refreshed
+     */
+    public OcspCache(final OcspClient client, final Clock clock) {
+        if (client == null) {
+            throw new IllegalArgumentException("client can not be null");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock can not be null");
+        }
+        this.client = client;
+        this.clock = clock;
+    }
+
+    /**
+     * The outcome of a refresh
+     *
+     * @param file the file of the cached response
+     * @param response the cached response
+     * @param fetched true if the response has been fetched, false if the
+     *        cached one was still fresh
+     */
+    public record Result(Path file, OcspResponse response, boolean fetched) {
+
+        /**
+         * @return the outcome as shown to the user, e.g. "OCSP response GOOD
+         *         saved in /etc/ssl/example.com.crt.ocsp (next update ...,
+         *         refresh at ...)"; the file is given by its URI if not local
+         */
+        public String summary() {
+            return "OCSP response " + response.status() + " " +
+                   (fetched ? "saved in " : "still fresh in ") +
+                   ((file.getFileSystem() == FileSystems.getDefault()) ? file.toAbsolutePath() : file.toUri()) +
+                   " (next update " + ((response.nextUpdate() == null) ? "not given" : response.nextUpdate()) +
+                   ", refresh at " + response.refreshAt() + ")";
+        }
+    }
+
+    /**
+     * @param certificate the certificate file
+     *
+     * @return the file of the OCSP response of the given certificate file
+     */
+    public static Path file(final Path certificate) {
+        return certificate.resolveSibling(certificate.getFileName() + SUFFIX);
+    }
+
+    /**
+     * @param file the file of the cached response
+     * @param chain the certificate chain, leaf first
+     *
+     * @return the cached response of the leaf certificate; null if missing or
+     *         not valid for it (e.g. of the previous certificate)
+     *
+     * @throws IOException if the file can not be read
+     */
+    public OcspResponse cached(final Path file, final List<X509Certificate> chain) throws IOException {
+        checkChain(chain);
+
+        final byte[] encoded;
+        try {
+            encoded = Files.readAllBytes(file);
+        } catch (NoSuchFileException x) {
+            return null;
+        }
+        try {
+            return OcspResponse.parse(encoded, chain.get(0), chain.get(1));
+        } catch (IOException x) {
+            return null; // not a valid response for this certificate
+        }
+    }
+
+    /**
+     * Fetches the OCSP response of the leaf certificate unless the cached one
+     * is still fresh
+     *
+     * @param file the file of the cached response
+     * @param chain the certificate chain, leaf first
+     * @param force true to fetch the response even if the cached one is fresh
+     *
+     * @return the cached response and whether it has been fetched
+     *
+     * @throws IOException if the response can not be fetched or written
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    public Result refresh(final Path file, final List<X509Certificate> chain, final boolean force)
+    throws IOException, InterruptedException {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+
+        final OcspResponse cached = cached(file, chain);
+        if (!force && cached != null && !cached.needsRefresh(clock.instant())) {
+            return new Result(file, cached, false);
+        }
+
+        final OcspResponse response = client.fetch(chain.get(0), chain.get(1));
+        try {
+            AtomicFiles.write(file, (out) -> out.write(response.encoded()));
+        } catch (GeneralSecurityException x) {
+            throw new IOException(x); // nothing is encoded here
+        }
+
+        return new Result(file, response, true);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void checkChain(final List<X509Certificate> chain) throws IOException {
+        if (chain == null || chain.isEmpty()) {
+            throw new IllegalArgumentException("chain can not be null or empty");
+        }
+        if (chain.size() < 2) {
+            throw new IOException(
+                "the issuer of " + chain.get(0).getSubjectX500Principal().getName() + " is not in the chain"
+            );
+        }
+    }
+}
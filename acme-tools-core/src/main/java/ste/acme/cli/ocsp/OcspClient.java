@@ -0,0 +1,160 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.ocsp;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import org.bouncycastle.asn1.ASN1IA5String;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+/**
+ * Asks the OCSP responder of a certificate (taken from its authority
+ * information access extension) for the status of the certificate.
+ */
+public class OcspClient {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final String OCSP_REQUEST = "application/ocsp-request";
+
+    private final Duration timeout;
+    private final HttpClient client;
+
+    public OcspClient() {
+        this(DEFAULT_TIMEOUT);
+    }
+
+    public OcspClient(final Duration timeout) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be a positive duration");
+        }
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+            .connectTimeout(timeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    /**
+     * Fetches and verifies the OCSP response for the given certificate
+     *
+     * @param certificate the certificate
+     * @param issuer the issuer of the certificate
+     *
+     * @return the OCSP response
+     *
+     * @throws IOException if the certificate has no responder, the responder
+     *         can not be reached or the response is not valid
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    public OcspResponse fetch(final X509Certificate certificate, final X509Certificate issuer)
+    throws IOException, InterruptedException {
+        if (certificate == null) {
+            throw new IllegalArgumentException("certificate can not be null");
+        }
+        if (issuer == null) {
+            throw new IllegalArgumentException("issuer can not be null");
+        }
+
+        final String responder = responder(certificate);
+        if (responder == null) {
+            throw new IOException(
+                "no OCSP responder in certificate " + certificate.getSubjectX500Principal().getName()
+            );
+        }
+
+        final byte[] request;
+        try {
+            request = new OCSPReqBuilder().addRequest(new CertificateID(
+                new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                new JcaX509CertificateHolder(issuer), certificate.getSerialNumber()
+            )).build().getEncoded();
+        } catch (OCSPException | OperatorCreationException | CertificateEncodingException x) {
+            throw new IOException("unable to create the OCSP request: " + x.getMessage(), x);
+        }
+
+        try {
+            final HttpResponse<byte[]> response = client.send(
+                HttpRequest.newBuilder(URI.create(responder))
+                    .timeout(timeout)
+                    .header("Content-Type", OCSP_REQUEST)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                    .build(),
+                HttpResponse.BodyHandlers.ofByteArray()
+            );
+            if (response.statusCode() != 200) {
+                throw new IOException(responder + " returned HTTP status " + response.statusCode());
+            }
+            return OcspResponse.parse(response.body(), certificate, issuer);
+        } catch (HttpTimeoutException x) {
+            throw new IOException(responder + " did not respond in " + timeout.toMillis() + "ms", x);
+        }
+    }
+
+    // --------------------------------------------------------- static methods
+
+    /**
+     * @param certificate the certificate
+     *
+     * @return the URL of the OCSP responder of the certificate; null if none
+     */
+    public static String responder(final X509Certificate certificate) {
+        final byte[] extension = certificate.getExtensionValue(Extension.authorityInfoAccess.getId());
+        if (extension == null) {
+            return null;
+        }
+
+        try {
+            final AuthorityInformationAccess access = AuthorityInformationAccess.getInstance(
+                JcaX509ExtensionUtils.parseExtensionValue(extension)
+            );
+            for (AccessDescription description: access.getAccessDescriptions()) {
+                final GeneralName location = description.getAccessLocation();
+                if (AccessDescription.id_ad_ocsp.equals(description.getAccessMethod())
+                    && location.getTagNo() == GeneralName.uniformResourceIdentifier) {
+                    return ASN1IA5String.getInstance(location.getName()).getString();
+                }
+            }
+        } catch (IOException | IllegalArgumentException x) {
+            //
+            // not a valid extension, no responder then
+            //
+        }
+        return null;
+    }
+}
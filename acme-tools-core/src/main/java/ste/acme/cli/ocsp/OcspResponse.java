@@ -0,0 +1,184 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.ocsp;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.CertException;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+/**
+ * An OCSP response for a certificate, as returned by the responder (DER
+ * encoded, ready to be stapled) together with the status it tells.
+ *
+ * @param encoded the DER encoded OCSP response
+ * @param status the status of the certificate
+ * @param thisUpdate when the status was known to be correct
+ * @param nextUpdate when a newer status will be available; null if the
+ *        responder does not tell
+ */
+public record OcspResponse(byte[] encoded, Status status, Instant thisUpdate, Instant nextUpdate) {
+
+    public enum Status {
+        GOOD, REVOKED, UNKNOWN
+    }
+
+    /**
+     * Parses and verifies an OCSP response: it must be successful, signed by
+     * the issuer or by a responder delegated by it, and tell the status of
+     * the given certificate.
+     *
+     * @param encoded the DER encoded OCSP response
+     * @param certificate the certificate the response is for
+     * @param issuer the issuer of the certificate
+     *
+     * @return the parsed response
+     *
+     * @throws IOException if the response is not valid for the certificate
+     */
+    public static OcspResponse parse(
+        final byte[] encoded, final X509Certificate certificate, final X509Certificate issuer
+    ) throws IOException {
+        final OCSPResp response = new OCSPResp(encoded);
+        if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+            throw new IOException("OCSP response status is " + response.getStatus());
+        }
+
+        try {
+            final BasicOCSPResp basic = (BasicOCSPResp)response.getResponseObject();
+            if (basic == null) {
+                throw new IOException("OCSP response without content");
+            }
+            if (!signedByIssuer(basic, issuer)) {
+                throw new IOException("OCSP response not signed by " + issuer.getSubjectX500Principal() + " or a responder delegated by it");
+            }
+
+            final X509CertificateHolder issuerHolder = new JcaX509CertificateHolder(issuer);
+            for (SingleResp single: basic.getResponses()) {
+                if (single.getCertID().getSerialNumber().equals(certificate.getSerialNumber())
+                    && single.getCertID().matchesIssuer(issuerHolder, new JcaDigestCalculatorProviderBuilder().build())) {
+                    final CertificateStatus status = single.getCertStatus();
+                    return new OcspResponse(
+                        encoded,
+                        (status == CertificateStatus.GOOD) ? Status.GOOD
+                                                           : (status instanceof RevokedStatus) ? Status.REVOKED : Status.UNKNOWN,
+                        single.getThisUpdate().toInstant(),
+                        (single.getNextUpdate() == null) ? null : single.getNextUpdate().toInstant()
+                    );
+                }
+            }
+        } catch (OCSPException | OperatorCreationException | GeneralSecurityException x) {
+            throw new IOException("invalid OCSP response: " + x.getMessage(), x);
+        }
+
+        throw new IOException("OCSP response does not tell the status of certificate " + certificate.getSerialNumber().toString(16));
+    }
+
+    /**
+     * @return when the response shall be refreshed: half way between
+     *         thisUpdate and nextUpdate; thisUpdate if nextUpdate is not given
+     */
+    public Instant refreshAt() {
+        if (nextUpdate == null) {
+            return thisUpdate;
+        }
+        return thisUpdate.plus(Duration.between(thisUpdate, nextUpdate).dividedBy(2));
+    }
+
+    /**
+     * @param now the current time
+     *
+     * @return true if the response shall be refreshed
+     */
+    public boolean needsRefresh(final Instant now) {
+        return !now.isBefore(refreshAt());
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static boolean signedByIssuer(final BasicOCSPResp basic, final X509Certificate issuer)
+    throws OCSPException, OperatorCreationException, GeneralSecurityException {
+        final ContentVerifierProvider byIssuer = verifier(issuer.getPublicKey());
+        if (basic.isSignatureValid(byIssuer)) {
+            return true;
+        }
+
+        //
+        // a responder delegated by the issuer: its certificate is issued by
+        // the issuer for OCSP signing
+        //
+        for (X509CertificateHolder responder: basic.getCerts()) {
+            final ExtendedKeyUsage usage = ExtendedKeyUsage.fromExtensions(responder.getExtensions());
+            try {
+                if (usage != null && usage.hasKeyPurposeId(KeyPurposeId.id_kp_OCSPSigning)
+                    && responder.isSignatureValid(byIssuer)
+                    && basic.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider(bouncyCastle()).build(responder))) {
+                    return true;
+                }
+            } catch (CertException x) {
+                //
+                // not a valid responder certificate
+                //
+            }
+        }
+        return false;
+    }
+
+    private static ContentVerifierProvider verifier(final PublicKey key) throws OperatorCreationException {
+        return new JcaContentVerifierProviderBuilder().setProvider(bouncyCastle()).build(key);
+    }
+
+    /**
+     * @return the registered BouncyCastle provider or a new one, so that
+     *         responses can be verified by servers that do not register it
+     */
+    private static Provider bouncyCastle() {
+        final Provider registered = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+        return (registered != null) ? registered : Unregistered.PROVIDER;
+    }
+
+    /**
+     * Created the first time it is needed only
+     */
+    private static class Unregistered {
+        static final Provider PROVIDER = new BouncyCastleProvider();
+    }
+}
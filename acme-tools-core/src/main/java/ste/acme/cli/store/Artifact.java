@@ -0,0 +1,77 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+/**
+ * The files that can be written for a certificate, named after a common base
+ * name (e.g. example.com gives example.com.crt, example.com-fullchain.pem, ...)
+ */
+public enum Artifact {
+    /**
+     * the leaf certificate only, PEM encoded
+     */
+    LEAF(".crt"),
+    /**
+     * the leaf certificate followed by the intermediates, PEM encoded
+     */
+    FULLCHAIN("-fullchain.pem"),
+    /**
+     * the private key followed by the full chain, PEM encoded
+     */
+    BUNDLE("-bundle.pem"),
+    /**
+     * a PKCS12 keystore with the private key and the full chain
+     */
+    PKCS12(".p12"),
+    /**
+     * the leaf certificate only, DER encoded
+     */
+    DER(".der");
+
+    private final String suffix;
+
+    Artifact(final String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * @return the suffix appended to the base name
+     */
+    public String suffix() {
+        return suffix;
+    }
+
+    /**
+     * @param base the base name (e.g. example.com)
+     *
+     * @return the file name of the artifact (e.g. example.com-fullchain.pem)
+     */
+    public String fileName(final String base) {
+        return base + suffix;
+    }
+
+    /**
+     * @return true if the artifact includes the private key
+     */
+    public boolean needsKey() {
+        return this == BUNDLE || this == PKCS12;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Writes files to a temporary file first, which then replaces the file, so
+ * that readers never see a partially written file. The temporary file is
+ * created next to the file with a unique name, so that concurrent writers
+ * never share it, and is removed if anything goes wrong.
+ *
+ * A replaced file keeps its POSIX permissions and, if the writer is allowed
+ * to set them, its owner and group; until then the temporary file is
+ * readable and writable by its owner only.
+ */
+public final class AtomicFiles {
+
+    /**
+     * The content to write
+     */
+    public interface Content {
+        void write(OutputStream out) throws IOException, GeneralSecurityException;
+    }
+
+    /**
+     * Writes the temporary file by its path, e.g. to map it in memory
+     */
+    public interface Temporary {
+        void write(Path tmp) throws IOException;
+    }
+
+    private AtomicFiles() {}
+
+    /**
+     * @param file the file to write
+     * @param content the content to write
+     * @param attributes the attributes of the file if created (e.g.
+     *        {@link #ownerOnly(Path)}); a replaced file keeps its permissions
+     *
+     * @throws IOException if the file can not be written
+     * @throws GeneralSecurityException if the content can not be encoded
+     */
+    public static void write(final Path file, final Content content, final FileAttribute<?>... attributes)
+    throws IOException, GeneralSecurityException {
+        move(file, (tmp) -> {
+            try (OutputStream out = Files.newOutputStream(tmp, WRITE, TRUNCATE_EXISTING)) {
+                content.write(out);
+            }
+        }, attributes);
+    }
+
+    /**
+     * @param file the file to write
+     * @param text the text to write, in UTF-8
+     * @param attributes as for {@link #write(Path, Content, FileAttribute...)}
+     *
+     * @throws IOException if the file can not be written
+     */
+    public static void writeString(final Path file, final CharSequence text, final FileAttribute<?>... attributes)
+    throws IOException {
+        final byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        replace(file, (tmp) -> Files.write(tmp, bytes, WRITE, TRUNCATE_EXISTING), attributes);
+    }
+
+    /**
+     * @param file the file to write
+     * @param temporary what writes the temporary file, which exists already
+     * @param attributes as for {@link #write(Path, Content, FileAttribute...)}
+     *
+     * @throws IOException if the file can not be written
+     */
+    public static void replace(final Path file, final Temporary temporary, final FileAttribute<?>... attributes)
+    throws IOException {
+        try {
+            move(file, (tmp) -> temporary.write(tmp), attributes);
+        } catch (GeneralSecurityException x) {
+            throw new IOException(x); // nothing is encoded here
+        }
+    }
+
+    /**
+     * @param file a file to create
+     *
+     * @return the attributes to create the given file readable and writable
+     *         by its owner only, if its filesystem supports POSIX permissions
+     */
+    public static FileAttribute<?>[] ownerOnly(final Path file) {
+        return file.getFileSystem().supportedFileAttributeViews().contains("posix")
+             ? new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")) }
+             : new FileAttribute<?>[0];
+    }
+
+    /**
+     * @param path a path
+     * @param file a file written by this class
+     *
+     * @return true if the given path is a temporary file of the given file,
+     *         e.g. to ignore it when watching the directory of the file
+     */
+    public static boolean isTemporary(final Path path, final Path file) {
+        final Path name = path.getFileName();
+        if (name == null || !Objects.equals(parent(path), parent(file))) {
+            return false;
+        }
+        return name.toString().matches("\\." + Pattern.quote(String.valueOf(file.getFileName())) + "\\.[0-9a-f]+\\.tmp");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static Path parent(final Path path) {
+        return path.toAbsolutePath().normalize().getParent();
+    }
+
+    private interface Step {
+        void write(Path tmp) throws IOException, GeneralSecurityException;
+    }
+
+    private static void move(final Path file, final Step step, final FileAttribute<?>... attributes)
+    throws IOException, GeneralSecurityException {
+        final PosixFileAttributes replaced = posix(file);
+        final Path tmp = temporary(file, (replaced == null) ? attributes : ownerOnly(file));
+        try {
+            step.write(tmp);
+            if (replaced != null) {
+                keep(tmp, replaced);
+            }
+            try {
+                Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException x) {
+                //
+                // e.g. in archives, written at once when closed anyway
+                //
+                Files.move(tmp, file, REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @return the POSIX attributes of the given file; null if it does not
+     *         exist or its filesystem does not support POSIX permissions
+     */
+    private static PosixFileAttributes posix(final Path file) throws IOException {
+        if (!file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return null;
+        }
+        try {
+            return Files.readAttributes(file, PosixFileAttributes.class);
+        } catch (NoSuchFileException x) {
+            return null;
+        }
+    }
+
+    private static void keep(final Path tmp, final PosixFileAttributes replaced) throws IOException {
+        final PosixFileAttributeView view = Files.getFileAttributeView(tmp, PosixFileAttributeView.class);
+        try {
+            view.setOwner(replaced.owner());
+            view.setGroup(replaced.group());
+        } catch (IOException x) {
+            //
+            // only privileged users can give files away, the file then
+            // belongs to the writer
+            //
+        }
+        view.setPermissions(replaced.permissions());
+    }
+
+    private static Path temporary(final Path file, final FileAttribute<?>... attributes) throws IOException {
+        while (true) {
+            final Path tmp = file.resolveSibling(
+                "." + file.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp"
+            );
+            try {
+                return Files.createFile(tmp, attributes);
+            } catch (FileAlreadyExistsException x) {
+                // taken by another writer, try another name
+            }
+        }
+    }
+}
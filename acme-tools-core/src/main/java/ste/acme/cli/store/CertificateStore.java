@@ -0,0 +1,883 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A single-file store of the certificate chains and keys of many domains, as
+ * an alternative to a certificate and a key file per domain when domains are
+ * in the order of hundred of thousands (slow directory scans, inode pressure).
+ *
+ * Certificates and keys are appended to the data file as records and never
+ * rewritten: each certificate or key is stored once, even if shared by many
+ * domains (e.g. the intermediates of the CA), and a domain is a small record
+ * referencing them. Storing a domain again appends a new record that
+ * supersedes the previous one.
+ *
+ * The latest record of each domain, and each certificate or key, is found
+ * through an open addressing hash table kept in a memory mapped index file
+ * next to the data file (<code>&lt;file&gt;.idx</code>), so that opening the
+ * store and looking up a domain do not depend on the size of the store. The
+ * index is only a cache of the data file: if missing, broken or behind the
+ * data file (e.g. after a crash) it is rebuilt or brought up to date from the
+ * records.
+ *
+ * When superseded records are more than the given fraction of all records,
+ * the store is compacted in background: the live records are copied to a new
+ * data file that then replaces the current one.
+ *
+ * A store can be opened by one process at a time. Its files (the data file,
+ * the index and the files of a compaction) are created readable and writable
+ * by their owner only, as they hold private keys.
+ */
+public class CertificateStore implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger("ste.acme-tools");
+
+    /**
+     * A stored domain
+     *
+     * @param domain the domain (lowercase)
+     * @param stored when the domain was stored
+     * @param chain the certificate chain, leaf first
+     * @param keys the keys of the domain as given when stored (e.g. PEM) or null
+     */
+    public record Entry(String domain, Instant stored, List<X509Certificate> chain, byte[] keys) {}
+
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    private static final int DATA_MAGIC = 0x41435344; // ACSD
+    private static final int INDEX_MAGIC = 0x41435349; // ACSI
+    private static final int VERSION = 1;
+
+    private static final int DATA_HEADER = 16; // magic, version, generation
+    private static final int INDEX_HEADER = 64; // magic, capacity, generation, length, slots, domains, superseded
+    private static final int SLOT = 16; // key, offset
+    private static final int LENGTH = 24, SLOTS = 32, DOMAINS = 40, SUPERSEDED = 48; // positions in the index header
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    //
+    // compacting a few records is not worth it
+    //
+    private static final long MIN_SUPERSEDED = 128;
+
+    private static final byte CERTIFICATE = 1, KEYS = 2, DOMAIN = 3;
+
+    private final Path file, indexFile;
+
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    private FileChannel data = null;
+    private FileLock lock = null;
+    private MappedByteBuffer index = null;
+    private int capacity = 0;
+    private long generation = 0;
+
+    private final Object compaction = new Object();
+    private ExecutorService compactor = null; // created only if needed
+
+    public CertificateStore(final Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        this.file = file.toAbsolutePath();
+        this.indexFile = this.file.resolveSibling(this.file.getFileName() + ".idx");
+    }
+
+    /**
+     * @return the data file of the store
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return the fraction of superseded records above which the store is
+     *         compacted in background
+     */
+    public double compactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * @param compactionThreshold the fraction of superseded records above
+     *        which the store is compacted in background; 1 or more to never
+     *        compact automatically
+     */
+    public void compactionThreshold(final double compactionThreshold) {
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("compactionThreshold must be greater than 0");
+        }
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Opens the store, creating it if it does not exist.
+     *
+     * @throws IOException if the store can not be opened or the file is not a
+     *         certificate store
+     */
+    public synchronized void open() throws IOException {
+        if (data != null) {
+            throw new IllegalStateException("store already open");
+        }
+
+        //
+        // the store holds the private keys of all domains
+        //
+        data = FileChannel.open(file, EnumSet.of(CREATE, READ, WRITE), AtomicFiles.ownerOnly(file));
+        try {
+            lock = data.tryLock();
+            if (lock == null) {
+                throw new IOException("store " + file + " is in use by another process");
+            }
+            if (data.size() == 0) {
+                generation = ThreadLocalRandom.current().nextLong();
+                final ByteBuffer header = ByteBuffer.allocate(DATA_HEADER);
+                header.putInt(DATA_MAGIC).putInt(VERSION).putLong(generation).flip();
+                data.write(header, 0);
+                data.force(true);
+            } else {
+                final ByteBuffer header = ByteBuffer.allocate(DATA_HEADER);
+                data.read(header, 0);
+                header.flip();
+                if (header.remaining() < DATA_HEADER || header.getInt() != DATA_MAGIC || header.getInt() != VERSION) {
+                    throw new IOException(file + " is not a certificate store");
+                }
+                generation = header.getLong();
+            }
+
+            if (!mapIndex()) {
+                if (data.size() > DATA_HEADER) {
+                    LOG.info(() -> "rebuilding the index of " + file);
+                }
+                createIndex(INITIAL_CAPACITY);
+            }
+            replay(length());
+        } catch (IOException x) {
+            closeFiles();
+            throw x;
+        }
+    }
+
+    /**
+     * Stores the certificate chain and keys of a domain, superseding the ones
+     * previously stored for the domain if any.
+     *
+     * @param domain the domain
+     * @param chain the certificate chain, leaf first
+     * @param keys the keys of the domain (e.g. PEM) or null
+     *
+     * @throws IOException if the store can not be written
+     * @throws CertificateEncodingException if a certificate can not be encoded
+     */
+    public void put(final String domain, final List<X509Certificate> chain, final byte[] keys)
+    throws IOException, CertificateEncodingException {
+        if (domain == null || domain.isBlank()) {
+            throw new IllegalArgumentException("domain can not be null or blank");
+        }
+        if (chain == null || chain.isEmpty()) {
+            throw new IllegalArgumentException("chain can not be null or empty");
+        }
+        final List<byte[]> certificates = new ArrayList<>();
+        for (X509Certificate certificate: chain) {
+            certificates.add(certificate.getEncoded());
+        }
+        synchronized (this) {
+            put(normalize(domain), Instant.now(), certificates, keys);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * @param domain the domain
+     *
+     * @return the stored domain or null if not in the store
+     *
+     * @throws IOException if the store can not be read
+     * @throws CertificateException if a stored certificate can not be parsed
+     */
+    public synchronized Entry get(final String domain) throws IOException, CertificateException {
+        if (domain == null) {
+            throw new IllegalArgumentException("domain can not be null");
+        }
+        checkOpen();
+
+        final long offset = find(normalize(domain));
+        if (offset < 0) {
+            return null;
+        }
+        final DomainRecord record = domainRecord(offset);
+        if (record.removed()) {
+            return null;
+        }
+
+        final CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        final List<X509Certificate> chain = new ArrayList<>();
+        for (long certificate: record.certificates()) {
+            chain.add((X509Certificate)factory.generateCertificate(
+                new ByteArrayInputStream(blob(certificate))
+            ));
+        }
+        return new Entry(
+            record.domain(), record.stored(), Collections.unmodifiableList(chain),
+            (record.keys() < 0) ? null : blob(record.keys())
+        );
+    }
+
+    /**
+     * Removes a domain from the store
+     *
+     * @param domain the domain
+     *
+     * @return true if the domain was in the store
+     *
+     * @throws IOException if the store can not be written
+     */
+    public boolean remove(final String domain) throws IOException {
+        if (domain == null) {
+            throw new IllegalArgumentException("domain can not be null");
+        }
+        final boolean removed;
+        synchronized (this) {
+            checkOpen();
+            final long offset = find(normalize(domain));
+            if (offset < 0 || domainRecord(offset).removed()) {
+                return false;
+            }
+            removed = true;
+            appendDomain(new DomainRecord(normalize(domain), Instant.now(), -1, new long[0]));
+        }
+        compactIfNeeded();
+        return removed;
+    }
+
+    /**
+     * @return the stored domains, sorted
+     *
+     * @throws IOException if the store can not be read
+     */
+    public synchronized List<String> domains() throws IOException {
+        checkOpen();
+        final List<String> domains = new ArrayList<>();
+        for (int slot = 0; slot < capacity; ++slot) {
+            final long offset = index.getLong(INDEX_HEADER + slot * SLOT + 8);
+            if (offset > 0) {
+                final Record record = read(offset);
+                if (record.type() == DOMAIN) {
+                    final DomainRecord domain = domainRecord(record);
+                    if (!domain.removed()) {
+                        domains.add(domain.domain());
+                    }
+                }
+            }
+        }
+        Collections.sort(domains);
+        return domains;
+    }
+
+    /**
+     * @return the number of domains in the store
+     */
+    public synchronized long size() {
+        checkOpen();
+        return index.getLong(DOMAINS);
+    }
+
+    /**
+     * @return the number of domain records superseded by newer ones, which
+     *         are dropped when the store is compacted
+     */
+    public synchronized long superseded() {
+        checkOpen();
+        return index.getLong(SUPERSEDED);
+    }
+
+    /**
+     * Rewrites the store with the live records only. The records are copied
+     * without holding the store, so that it can be used in the meantime; only
+     * the records appended while copying are copied with the store held, just
+     * before the new data file replaces the current one.
+     *
+     * @throws IOException if the store can not be compacted
+     */
+    public void compact() throws IOException {
+        synchronized (compaction) {
+            final List<Long> live = new ArrayList<>();
+            final long from;
+            synchronized (this) {
+                checkOpen();
+                for (int slot = 0; slot < capacity; ++slot) {
+                    final long offset = index.getLong(INDEX_HEADER + slot * SLOT + 8);
+                    if (offset > 0 && read(offset).type() == DOMAIN) {
+                        live.add(offset);
+                    }
+                }
+                from = length();
+            }
+
+            final CertificateStore target = new CertificateStore(
+                file.resolveSibling(file.getFileName() + ".compact")
+            );
+            Files.deleteIfExists(target.file);
+            Files.deleteIfExists(target.indexFile);
+            target.compactionThreshold(Double.MAX_VALUE);
+            target.open();
+            try {
+                //
+                // records before from are never changed, they can be read
+                // while other records are appended
+                //
+                for (long offset: live) {
+                    copy(offset, target);
+                }
+
+                synchronized (this) {
+                    long position = from;
+                    while (position < length()) {
+                        final Record record = read(position);
+                        if (record.type() == DOMAIN) {
+                            copy(position, target);
+                        }
+                        position += record.size();
+                    }
+                    target.close();
+
+                    final long before = data.size();
+                    closeFiles();
+                    Files.move(target.file, file, REPLACE_EXISTING, ATOMIC_MOVE);
+                    Files.move(target.indexFile, indexFile, REPLACE_EXISTING, ATOMIC_MOVE);
+                    open();
+                    LOG.info(() -> "store " + file + " compacted from " + before + " to " + file.toFile().length() + " bytes");
+                }
+            } catch (IOException x) {
+                target.close();
+                Files.deleteIfExists(target.file);
+                Files.deleteIfExists(target.indexFile);
+                throw x;
+            }
+        }
+    }
+
+    /**
+     * Closes the store, waiting for a compaction in progress to complete
+     */
+    @Override
+    public void close() {
+        final ExecutorService executor;
+        synchronized (this) {
+            executor = compactor;
+            compactor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            closeFiles();
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void checkOpen() {
+        if (data == null) {
+            throw new IllegalStateException("store not open");
+        }
+    }
+
+    private static String normalize(final String domain) {
+        return domain.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void put(final String domain, final Instant stored, final List<byte[]> certificates, final byte[] keys)
+    throws IOException {
+        checkOpen();
+        final long[] offsets = new long[certificates.size()];
+        for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = appendBlob(CERTIFICATE, certificates.get(i));
+        }
+        appendDomain(new DomainRecord(domain, stored, (keys == null) ? -1 : appendBlob(KEYS, keys), offsets));
+    }
+
+    /**
+     * @return the offset of the given blob, appended only if not stored yet
+     */
+    private long appendBlob(final byte type, final byte[] content) throws IOException {
+        final byte[] hash = sha256(type, content);
+        final long stored = findBlob(type, hash);
+        if (stored > 0) {
+            return stored;
+        }
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(33 + content.length);
+        body.write(type);
+        body.write(hash);
+        body.write(content);
+
+        final long offset = append(body.toByteArray());
+        insert(ByteBuffer.wrap(hash).getLong(), offset);
+        length(offset + 8 + body.size());
+        return offset;
+    }
+
+    private long findBlob(final byte type, final byte[] hash) throws IOException {
+        final long key = ByteBuffer.wrap(hash).getLong();
+        for (int slot = slot(key); ; slot = (slot + 1) & (capacity - 1)) {
+            final int position = INDEX_HEADER + slot * SLOT;
+            final long offset = index.getLong(position + 8);
+            if (offset == 0) {
+                return -1;
+            }
+            if (index.getLong(position) == key) {
+                final Record record = read(offset);
+                if (record.type() == type && Arrays.equals(record.body(), 1, 33, hash, 0, 32)) {
+                    return offset;
+                }
+            }
+        }
+    }
+
+    private void appendDomain(final DomainRecord domain) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            out.writeByte(DOMAIN);
+            out.writeUTF(domain.domain());
+            out.writeLong(domain.stored().toEpochMilli());
+            out.writeLong(domain.keys());
+            out.writeInt(domain.certificates().length);
+            for (long certificate: domain.certificates()) {
+                out.writeLong(certificate);
+            }
+        }
+
+        //
+        // the record must be on disk before the index points to it
+        //
+        final long offset = append(body.toByteArray());
+        data.force(false);
+        indexDomain(domain, offset);
+        length(offset + 8 + body.size());
+    }
+
+    private long append(final byte[] body) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+
+        final ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+        record.putInt(body.length).put(body).putInt((int)crc.getValue()).flip();
+
+        final long offset = length();
+        while (record.hasRemaining()) {
+            data.write(record, offset + record.position());
+        }
+        return offset;
+    }
+
+    private void indexDomain(final DomainRecord domain, final long offset) throws IOException {
+        final long key = key(domain.domain());
+        for (int slot = slot(key); ; slot = (slot + 1) & (capacity - 1)) {
+            final int position = INDEX_HEADER + slot * SLOT;
+            final long current = index.getLong(position + 8);
+            if (current == 0) {
+                break;
+            }
+            if (current == offset) {
+                return; // already indexed
+            }
+            if (index.getLong(position) == key) {
+                final Record record = read(current);
+                if (record.type() == DOMAIN) {
+                    final DomainRecord previous = domainRecord(record);
+                    if (previous.domain().equals(domain.domain())) {
+                        index.putLong(position + 8, offset);
+                        index.putLong(DOMAINS, index.getLong(DOMAINS) - (previous.removed() ? 0 : 1) + (domain.removed() ? 0 : 1));
+                        index.putLong(SUPERSEDED, index.getLong(SUPERSEDED) + 1 + (domain.removed() ? 1 : 0));
+                        return;
+                    }
+                }
+            }
+        }
+        if (!domain.removed()) {
+            insert(key, offset);
+            index.putLong(DOMAINS, index.getLong(DOMAINS) + 1);
+        }
+    }
+
+    private long find(final String domain) throws IOException {
+        final long key = key(domain);
+        for (int slot = slot(key); ; slot = (slot + 1) & (capacity - 1)) {
+            final int position = INDEX_HEADER + slot * SLOT;
+            final long offset = index.getLong(position + 8);
+            if (offset == 0) {
+                return -1;
+            }
+            if (index.getLong(position) == key) {
+                final Record record = read(offset);
+                if (record.type() == DOMAIN && domainRecord(record).domain().equals(domain)) {
+                    return offset;
+                }
+            }
+        }
+    }
+
+    private void insert(final long key, final long offset) throws IOException {
+        if ((index.getLong(SLOTS) + 1) * 10 > capacity * 7L) {
+            grow();
+        }
+        insert(index, capacity, key, offset);
+    }
+
+    private static void insert(final MappedByteBuffer map, final int capacity, final long key, final long offset) {
+        int slot = slot(key, capacity);
+        while (map.getLong(INDEX_HEADER + slot * SLOT + 8) != 0) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        map.putLong(INDEX_HEADER + slot * SLOT, key);
+        map.putLong(INDEX_HEADER + slot * SLOT + 8, offset);
+        map.putLong(SLOTS, map.getLong(SLOTS) + 1);
+    }
+
+    private int slot(final long key) {
+        return slot(key, capacity);
+    }
+
+    private static int slot(final long key, final int capacity) {
+        return (int)(key ^ (key >>> 32)) & (capacity - 1);
+    }
+
+    private long length() {
+        return index.getLong(LENGTH);
+    }
+
+    private void length(final long length) {
+        index.putLong(LENGTH, length);
+    }
+
+    /**
+     * Indexes the records from the given offset to the end of the data file;
+     * an incomplete or broken record (e.g. a write interrupted by a crash) and
+     * what follows is discarded.
+     */
+    private void replay(long position) throws IOException {
+        final long size = data.size();
+        while (position < size) {
+            final Record record;
+            try {
+                record = read(position);
+            } catch (IOException x) {
+                final long end = position;
+                LOG.warning(() -> "discarding the broken records of " + file + " after " + end + ": " + x.getMessage());
+                data.truncate(end);
+                break;
+            }
+            if (record.type() == DOMAIN) {
+                indexDomain(domainRecord(record), position);
+            } else {
+                final byte[] hash = Arrays.copyOfRange(record.body(), 1, 33);
+                if (findBlob(record.type(), hash) < 0) {
+                    insert(ByteBuffer.wrap(hash).getLong(), position);
+                }
+            }
+            position += record.size();
+            length(position);
+        }
+        index.force();
+    }
+
+    private Record read(final long offset) throws IOException {
+        final ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset);
+        final int size = length.flip().getInt();
+        if (size <= 0 || offset + 8 + size > data.size()) {
+            throw new EOFException("incomplete record at " + offset);
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(size + 4);
+        readFully(record, offset + 4);
+        record.flip();
+
+        final byte[] body = new byte[size];
+        record.get(body);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        if (record.getInt() != (int)crc.getValue()) {
+            throw new IOException("corrupted record at " + offset);
+        }
+        return new Record(body);
+    }
+
+    private void readFully(final ByteBuffer buffer, final long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("incomplete record at " + offset);
+            }
+        }
+    }
+
+    private byte[] blob(final long offset) throws IOException {
+        final byte[] body = read(offset).body();
+        return Arrays.copyOfRange(body, 33, body.length);
+    }
+
+    private DomainRecord domainRecord(final long offset) throws IOException {
+        return domainRecord(read(offset));
+    }
+
+    private DomainRecord domainRecord(final Record record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.body(), 1, record.body().length - 1))) {
+            final String domain = in.readUTF();
+            final Instant stored = Instant.ofEpochMilli(in.readLong());
+            final long keys = in.readLong();
+            final long[] certificates = new long[in.readInt()];
+            for (int i = 0; i < certificates.length; ++i) {
+                certificates[i] = in.readLong();
+            }
+            return new DomainRecord(domain, stored, keys, certificates);
+        }
+    }
+
+    private void copy(final long offset, final CertificateStore target) throws IOException {
+        final DomainRecord record = domainRecord(offset);
+        if (record.removed()) {
+            target.remove(record.domain());
+            return;
+        }
+        final List<byte[]> certificates = new ArrayList<>();
+        for (long certificate: record.certificates()) {
+            certificates.add(blob(certificate));
+        }
+        synchronized (target) {
+            target.put(record.domain(), record.stored(), certificates, (record.keys() < 0) ? null : blob(record.keys()));
+        }
+    }
+
+    private void compactIfNeeded() {
+        final ExecutorService executor;
+        synchronized (this) {
+            final long superseded = superseded();
+            if (superseded < MIN_SUPERSEDED || superseded <= (superseded + size()) * compactionThreshold) {
+                return;
+            }
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadExecutor((task) -> {
+                    final Thread thread = new Thread(task, "certificate-store-compactor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            executor = compactor;
+        }
+        //
+        // a compaction requested while another one is running finds nothing
+        // to do or little to do
+        //
+        executor.submit(() -> {
+            try {
+                synchronized (this) {
+                    if (data == null || superseded() == 0) {
+                        return;
+                    }
+                }
+                compact();
+            } catch (IOException | RuntimeException x) {
+                LOG.log(Level.SEVERE, "unable to compact " + file, x);
+            }
+        });
+    }
+
+    /**
+     * @return true if the index file is valid and up to date with the data
+     *         file (or behind), false if it has to be rebuilt
+     */
+    private boolean mapIndex() throws IOException {
+        if (!Files.isRegularFile(indexFile) || Files.size(indexFile) < INDEX_HEADER) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, READ, WRITE)) {
+            final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            final int size = map.getInt(4);
+            if (map.getInt(0) != INDEX_MAGIC || map.getLong(8) != generation
+                || Integer.bitCount(size) != 1 || channel.size() != INDEX_HEADER + (long)size * SLOT
+                || map.getLong(LENGTH) < DATA_HEADER || map.getLong(LENGTH) > data.size()) {
+                return false;
+            }
+            index = map;
+            capacity = size;
+            return true;
+        }
+    }
+
+    private void createIndex(final int size) throws IOException {
+        createIndex(size, null, 0);
+    }
+
+    /**
+     * Creates an index of the given size, empty or with the slots and the
+     * counters of {@code from}; the new index is complete before it replaces
+     * the current one, so that a crash leaves either of them
+     */
+    private void createIndex(final int size, final MappedByteBuffer from, final int fromCapacity) throws IOException {
+        //
+        // the mapping survives the move of the file it maps
+        //
+        final MappedByteBuffer[] created = new MappedByteBuffer[1];
+        AtomicFiles.replace(indexFile, (tmp) -> {
+            try (FileChannel channel = FileChannel.open(tmp, READ, WRITE)) {
+                final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long)size * SLOT);
+                map.putInt(0, INDEX_MAGIC);
+                map.putInt(4, size);
+                map.putLong(8, generation);
+                map.putLong(LENGTH, DATA_HEADER);
+                if (from != null) {
+                    for (int slot = 0; slot < fromCapacity; ++slot) {
+                        final long offset = from.getLong(INDEX_HEADER + slot * SLOT + 8);
+                        if (offset != 0) {
+                            insert(map, size, from.getLong(INDEX_HEADER + slot * SLOT), offset);
+                        }
+                    }
+                    map.putLong(DOMAINS, from.getLong(DOMAINS));
+                    map.putLong(SUPERSEDED, from.getLong(SUPERSEDED));
+                    map.putLong(LENGTH, from.getLong(LENGTH));
+                }
+                map.force();
+                created[0] = map;
+            }
+        }, AtomicFiles.ownerOnly(indexFile));
+        index = created[0];
+        capacity = size;
+    }
+
+    /**
+     * Doubles the capacity of the index; the slots are moved to the new index,
+     * the records are not read
+     */
+    private void grow() throws IOException {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IOException("store " + file + " is full");
+        }
+        createIndex(capacity * 2, index, capacity);
+    }
+
+    private void closeFiles() {
+        if (index != null) {
+            index.force();
+            index = null;
+            capacity = 0;
+        }
+        if (data != null) {
+            try {
+                data.close(); // releases the lock too
+            } catch (IOException x) {
+                LOG.warning(() -> "unable to close " + file + ": " + x.getMessage());
+            }
+            data = null;
+            lock = null;
+        }
+    }
+
+    private static long key(final String domain) {
+        return ByteBuffer.wrap(sha256(DOMAIN, domain.getBytes(UTF_8))).getLong();
+    }
+
+    private static byte[] sha256(final byte type, final byte[] content) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(type);
+            return digest.digest(content);
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException("SHA-256 not available", x); // mandatory in every JRE
+        }
+    }
+
+    // ------------------------------------------------------------------ Record
+
+    /**
+     * A record of the data file: a type byte followed by the content
+     */
+    private record Record(byte[] body) {
+        byte type() {
+            return body[0];
+        }
+
+        /**
+         * @return the size of the record in the data file
+         */
+        long size() {
+            return 8L + body.length;
+        }
+    }
+
+    /**
+     * The content of a domain record; a domain record without certificates
+     * marks a removed domain
+     */
+    private record DomainRecord(String domain, Instant stored, long keys, long[] certificates) {
+        boolean removed() {
+            return certificates.length == 0;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+
+/**
+ * Writes the artifacts of a certificate (see {@link Artifact}) from the chain
+ * downloaded once, all at the same time. Each artifact is written to a
+ * temporary file first which then replaces the artifact, and all artifacts
+ * but the leaf ones carry the full chain, so that clients do not need to
+ * fetch the intermediates themselves.
+ */
+public class CertificateWriter {
+
+    private final List<X509Certificate> chain;
+
+    private PrivateKey key = null;
+    private String alias = null;
+    private char[] password = null;
+    private KeyStoreProtection protection = null;
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * @param chain the certificate chain, leaf first
+     */
+    public CertificateWriter(final List<X509Certificate> chain) {
+        if (chain == null || chain.isEmpty()) {
+            throw new IllegalArgumentException("chain can not be null or empty");
+        }
+        this.chain = List.copyOf(chain);
+    }
+
+    /**
+     * @return the certificate chain, leaf first
+     */
+    public List<X509Certificate> chain() {
+        return chain;
+    }
+
+    /**
+     * @param key the private key of the certificate, needed by the bundle
+     *        and PKCS12 artifacts
+     */
+    public void key(final PrivateKey key) {
+        this.key = key;
+    }
+
+    /**
+     * @param alias the alias of the key in the PKCS12 artifact (e.g. the domain)
+     * @param password the password of the PKCS12 artifact
+     * @param protection the protection of the PKCS12 artifact; null for the default
+     */
+    public void keyStore(final String alias, final char[] password, final KeyStoreProtection protection) {
+        this.alias = alias;
+        this.password = (password == null) ? null : password.clone();
+        this.protection = protection;
+    }
+
+    /**
+     * @param executor the executor the artifacts are written with
+     */
+    public void executor(final Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor can not be null");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Writes the given artifacts; all artifacts are attempted even if some
+     * fail. The artifacts with the private key are created readable and
+     * writable by their owner only; replaced files keep their permissions.
+     *
+     * @param artifacts the artifacts to write and their files
+     *
+     * @throws IOException if an artifact can not be written
+     * @throws GeneralSecurityException if an artifact can not be encoded
+     */
+    public void write(final Map<Artifact, Path> artifacts) throws IOException, GeneralSecurityException {
+        if (artifacts == null) {
+            throw new IllegalArgumentException("artifacts can not be null");
+        }
+        for (Artifact artifact: artifacts.keySet()) {
+            if (artifact.needsKey() && key == null) {
+                throw new IllegalStateException("a private key is needed for artifact " + artifact);
+            }
+            if (artifact == Artifact.PKCS12 && (alias == null || password == null)) {
+                throw new IllegalStateException("an alias and a password are needed for artifact " + artifact);
+            }
+        }
+
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        artifacts.forEach((artifact, file) -> writes.add(CompletableFuture.runAsync(() -> {
+            try {
+                write(artifact, file);
+            } catch (IOException | GeneralSecurityException x) {
+                throw new CompletionException(x);
+            }
+        }, executor)));
+
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException x) {
+            final Throwable cause = x.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException)cause;
+            }
+            throw x;
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void write(final Artifact artifact, final Path file) throws IOException, GeneralSecurityException {
+        switch (artifact) {
+            case LEAF:
+                AtomicFiles.write(file, (out) -> pem(out, null, chain.subList(0, 1)));
+                break;
+            case FULLCHAIN:
+                AtomicFiles.write(file, (out) -> pem(out, null, chain));
+                break;
+            case BUNDLE:
+                AtomicFiles.write(file, (out) -> pem(out, key, chain), AtomicFiles.ownerOnly(file));
+                break;
+            case DER:
+                AtomicFiles.write(file, (out) -> out.write(chain.get(0).getEncoded()));
+                break;
+            case PKCS12:
+                final KeyStoreFile keyStore = new KeyStoreFile(file, "PKCS12", password);
+                keyStore.protection(protection);
+                keyStore.create();
+                keyStore.put(alias, key, chain.toArray(new Certificate[0]));
+                keyStore.store();
+                break;
+        }
+    }
+
+    private static void pem(
+        final OutputStream out, final PrivateKey key, final List<X509Certificate> certificates
+    ) throws IOException {
+        final JcaPEMWriter writer = new JcaPEMWriter(new OutputStreamWriter(out, US_ASCII));
+        if (key != null) {
+            writer.writeObject(key);
+        }
+        for (X509Certificate certificate: certificates) {
+            writer.writeObject(certificate);
+        }
+        writer.flush(); // the stream is closed by the caller
+    }
+}
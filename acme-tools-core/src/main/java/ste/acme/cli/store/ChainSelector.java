@@ -0,0 +1,137 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+/**
+ * Picks one of the certificate chains offered by the CA for the same
+ * certificate (the default one and its alternates), either the one whose top
+ * certificate is issued by a given common name (e.g. ISRG Root X1) or the one
+ * with the fewest encoded bytes, which is what every TLS handshake sends.
+ */
+public class ChainSelector {
+
+    public static final String SHORTEST = "shortest";
+
+    private final String preference;
+
+    /**
+     * @param preference 'shortest' or the common name of the issuer of the
+     *        top certificate of the preferred chain
+     */
+    public ChainSelector(final String preference) {
+        if (preference == null || preference.isBlank()) {
+            throw new IllegalArgumentException("preference can not be null or blank");
+        }
+        this.preference = preference.trim();
+    }
+
+    /**
+     * @return the preference
+     */
+    public String preference() {
+        return preference;
+    }
+
+    /**
+     * @return true if the shortest chain is preferred
+     */
+    public boolean shortest() {
+        return SHORTEST.equalsIgnoreCase(preference);
+    }
+
+    /**
+     * @param chains the offered chains, the default one first, each leaf first
+     *
+     * @return the index of the preferred chain; with 'shortest' the first of
+     *         the shortest chains, otherwise the first chain issued by the
+     *         preferred issuer or -1 if none is
+     */
+    public int select(final List<List<X509Certificate>> chains) {
+        if (chains == null || chains.isEmpty()) {
+            throw new IllegalArgumentException("chains can not be null or empty");
+        }
+
+        if (shortest()) {
+            int selected = 0;
+            for (int i = 1; i < chains.size(); ++i) {
+                if (size(chains.get(i)) < size(chains.get(selected))) {
+                    selected = i;
+                }
+            }
+            return selected;
+        }
+
+        for (int i = 0; i < chains.size(); ++i) {
+            if (preference.equalsIgnoreCase(issuer(chains.get(i)))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // --------------------------------------------------------- static methods
+
+    /**
+     * @param chain a certificate chain
+     *
+     * @return the encoded size of the chain in bytes
+     */
+    public static int size(final List<X509Certificate> chain) {
+        int size = 0;
+        for (X509Certificate certificate: chain) {
+            try {
+                size += certificate.getEncoded().length;
+            } catch (CertificateEncodingException x) {
+                throw new IllegalArgumentException("invalid certificate " + certificate.getSubjectX500Principal(), x);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param chain a certificate chain, leaf first
+     *
+     * @return the common name of the issuer of the top certificate of the
+     *         chain; the full issuer name if it has no common name
+     */
+    public static String issuer(final List<X509Certificate> chain) {
+        final String issuer = chain.get(chain.size() - 1).getIssuerX500Principal().getName();
+        try {
+            for (Rdn rdn: new LdapName(issuer).getRdns()) {
+                if ("CN".equalsIgnoreCase(rdn.getType())) {
+                    return String.valueOf(rdn.getValue());
+                }
+            }
+        } catch (InvalidNameException x) {
+            //
+            // not a RFC 2253 name, no common name then
+            //
+        }
+        return issuer;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.shredzone.acme4j.util.KeyPairUtils;
+
+/**
+ * Keeps the key pairs read from PEM files, so that a process reading the
+ * same keys many times (e.g. a long running server renewing the same
+ * domains) parses them once. Keys are cached by the SHA-256 digest of the
+ * content of the file, which is read each time: a changed file is parsed
+ * again and no stale key is ever returned. The least recently used keys are
+ * evicted beyond the capacity of the cache.
+ */
+public class KeyCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final Map<String, KeyPair> keys;
+
+    public KeyCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the maximum number of key pairs kept
+     */
+    public KeyCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.keys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, KeyPair> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param file a PEM file with a key pair
+     *
+     * @return the key pair in the given file
+     *
+     * @throws IOException if the file can not be read or does not contain a
+     *         key pair
+     */
+    public KeyPair read(final Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        final byte[] content = Files.readAllBytes(file);
+        final String digest = digest(content);
+
+        synchronized (keys) {
+            final KeyPair keyPair = keys.get(digest);
+            if (keyPair != null) {
+                return keyPair;
+            }
+        }
+
+        final KeyPair keyPair;
+        try {
+            keyPair = KeyPairUtils.readKeyPair(new StringReader(new String(content, StandardCharsets.US_ASCII)));
+        } catch (ClassCastException x) {
+            throw new IOException("no key pair in " + file); // e.g. a certificate
+        }
+        synchronized (keys) {
+            keys.put(digest, keyPair);
+        }
+        return keyPair;
+    }
+
+    /**
+     * @return the number of key pairs cached
+     */
+    public int size() {
+        synchronized (keys) {
+            return keys.size();
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static String digest(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException(x); // SHA-256 is available in every JVM
+        }
+    }
+}
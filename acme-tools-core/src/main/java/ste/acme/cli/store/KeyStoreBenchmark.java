@@ -0,0 +1,178 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import org.shredzone.acme4j.util.CertificateUtils;
+import org.shredzone.acme4j.util.KeyPairUtils;
+
+/**
+ * Measures how long it takes to write and to read keystores of a given type
+ * and size with a given protection, so that the protection of the keystores
+ * can be chosen knowing its cost.
+ *
+ * Each run writes a keystore with the given number of entries (all with the
+ * same key and a self-signed certificate), then loads it and reads all its
+ * keys, as the consumers of the keystore do. Each run is repeated the given
+ * number of rounds and the median times are reported.
+ */
+public class KeyStoreBenchmark {
+
+    private final Path dir;
+    private final String type;
+    private final char[] password;
+    private final KeyPair keys;
+    private final Certificate[] chain;
+
+    private int rounds = 3;
+
+    /**
+     * The cost of a keystore
+     *
+     * @param type the keystore type
+     * @param protection the protection of the keystore; null if not tunable
+     * @param entries the number of entries
+     * @param bytes the size of the keystore file
+     * @param store the time to put all entries and write the keystore
+     * @param load the time to load the keystore and read all keys
+     */
+    public record Result(
+        String type, KeyStoreProtection protection, int entries, long bytes, Duration store, Duration load
+    ) {}
+
+    /**
+     * @param dir the directory where to write the keystores
+     * @param type the keystore type (e.g. PKCS12, JKS, BCFKS)
+     * @param password the keystore password
+     *
+     * @throws GeneralSecurityException if the sample keys can not be created
+     */
+    public KeyStoreBenchmark(final Path dir, final String type, final char[] password)
+    throws GeneralSecurityException {
+        if (dir == null) {
+            throw new IllegalArgumentException("dir can not be null");
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("type can not be null");
+        }
+        if (password == null) {
+            throw new IllegalArgumentException("password can not be null");
+        }
+        this.dir = dir;
+        this.type = type;
+        this.password = password.clone();
+
+        final Instant now = Instant.now();
+        this.keys = KeyPairUtils.createKeyPair(2048);
+        this.chain = new Certificate[] {
+            CertificateUtils.createTestRootCertificate("CN=benchmark.acme-tools", now, now.plus(Duration.ofDays(90)), keys)
+        };
+    }
+
+    /**
+     * @return the number of times each run is repeated
+     */
+    public int rounds() {
+        return rounds;
+    }
+
+    /**
+     * @param rounds the number of times each run is repeated
+     */
+    public void rounds(final int rounds) {
+        if (rounds < 1) {
+            throw new IllegalArgumentException("rounds must be greater than 0");
+        }
+        this.rounds = rounds;
+    }
+
+    /**
+     * Writes and reads a keystore with the given protection and number of
+     * entries
+     *
+     * @param protection the protection; null for the default of the keystore type
+     * @param entries the number of entries
+     *
+     * @return the size of the keystore and the median store and load times
+     *
+     * @throws IOException if the keystore can not be written or read
+     * @throws GeneralSecurityException if the keystore can not be encoded or decoded
+     */
+    public Result run(final KeyStoreProtection protection, final int entries)
+    throws IOException, GeneralSecurityException {
+        if (entries < 1) {
+            throw new IllegalArgumentException("entries must be greater than 0");
+        }
+
+        final Path file = dir.resolve("benchmark." + type.toLowerCase());
+        final long[] storeTimes = new long[rounds], loadTimes = new long[rounds];
+        long bytes = 0;
+        try {
+            for (int round = 0; round < rounds; ++round) {
+                final KeyStoreFile keyStore = new KeyStoreFile(file, type, password);
+                keyStore.protection(protection);
+
+                long start = System.nanoTime();
+                keyStore.create();
+                for (int i = 0; i < entries; ++i) {
+                    keyStore.put("domain" + i + ".benchmark", keys.getPrivate(), chain);
+                }
+                keyStore.store();
+                storeTimes[round] = System.nanoTime() - start;
+                bytes = Files.size(file);
+
+                final KeyStoreFile reader = new KeyStoreFile(file, type, password);
+                start = System.nanoTime();
+                reader.load();
+                for (String alias: Collections.list(reader.keyStore().aliases())) {
+                    if (reader.keyStore().getKey(alias, password) == null) {
+                        throw new GeneralSecurityException("key " + alias + " not found in " + file);
+                    }
+                }
+                loadTimes[round] = System.nanoTime() - start;
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        return new Result(
+            type, (protection != null) ? protection : KeyStoreProtection.defaults(type),
+            entries, bytes, median(storeTimes), median(loadTimes)
+        );
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static Duration median(final long[] times) {
+        final long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return Duration.ofNanos(sorted[sorted.length / 2]);
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERBMPString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.crypto.util.PBKDF2Config;
+import org.bouncycastle.jcajce.BCFKSLoadStoreParameter;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.OutputEncryptor;
+import org.bouncycastle.pkcs.PKCS12PfxPduBuilder;
+import org.bouncycastle.pkcs.PKCS12SafeBag;
+import org.bouncycastle.pkcs.PKCSException;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS12SafeBagBuilder;
+import org.bouncycastle.pkcs.jcajce.JcePKCS12MacCalculatorBuilder;
+import org.bouncycastle.pkcs.jcajce.JcePKCSPBEOutputEncryptorBuilder;
+import ste.acme.cli.jfr.KeyIOEvent;
+
+/**
+ * A keystore file (PKCS12, JKS or BCFKS) holding the keys and certificates of
+ * many domains, one alias per domain.
+ *
+ * The keystore is loaded once, any number of aliases can then be replaced in
+ * memory and the keystore is written back once, so that renewing many domains
+ * costs a single load and store instead of one per domain. The file is written
+ * to a temporary file first, which then replaces the keystore, so that readers
+ * never see a partially written keystore.
+ *
+ * PKCS12 and BCFKS keystores can be given a {@link KeyStoreProtection}; if so,
+ * the keystore is written with it, re-protecting the entries of an existing
+ * keystore too. If not, new keystores are written with the default protection
+ * of their type and existing keystores keep their own. PKCS12 keystores are
+ * loaded by the JDK provider, which keeps the protection of existing files;
+ * with a given protection they are encoded with BouncyCastle's PFX builder,
+ * as the JDK takes the MAC and certificates protection of new keystores from
+ * JVM wide system properties only.
+ */
+public class KeyStoreFile {
+
+    /**
+     * The attribute the JDK marks trusted certificate entries of PKCS12
+     * keystores with (certificates without it are ignored when loaded)
+     */
+    private static final ASN1ObjectIdentifier ORACLE_TRUSTED_KEY_USAGE
+        = new ASN1ObjectIdentifier("2.16.840.1.113894.746875.1.1");
+
+    private final Path file;
+    private final String type;
+    private final char[] password;
+    private final Set<String> updated = new LinkedHashSet<>();
+    private final SecureRandom random = new SecureRandom();
+
+    private KeyStore keyStore = null;
+    private KeyStoreProtection protection = null;
+
+    /**
+     * @param file the keystore file
+     * @param type the keystore type (e.g. PKCS12, JKS, BCFKS)
+     * @param password the keystore password, used for the keys too
+     */
+    public KeyStoreFile(final Path file, final String type, final char[] password) {
+        if (file == null) {
+            throw new IllegalArgumentException("file can not be null");
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("type can not be null");
+        }
+        if (password == null) {
+            throw new IllegalArgumentException("password can not be null");
+        }
+        this.file = file;
+        this.type = type;
+        this.password = password.clone();
+    }
+
+    /**
+     * @return the keystore file
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return the keystore type
+     */
+    public String type() {
+        return type;
+    }
+
+    /**
+     * @return the protection to write the keystore with; null to keep the
+     *         one of existing keystores
+     */
+    public KeyStoreProtection protection() {
+        return protection;
+    }
+
+    /**
+     * @param protection the protection to write the keystore with; null to
+     *        keep the one of existing keystores
+     *
+     * @throws IllegalArgumentException if the keystore type can not be tuned
+     */
+    public void protection(final KeyStoreProtection protection) {
+        if (protection != null && KeyStoreProtection.defaults(type) == null) {
+            throw new IllegalArgumentException("the protection of " + type + " keystores can not be tuned");
+        }
+        this.protection = protection;
+    }
+
+    /**
+     * @return the aliases put since the keystore was loaded or created
+     */
+    public Set<String> updated() {
+        return Collections.unmodifiableSet(updated);
+    }
+
+    /**
+     * @return the keystore; null if not loaded or created yet
+     */
+    public KeyStore keyStore() {
+        return keyStore;
+    }
+
+    /**
+     * Creates a new empty keystore, replacing the file when stored
+     *
+     * @throws IOException if the keystore can not be created
+     * @throws GeneralSecurityException if the keystore type is not available
+     */
+    public void create() throws IOException, GeneralSecurityException {
+        final KeyStore empty = instance();
+        empty.load(null, null);
+        keyStore = empty;
+        updated.clear();
+    }
+
+    /**
+     * Loads the keystore from its file; if the file does not exist a new empty
+     * keystore is created.
+     *
+     * @throws IOException if the file can not be read or the password is wrong
+     * @throws GeneralSecurityException if the keystore can not be loaded
+     */
+    public void load() throws IOException, GeneralSecurityException {
+        final KeyStore existing = instance();
+        final KeyIOEvent event = new KeyIOEvent();
+        event.begin();
+        try (InputStream in = Files.newInputStream(file)) {
+            existing.load(in, password);
+        } catch (NoSuchFileException x) {
+            existing.load(null, null);
+        } finally {
+            event.commit(file, KeyIOEvent.KEYSTORE, KeyIOEvent.READ);
+        }
+        keyStore = existing;
+        updated.clear();
+    }
+
+    /**
+     * Adds or replaces the key and certificate chain of the given alias
+     *
+     * @param alias the alias (e.g. the domain)
+     * @param key the private key
+     * @param chain the certificate chain, leaf first
+     *
+     * @throws GeneralSecurityException if the entry can not be set
+     */
+    public void put(final String alias, final PrivateKey key, final Certificate[] chain)
+    throws GeneralSecurityException {
+        if (keyStore == null) {
+            throw new IllegalStateException("keystore not loaded");
+        }
+        keyStore.setKeyEntry(alias, key, password, chain);
+        updated.add(alias);
+    }
+
+    /**
+     * Writes the keystore back, replacing the file at once; a new file is
+     * readable and writable by its owner only, a replaced one keeps its
+     * permissions
+     *
+     * @throws IOException if the keystore can not be written
+     * @throws GeneralSecurityException if the keystore can not be encoded
+     */
+    public void store() throws IOException, GeneralSecurityException {
+        if (keyStore == null) {
+            throw new IllegalStateException("keystore not loaded");
+        }
+
+        final KeyIOEvent event = new KeyIOEvent();
+        event.begin();
+        try {
+            AtomicFiles.write(file, this::write, AtomicFiles.ownerOnly(file));
+        } finally {
+            event.commit(file, KeyIOEvent.KEYSTORE, KeyIOEvent.WRITE);
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private KeyStore instance() throws GeneralSecurityException {
+        //
+        // JKS is provided by the JDK only, BouncyCastle's PKCS12 can not be
+        // tuned
+        //
+        if ("JKS".equalsIgnoreCase(type)) {
+            return KeyStore.getInstance(type);
+        }
+        return isPKCS12() ? KeyStore.getInstance(type, "SUN") : KeyStore.getInstance(type, bouncyCastle());
+    }
+
+    private boolean isPKCS12() {
+        return "PKCS12".equalsIgnoreCase(type);
+    }
+
+    private void write(final OutputStream out) throws IOException, GeneralSecurityException {
+        if (protection == null) {
+            keyStore.store(out, password);
+        } else if (isPKCS12()) {
+            out.write(pkcs12());
+        } else {
+            final boolean sha3 = "HmacSHA3_512".equals(protection.mac());
+            keyStore.store(
+                new BCFKSLoadStoreParameter.Builder(out, password)
+                    .withStorePBKDFConfig(
+                        new PBKDF2Config.Builder()
+                            .withIterationCount(protection.iterations())
+                            .withPRF(sha3 ? PBKDF2Config.PRF_SHA3_512 : PBKDF2Config.PRF_SHA512)
+                            .build()
+                    )
+                    .withStoreEncryptionAlgorithm(BCFKSLoadStoreParameter.EncryptionAlgorithm.valueOf(protection.encryption()))
+                    .withStoreMacAlgorithm(BCFKSLoadStoreParameter.MacAlgorithm.valueOf(protection.mac()))
+                    .build()
+            );
+        }
+    }
+
+    /**
+     * Encodes the keystore as the JDK does (shrouded keys in plain safe
+     * contents, certificates encrypted, entries told by friendly name and
+     * local key id), but with the protection given
+     */
+    private byte[] pkcs12() throws IOException, GeneralSecurityException {
+        try {
+            final Provider bc = bouncyCastle();
+            final OutputEncryptor encryptor = encryptor(protection, bc);
+            final List<PKCS12SafeBag> keys = new ArrayList<>();
+            final List<PKCS12SafeBag> certificates = new ArrayList<>();
+            final Set<Certificate> issuers = new LinkedHashSet<>();
+
+            for (String alias: Collections.list(keyStore.aliases())) {
+                final DERBMPString name = new DERBMPString(alias);
+                if (keyStore.isKeyEntry(alias)) {
+                    final byte[] id = new byte[20];
+                    random.nextBytes(id);
+                    final DEROctetString localKeyId = new DEROctetString(id);
+
+                    keys.add(
+                        new JcaPKCS12SafeBagBuilder((PrivateKey)keyStore.getKey(alias, password), encryptor)
+                            .addBagAttribute(PKCSObjectIdentifiers.pkcs_9_at_friendlyName, name)
+                            .addBagAttribute(PKCSObjectIdentifiers.pkcs_9_at_localKeyId, localKeyId)
+                            .build()
+                    );
+                    final Certificate[] chain = keyStore.getCertificateChain(alias);
+                    certificates.add(
+                        new JcaPKCS12SafeBagBuilder((X509Certificate)chain[0])
+                            .addBagAttribute(PKCSObjectIdentifiers.pkcs_9_at_friendlyName, name)
+                            .addBagAttribute(PKCSObjectIdentifiers.pkcs_9_at_localKeyId, localKeyId)
+                            .build()
+                    );
+                    for (int i = 1; i < chain.length; ++i) {
+                        issuers.add(chain[i]);
+                    }
+                } else {
+                    certificates.add(
+                        new JcaPKCS12SafeBagBuilder((X509Certificate)keyStore.getCertificate(alias))
+                            .addBagAttribute(PKCSObjectIdentifiers.pkcs_9_at_friendlyName, name)
+                            .addBagAttribute(ORACLE_TRUSTED_KEY_USAGE, KeyPurposeId.anyExtendedKeyUsage)
+                            .build()
+                    );
+                }
+            }
+            for (Certificate issuer: issuers) {
+                certificates.add(new JcaPKCS12SafeBagBuilder((X509Certificate)issuer).build());
+            }
+
+            final PKCS12PfxPduBuilder pfx = new PKCS12PfxPduBuilder();
+            for (PKCS12SafeBag key: keys) {
+                pfx.addData(key);
+            }
+            pfx.addEncryptedData(encryptor, certificates.toArray(PKCS12SafeBag[]::new));
+
+            final ASN1ObjectIdentifier digest = "HmacPBESHA1".equals(protection.mac())
+                                              ? OIWObjectIdentifiers.idSHA1 : NISTObjectIdentifiers.id_sha256;
+            return pfx.build(
+                new JcePKCS12MacCalculatorBuilder(digest).setProvider(bc).setIterationCount(protection.iterations()),
+                password
+            ).getEncoded(ASN1Encoding.DER);
+        } catch (OperatorCreationException | PKCSException x) {
+            throw new GeneralSecurityException("unable to encode the keystore: " + x.getMessage(), x);
+        }
+    }
+
+    /**
+     * @return the encryptor of the keys and certificates for the given
+     *         protection: PBES2 for PBEWithHmac*, the PKCS#12 schemes otherwise
+     */
+    private OutputEncryptor encryptor(final KeyStoreProtection protection, final Provider bc)
+    throws OperatorCreationException {
+        final String encryption = protection.encryption();
+        final JcePKCSPBEOutputEncryptorBuilder builder;
+        if (encryption.startsWith("PBEWithHmac")) {
+            final ASN1ObjectIdentifier prf = encryption.contains("SHA512") ? PKCSObjectIdentifiers.id_hmacWithSHA512
+                                           : encryption.contains("SHA256") ? PKCSObjectIdentifiers.id_hmacWithSHA256
+                                           : PKCSObjectIdentifiers.id_hmacWithSHA1;
+            builder = new JcePKCSPBEOutputEncryptorBuilder(
+                encryption.endsWith("AES_256") ? NISTObjectIdentifiers.id_aes256_CBC : NISTObjectIdentifiers.id_aes128_CBC
+            ).setPRF(new AlgorithmIdentifier(prf, DERNull.INSTANCE));
+        } else {
+            builder = new JcePKCSPBEOutputEncryptorBuilder(
+                "PBEWithSHA1AndDESede".equals(encryption)
+                    ? PKCSObjectIdentifiers.pbeWithSHAAnd3_KeyTripleDES_CBC
+                    : PKCSObjectIdentifiers.pbeWithSHAAnd40BitRC2_CBC
+            );
+        }
+        return builder.setProvider(bc).setRandom(random).setIterationCount(protection.iterations()).build(password);
+    }
+
+    /**
+     * The PBES2 and PKCS#12 schemes are not all available from the JDK
+     * providers under the names BouncyCastle looks up, and BCFKS is provided
+     * by BouncyCastle only; it is used even if not registered (e.g. when
+     * embedded)
+     */
+    private static Provider bouncyCastle() {
+        final Provider registered = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+        return (registered != null) ? registered : new BouncyCastleProvider();
+    }
+}
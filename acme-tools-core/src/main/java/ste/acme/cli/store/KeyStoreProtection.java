@@ -0,0 +1,141 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.util.List;
+
+/**
+ * How the keys and the content of a keystore are protected: the password based
+ * encryption algorithm, the MAC algorithm and the number of iterations of the
+ * key derivation.
+ *
+ * The number of iterations is what makes a keystore expensive to write and to
+ * load: the key derivation runs once per key entry (and for the MAC), both when
+ * the keystore is written and when it is read by its consumers. With BCFKS,
+ * encryption and MAC protect the whole store and the iterations are the ones
+ * of its integrity key. JKS can not be tuned.
+ *
+ * @param encryption the encryption algorithm (e.g. PBEWithHmacSHA256AndAES_256)
+ * @param mac the MAC algorithm (e.g. HmacPBESHA256)
+ * @param iterations the number of iterations of the key derivation
+ */
+public record KeyStoreProtection(String encryption, String mac, int iterations) {
+
+    public static final int MAX_ITERATIONS = 5_000_000; // the JDK refuses to load more
+
+    public static final List<String> PKCS12_ENCRYPTIONS = List.of(
+        "PBEWithHmacSHA256AndAES_256", "PBEWithHmacSHA256AndAES_128",
+        "PBEWithHmacSHA512AndAES_256", "PBEWithHmacSHA512AndAES_128",
+        "PBEWithHmacSHA1AndAES_256", "PBEWithHmacSHA1AndAES_128",
+        "PBEWithSHA1AndDESede", "PBEWithSHA1AndRC2_40"
+    );
+    public static final List<String> PKCS12_MACS = List.of(
+        "HmacPBESHA256", "HmacPBESHA1" // BouncyCastle can not verify the others
+    );
+    public static final List<String> BCFKS_ENCRYPTIONS = List.of("AES256_CCM", "AES256_KWP");
+    public static final List<String> BCFKS_MACS = List.of("HmacSHA512", "HmacSHA3_512");
+
+    public KeyStoreProtection {
+        if (encryption == null) {
+            throw new IllegalArgumentException("encryption can not be null");
+        }
+        if (mac == null) {
+            throw new IllegalArgumentException("mac can not be null");
+        }
+        if (iterations < 1 || iterations > MAX_ITERATIONS) {
+            throw new IllegalArgumentException("iterations must be between 1 and " + MAX_ITERATIONS);
+        }
+    }
+
+    /**
+     * @param type the keystore type (e.g. PKCS12, BCFKS)
+     *
+     * @return the protection used for new keystores of the given type if not
+     *         provided; null if the keystore type can not be tuned (e.g. JKS)
+     */
+    public static KeyStoreProtection defaults(final String type) {
+        if ("PKCS12".equalsIgnoreCase(type)) {
+            return new KeyStoreProtection("PBEWithHmacSHA256AndAES_256", "HmacPBESHA256", 10000);
+        }
+        if ("BCFKS".equalsIgnoreCase(type)) {
+            return new KeyStoreProtection("AES256_CCM", "HmacSHA512", 51200);
+        }
+        return null;
+    }
+
+    /**
+     * Builds the protection of a keystore of the given type, taking the
+     * values not provided from the defaults of the type.
+     *
+     * @param type the keystore type (e.g. PKCS12, BCFKS)
+     * @param encryption the encryption algorithm, case insensitive; null for the default
+     * @param mac the MAC algorithm, case insensitive; null for the default
+     * @param iterations the number of iterations; null for the default
+     *
+     * @return the protection or null if none of the values is provided
+     *
+     * @throws IllegalArgumentException if the keystore type can not be tuned
+     *         or an algorithm is not supported by the keystore type
+     */
+    public static KeyStoreProtection of(
+        final String type, final String encryption, final String mac, final Integer iterations
+    ) {
+        if (encryption == null && mac == null && iterations == null) {
+            return null;
+        }
+
+        final KeyStoreProtection defaults = defaults(type);
+        if (defaults == null) {
+            throw new IllegalArgumentException("the protection of " + type + " keystores can not be tuned");
+        }
+
+        final boolean pkcs12 = "PKCS12".equalsIgnoreCase(type);
+        return new KeyStoreProtection(
+            (encryption == null)
+                ? defaults.encryption()
+                : algorithm("encryption", encryption, type, pkcs12 ? PKCS12_ENCRYPTIONS : BCFKS_ENCRYPTIONS),
+            (mac == null)
+                ? defaults.mac()
+                : algorithm("mac", mac, type, pkcs12 ? PKCS12_MACS : BCFKS_MACS),
+            (iterations == null) ? defaults.iterations() : iterations
+        );
+    }
+
+    @Override
+    public String toString() {
+        return encryption + ", " + mac + ", " + iterations + " iterations";
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static String algorithm(
+        final String name, final String value, final String type, final List<String> supported
+    ) {
+        for (String algorithm: supported) {
+            if (algorithm.equalsIgnoreCase(value)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException(
+            name + " " + value + " is not supported by " + type + " keystores; one of " + String.join(", ", supported)
+        );
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.tls;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+/**
+ * A TLS handshake driven over a non-blocking {@link SocketChannel} with an
+ * {@link SSLEngine}, so that a single selector thread can take care of many
+ * connections at the same time.
+ *
+ * The owner of the selector calls {@link #handshake()} whenever the channel is
+ * ready and registers the channel for {@link #interestOps()} until the
+ * handshake is completed. Only the handshake is supported: acme-tools never
+ * needs to exchange application data over TLS, it only looks at what has been
+ * negotiated (certificates, application protocol).
+ */
+public class TlsConnection {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final long started;
+
+    //
+    // netOut is kept in write mode: its position is the amount of data still
+    // to be sent; netIn is kept in write mode as well, ready to be read into
+    //
+    private ByteBuffer netIn, netOut, appIn;
+    private boolean begun = false, completed = false;
+
+    public TlsConnection(final SocketChannel channel, final SSLEngine engine) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel can not be null");
+        }
+        if (engine == null) {
+            throw new IllegalArgumentException("engine can not be null");
+        }
+        this.channel = channel;
+        this.engine = engine;
+        this.started = System.nanoTime();
+
+        netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+    }
+
+    /**
+     * @return the underlying channel
+     */
+    public SocketChannel channel() {
+        return channel;
+    }
+
+    /**
+     * @return the underlying engine
+     */
+    public SSLEngine engine() {
+        return engine;
+    }
+
+    /**
+     * @return monotonic time (as of {@link System#nanoTime()}) the connection was created
+     */
+    public long started() {
+        return started;
+    }
+
+    /**
+     * @return true if the handshake has been completed
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Advances the handshake as far as possible without blocking.
+     *
+     * @return true if the handshake is completed, false if more data must be
+     *         read or written first (see {@link #interestOps()})
+     *
+     * @throws IOException if the handshake fails or the peer closes the connection
+     */
+    public boolean handshake() throws IOException {
+        if (!begun) {
+            engine.beginHandshake();
+            begun = true;
+        }
+
+        while (true) {
+            if (!flush()) {
+                return false;
+            }
+            if (completed) {
+                return true;
+            }
+
+            final HandshakeStatus status = engine.getHandshakeStatus();
+            switch (status) {
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    break;
+
+                case NEED_WRAP:
+                    wrap();
+                    break;
+
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    if (!unwrap()) {
+                        return false;
+                    }
+                    break;
+
+                default: // FINISHED, NOT_HANDSHAKING
+                    completed = true;
+            }
+        }
+    }
+
+    /**
+     * @return the selector operations to wait for before calling
+     *         {@link #handshake()} again
+     */
+    public int interestOps() {
+        return (netOut.position() > 0) ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+    }
+
+    /**
+     * Sends a close_notify if possible without blocking and closes the channel
+     */
+    public void close() {
+        try {
+            engine.closeOutbound();
+            if (begun && channel.isConnected()) {
+                engine.wrap(EMPTY, netOut);
+                flush();
+            }
+        } catch (IOException x) {
+            //
+            // nothing to do, we are closing anyway
+            //
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException x) {
+                // nothing to do
+            }
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * @return true if all pending data has been written
+     */
+    private boolean flush() throws IOException {
+        if (netOut.position() == 0) {
+            return true;
+        }
+        netOut.flip();
+        try {
+            channel.write(netOut);
+        } finally {
+            netOut.compact();
+        }
+        return (netOut.position() == 0);
+    }
+
+    private void wrap() throws IOException {
+        final SSLEngineResult result = engine.wrap(EMPTY, netOut);
+        switch (result.getStatus()) {
+            case BUFFER_OVERFLOW:
+                netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                break;
+            case CLOSED:
+                flush(); // most likely an alert to the peer
+                throw new SSLException("connection closed during handshake");
+            default:
+                checkFinished(result);
+        }
+    }
+
+    /**
+     * @return false if more data is needed from the peer and none is available
+     */
+    private boolean unwrap() throws IOException {
+        netIn.flip();
+        final SSLEngineResult result;
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+
+        switch (result.getStatus()) {
+            case BUFFER_UNDERFLOW:
+                if (netIn.remaining() == 0) {
+                    netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                }
+                final int n = channel.read(netIn);
+                if (n < 0) {
+                    engine.closeInbound();
+                    throw new EOFException("connection closed by peer during handshake");
+                }
+                return (n > 0);
+            case BUFFER_OVERFLOW:
+                appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                return true;
+            case CLOSED:
+                throw new SSLException("connection closed during handshake");
+            default:
+                checkFinished(result);
+                return true;
+        }
+    }
+
+    private void checkFinished(final SSLEngineResult result) {
+        if (result.getHandshakeStatus() == HandshakeStatus.FINISHED) {
+            completed = true;
+        }
+    }
+
+    private static ByteBuffer enlarge(final ByteBuffer buffer, final int size) {
+        final ByteBuffer larger = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
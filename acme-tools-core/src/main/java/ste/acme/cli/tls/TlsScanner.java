@@ -0,0 +1,440 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.tls;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+/**
+ * Fetches the certificate chains served by many TLS endpoints at the same
+ * time: all connections are non-blocking and driven by a single selector on
+ * the calling thread, with up to {@link #concurrency()} handshakes in flight.
+ * Host names are resolved by a few resolver threads, as name resolution
+ * blocks: a slow DNS server delays the endpoints it is asked for, not the
+ * handshakes of the others.
+ *
+ * Each endpoint is asked for the certificate of its host name (SNI) and the
+ * served chain is taken as is, without validating it: the scanner tells what
+ * is deployed, whether it is trusted is up to the caller. Connections are
+ * closed as soon as the handshake is completed.
+ */
+public class TlsScanner {
+
+    public static final int DEFAULT_PORT = 443;
+    public static final int DEFAULT_CONCURRENCY = 1000;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+    public static final int RESOLVERS = 32;
+
+    private final SSLContext context;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private Duration timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * An endpoint to scan
+     *
+     * @param host the host name or address, also used as SNI if it is a name
+     * @param port the port
+     */
+    public record Target(String host, int port) {
+        public Target {
+            if (host == null || host.isBlank()) {
+                throw new IllegalArgumentException("host can not be null or blank");
+            }
+            if (port < 1 || port > 65535) {
+                throw new IllegalArgumentException("port must be between 1 and 65535");
+            }
+        }
+
+        /**
+         * @param target host[:port] (e.g. example.com:8443, [::1]:443); the
+         *        port is {@link #DEFAULT_PORT} if not given
+         *
+         * @return the parsed target
+         */
+        public static Target parse(final String target) {
+            if (target == null || target.isBlank()) {
+                throw new IllegalArgumentException("target can not be null or blank");
+            }
+            final String value = target.trim();
+            String host = value, port = null;
+            if (value.startsWith("[")) {
+                final int end = value.indexOf(']');
+                if (end < 0) {
+                    throw new IllegalArgumentException("invalid target '" + target + "'");
+                }
+                host = value.substring(1, end);
+                if (end+1 < value.length()) {
+                    if (value.charAt(end+1) != ':') {
+                        throw new IllegalArgumentException("invalid target '" + target + "'");
+                    }
+                    port = value.substring(end+2);
+                }
+            } else if (value.indexOf(':') == value.lastIndexOf(':') && value.indexOf(':') >= 0) {
+                host = value.substring(0, value.indexOf(':'));
+                port = value.substring(value.indexOf(':')+1);
+            }
+            try {
+                return new Target(host, (port == null) ? DEFAULT_PORT : Integer.parseInt(port));
+            } catch (NumberFormatException x) {
+                throw new IllegalArgumentException("invalid port in target '" + target + "'");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return ((host.indexOf(':') >= 0) ? "[" + host + "]" : host) + ":" + port;
+        }
+    }
+
+    /**
+     * The outcome of the scan of an endpoint
+     *
+     * @param target the endpoint
+     * @param chain the served certificates, leaf first; empty if the scan failed
+     * @param error why the scan failed; null if it succeeded
+     * @param elapsed the time taken to connect and complete the handshake
+     */
+    public record Result(Target target, List<X509Certificate> chain, String error, Duration elapsed) {}
+
+    /**
+     * Receives the results; it is called from the scanning thread, one result
+     * at a time
+     */
+    public interface Listener {
+        void result(Result result);
+    }
+
+    public TlsScanner() {
+        try {
+            context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] { new AnyTrustManager() }, null);
+        } catch (GeneralSecurityException x) {
+            throw new IllegalStateException("unable to initialize the TLS context: " + x.getMessage(), x);
+        }
+    }
+
+    /**
+     * @return the maximum number of connections in flight
+     */
+    public int concurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param concurrency the maximum number of connections in flight
+     */
+    public void concurrency(final int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be greater than 0");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @return the time within which an endpoint must complete the handshake
+     */
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout the time within which an endpoint must complete the
+     *        handshake, connection included; it starts once the host name is
+     *        resolved
+     */
+    public void timeout(final Duration timeout) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be a positive duration");
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * Scans the given endpoints and returns when all of them have been handed
+     * to the listener
+     *
+     * @param targets the endpoints to scan
+     * @param listener the listener to call for each endpoint
+     *
+     * @throws IOException if the selector can not be opened
+     */
+    public void scan(final Collection<Target> targets, final Listener listener) throws IOException {
+        if (targets == null) {
+            throw new IllegalArgumentException("targets can not be null");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can not be null");
+        }
+
+        final Iterator<Target> pending = targets.iterator();
+        final Queue<Resolution> resolved = new ConcurrentLinkedQueue<>();
+        final long timeoutNanos = timeout.toNanos();
+        final ExecutorService resolvers = Executors.newFixedThreadPool(Math.min(concurrency, RESOLVERS), (task) -> {
+            final Thread thread = new Thread(task, "tls-scanner-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (Selector selector = Selector.open()) {
+            int inFlight = 0; // resolving, connecting or shaking hands
+            while (pending.hasNext() || inFlight > 0) {
+                while (pending.hasNext() && inFlight < concurrency) {
+                    resolve(pending.next(), resolvers, resolved, selector);
+                    ++inFlight;
+                }
+                Resolution resolution;
+                while ((resolution = resolved.poll()) != null) {
+                    if (!open(selector, resolution, listener)) {
+                        --inFlight;
+                    }
+                }
+
+                selector.select(100); // woken up by the resolvers too
+                for (SelectionKey key: selector.selectedKeys()) {
+                    if (key.isValid() && advance(key, listener)) {
+                        --inFlight;
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                //
+                // drop the endpoints not answering in time
+                //
+                final long now = System.nanoTime();
+                for (SelectionKey key: selector.keys()) {
+                    final Scan scan = (Scan)key.attachment();
+                    if (key.isValid() && (now - scan.connection().started() > timeoutNanos)) {
+                        done(key, listener, null, new SocketTimeoutException(
+                            "no handshake within " + timeout.toMillis() + "ms"
+                        ));
+                        --inFlight;
+                    }
+                }
+            }
+        } catch (ClosedSelectorException x) {
+            throw new IOException("scan interrupted", x);
+        } finally {
+            resolvers.shutdownNow();
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Resolves the host of the given target in background, queueing the
+     * outcome and waking up the selector; addresses are taken as they are
+     */
+    private void resolve(
+        final Target target, final ExecutorService resolvers, final Queue<Resolution> resolved, final Selector selector
+    ) {
+        final long started = System.nanoTime();
+        final Runnable resolution = () -> {
+            try {
+                resolved.add(new Resolution(target, InetAddress.getByName(target.host()), null, started));
+            } catch (UnknownHostException | RuntimeException x) {
+                resolved.add(new Resolution(target, null, x, started));
+            }
+            selector.wakeup();
+        };
+        if (isAddress(target.host())) {
+            resolution.run();
+        } else {
+            resolvers.execute(resolution);
+        }
+    }
+
+    /**
+     * @return true if the connection is in flight, false if it failed at once
+     */
+    private boolean open(final Selector selector, final Resolution resolution, final Listener listener) {
+        final Target target = resolution.target();
+        if (resolution.error() != null) {
+            listener.result(new Result(
+                target, List.of(), message(resolution.error()),
+                Duration.ofNanos(System.nanoTime() - resolution.started())
+            ));
+            return false;
+        }
+
+        final long started = System.nanoTime();
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+
+            final SSLEngine engine = context.createSSLEngine(target.host(), target.port());
+            engine.setUseClientMode(true);
+            if (!isAddress(target.host())) {
+                final SSLParameters parameters = engine.getSSLParameters();
+                parameters.setServerNames(List.of(new SNIHostName(target.host())));
+                engine.setSSLParameters(parameters);
+            }
+
+            final Scan scan = new Scan(target, new TlsConnection(channel, engine));
+            if (channel.connect(new InetSocketAddress(resolution.address(), target.port()))) {
+                channel.register(selector, SelectionKey.OP_WRITE, scan);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, scan);
+            }
+            return true;
+        } catch (IOException | RuntimeException x) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException y) {
+                    // nothing to do
+                }
+            }
+            listener.result(new Result(
+                target, List.of(), message(x), Duration.ofNanos(System.nanoTime() - started)
+            ));
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the scan of the endpoint is done
+     */
+    private boolean advance(final SelectionKey key, final Listener listener) {
+        final Scan scan = (Scan)key.attachment();
+        final TlsConnection connection = scan.connection();
+        try {
+            if (key.isConnectable() && !connection.channel().finishConnect()) {
+                return false;
+            }
+            if (!connection.handshake()) {
+                key.interestOps(connection.interestOps());
+                return false;
+            }
+
+            final List<X509Certificate> chain = new ArrayList<>();
+            for (Certificate certificate: connection.engine().getSession().getPeerCertificates()) {
+                chain.add((X509Certificate)certificate);
+            }
+            done(key, listener, chain, null);
+        } catch (IOException x) {
+            done(key, listener, null, x);
+        }
+        return true;
+    }
+
+    private void done(
+        final SelectionKey key, final Listener listener, final List<X509Certificate> chain, final Exception error
+    ) {
+        final Scan scan = (Scan)key.attachment();
+        key.cancel();
+        scan.connection().close();
+        listener.result(new Result(
+            scan.target(), (chain == null) ? List.of() : List.copyOf(chain),
+            (error == null) ? null : message(error),
+            Duration.ofNanos(System.nanoTime() - scan.connection().started())
+        ));
+    }
+
+    private static boolean isAddress(final String host) {
+        return host.indexOf(':') >= 0 || host.chars().allMatch((c) -> c == '.' || Character.isDigit(c));
+    }
+
+    private static String message(final Exception x) {
+        if (x instanceof UnknownHostException) {
+            return "unknown host " + x.getMessage();
+        }
+        return (x.getMessage() == null) ? x.getClass().getSimpleName() : x.getMessage();
+    }
+
+    // -------------------------------------------------------------------- Scan
+
+    private record Scan(Target target, TlsConnection connection) {}
+
+    // -------------------------------------------------------------- Resolution
+
+    /**
+     * @param address the address of the host; null if it could not be resolved
+     * @param error why the host could not be resolved; null if resolved
+     * @param started when the resolution started
+     */
+    private record Resolution(Target target, InetAddress address, Exception error, long started) {}
+
+    // --------------------------------------------------------- AnyTrustManager
+
+    /**
+     * Takes any chain: the scanner reports what is served, trusted or not.
+     * It is an extended trust manager because JSSE wraps plain ones with the
+     * algorithm constraints check, which would reject weak chains (e.g.
+     * signed with MD5), the very ones a scan should report.
+     */
+    private static class AnyTrustManager extends X509ExtendedTrustManager {
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String type) {
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String type, final Socket socket) {
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String type, final SSLEngine engine) {
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String type) {
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String type, final Socket socket) {
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String type, final SSLEngine engine) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -32,7 +32,9 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.shredzone.acme4j.Login;
 import org.shredzone.acme4j.Session;
 import org.shredzone.acme4j.challenge.Challenge;
+import org.shredzone.acme4j.challenge.Dns01Challenge;
 import org.shredzone.acme4j.challenge.Http01Challenge;
+import org.shredzone.acme4j.challenge.TlsAlpn01Challenge;
 import org.shredzone.acme4j.connector.Connection;
 import org.shredzone.acme4j.connector.NetworkSettings;
 import static org.shredzone.acme4j.connector.Resource.NEW_ACCOUNT;
@@ -140,6 +142,13 @@ public class AcmeProviderStub implements AcmeProvider {
 
     @Override
     public Challenge createChallenge(Login login, JSON data) {
+        final String type = data.get("type").optional().map(JSON.Value::asString).orElse(null);
+        if (Dns01Challenge.TYPE.equals(type)) {
+            return new Dns01Challenge(login, getJSON("dnsChallenge"));
+        }
+        if (TlsAlpn01Challenge.TYPE.equals(type)) {
+            return new TlsAlpn01Challenge(login, getJSON("tlsAlpnChallenge"));
+        }
         return new Http01Challenge(login, getJSON("httpChallenge"));
     }
 }
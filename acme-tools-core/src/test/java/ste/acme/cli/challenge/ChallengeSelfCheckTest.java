@@ -0,0 +1,172 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ste.xtest.net.NetTools;
+
+/**
+ *
+ */
+public class ChallengeSelfCheckTest {
+
+    private static final String TOKEN = "rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ";
+    private static final String AUTHORIZATION = TOKEN + ".authorization";
+
+    private final MemoryTokenStore STORE = new MemoryTokenStore();
+    private ChallengeServer server;
+
+    @Before
+    public void before() throws Exception {
+        server = new ChallengeServer(STORE);
+        server.start(0);
+    }
+
+    @After
+    public void after() {
+        server.stop();
+    }
+
+    @Test
+    public void check_passes_if_the_challenge_is_served() throws Exception {
+        STORE.put(TOKEN, AUTHORIZATION);
+
+        final ChallengeSelfCheck.Result R = new ChallengeSelfCheck().check(domain(), TOKEN, AUTHORIZATION);
+        then(R.passed()).isTrue();
+        then(R.cached()).isFalse();
+        then(R.message()).isEqualTo(url() + " is reachable");
+    }
+
+    @Test
+    public void check_fails_if_the_challenge_is_not_served() throws Exception {
+        ChallengeSelfCheck.Result r = new ChallengeSelfCheck().check(domain(), TOKEN, AUTHORIZATION);
+        then(r.passed()).isFalse();
+        then(r.message()).isEqualTo(url() + " returned HTTP status 404");
+
+        STORE.put(TOKEN, "something else");
+        r = new ChallengeSelfCheck().check(domain(), TOKEN, AUTHORIZATION);
+        then(r.passed()).isFalse();
+        then(r.message()).isEqualTo(url() + " did not return the expected key authorization");
+    }
+
+    @Test
+    public void check_fails_fast_if_nobody_is_listening() throws Exception {
+        final int PORT = new NetTools().pickAvailablePort();
+
+        final long start = System.currentTimeMillis();
+        final ChallengeSelfCheck.Result R = new ChallengeSelfCheck().check("localhost:" + PORT, TOKEN, AUTHORIZATION);
+
+        then(System.currentTimeMillis() - start).isLessThan(ChallengeSelfCheck.DEFAULT_TIMEOUT.toMillis());
+        then(R.passed()).isFalse();
+        then(R.message()).startsWith(
+            "http://localhost:" + PORT + ChallengeServer.CHALLENGE_PATH + TOKEN + " is not reachable ("
+        );
+    }
+
+    @Test
+    public void check_fails_if_the_responder_does_not_answer_in_time() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0)) { // accepts connections, never responds
+            final ChallengeSelfCheck.Result R = new ChallengeSelfCheck(Duration.ofMillis(250), Duration.ZERO)
+                .check("localhost:" + silent.getLocalPort(), TOKEN, AUTHORIZATION);
+
+            then(R.passed()).isFalse();
+            then(R.message()).endsWith(" did not respond in 250ms");
+        }
+    }
+
+    @Test
+    public void passed_checks_are_cached_per_domain_and_token() throws Exception {
+        final ChallengeSelfCheck CHECK = new ChallengeSelfCheck();
+        final String DOMAIN = domain();
+
+        STORE.put(TOKEN, AUTHORIZATION);
+        then(CHECK.check(DOMAIN, TOKEN, AUTHORIZATION).passed()).isTrue();
+
+        server.stop(); // it would fail now if not cached
+
+        ChallengeSelfCheck.Result r = CHECK.check(DOMAIN, TOKEN, AUTHORIZATION);
+        then(r.passed()).isTrue();
+        then(r.cached()).isTrue();
+
+        CHECK.invalidate(DOMAIN);
+        r = CHECK.check(DOMAIN, TOKEN, AUTHORIZATION);
+        then(r.passed()).isFalse();
+        then(r.cached()).isFalse();
+    }
+
+    @Test
+    public void failed_checks_and_other_tokens_are_not_cached() throws Exception {
+        final ChallengeSelfCheck CHECK = new ChallengeSelfCheck();
+        final String DOMAIN = domain();
+
+        then(CHECK.check(DOMAIN, TOKEN, AUTHORIZATION).passed()).isFalse();
+
+        STORE.put(TOKEN, AUTHORIZATION); // the responder is fixed
+        ChallengeSelfCheck.Result r = CHECK.check(DOMAIN, TOKEN, AUTHORIZATION);
+        then(r.passed()).isTrue();
+        then(r.cached()).isFalse();
+
+        r = CHECK.check(DOMAIN, "another" + TOKEN, AUTHORIZATION);
+        then(r.passed()).isFalse();
+        then(r.cached()).isFalse();
+    }
+
+    @Test
+    public void no_cache_with_zero_ttl() throws Exception {
+        final ChallengeSelfCheck CHECK = new ChallengeSelfCheck(Duration.ofSeconds(1), Duration.ZERO);
+
+        then(CHECK.check(domain(), TOKEN, AUTHORIZATION).passed()).isFalse();
+        STORE.put(TOKEN, AUTHORIZATION);
+        then(CHECK.check(domain(), TOKEN, AUTHORIZATION).passed()).isTrue();
+    }
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new ChallengeSelfCheck(null, Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("timeout must be a positive duration");
+        thenThrownBy(() -> new ChallengeSelfCheck(Duration.ZERO, Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("timeout must be a positive duration");
+        thenThrownBy(() -> new ChallengeSelfCheck(Duration.ofSeconds(1), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("cacheTTL can not be null or negative");
+        thenThrownBy(() -> new ChallengeSelfCheck(Duration.ofSeconds(1), Duration.ofSeconds(-1)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("cacheTTL can not be null or negative");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private String domain() {
+        return "localhost:" + server.port();
+    }
+
+    private String url() {
+        return "http://" + domain() + ChallengeServer.CHALLENGE_PATH + TOKEN;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class ChallengeServerTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    private ChallengeServer server = null;
+
+    @After
+    public void after() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void serve_tokens_from_store() throws Exception {
+        final MemoryTokenStore STORE = new MemoryTokenStore();
+        server = new ChallengeServer(STORE);
+
+        then(server.store()).isSameAs(STORE);
+        then(server.isRunning()).isFalse();
+
+        server.start(0);
+        then(server.isRunning()).isTrue();
+        then(server.port()).isPositive();
+
+        then(get("token1").statusCode()).isEqualTo(404);
+
+        STORE.put("token1", "token1.authorization");
+        HttpResponse<String> response = get("token1");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).isEqualTo("token1.authorization");
+        then(response.headers().firstValue("Content-Type")).contains("text/plain; charset=UTF-8");
+
+        STORE.remove("token1");
+        then(get("token1").statusCode()).isEqualTo(404);
+        then(get("../token1").statusCode()).isEqualTo(404);
+
+        server.stop();
+        then(server.isRunning()).isFalse();
+    }
+
+    @Test
+    public void any_node_serves_tokens_from_a_shared_store() throws Exception {
+        final FileTokenStore NODE1 = new FileTokenStore(TMP.getRoot().toPath());
+
+        server = new ChallengeServer(new FileTokenStore(TMP.getRoot().toPath()));
+        server.start(0);
+
+        NODE1.put("sharedtoken", "sharedtoken.authorization");
+
+        HttpResponse<String> response = get("sharedtoken");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).isEqualTo("sharedtoken.authorization");
+    }
+
+    @Test
+    public void only_get_and_head_are_allowed() throws Exception {
+        final MemoryTokenStore STORE = new MemoryTokenStore();
+        STORE.put("token1", "token1.authorization");
+
+        server = new ChallengeServer(STORE);
+        server.start(0);
+
+        HttpResponse<String> response = CLIENT.send(
+            request("token1").method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).isEmpty();
+
+        response = CLIENT.send(
+            request("token1").POST(HttpRequest.BodyPublishers.ofString("hello")).build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+        then(response.statusCode()).isEqualTo(405);
+    }
+
+    @Test
+    public void publish_served_events_per_token() throws Exception {
+        final MemoryTokenStore STORE = new MemoryTokenStore();
+        STORE.put("token1", "token1.authorization");
+        STORE.put("token2", "token2.authorization");
+
+        server = new ChallengeServer(STORE);
+        server.start(0);
+
+        final CompletableFuture<InetSocketAddress> SERVED1 = server.served("token1");
+        final CompletableFuture<InetSocketAddress> SERVED2 = server.served("token2");
+        final CompletableFuture<InetSocketAddress> SERVED3 = server.served("token3");
+
+        then(server.served("token1")).isSameAs(SERVED1);
+
+        get("token3"); // not found, no event
+        then(SERVED3).isNotDone();
+
+        get("token1");
+        then(SERVED1.get(1, TimeUnit.SECONDS).getAddress().isLoopbackAddress()).isTrue();
+        then(SERVED2).isNotDone();
+
+        get("token2");
+        then(SERVED2.get(1, TimeUnit.SECONDS)).isNotNull();
+
+        server.forget("token1");
+        then(server.served("token1")).isNotSameAs(SERVED1).isNotDone();
+    }
+
+    @Test
+    public void sanity_checks() throws Exception {
+        thenThrownBy(() -> new ChallengeServer(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("store can not be null");
+
+        server = new ChallengeServer(new MemoryTokenStore());
+        thenThrownBy(() -> server.port())
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("challenge server not started");
+
+        server.start(0);
+        thenThrownBy(() -> server.start(0))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("challenge server already started");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private HttpRequest.Builder request(final String token) {
+        return HttpRequest.newBuilder().uri(
+            URI.create("http://localhost:" + server.port() + ChallengeServer.CHALLENGE_PATH + token)
+        );
+    }
+
+    private HttpResponse<String> get(final String token) throws Exception {
+        return CLIENT.send(request(token).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
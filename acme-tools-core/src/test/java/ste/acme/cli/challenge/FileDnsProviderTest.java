@@ -0,0 +1,107 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class FileDnsProviderTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private static final List<DnsRecord> RECORDS = List.of(
+        new DnsRecord("_acme-challenge.example.com.", "digest1"),
+        new DnsRecord("_acme-challenge.example.com.", "digest2"), // e.g. wildcard and base domain
+        new DnsRecord("_acme-challenge.www.example.com.", "digest3", 300)
+    );
+
+    @Test
+    public void publish_and_remove_records_in_one_batch() throws Exception {
+        final Path FILE = TMP.getRoot().toPath().resolve("dns/challenge.nsupdate");
+        final FileDnsProvider DNS = new FileDnsProvider(FILE, Duration.ZERO);
+
+        then(DNS.file()).isEqualTo(FILE);
+        then(DNS.propagationDelay()).isZero();
+
+        DNS.publish(RECORDS);
+        then(FILE).hasContent(
+            "update add _acme-challenge.example.com. 60 IN TXT \"digest1\"\n" +
+            "update add _acme-challenge.example.com. 60 IN TXT \"digest2\"\n" +
+            "update add _acme-challenge.www.example.com. 300 IN TXT \"digest3\"\n" +
+            "send\n"
+        );
+
+        DNS.remove(RECORDS);
+        then(FILE).hasContent(
+            "update delete _acme-challenge.example.com. IN TXT \"digest1\"\n" +
+            "update delete _acme-challenge.example.com. IN TXT \"digest2\"\n" +
+            "update delete _acme-challenge.www.example.com. IN TXT \"digest3\"\n" +
+            "send\n"
+        );
+        then(FILE.getParent().toFile().list()).containsExactly("challenge.nsupdate");
+    }
+
+    @Test
+    public void wait_for_propagation_once() throws Exception {
+        final FileDnsProvider DNS = new FileDnsProvider(TMP.getRoot().toPath().resolve("records"), Duration.ofMillis(200));
+
+        long start = System.currentTimeMillis();
+        then(DNS.awaitPropagation(RECORDS, Duration.ofSeconds(1))).isTrue();
+        then(System.currentTimeMillis() - start).isBetween(200L, 900L);
+
+        start = System.currentTimeMillis();
+        then(DNS.awaitPropagation(RECORDS, Duration.ofMillis(50))).isFalse();
+        then(System.currentTimeMillis() - start).isLessThan(200L);
+    }
+
+    @Test
+    public void sanity_checks() {
+        thenThrownBy(() -> new FileDnsProvider(null, Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("file can not be null");
+        thenThrownBy(() -> new FileDnsProvider(Path.of("records"), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("propagationDelay can not be null or negative");
+        thenThrownBy(() -> new FileDnsProvider(Path.of("records"), Duration.ofSeconds(-1)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("propagationDelay can not be null or negative");
+
+        thenThrownBy(() -> new DnsRecord(" ", "value"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("name can not be blank");
+        thenThrownBy(() -> new DnsRecord("name", null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("value can not be blank");
+        thenThrownBy(() -> new DnsRecord("name", "value", -1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("ttl can not be negative");
+    }
+}
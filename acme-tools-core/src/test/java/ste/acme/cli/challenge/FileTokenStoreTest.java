@@ -0,0 +1,110 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.io.FileUtils;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class FileTokenStoreTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    @Test
+    public void put_get_remove_tokens() throws Exception {
+        final Path DIR = TMP.newFolder("tokens").toPath();
+        final FileTokenStore S1 = new FileTokenStore(DIR);
+        final FileTokenStore S2 = new FileTokenStore(DIR); // e.g. another node
+
+        then(S1.dir()).isEqualTo(DIR);
+        then(S2.get("token1")).isEmpty();
+
+        S1.put("token1", "token1.authorization");
+        then(DIR.resolve("token1")).hasContent("token1.authorization");
+        then(S2.get("token1")).contains("token1.authorization");
+
+        S1.put("token1", "token1.another");
+        then(S2.get("token1")).contains("token1.another");
+
+        S2.remove("token1");
+        then(S1.get("token1")).isEmpty();
+        then(DIR.resolve("token1")).doesNotExist();
+
+        S2.remove("token1"); // no errors if not existing
+    }
+
+    @Test
+    public void create_store_directory_if_missing() throws Exception {
+        final Path DIR = TMP.getRoot().toPath().resolve("not/existing");
+
+        new FileTokenStore(DIR).put("abc", "abc.def");
+
+        then(DIR).isDirectory();
+        then(DIR.resolve("abc")).hasContent("abc.def");
+    }
+
+    @Test
+    public void no_temporary_files_are_left_behind() throws Exception {
+        final Path DIR = TMP.newFolder("tokens").toPath();
+        final FileTokenStore S = new FileTokenStore(DIR);
+
+        S.put("token1", "one"); S.put("token2", "two"); S.remove("token1");
+
+        try (var files = Files.list(DIR)) {
+            then(files.map(p -> p.getFileName().toString()))
+                .containsExactlyInAnyOrder("token2", FileTokenStore.LOCK_FILE);
+        }
+    }
+
+    @Test
+    public void tokens_must_be_base64url() throws Exception {
+        final File DIR = TMP.newFolder("tokens");
+        final FileTokenStore S = new FileTokenStore(DIR.toPath());
+
+        FileUtils.writeStringToFile(new File(TMP.getRoot(), "secret"), "secret", "UTF-8");
+
+        for (String token: new String[] {null, "", "../secret", "a/b", ".lock", "a b"}) {
+            thenThrownBy(() -> S.put(token, "something"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("invalid challenge token '" + token + "'");
+            then(S.get(token)).isEmpty();
+            S.remove(token); // nothing happens
+        }
+        then(new File(TMP.getRoot(), "secret")).exists();
+    }
+
+    @Test
+    public void constructor_sanity_check() throws Exception {
+        thenThrownBy(() -> new FileTokenStore(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("dir can not be null");
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.challenge;
+
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.shredzone.acme4j.Identifier;
+import org.shredzone.acme4j.challenge.TlsAlpn01Challenge;
+import org.shredzone.acme4j.util.CertificateUtils;
+
+/**
+ *
+ */
+public class TlsAlpnServerTest {
+
+    private TlsAlpnServer server = null;
+
+    @BeforeClass
+    public static void before_class() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @After
+    public void after() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void serve_validation_certificates_by_sni() throws Exception {
+        server = new TlsAlpnServer();
+        then(server.isRunning()).isFalse();
+
+        final X509Certificate CERT1 = put("example.com");
+        final X509Certificate CERT2 = put("www.example.com");
+
+        server.start(0);
+        then(server.isRunning()).isTrue();
+        then(server.port()).isPositive();
+
+        final CompletableFuture<InetSocketAddress> served = server.served("EXAMPLE.com");
+
+        then(handshake("example.com", TlsAlpnServer.ACME_TLS_PROTOCOL)).isEqualTo(CERT1);
+        then(served.get(5, TimeUnit.SECONDS).getAddress().isLoopbackAddress()).isTrue();
+        then(handshake("www.example.com", TlsAlpnServer.ACME_TLS_PROTOCOL)).isEqualTo(CERT2);
+        then(CERT1.getExtensionValue(TlsAlpn01Challenge.ACME_VALIDATION_OID)).isNotNull();
+
+        server.remove("www.example.com");
+        thenThrownBy(() -> handshake("www.example.com", TlsAlpnServer.ACME_TLS_PROTOCOL))
+            .isInstanceOf(javax.net.ssl.SSLException.class);
+
+        server.forget("example.com");
+        then(server.served("example.com")).isNotSameAs(served);
+
+        server.stop();
+        then(server.isRunning()).isFalse();
+        server.stop(); // no errors
+    }
+
+    @Test
+    public void accept_only_acme_tls_protocol() throws Exception {
+        server = new TlsAlpnServer(); put("example.com"); server.start(0);
+
+        thenThrownBy(() -> handshake("example.com", "http/1.1"))
+            .isInstanceOf(javax.net.ssl.SSLException.class);
+        thenThrownBy(() -> handshake("unknown.com", TlsAlpnServer.ACME_TLS_PROTOCOL))
+            .isInstanceOf(javax.net.ssl.SSLException.class);
+
+        //
+        // still working
+        //
+        then(handshake("example.com", TlsAlpnServer.ACME_TLS_PROTOCOL)).isNotNull();
+    }
+
+    @Test
+    public void serve_concurrent_validations() throws Exception {
+        server = new TlsAlpnServer(); final X509Certificate CERT = put("example.com"); server.start(0);
+
+        final List<CompletableFuture<X509Certificate>> validations = new ArrayList<>();
+        for (int i=0; i<25; ++i) {
+            validations.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return handshake("example.com", TlsAlpnServer.ACME_TLS_PROTOCOL);
+                } catch (Exception x) {
+                    throw new RuntimeException(x);
+                }
+            }));
+        }
+        for (CompletableFuture<X509Certificate> validation: validations) {
+            then(validation.get(10, TimeUnit.SECONDS)).isEqualTo(CERT);
+        }
+    }
+
+    @Test
+    public void sanity_checks() throws Exception {
+        server = new TlsAlpnServer();
+
+        thenThrownBy(() -> server.port())
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("challenge server not started");
+
+        server.start(0);
+        thenThrownBy(() -> server.start(0))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("challenge server already started");
+
+        final KeyPair KEYS = TlsAlpnServer.createKeyPair();
+        final X509Certificate CERT = CertificateUtils.createTlsAlpn01Certificate(KEYS, Identifier.dns("example.com"), new byte[32]);
+        thenThrownBy(() -> server.put(null, KEYS.getPrivate(), CERT))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("domain can not be null");
+        thenThrownBy(() -> server.put("example.com", null, CERT))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("key can not be null");
+        thenThrownBy(() -> server.put("example.com", KEYS.getPrivate(), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("certificate can not be null");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private X509Certificate put(final String domain) throws Exception {
+        final KeyPair keys = TlsAlpnServer.createKeyPair();
+        final byte[] validation = new byte[32]; new SecureRandom().nextBytes(validation);
+        final X509Certificate certificate = CertificateUtils.createTlsAlpn01Certificate(keys, Identifier.dns(domain), validation);
+
+        server.put(domain, keys.getPrivate(), certificate);
+
+        return certificate;
+    }
+
+    private X509Certificate handshake(final String domain, final String protocol) throws Exception {
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[] { new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+            @Override
+            public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+        }}, null);
+
+        try (SSLSocket socket = (SSLSocket)context.getSocketFactory().createSocket("localhost", server.port())) {
+            final SSLParameters parameters = socket.getSSLParameters();
+            parameters.setServerNames(List.of(new SNIHostName(domain)));
+            parameters.setApplicationProtocols(new String[] { protocol });
+            socket.setSSLParameters(parameters);
+            socket.setSoTimeout(5000);
+            socket.startHandshake();
+
+            then(socket.getApplicationProtocol()).isEqualTo(TlsAlpnServer.ACME_TLS_PROTOCOL);
+
+            return (X509Certificate)socket.getSession().getPeerCertificates()[0];
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.client;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.shredzone.acme4j.exception.AcmeException;
+import org.shredzone.acme4j.util.KeyPairUtils;
+import ste.acme.cli.challenge.DnsProvider;
+import ste.acme.cli.challenge.DnsRecord;
+import ste.acme.cli.challenge.MemoryTokenStore;
+import ste.acme.cli.metrics.RenewalTimer;
+
+/**
+ *
+ */
+public class AcmeClientTest {
+
+    private final List<String> progress = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+
+    private ExecutorService executor;
+    private KeyPair accountKeys, domainKeys;
+
+    @Before
+    public void before() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(2, (task) -> new Thread(task, "renewal-" + count.incrementAndGet()));
+        accountKeys = keys("src/test/data/default/account.pem");
+        domainKeys = keys("src/test/data/default/domain.pem");
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sanity_check() {
+        thenThrownBy(() -> new AcmeClient(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("executor can not be null");
+        thenThrownBy(() -> new AcmeClient(executor, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("metrics can not be null");
+        thenThrownBy(() -> new AcmeClient(executor).renew(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("request can not be null");
+
+        thenThrownBy(() -> new RenewRequest(null, "mydomain.com", accountKeys, domainKeys))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("endpoint can not be null");
+        thenThrownBy(() -> new RenewRequest("acme://ca.org", null, accountKeys, domainKeys))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("domain can not be null");
+        thenThrownBy(() -> new RenewRequest("acme://ca.org", "mydomain.com", null, domainKeys))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("accountKeys can not be null");
+        thenThrownBy(() -> new RenewRequest("acme://ca.org", "mydomain.com", accountKeys, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("domainKeys can not be null");
+
+        final RenewRequest request = new RenewRequest("acme://ca.org", "mydomain.com", accountKeys, domainKeys);
+        then(request.pollingInterval()).isEqualTo(RenewRequest.DEFAULT_POLLING_INTERVAL);
+        then(request.timeout()).isEqualTo(RenewRequest.DEFAULT_TIMEOUT);
+        then(request.tokenStore()).isNull();
+        then(request.dnsProvider()).isNull();
+        then(request.preferredChain()).isNull();
+        then(request.domains()).containsExactly("mydomain.com");
+        thenThrownBy(() -> request.domains(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("domains can not be null");
+        thenThrownBy(() -> request.domains(List.of("www.mydomain.com")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("domains must include mydomain.com");
+        thenThrownBy(() -> request.domains(List.of("mydomain.com", "192.168.0.1")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("192.168.0.1 can not be ordered");
+        request.domains(List.of("www.mydomain.com", "mydomain.com", "*.mydomain.com", "www.mydomain.com"));
+        then(request.domains()).containsExactly("mydomain.com", "www.mydomain.com", "*.mydomain.com");
+
+        then(RenewRequest.orderable("mydomain.com")).isTrue();
+        then(RenewRequest.orderable("*.my-domain.com")).isTrue();
+        then(RenewRequest.orderable("localhost")).isTrue();
+        then(RenewRequest.orderable(null)).isFalse();
+        then(RenewRequest.orderable("192.168.0.1")).isFalse();
+        then(RenewRequest.orderable("::1")).isFalse();
+        then(RenewRequest.orderable("-mydomain.com")).isFalse();
+        then(RenewRequest.orderable("my domain.com")).isFalse();
+        then(RenewRequest.orderable("www.*.mydomain.com")).isFalse();
+        thenThrownBy(() -> request.pollingInterval(Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("pollingInterval must be greater than 0");
+        thenThrownBy(() -> request.timeout(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("timeout must be greater than 0");
+        then(request.orderTimeout()).isEqualTo(RenewRequest.DEFAULT_ORDER_TIMEOUT);
+        thenThrownBy(() -> request.orderTimeout(Duration.ofSeconds(-1)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("orderTimeout must be greater than 0");
+        thenThrownBy(() -> request.listener(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("listener can not be null");
+
+        request.tokenStore(new MemoryTokenStore());
+        request.dnsProvider(new RecordingDnsProvider());
+        thenThrownBy(() -> new AcmeClient(executor).renew(request))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("either a token store or a DNS provider can be given, not both");
+
+        thenThrownBy(() -> request.port(65536))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("port must be between 0 and 65535");
+        request.tokenStore(null); request.port(0);
+        thenThrownBy(() -> new AcmeClient(executor).renew(request))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("either a port or a DNS provider can be given, not both");
+        request.dnsProvider(null); request.port(null); request.tlsAlpn(true);
+        thenThrownBy(() -> new AcmeClient(executor).renew(request))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("a port must be given for the TLS-ALPN challenge");
+        request.port(0); request.tokenStore(new MemoryTokenStore());
+        thenThrownBy(() -> new AcmeClient(executor).renew(request))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("the TLS-ALPN challenge can not be given a token store or a DNS provider");
+    }
+
+    @Test
+    public void renew_on_the_given_executor() throws Exception {
+        final AcmeClient client = new AcmeClient(executor);
+
+        final CompletableFuture<RenewResult> future = client.renew(request("acmetest:renew://cacert1.com"));
+        final RenewResult result = future.get(10, TimeUnit.SECONDS);
+
+        then(result.domain()).isEqualTo("mydomain.com");
+        then(result.chain()).isNotEmpty();
+        then(result.timer().outcome()).isEqualTo(RenewalTimer.RENEWED);
+        then(progress).contains(
+            "mydomain.com Finalizing the order with the CA",
+            "mydomain.com Order processed, getting the certificate"
+        );
+        then(progress).last().asString().startsWith("mydomain.com Renewal of mydomain.com completed in ");
+        then(threads).isNotEmpty().allSatisfy((thread) -> then(thread).startsWith("renewal-"));
+        then(client.metrics().renewals(RenewalTimer.RENEWED)).isEqualTo(1);
+        then(client.metrics().requests().requests("newOrder")).isEqualTo(1);
+    }
+
+    @Test
+    public void renew_all_the_given_domains() throws Exception {
+        final RenewRequest request = request("acmetest:renew://cacert1.com");
+        request.domains(List.of("mydomain.com", "www.mydomain.com"));
+
+        final RenewResult result = new AcmeClient(executor).renew(request).get(10, TimeUnit.SECONDS);
+
+        then(result.domain()).isEqualTo("mydomain.com");
+        then(progress).contains("mydomain.com Ordering a certificate for mydomain.com, www.mydomain.com");
+    }
+
+    @Test
+    public void renew_with_http_challenge() throws Exception {
+        final MemoryTokenStore store = new MemoryTokenStore() {
+            @Override
+            public void put(final String token, final String authorization) {
+                super.put(token, authorization);
+                progress.add("published " + token);
+            }
+        };
+        final RenewRequest request = request("acmetest:renew-with-http-challenges://cacert1.com");
+        request.tokenStore(store);
+
+        final RenewResult result = new AcmeClient(executor).renew(request).get(10, TimeUnit.SECONDS);
+
+        then(result.chain()).isNotEmpty();
+        then(progress).contains(
+            "mydomain.com Authorizing mydomain.com",
+            "published rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ",
+            "mydomain.com Challenge passed successfully for mydomain.com"
+        );
+        then(store.get("rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ")).isEmpty();
+        then(result.timer().timings()).extracting(RenewalTimer.Timing::phase).contains(RenewalTimer.CHALLENGE_WAIT);
+    }
+
+    @Test
+    public void renew_with_http_challenge_on_local_listener() throws Exception {
+        final RenewRequest request = request("acmetest:renew-with-http-challenges://cacert1.com");
+        request.port(0);
+
+        final RenewResult result = new AcmeClient(executor).renew(request).get(10, TimeUnit.SECONDS);
+
+        then(result.chain()).isNotEmpty();
+        then(progress).anySatisfy((line) -> then(line).startsWith("mydomain.com Listener started on port "));
+        then(progress).contains(
+            "mydomain.com to connect to the URL http://mydomain.com/.well-known/acme-challenge/rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ",
+            "mydomain.com Challenge passed successfully for mydomain.com"
+        );
+    }
+
+    @Test
+    public void renew_with_dns_challenge() throws Exception {
+        final RecordingDnsProvider dns = new RecordingDnsProvider();
+        final RenewRequest request = request("acmetest:renew-with-dns-challenge://cacert1.com");
+        request.dnsProvider(dns);
+
+        final RenewResult result = new AcmeClient(executor).renew(request).get(10, TimeUnit.SECONDS);
+
+        then(result.chain()).isNotEmpty();
+        then(dns.published).hasSize(1);
+        then(dns.published.get(0).name()).isEqualTo("_acme-challenge.mydomain.com.");
+        then(dns.removed).isEqualTo(dns.published);
+    }
+
+    @Test
+    public void fail_if_the_challenge_is_not_validated_in_time() throws Exception {
+        final MemoryTokenStore store = new MemoryTokenStore();
+        final RenewRequest request = request("acmetest:renew-with-unvalidated-challenge://cacert1.com");
+        request.tokenStore(store);
+        request.pollingInterval(Duration.ofMillis(100));
+        request.timeout(Duration.ofMillis(250));
+
+        final AcmeClient client = new AcmeClient(executor);
+        thenThrownBy(() -> client.renew(request).get(10, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .cause().isInstanceOf(AcmeException.class)
+            .hasMessage("challenge for mydomain.com not validated in 0.25S (PENDING)");
+
+        then(store.get("rSoI9JpyvFi-ltdnBW0W1DjKstzG7cHixjzcOjwzAEQ")).isEmpty();
+        then(progress).last().asString().startsWith("mydomain.com Renewal of mydomain.com failed in ");
+        then(client.metrics().renewals(RenewalTimer.FAILED)).isEqualTo(1);
+    }
+
+    @Test
+    public void wait_for_slow_orders_longer_than_for_challenges() throws Exception {
+        final RenewRequest request = request("acmetest:renew-with-slow-order://cacert1.com");
+        request.pollingInterval(Duration.ofMillis(50));
+        request.timeout(Duration.ofMillis(10));
+
+        final RenewResult result = new AcmeClient(executor).renew(request).get(10, TimeUnit.SECONDS);
+
+        then(result.chain()).isNotEmpty();
+        then(progress).filteredOn("mydomain.com Order still not VALID"::equals).hasSizeGreaterThan(2);
+
+        final RenewRequest late = request("acmetest:renew-with-slow-order://cacert1.com");
+        late.pollingInterval(Duration.ofMillis(50));
+        late.orderTimeout(Duration.ofMillis(10));
+        thenThrownBy(() -> new AcmeClient(executor).renew(late).get(10, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .cause().isInstanceOf(AcmeException.class)
+            .hasMessage("certificate of mydomain.com not issued in 0.01S (PENDING)");
+    }
+
+    @Test
+    public void fail_without_a_way_to_satisfy_challenges() throws Exception {
+        thenThrownBy(() -> new AcmeClient(executor).renew(request("acmetest:renew-with-http-challenges://cacert1.com")).get(10, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .cause().isInstanceOf(AcmeException.class)
+            .hasMessage("no token store or DNS provider to satisfy the challenge for mydomain.com");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private RenewRequest request(final String endpoint) {
+        final RenewRequest request = new RenewRequest(endpoint, "mydomain.com", accountKeys, domainKeys);
+        request.pollingInterval(Duration.ofMillis(10));
+        request.listener((domain, message) -> {
+            progress.add(domain + " " + message);
+            threads.add(Thread.currentThread().getName());
+        });
+        return request;
+    }
+
+    private static KeyPair keys(final String file) throws IOException {
+        try (FileReader reader = new FileReader(file)) {
+            return KeyPairUtils.readKeyPair(reader);
+        }
+    }
+
+    // ---------------------------------------------------- RecordingDnsProvider
+
+    private static class RecordingDnsProvider implements DnsProvider {
+        final List<DnsRecord> published = new ArrayList<>();
+        final List<DnsRecord> removed = new ArrayList<>();
+
+        @Override
+        public void publish(final Collection<DnsRecord> records) {
+            published.addAll(records);
+        }
+
+        @Override
+        public boolean awaitPropagation(final Collection<DnsRecord> records, final Duration timeout) {
+            return true;
+        }
+
+        @Override
+        public void remove(final Collection<DnsRecord> records) {
+            removed.addAll(records);
+        }
+    }
+}
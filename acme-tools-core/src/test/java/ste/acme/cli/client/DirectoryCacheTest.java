@@ -0,0 +1,143 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.client;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Test;
+import org.shredzone.acme4j.Session;
+import org.shredzone.acme4j.connector.Resource;
+import org.shredzone.acme4j.toolbox.JSON;
+import ste.acme.cli.acme4j.AcmeProviderStub;
+
+/**
+ *
+ */
+public class DirectoryCacheTest {
+
+    private static final URI CA = URI.create("acmetest://cacert1.com");
+
+    @Test
+    public void sanity_check() {
+        thenThrownBy(() -> new DirectoryCache(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("clock can not be null");
+        thenThrownBy(() -> new DirectoryCache().session(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("session can not be null");
+        then(new DirectoryCache().directory(null)).isNull();
+    }
+
+    @Test
+    public void read_the_directory_once_until_expired() throws Exception {
+        final TestClock clock = new TestClock();
+        final DirectoryCache cache = new DirectoryCache(clock);
+        final ExpiringProviderStub provider = new ExpiringProviderStub(clock.now.plus(Duration.ofHours(1)));
+
+        then(cache.directory(CA)).isNull();
+
+        final Session first = cache.session(new Session(CA, provider));
+        then(first.resourceUrl(Resource.NEW_ORDER)).isNotNull();
+        then(provider.reads).isEqualTo(1);
+        then(cache.directory(CA)).isNotNull();
+
+        final Session second = cache.session(new Session(CA, provider));
+        then(second.resourceUrl(Resource.NEW_ORDER)).isEqualTo(first.resourceUrl(Resource.NEW_ORDER));
+        then(second.getDirectoryExpires()).isEqualTo(first.getDirectoryExpires());
+        then(provider.reads).isEqualTo(1);
+
+        //
+        // once expired the directory is read again
+        //
+        clock.now = clock.now.plus(Duration.ofHours(2));
+        then(cache.directory(CA)).isNull();
+        provider.expires = clock.now.plus(Duration.ofHours(1));
+        then(cache.session(new Session(CA, provider)).resourceUrl(Resource.NEW_ORDER)).isNotNull();
+        then(provider.reads).isEqualTo(2);
+    }
+
+    @Test
+    public void do_not_cache_directories_without_expiration() throws Exception {
+        final DirectoryCache cache = new DirectoryCache();
+        final ExpiringProviderStub provider = new ExpiringProviderStub(null);
+
+        cache.session(new Session(CA, provider)).resourceUrl(Resource.NEW_ORDER);
+        cache.session(new Session(CA, provider)).resourceUrl(Resource.NEW_ORDER);
+
+        then(provider.reads).isEqualTo(2);
+        then(cache.directory(CA)).isNull();
+    }
+
+    // --------------------------------------------------------- ExpiringProviderStub
+
+    /**
+     * Gives the directory with an expiration and answers null while still
+     * fresh, as acme4j providers do
+     */
+    private static class ExpiringProviderStub extends AcmeProviderStub {
+        int reads = 0;
+        Instant expires;
+
+        ExpiringProviderStub(final Instant expires) {
+            this.expires = expires;
+        }
+
+        @Override
+        public JSON directory(final Session session, final URI serverUri) {
+            if (session.hasDirectory()) {
+                return null;
+            }
+            ++reads;
+            if (expires != null) {
+                session.setDirectoryExpires(ZonedDateTime.ofInstant(expires, ZoneOffset.UTC));
+            }
+            return super.directory(session, serverUri);
+        }
+    }
+
+    // --------------------------------------------------------------- TestClock
+
+    private static class TestClock extends Clock {
+        Instant now = Instant.now();
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
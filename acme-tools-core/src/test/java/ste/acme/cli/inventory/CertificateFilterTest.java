@@ -0,0 +1,92 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class CertificateFilterTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+    private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
+
+    private static final CertificateInfo EXPIRED = info("CN=R3,O=Let's Encrypt,C=US", NOW.minus(Duration.ofDays(1)));
+    private static final CertificateInfo EXPIRING = info("CN=R3,O=Let's Encrypt,C=US", NOW.plus(Duration.ofDays(10)));
+    private static final CertificateInfo VALID = info("CN=Other CA", NOW.plus(Duration.ofDays(300)));
+
+    @Test
+    public void accept_all_without_criteria() {
+        final CertificateFilter filter = new CertificateFilter(CLOCK);
+
+        then(filter.isEmpty()).isTrue();
+        then(List.of(EXPIRED, EXPIRING, VALID)).allMatch(filter);
+    }
+
+    @Test
+    public void select_by_expiration_and_issuer() {
+        final CertificateFilter filter = new CertificateFilter(CLOCK);
+
+        filter.expired(true);
+        then(filter.expired()).isTrue();
+        then(List.of(EXPIRED, EXPIRING, VALID)).filteredOn(filter).containsExactly(EXPIRED);
+
+        filter.expired(false); filter.expiringWithin(Duration.ofDays(14));
+        then(filter.expiringWithin()).isEqualTo(Duration.ofDays(14));
+        then(List.of(EXPIRED, EXPIRING, VALID)).filteredOn(filter).containsExactly(EXPIRED, EXPIRING);
+
+        filter.expiringWithin(null); filter.issuer("let's encrypt");
+        then(filter.issuer()).isEqualTo("let's encrypt");
+        then(List.of(EXPIRED, EXPIRING, VALID)).filteredOn(filter).containsExactly(EXPIRED, EXPIRING);
+
+        filter.issuer("other"); filter.expiringWithin(Duration.ofDays(365));
+        then(filter.isEmpty()).isFalse();
+        then(List.of(EXPIRED, EXPIRING, VALID)).filteredOn(filter).containsExactly(VALID);
+    }
+
+    @Test
+    public void sanity_checks() {
+        thenThrownBy(() -> new CertificateFilter(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("clock can not be null");
+        thenThrownBy(() -> new CertificateFilter().expiringWithin(Duration.ofDays(-1)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("expiringWithin can not be negative");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static CertificateInfo info(final String issuer, final Instant notAfter) {
+        return new CertificateInfo(
+            Path.of("cert.pem"), 0, "CN=example.com", List.of("example.com"), issuer,
+            notAfter.minus(Duration.ofDays(90)), notAfter, "RSA 2048", "00"
+        );
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class CertificateIndexTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private static final String FINGERPRINT = "2bc76088638c3aa374ae3426d94064d9584066f5a00fb5f5e9029338546604eb";
+
+    private Path root, file;
+
+    @Before
+    public void before() throws Exception {
+        //
+        // root
+        // +- domain.crt
+        // +- account.pem (not a certificate)
+        // +- sub/cert.pem (two certificates)
+        //
+        root = TMP.newFolder("certs").toPath();
+        FileUtils.copyFile(new File("src/test/data/default/domain.crt"), root.resolve("domain.crt").toFile());
+        FileUtils.copyFile(new File("src/test/data/default/account.pem"), root.resolve("account.pem").toFile());
+        FileUtils.copyFile(new File("src/test/resources/cert.pem"), root.resolve("sub/cert.pem").toFile());
+
+        file = TMP.getRoot().toPath().resolve("certificates.index");
+    }
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new CertificateIndex(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("file can not be null");
+    }
+
+    @Test
+    public void update_sanity_check() {
+        final CertificateIndex index = new CertificateIndex(file);
+
+        thenThrownBy(() -> index.update(null, new CertificateScanner()))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("locations can not be null");
+        thenThrownBy(() -> index.update(List.of(root.toString()), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("scanner can not be null");
+    }
+
+    @Test
+    public void index_all_certificates_in_locations() throws Exception {
+        final CertificateIndex index = new CertificateIndex(file);
+
+        then(index.update(List.of(root.toString()), new CertificateScanner()))
+            .isEqualTo(new CertificateIndex.Update(3, 3, 0, 0, 1));
+
+        then(index.entries()).hasSize(3);
+        then(index.entries()).filteredOn((entry) -> entry.path().endsWith("account.pem")).singleElement().satisfies((entry) -> {
+            then(entry.path()).isAbsolute();
+            then(entry.certificates()).isEmpty();
+            then(entry.error()).contains("signed overrun");
+        });
+        then(index.entries()).filteredOn((entry) -> entry.path().endsWith("domain.crt")).singleElement().satisfies((entry) -> {
+            then(entry.size()).isEqualTo(Files.size(root.resolve("domain.crt")));
+            then(entry.modified()).isEqualTo(Files.getLastModifiedTime(root.resolve("domain.crt")).toInstant());
+            then(entry.hash()).hasSize(64);
+            then(entry.error()).isNull();
+            then(entry.certificates()).singleElement().satisfies((info) -> {
+                then(info.path()).isEqualTo(root.resolve("domain.crt").toAbsolutePath());
+                then(info.fingerprint()).isEqualTo(FINGERPRINT);
+            });
+        });
+        then(index.certificates((info) -> true)).hasSize(3);
+    }
+
+    @Test
+    public void save_and_load() throws Exception {
+        final CertificateIndex index = new CertificateIndex(file);
+        index.update(List.of(root.toString()), new CertificateScanner());
+        index.save();
+
+        then(file).exists();
+        then(Files.readAllLines(file)).hasSize(3).allSatisfy((line) -> then(line).startsWith("{\"path\":"));
+
+        final CertificateIndex loaded = new CertificateIndex(file);
+        loaded.load();
+        then(loaded.entries()).containsExactlyInAnyOrderElementsOf(index.entries());
+        then(loaded.certificates((info) -> true)).containsExactlyElementsOf(index.certificates((info) -> true));
+    }
+
+    @Test
+    public void load_missing_or_invalid_index() throws Exception {
+        final CertificateIndex index = new CertificateIndex(file);
+        index.load();
+        then(index.entries()).isEmpty();
+
+        Files.writeString(file, "not an index\n");
+        thenThrownBy(() -> index.load())
+            .isInstanceOf(IOException.class)
+            .hasMessageStartingWith(file + " is not a valid certificate index: ");
+    }
+
+    @Test
+    public void parse_only_changed_files() throws Exception {
+        final CertificateIndex index = new CertificateIndex(file);
+        index.update(List.of(root.toString()), new CertificateScanner());
+        index.save();
+
+        //
+        // nothing changed
+        //
+        index.load();
+        then(index.update(List.of(root.toString()), new CertificateScanner()))
+            .isEqualTo(new CertificateIndex.Update(3, 0, 3, 0, 1));
+
+        //
+        // touched but same content, changed content, removed
+        //
+        final Path domain = root.resolve("domain.crt");
+        Files.setLastModifiedTime(domain, FileTime.from(Instant.now().plusSeconds(60)));
+        FileUtils.copyFile(new File("src/test/data/default/domain.crt"), root.resolve("account.pem").toFile());
+        Files.delete(root.resolve("sub/cert.pem"));
+
+        then(index.update(List.of(root.toString()), new CertificateScanner()))
+            .isEqualTo(new CertificateIndex.Update(2, 1, 1, 1, 0));
+        then(index.entries()).filteredOn((entry) -> entry.path().endsWith("domain.crt")).singleElement().satisfies((entry) -> {
+            then(entry.modified()).isEqualTo(Files.getLastModifiedTime(domain).toInstant());
+        });
+        then(index.certificates((info) -> true)).extracting(CertificateInfo::fingerprint).containsExactly(FINGERPRINT, FINGERPRINT);
+    }
+
+    @Test
+    public void unchanged_files_are_not_read_after_loading() throws Exception {
+        //
+        // filesystems keep modification times with sub-millisecond precision
+        //
+        final Path domain = root.resolve("domain.crt");
+        final FileTime modified = FileTime.from(Instant.parse("2024-05-01T10:20:30.123456789Z"));
+        Files.setLastModifiedTime(domain, modified);
+
+        final CertificateIndex index = new CertificateIndex(file);
+        index.update(List.of(root.toString()), new CertificateScanner());
+        index.save();
+
+        final CertificateIndex loaded = new CertificateIndex(file);
+        loaded.load();
+        then(loaded.entries()).filteredOn((entry) -> entry.path().endsWith("domain.crt")).singleElement().satisfies((entry) -> {
+            then(entry.modified()).isEqualTo(modified.toInstant());
+        });
+
+        //
+        // same size and modification time: trusted without reading it
+        //
+        final byte[] content = Files.readAllBytes(domain);
+        content[content.length - 2] = (byte)' ';
+        Files.write(domain, content);
+        Files.setLastModifiedTime(domain, modified);
+
+        then(loaded.update(List.of(root.toString()), new CertificateScanner()))
+            .isEqualTo(new CertificateIndex.Update(3, 0, 3, 0, 1));
+        then(loaded.entries()).containsExactlyInAnyOrderElementsOf(index.entries());
+    }
+
+    @Test
+    public void update_removes_missing_files_of_the_given_locations_only() throws Exception {
+        final CertificateIndex index = new CertificateIndex(file);
+        index.update(List.of(root.toString()), new CertificateScanner());
+
+        //
+        // other locations are added to the index, not replacing it
+        //
+        final Path other = TMP.newFolder("other").toPath();
+        FileUtils.copyFile(new File("src/test/data/default/domain.crt"), other.resolve("domain.crt").toFile());
+        then(index.update(List.of(other.toString()), new CertificateScanner()))
+            .isEqualTo(new CertificateIndex.Update(1, 1, 0, 0, 0));
+        then(index.entries()).hasSize(4);
+
+        //
+        // files gone from a location are removed, whether the location is a
+        // directory, a file or a glob pattern
+        //
+        Files.delete(root.resolve("sub/cert.pem"));
+        then(index.update(List.of(root + "/*.crt"), new CertificateScanner()))
+            .isEqualTo(new CertificateIndex.Update(1, 0, 1, 0, 0));
+        then(index.update(List.of(root + "/**.pem"), new CertificateScanner()))
+            .isEqualTo(new CertificateIndex.Update(1, 0, 1, 1, 1));
+        then(index.entries()).hasSize(3);
+
+        Files.delete(other.resolve("domain.crt"));
+        then(index.update(List.of(other.resolve("domain.crt").toString()), new CertificateScanner()).removed())
+            .isEqualTo(1);
+        then(index.entries()).extracting(CertificateIndex.Entry::path).containsExactlyInAnyOrder(
+            root.resolve("domain.crt").toAbsolutePath(), root.resolve("account.pem").toAbsolutePath()
+        );
+    }
+
+    @Test
+    public void the_index_file_is_not_indexed() throws Exception {
+        final CertificateIndex index = new CertificateIndex(root.resolve("certificates.index"));
+        index.update(List.of(root.toString()), new CertificateScanner());
+        index.save();
+
+        then(index.update(List.of(root.toString()), new CertificateScanner()))
+            .isEqualTo(new CertificateIndex.Update(3, 0, 3, 0, 1));
+        then(index.entries()).extracting(CertificateIndex.Entry::path).doesNotContain(index.file().toAbsolutePath());
+    }
+
+    @Test
+    public void certificates_are_filtered_and_sorted_by_expiration() throws Exception {
+        final CertificateIndex index = new CertificateIndex(file);
+        index.update(List.of(root.toString()), new CertificateScanner());
+
+        then(index.certificates((info) -> true)).extracting(CertificateInfo::subject).first().asString()
+            .isEqualTo("CN=example.com");
+
+        final CertificateFilter filter = new CertificateFilter(
+            Clock.fixed(Instant.parse("2034-09-20T00:00:00Z"), ZoneOffset.UTC)
+        );
+        filter.expiringWithin(Duration.ofDays(14));
+        filter.issuer("gondor");
+        then(index.certificates(filter)).singleElement().satisfies((info) -> {
+            then(info.fingerprint()).isEqualTo(FINGERPRINT);
+        });
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.DLSet;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.cms.ContentInfo;
+import org.bouncycastle.asn1.cms.SignedData;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.CMSAbsentContent;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class CertificateReaderTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private final List<X509Certificate> CERTIFICATES = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        //
+        // the chain in cert.pem plus the self signed domain.crt
+        //
+        final CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        try (FileInputStream in = new FileInputStream("src/test/resources/cert.pem")) {
+            cf.generateCertificates(in).forEach((c) -> CERTIFICATES.add((X509Certificate)c));
+        }
+        try (FileInputStream in = new FileInputStream("src/test/data/default/domain.crt")) {
+            CERTIFICATES.add((X509Certificate)cf.generateCertificate(in));
+        }
+        then(CERTIFICATES).hasSize(3);
+    }
+
+    @Test
+    public void read_pem_bundle_one_by_one() throws Exception {
+        final StringBuilder pem = new StringBuilder("a bundle can have comments\n");
+        for (X509Certificate c: CERTIFICATES) {
+            pem.append(pem(c));
+            //
+            // keys in combined files are skipped
+            //
+            pem.append(Files.readString(Path.of("src/test/data/default/domain.pem")));
+        }
+        final Path FILE = write("bundle.pem", pem.toString().getBytes(StandardCharsets.US_ASCII));
+
+        for (boolean mmap: new boolean[] {false, true}) {
+            then(readAll(CertificateReader.open(FILE, mmap))).containsExactlyElementsOf(CERTIFICATES);
+        }
+    }
+
+    @Test
+    public void read_pkcs7_bundle_one_by_one() throws Exception {
+        final byte[] PKCS7 = pkcs7(CERTIFICATES);
+
+        //
+        // DER (note that the certificates SET is sorted in DER encoding)
+        //
+        final Path DER = write("bundle.p7b", PKCS7);
+        for (boolean mmap: new boolean[] {false, true}) {
+            then(readAll(CertificateReader.open(DER, mmap))).containsExactlyInAnyOrderElementsOf(CERTIFICATES);
+        }
+
+        //
+        // PEM
+        //
+        final String pem = "-----BEGIN PKCS7-----\n"
+                         + Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(PKCS7)
+                         + "\n-----END PKCS7-----\n"
+                         + pem(CERTIFICATES.get(0)); // followed by another certificate
+        final List<X509Certificate> certificates = readAll(new CertificateReader(new ByteArrayInputStream(pem.getBytes())));
+        then(certificates).hasSize(4).endsWith(CERTIFICATES.get(0));
+        then(certificates.subList(0, 3)).containsExactlyInAnyOrderElementsOf(CERTIFICATES);
+
+        //
+        // CMS label as written by openssl cms
+        //
+        final String cms = "-----BEGIN CMS-----\n"
+                         + Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(PKCS7)
+                         + "\n-----END CMS-----\n";
+        then(readAll(new CertificateReader(new ByteArrayInputStream(cms.getBytes()))))
+            .containsExactlyInAnyOrderElementsOf(CERTIFICATES);
+
+        //
+        // no certificates
+        //
+        then(readAll(new CertificateReader(new ByteArrayInputStream(pkcs7(List.of()))))).isEmpty();
+    }
+
+    @Test
+    public void skip_pkcs7_entries_other_than_certificates() throws Exception {
+        final ASN1EncodableVector entries = new ASN1EncodableVector();
+        entries.add(new DERTaggedObject(false, 3, new DERSequence(new ASN1Encodable[] { // other format
+            new ASN1ObjectIdentifier("1.2.3.4"), new DEROctetString(new byte[] {1, 2, 3})
+        })));
+        entries.add(Certificate.getInstance(CERTIFICATES.get(2).getEncoded()));
+        final byte[] PKCS7 = new ContentInfo(CMSObjectIdentifiers.signedData, new SignedData(
+            new DERSet(), new ContentInfo(CMSObjectIdentifiers.data, null), new DLSet(entries), null, new DERSet()
+        )).getEncoded(ASN1Encoding.DER);
+
+        then(readAll(new CertificateReader(new ByteArrayInputStream(PKCS7)))).containsExactly(CERTIFICATES.get(2));
+    }
+
+    @Test
+    public void report_invalid_pkcs7_lengths() throws Exception {
+        final byte[] OID = {0x06, 0x09, 0x2A, (byte)0x86, 0x48, (byte)0x86, (byte)0xF7, 0x0D, 0x01, 0x07, 0x02};
+        for (byte[] length: new byte[][] {
+            {(byte)0x84, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xF0}, // negative as an int
+            {(byte)0x84, 0x7F, (byte)0xFF, (byte)0xFF, (byte)0xFF}        // beyond the end of the input
+        }) {
+            final ByteArrayOutputStream der = new ByteArrayOutputStream();
+            der.write(0x30); der.write(length); der.write(OID);
+            thenThrownBy(() -> new CertificateReader(new ByteArrayInputStream(der.toByteArray())).next())
+                .isInstanceOf(CertificateException.class)
+                .hasMessageStartingWith("invalid PKCS#7 structure: ");
+        }
+    }
+
+    @Test
+    public void read_single_der_certificate() throws Exception {
+        final Path DER = write("domain.der", CERTIFICATES.get(2).getEncoded());
+
+        for (boolean mmap: new boolean[] {false, true}) {
+            final CertificateReader reader = CertificateReader.open(DER, mmap);
+            then(reader.next()).isEqualTo(CERTIFICATES.get(2));
+            then(reader.next()).isNull();
+            then(reader.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void read_large_bundle_streaming() throws Exception {
+        final String PEM = pem(CERTIFICATES.get(2));
+        final Path FILE = TMP.getRoot().toPath().resolve("large.pem");
+        try (var out = Files.newBufferedWriter(FILE)) {
+            for (int i=0; i<2000; ++i) {
+                out.write(PEM);
+            }
+        }
+
+        try (CertificateReader reader = CertificateReader.open(FILE, true)) {
+            X509Certificate c;
+            while ((c = reader.next()) != null) {
+                then(c).isEqualTo(CERTIFICATES.get(2));
+            }
+            then(reader.count()).isEqualTo(2000);
+        }
+    }
+
+    @Test
+    public void report_files_without_certificates() throws Exception {
+        //
+        // as CertificateFactory does, the error tells why the first block is
+        // not a certificate
+        //
+        final File KEY = new File("src/test/data/default/account.pem");
+        thenThrownBy(() -> new CertificateReader(new FileInputStream(KEY)).next())
+            .isInstanceOf(CertificateException.class)
+            .hasMessageContaining("signed overrun");
+
+        thenThrownBy(() -> new CertificateReader(new ByteArrayInputStream(new byte[0])).next())
+            .isInstanceOf(CertificateException.class)
+            .hasMessage("no certificates found");
+
+        thenThrownBy(() -> new CertificateReader(new ByteArrayInputStream("-----BEGIN CERTIFICATE-----\nMII".getBytes())).next())
+            .isInstanceOf(CertificateException.class)
+            .hasMessage("truncated PEM block CERTIFICATE");
+
+        thenThrownBy(() -> new CertificateReader(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("in can not be null");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private List<X509Certificate> readAll(final CertificateReader reader) throws Exception {
+        final List<X509Certificate> certificates = new ArrayList<>();
+        try (reader) {
+            X509Certificate c;
+            while ((c = reader.next()) != null) {
+                certificates.add(c);
+            }
+            then(reader.count()).isEqualTo(certificates.size());
+        } catch (CertificateException x) {
+            if (!"no certificates found".equals(x.getMessage())) {
+                throw x;
+            }
+        }
+        return certificates;
+    }
+
+    private Path write(final String name, final byte[] content) throws Exception {
+        return Files.write(TMP.getRoot().toPath().resolve(name), content);
+    }
+
+    private static String pem(final X509Certificate c) throws Exception {
+        return "-----BEGIN CERTIFICATE-----\n"
+             + Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(c.getEncoded())
+             + "\n-----END CERTIFICATE-----\n";
+    }
+
+    private static byte[] pkcs7(final List<X509Certificate> certificates) throws Exception {
+        final CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+        generator.addCertificates(new JcaCertStore(certificates));
+        return generator.generate(new CMSAbsentContent()).getEncoded("DER");
+    }
+}
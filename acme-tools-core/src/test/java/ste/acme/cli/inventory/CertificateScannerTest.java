@@ -0,0 +1,244 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.cert.CertificateException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.commons.io.FileUtils;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class CertificateScannerTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private static final String FINGERPRINT = "2bc76088638c3aa374ae3426d94064d9584066f5a00fb5f5e9029338546604eb";
+
+    private final Queue<CertificateInfo> certificates = new ConcurrentLinkedQueue<>();
+    private final Map<Path, Exception> errors = new ConcurrentHashMap<>();
+    private final CertificateScanner.Listener listener = new CertificateScanner.Listener() {
+        @Override
+        public void certificate(CertificateInfo info) {
+            certificates.add(info);
+        }
+
+        @Override
+        public void error(Path path, Exception x) {
+            errors.put(path, x);
+        }
+    };
+
+    private Path root;
+
+    @Before
+    public void before() throws Exception {
+        //
+        // root
+        // +- domain.crt
+        // +- account.pem (not a certificate)
+        // +- sub1/cert{0..99}.crt
+        // +- sub1/sub2/cert.crt
+        //
+        root = TMP.getRoot().toPath();
+        final File CERT = new File("src/test/data/default/domain.crt");
+        FileUtils.copyFile(CERT, root.resolve("domain.crt").toFile());
+        FileUtils.copyFile(new File("src/test/data/default/account.pem"), root.resolve("account.pem").toFile());
+        for (int i=0; i<100; ++i) {
+            FileUtils.copyFile(CERT, root.resolve("sub1/cert" + i + ".crt").toFile());
+        }
+        FileUtils.copyFile(CERT, root.resolve("sub1/sub2/cert.crt").toFile());
+    }
+
+    @Test
+    public void certificate_info() throws Exception {
+        new CertificateScanner().read(root.resolve("domain.crt"), listener);
+
+        then(errors).isEmpty();
+        then(certificates).hasSize(1);
+
+        final CertificateInfo info = certificates.peek();
+        then(info.path()).isEqualTo(root.resolve("domain.crt"));
+        then(info.index()).isZero();
+        then(info.subject()).isEqualTo("CN=domain,L=Minas Tirith,ST=Gondor,C=XX");
+        then(info.issuer()).isEqualTo(info.subject());
+        then(info.sans()).isEmpty();
+        then(info.notBefore()).isEqualTo(Instant.parse("2024-10-05T09:20:43Z"));
+        then(info.notAfter()).isEqualTo(Instant.parse("2034-10-03T09:20:43Z"));
+        then(info.keyType()).isEqualTo("RSA 4096");
+        then(info.fingerprint()).isEqualTo(FINGERPRINT);
+
+        then(info.toJSON())
+            .startsWith("{").endsWith("}").doesNotContain("\n")
+            .contains("\"subject\":\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\"")
+            .contains("\"notAfter\":\"2034-10-03T09:20:43Z\"")
+            .contains("\"sans\":[]")
+            .contains("\"index\":0")
+            .contains("\"fingerprint\":\"" + FINGERPRINT + "\"");
+        then(info.toCSV()).isEqualTo(
+            root.resolve("domain.crt") + ",0,\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\",,\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\"," +
+            "2024-10-05T09:20:43Z,2034-10-03T09:20:43Z,RSA 4096," + FINGERPRINT + ","
+        );
+
+        then(CertificateInfo.csv("plain")).isEqualTo("plain");
+        then(CertificateInfo.csv("with \"quotes\", and commas")).isEqualTo("\"with \"\"quotes\"\", and commas\"");
+    }
+
+    @Test
+    public void scan_directories_recursively() throws Exception {
+        new CertificateScanner(new ForkJoinPool(4)).scan(List.of(root.toString()), listener);
+
+        then(certificates).hasSize(102);
+        then(certificates).extracting(CertificateInfo::fingerprint).containsOnly(FINGERPRINT);
+        then(certificates).extracting(CertificateInfo::path).contains(
+            root.resolve("domain.crt"), root.resolve("sub1/cert99.crt"), root.resolve("sub1/sub2/cert.crt")
+        ).doesNotHaveDuplicates();
+        then(errors).containsOnlyKeys(root.resolve("account.pem"));
+        then(errors.get(root.resolve("account.pem"))).isInstanceOf(CertificateException.class);
+    }
+
+    @Test
+    public void scan_glob_patterns() throws Exception {
+        final CertificateScanner scanner = new CertificateScanner();
+
+        scanner.scan(List.of(root + "/*.crt"), listener);
+        then(certificates).extracting(CertificateInfo::path).containsExactly(root.resolve("domain.crt"));
+
+        certificates.clear();
+        scanner.scan(List.of(root + "/sub1/*.crt"), listener);
+        then(certificates).hasSize(100);
+
+        certificates.clear();
+        scanner.scan(List.of(root + "/**/cert.crt", root + "/sub1/cert1?.crt"), listener);
+        then(certificates).extracting(CertificateInfo::path).containsOnly(
+            root.resolve("sub1/sub2/cert.crt"),
+            root.resolve("sub1/cert10.crt"), root.resolve("sub1/cert11.crt"), root.resolve("sub1/cert12.crt"),
+            root.resolve("sub1/cert13.crt"), root.resolve("sub1/cert14.crt"), root.resolve("sub1/cert15.crt"),
+            root.resolve("sub1/cert16.crt"), root.resolve("sub1/cert17.crt"), root.resolve("sub1/cert18.crt"),
+            root.resolve("sub1/cert19.crt")
+        );
+        then(errors).isEmpty();
+
+        then(CertificateScanner.isGlob("certs/**/*.crt")).isTrue();
+        then(CertificateScanner.isGlob("certs/cert?.crt")).isTrue();
+        then(CertificateScanner.isGlob("certs/{a,b}.crt")).isTrue();
+        then(CertificateScanner.isGlob("certs/domain.crt")).isFalse();
+    }
+
+    @Test
+    public void report_missing_files() throws Exception {
+        final Path MISSING = root.resolve("missing.crt");
+
+        new CertificateScanner().scan(List.of(MISSING.toString()), listener);
+
+        then(certificates).isEmpty();
+        then(errors.get(MISSING)).isInstanceOf(NoSuchFileException.class);
+        then(Files.exists(MISSING)).isFalse();
+    }
+
+    @Test
+    public void read_bundles_and_filter_while_reading() throws Exception {
+        //
+        // cert.pem contains an expired leaf and its issuer
+        //
+        FileUtils.copyFile(new File("src/test/resources/cert.pem"), root.resolve("chain/fullchain.pem").toFile());
+
+        final CertificateScanner scanner = new CertificateScanner();
+        then(scanner.mmap()).isFalse();
+        scanner.mmap(true); then(scanner.mmap()).isTrue();
+
+        scanner.scan(List.of(root.resolve("chain").toString()), listener);
+        then(certificates).extracting(CertificateInfo::index).containsExactlyInAnyOrder(0, 1);
+
+        certificates.clear();
+        final CertificateFilter filter = new CertificateFilter();
+        filter.expired(true);
+        scanner.filter(filter);
+        then(scanner.filter()).isSameAs(filter);
+
+        scanner.scan(List.of(root.toString()), listener);
+        then(certificates).singleElement().satisfies((info) -> {
+            then(info.path()).isEqualTo(root.resolve("chain/fullchain.pem"));
+            then(info.subject()).isEqualTo("CN=example.com");
+        });
+
+        certificates.clear();
+        filter.expired(false); filter.issuer("gondor");
+        scanner.scan(List.of(root.toString()), listener);
+        then(certificates).hasSize(102);
+    }
+
+    @Test
+    public void sanity_checks() {
+        thenThrownBy(() -> new CertificateScanner(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("pool can not be null");
+        thenThrownBy(() -> new CertificateScanner().scan(null, listener))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("locations can not be null");
+        thenThrownBy(() -> new CertificateScanner().filter(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("filter can not be null");
+        thenThrownBy(() -> new CertificateScanner().scan(List.of(), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("listener can not be null");
+        thenThrownBy(() -> new CertificateScanner().walk(List.of(), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("visitor can not be null");
+    }
+
+    @Test
+    public void walk_files_without_reading_them() throws Exception {
+        final Queue<Path> files = new ConcurrentLinkedQueue<>();
+
+        new CertificateScanner().walk(List.of(root.toString()), new CertificateScanner.Visitor() {
+            @Override
+            public void file(Path file) {
+                files.add(file);
+            }
+
+            @Override
+            public void error(Path path, Exception x) {
+                errors.put(path, x);
+            }
+        });
+
+        then(files).hasSize(103).contains(root.resolve("account.pem")).doesNotHaveDuplicates();
+        then(errors).isEmpty();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.commons.io.FileUtils;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ste.xtest.concurrent.WaitFor;
+
+/**
+ *
+ */
+public class CertificateWatcherTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private static final File CERT = new File("src/test/data/default/domain.crt");
+    private static final String FINGERPRINT = "2bc76088638c3aa374ae3426d94064d9584066f5a00fb5f5e9029338546604eb";
+
+    private final Queue<CertificateIndex.Update> updates = new ConcurrentLinkedQueue<>();
+
+    private Path root;
+    private CertificateIndex index;
+    private CertificateWatcher watcher;
+
+    @Before
+    public void before() throws Exception {
+        root = TMP.newFolder("certs").toPath();
+        FileUtils.copyFile(CERT, root.resolve("domain.crt").toFile());
+        FileUtils.copyFile(CERT, root.resolve("sub/domain.crt").toFile());
+
+        index = new CertificateIndex(TMP.getRoot().toPath().resolve("certificates.index"));
+        index.update(List.of(root.toString()), new CertificateScanner());
+
+        watcher = new CertificateWatcher(index, new CertificateScanner(), Duration.ofMillis(100));
+    }
+
+    @After
+    public void after() {
+        watcher.close();
+    }
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new CertificateWatcher(null, new CertificateScanner(), Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("index can not be null");
+        thenThrownBy(() -> new CertificateWatcher(index, null, Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("scanner can not be null");
+        thenThrownBy(() -> new CertificateWatcher(index, new CertificateScanner(), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("debounce can not be null or negative");
+        thenThrownBy(() -> new CertificateWatcher(index, new CertificateScanner(), Duration.ofMillis(-1)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("debounce can not be null or negative");
+    }
+
+    @Test
+    public void start_sanity_check() throws Exception {
+        thenThrownBy(() -> watcher.start(null, (update, touched) -> {}))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("locations can not be null");
+        thenThrownBy(() -> watcher.start(List.of(root.toString()), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("listener can not be null");
+
+        watcher.start(List.of(root.toString()), (update, touched) -> {});
+        then(watcher.isRunning()).isTrue();
+        then(watcher.directories()).isEqualTo(2);
+        thenThrownBy(() -> watcher.start(List.of(root.toString()), (update, touched) -> {}))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("watcher already started");
+
+        watcher.close();
+        then(watcher.isRunning()).isFalse();
+    }
+
+    @Test
+    public void refresh_touched_files_only() throws Exception {
+        watcher.start(List.of(root.toString()), (update, touched) -> updates.add(update));
+
+        //
+        // a burst of changes is a single refresh
+        //
+        for (int i=0; i<10; ++i) {
+            FileUtils.copyFile(CERT, root.resolve("new" + i + ".crt").toFile());
+        }
+        new WaitFor(5000, () -> !updates.isEmpty());
+        then(updates).singleElement().isEqualTo(new CertificateIndex.Update(12, 10, 0, 0, 0));
+        then(index.entries()).hasSize(12);
+
+        updates.clear();
+        Files.delete(root.resolve("sub/domain.crt"));
+        new WaitFor(5000, () -> !updates.isEmpty());
+        then(updates.peek().removed()).isEqualTo(1);
+        then(index.entries()).extracting(CertificateIndex.Entry::path).doesNotContain(root.resolve("sub/domain.crt"));
+    }
+
+    @Test
+    public void ignore_the_index_in_a_watched_directory() throws Exception {
+        final CertificateIndex inside = new CertificateIndex(root.resolve("certificates.index"));
+        inside.update(List.of(root.toString()), new CertificateScanner());
+        inside.save();
+
+        watcher = new CertificateWatcher(inside, new CertificateScanner(), Duration.ofMillis(100));
+        watcher.start(List.of(root.toString()), (update, touched) -> {
+            updates.add(update);
+            try {
+                inside.save(); // as index --watch does
+            } catch (Exception x) {
+                throw new RuntimeException(x);
+            }
+        });
+
+        FileUtils.copyFile(CERT, root.resolve("new.crt").toFile());
+        new WaitFor(5000, () -> !updates.isEmpty());
+        Thread.sleep(1000); // saving the index must not trigger other refreshes
+
+        then(updates).singleElement().isEqualTo(new CertificateIndex.Update(3, 1, 0, 0, 0));
+        then(inside.entries()).extracting(CertificateIndex.Entry::path)
+            .doesNotContain(root.resolve("certificates.index"));
+        then(inside.refresh(List.of(root.resolve("certificates.index"), root.resolve(".certificates.index.1f2e.tmp"))))
+            .isEqualTo(new CertificateIndex.Update(3, 0, 0, 0, 0));
+    }
+
+    @Test
+    public void watch_new_directories() throws Exception {
+        watcher.start(List.of(root.toString()), (update, touched) -> updates.add(update));
+
+        final Path dir = root.resolve("sub/new");
+        Files.createDirectories(dir);
+        FileUtils.copyFile(CERT, dir.resolve("first.crt").toFile());
+        new WaitFor(5000, () -> index.entries().size() == 3);
+
+        FileUtils.copyFile(CERT, dir.resolve("second.crt").toFile());
+        new WaitFor(5000, () -> index.entries().size() == 4);
+
+        then(index.certificates((info) -> info.path().startsWith(dir)))
+            .hasSize(2).extracting(CertificateInfo::fingerprint).containsOnly(FINGERPRINT);
+    }
+
+    @Test
+    public void watch_glob_patterns() throws Exception {
+        watcher.start(List.of(root + "/*.crt"), (update, touched) -> updates.add(update));
+        then(watcher.directories()).isEqualTo(1);
+
+        Files.writeString(root.resolve("notes.txt"), "not a certificate");
+        FileUtils.copyFile(CERT, root.resolve("new.crt").toFile());
+        new WaitFor(5000, () -> !updates.isEmpty());
+
+        then(index.entries()).extracting(CertificateIndex.Entry::path)
+            .contains(root.resolve("new.crt")).doesNotContain(root.resolve("notes.txt"));
+    }
+}
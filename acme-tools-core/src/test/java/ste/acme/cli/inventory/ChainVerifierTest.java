@@ -0,0 +1,344 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.inventory;
+
+import java.io.FileWriter;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.shredzone.acme4j.util.KeyPairUtils;
+import ste.acme.cli.ocsp.OcspCache;
+import ste.acme.cli.ocsp.OcspClient;
+import ste.acme.cli.ocsp.OcspResponderStub;
+import ste.acme.cli.ocsp.OcspResponse;
+
+/**
+ *
+ */
+public class ChainVerifierTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private final Instant NOW = Instant.now();
+
+    private KeyPair rootKeys, intermediateKeys;
+    private X509Certificate root, intermediate;
+
+    @BeforeClass
+    public static void before_class() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void before() throws Exception {
+        rootKeys = KeyPairUtils.createKeyPair(2048);
+        intermediateKeys = KeyPairUtils.createKeyPair(2048);
+        root = certificate("CN=Root", rootKeys, null, rootKeys, true);
+        intermediate = certificate("CN=Intermediate", intermediateKeys, root, rootKeys, true);
+    }
+
+    @Test
+    public void sanity_check() {
+        thenThrownBy(() -> new ChainVerifier(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("anchors can not be null");
+        thenThrownBy(() -> new ChainVerifier(List.of(), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("clock can not be null");
+        thenThrownBy(() -> new ChainVerifier(List.of()).verify(Path.of("a.crt"), List.of(), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("chain can not be null or empty");
+    }
+
+    @Test
+    public void verify_chains_and_cache_intermediates() throws Exception {
+        final ChainVerifier verifier = new ChainVerifier(List.of(root));
+        then(verifier.anchors()).isEqualTo(1);
+
+        final KeyPair keys = KeyPairUtils.createKeyPair(2048);
+        final Path one = write("one.crt", certificate("CN=one.com", keys, intermediate, intermediateKeys, false), intermediate);
+        writeKeys("one.pem", keys);
+
+        ChainVerifier.Result result = verifier.verify(one, false);
+        then(result.valid()).isTrue();
+        then(result.subject()).isEqualTo("CN=one.com");
+        then(result.anchor()).isEqualTo("CN=Root");
+        then(result.keyFile()).isEqualTo(one.resolveSibling("one.pem"));
+        then(result.keyMatches()).isTrue();
+        then(verifier.cached()).isEqualTo(1);
+
+        //
+        // the intermediate in the file has been verified already
+        //
+        final Path two = write("two.crt", certificate("CN=two.com", keys, intermediate, intermediateKeys, false), intermediate);
+        writeKeys("two.key", KeyPairUtils.createKeyPair(2048));
+
+        result = verifier.verify(two, true);
+        then(result.valid()).isFalse();
+        then(result.anchor()).isEqualTo("CN=Root");
+        then(result.keyMatches()).isFalse();
+        then(result.problems()).containsExactly("the key in two.key does not match the certificate");
+        then(verifier.cached()).isEqualTo(1);
+
+        //
+        // an intermediate missing in the file is not taken from the cache,
+        // so the outcome is the same as with a fresh verifier
+        //
+        final Path three = write("three.crt", certificate("CN=three.com", keys, intermediate, intermediateKeys, false));
+        then(verifier.verify(three, false).problems())
+            .containsExactly("no trusted issuer found for CN=three.com issued by CN=Intermediate");
+        then(new ChainVerifier(List.of(root)).verify(three, false).problems())
+            .containsExactly("no trusted issuer found for CN=three.com issued by CN=Intermediate");
+
+        //
+        // key files are not certificate files
+        //
+        then(verifier.verify(two.resolveSibling("two.key"), false)).isNull();
+    }
+
+    @Test
+    public void expired_and_untrusted_chains() throws Exception {
+        final X509Certificate leaf = certificate("CN=one.com", KeyPairUtils.createKeyPair(2048), intermediate, intermediateKeys, false);
+
+        final ChainVerifier later = new ChainVerifier(
+            List.of(root), Clock.fixed(NOW.plus(Duration.ofDays(100)), ZoneOffset.UTC)
+        );
+        final ChainVerifier.Result result = later.verify(Path.of("one.crt"), List.of(leaf, intermediate), null);
+        then(result.anchor()).isEqualTo("CN=Root");
+        then(result.problems()).hasSize(2)
+            .anySatisfy((problem) -> then(problem).startsWith("CN=one.com expired on "))
+            .anySatisfy((problem) -> then(problem).startsWith("CN=Intermediate expired on "));
+        then(later.cached()).isZero();
+
+        final X509Certificate other = certificate("CN=Other", KeyPairUtils.createKeyPair(2048), null, null, true);
+        then(new ChainVerifier(List.of(other)).verify(Path.of("one.crt"), List.of(leaf, intermediate), null).problems())
+            .containsExactly("no trusted issuer found for CN=Intermediate issued by CN=Root");
+    }
+
+    @Test
+    public void intermediates_must_be_cas_allowed_to_sign_certificates() throws Exception {
+        final ChainVerifier verifier = new ChainVerifier(List.of(root));
+        final KeyPair keys = KeyPairUtils.createKeyPair(2048);
+
+        final X509Certificate notCA = certificate("CN=Not CA", keys, root, rootKeys, false);
+        ChainVerifier.Result result = verifier.verify(
+            Path.of("one.crt"), List.of(certificate("CN=one.com", KeyPairUtils.createKeyPair(2048), notCA, keys, false), notCA), null
+        );
+        then(result.anchor()).isNull();
+        then(result.problems()).containsExactly("CN=Not CA is not a CA");
+
+        final X509Certificate noSigning = certificate(
+            "CN=No Signing", keys, root, rootKeys, new BasicConstraints(true), new KeyUsage(KeyUsage.digitalSignature)
+        );
+        result = verifier.verify(
+            Path.of("two.crt"), List.of(certificate("CN=two.com", KeyPairUtils.createKeyPair(2048), noSigning, keys, false), noSigning), null
+        );
+        then(result.anchor()).isNull();
+        then(result.problems()).containsExactly("CN=No Signing is not allowed to sign certificates");
+
+        final X509Certificate signing = certificate(
+            "CN=Signing", keys, root, rootKeys, new BasicConstraints(true), new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign)
+        );
+        then(verifier.verify(
+            Path.of("three.crt"), List.of(certificate("CN=three.com", KeyPairUtils.createKeyPair(2048), signing, keys, false), signing), null
+        ).valid()).isTrue();
+        then(verifier.cached()).isEqualTo(1);
+    }
+
+    @Test
+    public void path_length_constraints_hold_with_cached_intermediates() throws Exception {
+        final KeyPair aKeys = KeyPairUtils.createKeyPair(2048), bKeys = KeyPairUtils.createKeyPair(2048),
+                      cKeys = KeyPairUtils.createKeyPair(2048);
+        final X509Certificate a = certificate("CN=A", aKeys, root, rootKeys, new BasicConstraints(1), null);
+        final X509Certificate b = certificate("CN=B", bKeys, a, aKeys, true);
+        final X509Certificate c = certificate("CN=C", cKeys, b, bKeys, true);
+
+        final ChainVerifier verifier = new ChainVerifier(List.of(root));
+        then(verifier.verify(
+            Path.of("one.crt"), List.of(certificate("CN=one.com", KeyPairUtils.createKeyPair(2048), b, bKeys, false), b, a), null
+        ).valid()).isTrue();
+        then(verifier.cached()).isEqualTo(2);
+
+        //
+        // A allows one intermediate below it, B is the one
+        //
+        final List<X509Certificate> chain = List.of(
+            certificate("CN=two.com", KeyPairUtils.createKeyPair(2048), c, cKeys, false), c, b
+        );
+        ChainVerifier.Result result = verifier.verify(Path.of("two.crt"), chain, null);
+        then(result.anchor()).isNull();
+        then(result.problems()).containsExactly("CN=B allows at most 0 intermediates below it, found 1");
+
+        result = new ChainVerifier(List.of(root)).verify(
+            Path.of("two.crt"), List.of(chain.get(0), c, b, a), null
+        );
+        then(result.anchor()).isNull();
+        then(result.problems()).containsExactly("CN=A allows at most 1 intermediates below it, found 2");
+    }
+
+    @Test
+    public void check_revocation_if_requested() throws Exception {
+        try (OcspResponderStub responder = new OcspResponderStub(Duration.ofDays(4))) {
+            final X509Certificate leaf = responder.leaf("example.com", 10);
+            final Path file = write("example.com.crt", leaf);
+
+            ChainVerifier verifier = new ChainVerifier(List.of(responder.issuer), Clock.systemUTC(), new OcspClient());
+            then(verifier.verify(file, false).valid()).isTrue();
+            then(responder.requests()).isEqualTo(1);
+
+            //
+            // a fresh response cached next to the certificate is used
+            //
+            new OcspCache(new OcspClient()).refresh(OcspCache.file(file), List.of(leaf, responder.issuer), false);
+            then(verifier.verify(file, false).valid()).isTrue();
+            then(responder.requests()).isEqualTo(2);
+
+            verifier = new ChainVerifier(List.of(responder.issuer), Clock.systemUTC(), new OcspClient() {
+                @Override
+                public OcspResponse fetch(final X509Certificate certificate, final X509Certificate issuer) {
+                    return new OcspResponse(new byte[0], OcspResponse.Status.REVOKED, Instant.now(), null);
+                }
+            });
+            Files.delete(OcspCache.file(file));
+            then(verifier.verify(file, false).problems()).containsExactly("CN=example.com has been revoked");
+        }
+    }
+
+    @Test
+    public void certificates_without_ocsp_responder_are_not_checked() throws Exception {
+        final ChainVerifier verifier = new ChainVerifier(List.of(root), Clock.systemUTC(), new OcspClient() {
+            @Override
+            public OcspResponse fetch(final X509Certificate certificate, final X509Certificate issuer) {
+                throw new IllegalStateException("no OCSP requests expected");
+            }
+        });
+        then(verifier.verify(
+            Path.of("one.crt"), List.of(certificate("CN=one.com", KeyPairUtils.createKeyPair(2048), intermediate, intermediateKeys, false), intermediate), null
+        ).valid()).isTrue();
+    }
+
+    @Test
+    public void self_signed_certificates_and_trust_store_files() throws Exception {
+        final Path domain = Path.of("src/test/data/default/domain.crt");
+
+        final ChainVerifier verifier = new ChainVerifier(ChainVerifier.anchors(domain));
+        final ChainVerifier.Result result = verifier.verify(domain, false);
+        then(result.anchor()).isEqualTo("CN=domain,L=Minas Tirith,ST=Gondor,C=XX");
+        then(result.problems()).containsExactly("the key in domain.pem does not match the certificate");
+        then(result.toCSV()).isEqualTo(
+            "src/test/data/default/domain.crt,\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\",false,\"CN=domain,L=Minas Tirith,ST=Gondor,C=XX\"," +
+            "src/test/data/default/domain.pem,false,the key in domain.pem does not match the certificate"
+        );
+
+        then(new ChainVerifier(ChainVerifier.defaultAnchors()).verify(domain, false).problems())
+            .startsWith("no trusted issuer found for CN=domain,L=Minas Tirith,ST=Gondor,C=XX issued by CN=domain,L=Minas Tirith,ST=Gondor,C=XX");
+    }
+
+    @Test
+    public void key_files_next_to_certificates() throws Exception {
+        final Path dir = TMP.getRoot().toPath();
+        Files.writeString(dir.resolve("a.crt"), "");
+        Files.writeString(dir.resolve("a.key"), "");
+        Files.writeString(dir.resolve("b.pem"), "");
+
+        then(ChainVerifier.keyFile(dir.resolve("a.crt"))).isEqualTo(dir.resolve("a.key"));
+        then(ChainVerifier.keyFile(dir.resolve("b.pem"))).isNull();
+        then(ChainVerifier.keyFile(dir.resolve("c.crt"))).isNull();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private X509Certificate certificate(
+        final String subject, final KeyPair keys, final X509Certificate issuer, final KeyPair issuerKeys, final boolean ca
+    ) throws Exception {
+        return certificate(subject, keys, issuer, issuerKeys, new BasicConstraints(ca), null);
+    }
+
+    private X509Certificate certificate(
+        final String subject, final KeyPair keys, final X509Certificate issuer, final KeyPair issuerKeys,
+        final BasicConstraints constraints, final KeyUsage usage
+    ) throws Exception {
+        final X500Name name = new X500Name(subject);
+        final JcaX509ExtensionUtils utils = new JcaX509ExtensionUtils();
+        final JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+            (issuer == null) ? name : X500Name.getInstance(issuer.getSubjectX500Principal().getEncoded()),
+            BigInteger.valueOf(System.nanoTime()),
+            Date.from(NOW.minus(Duration.ofDays(1))), Date.from(NOW.plus(Duration.ofDays(90))),
+            name, keys.getPublic()
+        );
+        builder.addExtension(Extension.subjectKeyIdentifier, false, utils.createSubjectKeyIdentifier(keys.getPublic()));
+        builder.addExtension(
+            Extension.authorityKeyIdentifier, false,
+            utils.createAuthorityKeyIdentifier(((issuerKeys == null) ? keys : issuerKeys).getPublic())
+        );
+        builder.addExtension(Extension.basicConstraints, true, constraints);
+        if (usage != null) {
+            builder.addExtension(Extension.keyUsage, true, usage);
+        }
+
+        return new JcaX509CertificateConverter().getCertificate(builder.build(
+            new JcaContentSignerBuilder("SHA256withRSA").build(((issuerKeys == null) ? keys : issuerKeys).getPrivate())
+        ));
+    }
+
+    private Path write(final String name, final X509Certificate... chain) throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve(name);
+        try (JcaPEMWriter out = new JcaPEMWriter(new FileWriter(file.toFile()))) {
+            for (X509Certificate certificate: chain) {
+                out.writeObject(certificate);
+            }
+        }
+        return file;
+    }
+
+    private void writeKeys(final String name, final KeyPair keys) throws Exception {
+        try (FileWriter out = new FileWriter(TMP.getRoot().toPath().resolve(name).toFile())) {
+            KeyPairUtils.writeKeyPair(keys, out);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.jfr;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.security.Security;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ste.acme.cli.challenge.ChallengeServer;
+import ste.acme.cli.challenge.MemoryTokenStore;
+import ste.acme.cli.store.KeyStoreFile;
+
+/**
+ *
+ */
+public class AcmeEventsTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    @BeforeClass
+    public static void before_class() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Test
+    public void events_are_enabled_by_default() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.p12");
+
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.start();
+            new KeyStoreFile(file, "PKCS12", "secret".toCharArray()).load();
+            recording.stop();
+            events = events(recording, KeyIOEvent.NAME);
+        }
+
+        then(events).hasSize(1);
+    }
+
+    @Test
+    public void record_challenge_hits() throws Exception {
+        final MemoryTokenStore STORE = new MemoryTokenStore();
+        STORE.put("token1", "token1.authorization");
+        final ChallengeServer server = new ChallengeServer(STORE);
+
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(ChallengeHitEvent.NAME);
+            recording.start();
+            try {
+                server.start(0);
+                then(get(server.port(), "token1").statusCode()).isEqualTo(200);
+                then(get(server.port(), "token2").statusCode()).isEqualTo(404);
+            } finally {
+                server.stop();
+            }
+            recording.stop();
+            events = events(recording, ChallengeHitEvent.NAME);
+        }
+
+        then(events).hasSize(2);
+        then(events.stream().map((e) -> e.getString("token") + " " + e.getInt("status")))
+            .containsExactlyInAnyOrder("token1 200", "token2 404");
+        for (RecordedEvent event: events) {
+            then(event.getString("type")).isEqualTo(ChallengeHitEvent.HTTP_01);
+            then(event.getString("remoteAddress")).isNotBlank();
+            then(event.getLong("latency")).isPositive();
+        }
+    }
+
+    @Test
+    public void record_keystore_io() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.p12");
+
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(KeyIOEvent.NAME);
+            recording.start();
+            final KeyStoreFile keyStore = new KeyStoreFile(file, "PKCS12", "secret".toCharArray());
+            keyStore.load();
+            keyStore.store();
+            recording.stop();
+            events = events(recording, KeyIOEvent.NAME);
+        }
+
+        then(events.stream().map((e) -> e.getString("kind") + " " + e.getString("operation") + " " + e.getString("path")))
+            .containsExactly("keystore read " + file, "keystore write " + file);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private HttpResponse<String> get(final int port, final String token) throws Exception {
+        return HttpClient.newHttpClient().send(
+            HttpRequest.newBuilder(URI.create("http://localhost:" + port + ChallengeServer.CHALLENGE_PATH + token)).build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+    }
+
+    private List<RecordedEvent> events(final Recording recording, final String name) throws Exception {
+        final Path dump = TMP.newFile("recording.jfr").toPath();
+        recording.dump(dump);
+        return RecordingFile.readAllEvents(dump).stream()
+            .filter((event) -> name.equals(event.getEventType().getName()))
+            .collect(Collectors.toList());
+    }
+}
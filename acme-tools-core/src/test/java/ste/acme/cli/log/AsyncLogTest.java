@@ -0,0 +1,178 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.log;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class AsyncLogTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private final List<String> console = Collections.synchronizedList(new ArrayList<>());
+    private final List<LogRecord> records = Collections.synchronizedList(new ArrayList<>());
+    private final Logger logger = Logger.getLogger("ste.acme-tools.test");
+
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(final LogRecord record) {
+            records.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Before
+    public void before() {
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+    }
+
+    @After
+    public void after() {
+        logger.removeHandler(handler);
+    }
+
+    @Test
+    public void sanity_check() {
+        thenThrownBy(() -> new AsyncLog(0, console::add, logger))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("capacity must be greater than 0");
+        thenThrownBy(() -> new AsyncLog(10, null, logger))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("console can not be null");
+        thenThrownBy(() -> new AsyncLog(10, console::add, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("logger can not be null");
+
+        final AsyncLog log = new AsyncLog(10, console::add, logger);
+        log.close(); log.close();
+        log.flush(); // nothing to wait for
+        thenThrownBy(() -> log.print("hello"))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("log closed");
+    }
+
+    @Test
+    public void write_events_and_lines_in_order() {
+        try (AsyncLog log = new AsyncLog(100, console::add, logger)) {
+            log.info("first");
+            log.print("row 1");
+            log.log(Level.WARNING, "second");
+            log.print("row 2");
+            log.flush();
+
+            then(console).containsExactly("first", "row 1", "second", "row 2");
+            then(records).extracting(LogRecord::getMessage).containsExactly("first", "second");
+            then(records).extracting(LogRecord::getLevel).containsExactly(Level.INFO, Level.WARNING);
+            then(records).extracting(LogRecord::getLoggerName).containsOnly("ste.acme-tools.test");
+        }
+    }
+
+    @Test
+    public void append_events_as_json_with_context() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("acme-tools.json");
+        Files.writeString(file, "{\"message\":\"previous\"}\n");
+
+        try (AsyncLog log = new AsyncLog(100, console::add, logger)) {
+            log.info("not in the file");
+            log.json(file);
+            try (LogContext.Scope scope = LogContext.open("example.com", "c0ffee00")) {
+                log.info("Authorizing example.com");
+                log.print("a row is not an event");
+            }
+            log.info("done");
+            log.json(null);
+            log.info("not in the file either");
+            log.flush();
+        }
+
+        final List<String> lines = Files.readAllLines(file);
+        then(lines).hasSize(3);
+        then(lines.get(0)).isEqualTo("{\"message\":\"previous\"}");
+        then(lines.get(1))
+            .startsWith("{\"time\":\"")
+            .contains("\"level\":\"INFO\"")
+            .contains("\"thread\":\"" + Thread.currentThread().getName() + "\"")
+            .contains("\"domain\":\"example.com\"")
+            .contains("\"correlation\":\"c0ffee00\"")
+            .endsWith("\"message\":\"Authorizing example.com\"}");
+        then(lines.get(2)).doesNotContain("domain").doesNotContain("correlation").contains("\"message\":\"done\"");
+    }
+
+    @Test
+    public void drop_events_instead_of_blocking_when_full() throws Exception {
+        final CountDownLatch slow = new CountDownLatch(1);
+        final CountDownLatch writing = new CountDownLatch(1);
+
+        try (AsyncLog log = new AsyncLog(2, (line) -> {
+            writing.countDown();
+            try {
+                slow.await();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+            console.add(line);
+        }, logger)) {
+            log.info("event 0");
+            then(writing.await(5, TimeUnit.SECONDS)).isTrue(); // the writer is stuck on event 0
+
+            for (int i = 1; i <= 10; ++i) {
+                log.info("event " + i);
+            }
+            then(log.dropped()).isEqualTo(8);
+
+            slow.countDown();
+            log.flush();
+
+            then(console).containsExactly(
+                "event 0", "event 1", "event 2", "8 log events dropped, the log queue was full"
+            );
+            then(records).last().extracting(LogRecord::getLevel).isEqualTo(Level.WARNING);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.log;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class LogContextTest {
+
+    @Test
+    public void sanity_check() {
+        thenThrownBy(() -> LogContext.open(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("domain can not be null");
+        thenThrownBy(() -> LogContext.open("example.com", null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("correlation can not be null");
+    }
+
+    @Test
+    public void nested_contexts_are_restored() throws Exception {
+        then(LogContext.domain()).isNull();
+        then(LogContext.correlation()).isNull();
+
+        try (LogContext.Scope outer = LogContext.open("example.com", "00000001")) {
+            then(LogContext.domain()).isEqualTo("example.com");
+            then(LogContext.correlation()).isEqualTo("00000001");
+
+            try (LogContext.Scope inner = LogContext.open("example.org")) {
+                then(LogContext.domain()).isEqualTo("example.org");
+                then(LogContext.correlation()).hasSize(8).isNotEqualTo("00000001");
+            }
+
+            then(LogContext.domain()).isEqualTo("example.com");
+            then(LogContext.correlation()).isEqualTo("00000001");
+
+            //
+            // contexts are per thread
+            //
+            final String[] other = new String[1];
+            final Thread thread = new Thread(() -> other[0] = LogContext.domain() + " " + LogContext.correlation());
+            thread.start(); thread.join();
+            then(other[0]).isEqualTo("null null");
+        }
+
+        then(LogContext.domain()).isNull();
+        then(LogContext.correlation()).isNull();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.EnumSet;
+import java.util.Map;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Test;
+import org.shredzone.acme4j.Login;
+import org.shredzone.acme4j.Order;
+import org.shredzone.acme4j.Session;
+import org.shredzone.acme4j.Status;
+import org.shredzone.acme4j.exception.AcmeServerException;
+import ste.acme.cli.acme4j.AcmeConnectionStub;
+import ste.acme.cli.acme4j.AcmeProviderStub;
+import ste.acme.cli.acme4j.AcmeResponseStub;
+import ste.acme.cli.acme4j.TestUtils;
+
+/**
+ *
+ */
+public class InstrumentedAcmeProviderTest {
+
+    @Test
+    public void sanity_check() {
+        final RequestMetrics metrics = new RequestMetrics();
+        final URI uri = URI.create("acmetest://cacert1.com");
+
+        thenThrownBy(() -> new InstrumentedAcmeProvider(null, uri, metrics))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("provider can not be null");
+        thenThrownBy(() -> new InstrumentedAcmeProvider(new AcmeProviderStub(), uri, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("metrics can not be null");
+        thenThrownBy(() -> InstrumentedAcmeProvider.session(null, metrics))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("session can not be null");
+        thenThrownBy(() -> new InstrumentedAcmeProvider(new AcmeProviderStub(), uri, metrics).resources(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("directory can not be null");
+        thenThrownBy(() -> new InstrumentedConnection(null, metrics))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("connection can not be null");
+        thenThrownBy(() -> new InstrumentedConnection(new AcmeConnectionStub(null, null), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("metrics can not be null");
+    }
+
+    @Test
+    public void decorate_the_session_provider() {
+        final RequestMetrics metrics = new RequestMetrics();
+        final Session session = InstrumentedAcmeProvider.session(new Session("acmetest:renew://cacert1.com"), metrics);
+
+        final InstrumentedAcmeProvider provider = (InstrumentedAcmeProvider)session.provider();
+        then(provider.provider()).isInstanceOf(AcmeProviderStub.class);
+
+        //
+        // the server URI is not accepted again by the decorated provider,
+        // which would load the responses once more
+        //
+        then(((AcmeProviderStub)provider.provider()).responses()).hasSize(5);
+        then(provider.accepts(session.getServerUri())).isTrue();
+        then(((AcmeProviderStub)provider.provider()).responses()).hasSize(5);
+        then(provider.accepts(URI.create("https://cacert1.com"))).isFalse();
+    }
+
+    @Test
+    public void record_the_exchanges_by_resource() throws Exception {
+        final RequestMetrics metrics = new RequestMetrics();
+        final Session session = InstrumentedAcmeProvider.session(new Session("acmetest:renew://cacert1.com"), metrics);
+        final Login login = ((AcmeProviderStub)((InstrumentedAcmeProvider)session.provider()).provider()).createLogin(session);
+
+        final Order order = login.newOrder().domain("example.org").create();
+        order.execute(TestUtils.createKeyPair());
+        while (!EnumSet.of(Status.VALID, Status.INVALID).contains(order.getStatus())) {
+            order.fetch();
+        }
+        order.getCertificate().download();
+
+        then(metrics.requests(InstrumentedAcmeProvider.DIRECTORY)).isEqualTo(1);
+        then(metrics.requests("newOrder")).isEqualTo(1);
+        then(metrics.bytes("newOrder")).isPositive();
+        then(metrics.requests(InstrumentedConnection.FINALIZE)).isEqualTo(1);
+        then(metrics.requests(InstrumentedConnection.CERTIFICATE)).isEqualTo(1);
+        then(metrics.bytes(InstrumentedConnection.CERTIFICATE)).isPositive();
+        then(metrics.toPrometheus())
+            .contains("acme_tools_ca_responses_total{resource=\"newOrder\",status=\"200\"} 1\n")
+            .contains("acme_tools_ca_request_seconds_count{resource=\"certificate\"} 1\n");
+    }
+
+    @Test
+    public void record_failed_exchanges_with_their_status() throws Exception {
+        final RequestMetrics metrics = new RequestMetrics();
+        final Session session = InstrumentedAcmeProvider.session(new Session("acmetest://cacert1.com"), metrics);
+        final InstrumentedConnection connection = new InstrumentedConnection(
+            new AcmeConnectionStub(new URL("https://cacert1.com"), new AcmeResponseStub(400, "loginError")),
+            metrics
+        );
+
+        session.setNonce("anonce");
+        thenThrownBy(() -> connection.sendSignedRequest(
+            new URL("https://cacert1.com/acme/chall/1234"), null, session, TestUtils.createKeyPair()
+        )).isInstanceOf(AcmeServerException.class);
+
+        then(metrics.requests(InstrumentedConnection.CHALLENGE)).isEqualTo(1);
+        then(metrics.nonceFetches(InstrumentedConnection.CHALLENGE)).isZero();
+
+        //
+        // without a nonce acme4j fetches one first
+        //
+        session.setNonce(null);
+        thenThrownBy(() -> connection.sendSignedRequest(
+            new URL("https://cacert1.com/acme/chall/1234"), null, session, TestUtils.createKeyPair()
+        )).isInstanceOf(AcmeServerException.class);
+
+        then(metrics.nonceFetches(InstrumentedConnection.CHALLENGE)).isEqualTo(1);
+        then(metrics.toPrometheus())
+            .contains("acme_tools_ca_responses_total{resource=\"challenge\",status=\"400\"} 2\n");
+    }
+
+    @Test
+    public void resource_by_url() throws Exception {
+        then(InstrumentedConnection.resource(
+            new URL("https://ca.example.org/acme/new-order"), Map.of("https://ca.example.org/acme/new-order", "newOrder")
+        )).isEqualTo("newOrder");
+        for (String[] test: new String[][] {
+            {"https://ca.example.org/acme/authz-v3/1234", "authz"},
+            {"https://ca.example.org/acme/chall-v3/1234/abcd", "challenge"},
+            {"https://ca.example.org/acme/finalize/12/34", "finalize"},
+            {"https://ca.example.org/acme/order/12/34", "order"},
+            {"https://ca.example.org/acme/cert/fa1234", "certificate"},
+            {"https://ca.example.org/acme/acct/12", "account"},
+            {"https://localhost:14000/chalZ/abcd", "challenge"},
+            {"https://localhost:14000/finalize-order/abcd", "finalize"},
+            {"https://localhost:14000/somewhere", "other"}
+        }) {
+            then(InstrumentedConnection.resource(new URL(test[0]), Map.of())).isEqualTo(test[1]);
+        }
+    }
+}
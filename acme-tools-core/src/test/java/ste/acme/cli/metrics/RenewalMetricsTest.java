@@ -0,0 +1,128 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static ste.acme.cli.metrics.RenewalTimer.CHALLENGE_WAIT;
+import static ste.acme.cli.metrics.RenewalTimer.DIRECTORY;
+
+/**
+ *
+ */
+public class RenewalMetricsTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    public void sanity_check() throws Exception {
+        final RenewalMetrics metrics = new RenewalMetrics();
+
+        thenThrownBy(() -> metrics.add(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("timer can not be null");
+        thenThrownBy(() -> metrics.add(new RenewalTimer("example.com")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("timer of example.com not stopped yet");
+        thenThrownBy(() -> metrics.writePrometheus(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("file can not be null");
+    }
+
+    @Test
+    public void aggregate_renewals_in_histograms() {
+        final RenewalMetrics metrics = new RenewalMetrics();
+
+        then(metrics.renewals(RenewalTimer.RENEWED)).isZero();
+        then(metrics.toPrometheus()).isEqualTo(
+            "# HELP acme_tools_renewal_phase_seconds Time spent in each phase of the certificate renewals.\n" +
+            "# TYPE acme_tools_renewal_phase_seconds histogram\n" +
+            "# HELP acme_tools_renewal_seconds Time taken by the certificate renewals by outcome.\n" +
+            "# TYPE acme_tools_renewal_seconds histogram\n" +
+            metrics.requests().toPrometheus()
+        );
+
+        metrics.add(renewal("a.com", true, 80, 2000));
+        metrics.add(renewal("b.com", true, 40, 700));
+        metrics.add(renewal("c.com", false, 400, 60000));
+
+        then(metrics.renewals(RenewalTimer.RENEWED)).isEqualTo(2);
+        then(metrics.renewals(RenewalTimer.FAILED)).isEqualTo(1);
+        then(metrics.toPrometheus())
+            .contains("acme_tools_renewal_phase_seconds_bucket{phase=\"directory\",le=\"0.05\"} 1\n")
+            .contains("acme_tools_renewal_phase_seconds_bucket{phase=\"directory\",le=\"0.1\"} 2\n")
+            .contains("acme_tools_renewal_phase_seconds_bucket{phase=\"directory\",le=\"0.5\"} 3\n")
+            .contains("acme_tools_renewal_phase_seconds_bucket{phase=\"directory\",le=\"+Inf\"} 3\n")
+            .contains("acme_tools_renewal_phase_seconds_sum{phase=\"directory\"} 0.52\n")
+            .contains("acme_tools_renewal_phase_seconds_count{phase=\"directory\"} 3\n")
+            .contains("acme_tools_renewal_phase_seconds_bucket{phase=\"challenge_wait\",le=\"1\"} 1\n")
+            .contains("acme_tools_renewal_phase_seconds_bucket{phase=\"challenge_wait\",le=\"2.5\"} 2\n")
+            .contains("acme_tools_renewal_phase_seconds_bucket{phase=\"challenge_wait\",le=\"30\"} 2\n")
+            .contains("acme_tools_renewal_phase_seconds_bucket{phase=\"challenge_wait\",le=\"60\"} 3\n")
+            .contains("acme_tools_renewal_seconds_bucket{outcome=\"renewed\",le=\"2.5\"} 2\n")
+            .contains("acme_tools_renewal_seconds_count{outcome=\"renewed\"} 2\n")
+            .contains("acme_tools_renewal_seconds_bucket{outcome=\"failed\",le=\"30\"} 0\n")
+            .contains("acme_tools_renewal_seconds_bucket{outcome=\"failed\",le=\"120\"} 1\n")
+            .contains("acme_tools_renewal_seconds_count{outcome=\"failed\"} 1\n");
+    }
+
+    @Test
+    public void write_prometheus_file() throws Exception {
+        final RenewalMetrics metrics = new RenewalMetrics();
+        metrics.add(renewal("a.com", true, 80, 2000));
+
+        final Path file = TMP.getRoot().toPath().resolve("acme-tools.prom");
+        metrics.writePrometheus(file);
+        then(Files.readString(file)).isEqualTo(metrics.toPrometheus());
+
+        metrics.add(renewal("b.com", true, 80, 2000));
+        metrics.writePrometheus(file);
+        then(Files.readString(file)).contains("acme_tools_renewal_seconds_count{outcome=\"renewed\"} 2\n");
+        then(TMP.getRoot().list()).containsExactly("acme-tools.prom");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private RenewalTimer renewal(
+        final String domain, final boolean renewed, final long directoryMillis, final long waitMillis
+    ) {
+        final RenewalTimer timer = new RenewalTimer(domain, nanos::get, Clock.systemUTC());
+        try (RenewalTimer.Phase phase = timer.start(DIRECTORY)) {
+            nanos.addAndGet(Duration.ofMillis(directoryMillis).toNanos());
+        }
+        try (RenewalTimer.Phase phase = timer.start(CHALLENGE_WAIT, domain)) {
+            nanos.addAndGet(Duration.ofMillis(waitMillis).toNanos());
+        }
+        timer.stop(renewed);
+        return timer;
+    }
+}
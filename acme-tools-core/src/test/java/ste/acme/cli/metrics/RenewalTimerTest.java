@@ -0,0 +1,118 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Test;
+import static ste.acme.cli.metrics.RenewalTimer.CHALLENGE_WAIT;
+import static ste.acme.cli.metrics.RenewalTimer.DIRECTORY;
+import static ste.acme.cli.metrics.RenewalTimer.LOGIN;
+
+/**
+ *
+ */
+public class RenewalTimerTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-06-01T10:00:00Z"), ZoneOffset.UTC);
+
+    private final AtomicLong nanos = new AtomicLong(1000);
+
+    @Test
+    public void sanity_check() {
+        thenThrownBy(() -> new RenewalTimer(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("domain can not be null");
+        thenThrownBy(() -> new RenewalTimer("example.com", null, CLOCK))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("ticker can not be null");
+        thenThrownBy(() -> new RenewalTimer("example.com", nanos::get, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("clock can not be null");
+        thenThrownBy(() -> new RenewalTimer("example.com").start(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("phase can not be null");
+    }
+
+    @Test
+    public void time_phases() {
+        final RenewalTimer timer = new RenewalTimer("example.com", nanos::get, CLOCK);
+        then(timer.domain()).isEqualTo("example.com");
+        then(timer.started()).isEqualTo(CLOCK.instant());
+
+        try (RenewalTimer.Phase phase = timer.start(DIRECTORY)) {
+            nanos.addAndGet(Duration.ofMillis(120).toNanos());
+        }
+        final RenewalTimer.Phase login = timer.start(LOGIN);
+        nanos.addAndGet(Duration.ofMillis(300).toNanos());
+        login.close();
+        nanos.addAndGet(Duration.ofMillis(10).toNanos());
+        login.close(); // only the first close counts
+        try (RenewalTimer.Phase phase = timer.start(CHALLENGE_WAIT, "www.example.com")) {
+            nanos.addAndGet(Duration.ofMillis(3200).toNanos());
+        }
+
+        then(timer.timings()).containsExactly(
+            new RenewalTimer.Timing(DIRECTORY, null, Duration.ofMillis(120)),
+            new RenewalTimer.Timing(LOGIN, null, Duration.ofMillis(300)),
+            new RenewalTimer.Timing(CHALLENGE_WAIT, "www.example.com", Duration.ofMillis(3200))
+        );
+        then(timer.summary()).isEqualTo("directory 120ms, login 300ms, challenge_wait www.example.com 3.2s");
+        then(timer.total()).isNull();
+        then(timer.outcome()).isNull();
+
+        timer.stop(true);
+        nanos.addAndGet(1000);
+        timer.stop(false); // ignored
+        then(timer.total()).isEqualTo(Duration.ofMillis(3630));
+        then(timer.outcome()).isEqualTo(RenewalTimer.RENEWED);
+    }
+
+    @Test
+    public void to_json() {
+        final RenewalTimer timer = new RenewalTimer("example.com", nanos::get, CLOCK);
+        try (RenewalTimer.Phase phase = timer.start(DIRECTORY)) {
+            nanos.addAndGet(Duration.ofMillis(250).toNanos());
+        }
+        try (RenewalTimer.Phase phase = timer.start(CHALLENGE_WAIT, "example.com")) {
+            nanos.addAndGet(Duration.ofMillis(1500).toNanos());
+        }
+        timer.stop(false);
+
+        then(timer.toJSON()).isEqualTo(
+            "{\"domain\":\"example.com\",\"started\":\"2024-06-01T10:00:00Z\",\"outcome\":\"failed\",\"seconds\":1.75," +
+            "\"phases\":[{\"phase\":\"directory\",\"seconds\":0.25},{\"phase\":\"challenge_wait\",\"label\":\"example.com\",\"seconds\":1.5}]}"
+        );
+    }
+
+    @Test
+    public void format_durations() {
+        then(RenewalTimer.format(Duration.ofNanos(999_999))).isEqualTo("0ms");
+        then(RenewalTimer.format(Duration.ofMillis(999))).isEqualTo("999ms");
+        then(RenewalTimer.format(Duration.ofMillis(1000))).isEqualTo("1.0s");
+        then(RenewalTimer.format(Duration.ofSeconds(95))).isEqualTo("95.0s");
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class RequestMetricsTest {
+
+    @Test
+    public void sanity_check() {
+        final RequestMetrics metrics = new RequestMetrics();
+
+        thenThrownBy(() -> metrics.exchange(null, 200, 0, false))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("resource can not be null");
+        thenThrownBy(() -> metrics.bytes(null, 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("resource can not be null");
+        then(metrics.requests("newOrder")).isZero();
+        then(metrics.bytes("newOrder")).isZero();
+        then(metrics.nonceFetches("newOrder")).isZero();
+    }
+
+    @Test
+    public void record_exchanges_by_resource() {
+        final RequestMetrics metrics = new RequestMetrics();
+
+        metrics.exchange("newOrder", 201, Duration.ofMillis(40).toNanos(), true);
+        metrics.bytes("newOrder", 512);
+        metrics.exchange("authz", 200, Duration.ofMillis(8).toNanos(), false);
+        metrics.exchange("authz", 200, Duration.ofMillis(120).toNanos(), false);
+        metrics.exchange("authz", RequestMetrics.NO_STATUS, Duration.ofSeconds(11).toNanos(), false);
+
+        then(metrics.requests("newOrder")).isEqualTo(1);
+        then(metrics.bytes("newOrder")).isEqualTo(512);
+        then(metrics.nonceFetches("newOrder")).isEqualTo(1);
+        then(metrics.requests("authz")).isEqualTo(3);
+        then(metrics.toPrometheus())
+            .contains("acme_tools_ca_request_seconds_bucket{resource=\"authz\",le=\"0.01\"} 1\n")
+            .contains("acme_tools_ca_request_seconds_bucket{resource=\"authz\",le=\"0.25\"} 2\n")
+            .contains("acme_tools_ca_request_seconds_bucket{resource=\"authz\",le=\"10\"} 2\n")
+            .contains("acme_tools_ca_request_seconds_bucket{resource=\"authz\",le=\"+Inf\"} 3\n")
+            .contains("acme_tools_ca_request_seconds_count{resource=\"newOrder\"} 1\n")
+            .contains("acme_tools_ca_responses_total{resource=\"authz\",status=\"0\"} 1\n")
+            .contains("acme_tools_ca_responses_total{resource=\"authz\",status=\"200\"} 2\n")
+            .contains("acme_tools_ca_responses_total{resource=\"newOrder\",status=\"201\"} 1\n")
+            .contains("acme_tools_ca_response_bytes_total{resource=\"newOrder\"} 512\n")
+            .contains("acme_tools_ca_nonce_fetches_total{resource=\"authz\"} 0\n")
+            .contains("acme_tools_ca_nonce_fetches_total{resource=\"newOrder\"} 1\n");
+    }
+
+    @Test
+    public void record_from_many_threads() throws Exception {
+        final RequestMetrics metrics = new RequestMetrics();
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 1000; ++j) {
+                    metrics.exchange("authz", 200, Duration.ofMillis(j % 20).toNanos(), false);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        then(metrics.requests("authz")).isEqualTo(8000);
+        then(metrics.toPrometheus())
+            .contains("acme_tools_ca_request_seconds_bucket{resource=\"authz\",le=\"0.025\"} 8000\n")
+            .contains("acme_tools_ca_responses_total{resource=\"authz\",status=\"200\"} 8000\n");
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.ocsp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.shredzone.acme4j.util.KeyPairUtils;
+
+/**
+ *
+ */
+public class OcspCacheTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private OcspResponderStub responder;
+    private List<X509Certificate> chain;
+
+    @BeforeClass
+    public static void before_class() {
+        //
+        // as when embedded, BouncyCastle is not registered (other tests may
+        // have registered it)
+        //
+        Security.removeProvider(BouncyCastleProvider.PROVIDER_NAME);
+    }
+
+    @Before
+    public void before() throws Exception {
+        responder = new OcspResponderStub(Duration.ofDays(4));
+        chain = List.of(responder.leaf("example.com", 10), responder.issuer);
+    }
+
+    @After
+    public void after() {
+        responder.close();
+    }
+
+    @Test
+    public void sanity_check() throws Exception {
+        thenThrownBy(() -> new OcspCache(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("client can not be null");
+        thenThrownBy(() -> new OcspCache(new OcspClient(), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("clock can not be null");
+        thenThrownBy(() -> new OcspCache(new OcspClient()).refresh(null, chain, false))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("file can not be null");
+        thenThrownBy(() -> new OcspCache(new OcspClient()).refresh(TMP.getRoot().toPath().resolve("a.ocsp"), List.of(), false))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("chain can not be null or empty");
+        thenThrownBy(() -> new OcspCache(new OcspClient()).refresh(TMP.getRoot().toPath().resolve("a.ocsp"), chain.subList(0, 1), false))
+            .isInstanceOf(IOException.class)
+            .hasMessage("the issuer of CN=example.com is not in the chain");
+
+        then(OcspCache.file(Path.of("dir", "example.com.crt"))).isEqualTo(Path.of("dir", "example.com.crt.ocsp"));
+    }
+
+    @Test
+    public void fetch_and_refresh_at_half_validity() throws Exception {
+        final Path file = OcspCache.file(TMP.getRoot().toPath().resolve("example.com.crt"));
+
+        OcspCache.Result result = new OcspCache(new OcspClient()).refresh(file, chain, false);
+        then(result.fetched()).isTrue();
+        then(result.response().status()).isEqualTo(OcspResponse.Status.GOOD);
+        then(Files.readAllBytes(file)).isEqualTo(result.response().encoded());
+        then(responder.requests()).isEqualTo(1);
+
+        final Instant refreshAt = result.response().refreshAt();
+        then(refreshAt).isEqualTo(result.response().thisUpdate().plus(Duration.ofDays(2)));
+
+        //
+        // still fresh
+        //
+        result = new OcspCache(new OcspClient(), clock(refreshAt.minusSeconds(1))).refresh(file, chain, false);
+        then(result.fetched()).isFalse();
+        then(responder.requests()).isEqualTo(1);
+
+        //
+        // forced
+        //
+        result = new OcspCache(new OcspClient(), clock(refreshAt.minusSeconds(1))).refresh(file, chain, true);
+        then(result.fetched()).isTrue();
+        then(responder.requests()).isEqualTo(2);
+
+        //
+        // half of the validity passed
+        //
+        result = new OcspCache(new OcspClient(), clock(refreshAt.plus(Duration.ofDays(1)))).refresh(file, chain, false);
+        then(result.fetched()).isTrue();
+        then(responder.requests()).isEqualTo(3);
+    }
+
+    @Test
+    public void cached_response_of_another_certificate_is_refetched() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("example.com.crt.ocsp");
+        final OcspCache cache = new OcspCache(new OcspClient());
+
+        cache.refresh(file, chain, false);
+        then(cache.cached(file, chain)).isNotNull();
+
+        final List<X509Certificate> renewed = List.of(responder.leaf("example.com", 11), responder.issuer);
+        then(cache.cached(file, renewed)).isNull();
+        then(cache.refresh(file, renewed, false).fetched()).isTrue();
+        then(responder.requests()).isEqualTo(2);
+
+        Files.writeString(file, "not a response");
+        then(cache.cached(file, renewed)).isNull();
+        then(cache.cached(TMP.getRoot().toPath().resolve("missing.ocsp"), renewed)).isNull();
+    }
+
+    @Test
+    public void responses_not_signed_by_the_issuer_are_refused() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("example.com.crt.ocsp");
+
+        responder.signer(KeyPairUtils.createKeyPair(2048).getPrivate());
+        thenThrownBy(() -> new OcspCache(new OcspClient()).refresh(file, chain, false))
+            .isInstanceOf(IOException.class)
+            .hasMessage("OCSP response not signed by CN=Stub Issuer or a responder delegated by it");
+        then(file).doesNotExist();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static Clock clock(final Instant instant) {
+        return Clock.fixed(instant, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.ocsp;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.Security;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class OcspClientTest {
+
+    @BeforeClass
+    public static void before_class() {
+        //
+        // as when embedded, BouncyCastle is not registered (other tests may
+        // have registered it)
+        //
+        Security.removeProvider(BouncyCastleProvider.PROVIDER_NAME);
+    }
+
+    @Test
+    public void sanity_check() throws Exception {
+        thenThrownBy(() -> new OcspClient(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("timeout must be a positive duration");
+        thenThrownBy(() -> new OcspClient(Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("timeout must be a positive duration");
+        thenThrownBy(() -> new OcspClient().fetch(null, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("certificate can not be null");
+    }
+
+    @Test
+    public void fetch_from_the_responder_in_the_certificate() throws Exception {
+        try (OcspResponderStub responder = new OcspResponderStub(Duration.ofDays(7))) {
+            final X509Certificate leaf = responder.leaf("example.com", 20);
+            then(OcspClient.responder(leaf)).isEqualTo(responder.url());
+
+            final OcspResponse response = new OcspClient().fetch(leaf, responder.issuer);
+            then(response.status()).isEqualTo(OcspResponse.Status.GOOD);
+            then(response.nextUpdate()).isEqualTo(response.thisUpdate().plus(Duration.ofDays(7)));
+            then(OcspResponse.parse(response.encoded(), leaf, responder.issuer).status()).isEqualTo(OcspResponse.Status.GOOD);
+
+            //
+            // the response is for the given certificate only
+            //
+            final X509Certificate other = responder.leaf("example.com", 21);
+            thenThrownBy(() -> OcspResponse.parse(response.encoded(), other, responder.issuer))
+                .isInstanceOf(IOException.class)
+                .hasMessage("OCSP response does not tell the status of certificate 15");
+        }
+    }
+
+    @Test
+    public void certificates_without_responder() throws Exception {
+        final X509Certificate certificate;
+        try (FileInputStream in = new FileInputStream("src/test/data/default/domain.crt")) {
+            certificate = (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(in);
+        }
+
+        then(OcspClient.responder(certificate)).isNull();
+        thenThrownBy(() -> new OcspClient().fetch(certificate, certificate))
+            .isInstanceOf(IOException.class)
+            .hasMessageStartingWith("no OCSP responder in certificate ");
+    }
+}
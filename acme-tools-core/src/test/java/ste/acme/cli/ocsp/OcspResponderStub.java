@@ -0,0 +1,167 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.ocsp;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.shredzone.acme4j.util.KeyPairUtils;
+
+/**
+ * A local OCSP responder standing in for the one of a CA: it tells GOOD for
+ * any requested certificate, signing the responses with the given key, and
+ * counts the requests received. It also issues test certificates pointing to
+ * it in their AIA extension.
+ */
+public class OcspResponderStub implements AutoCloseable {
+
+    public final KeyPair issuerKeys;
+    public final X509Certificate issuer;
+    public final Duration validity;
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private PrivateKey signer;
+
+    public OcspResponderStub(final Duration validity) throws Exception {
+        this.validity = validity;
+        this.issuerKeys = KeyPairUtils.createKeyPair(2048);
+        this.signer = issuerKeys.getPrivate();
+
+        final Instant now = Instant.now();
+        final X500Name name = new X500Name("CN=Stub Issuer");
+        final JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+            name, BigInteger.ONE, Date.from(now.minus(Duration.ofDays(1))), Date.from(now.plus(Duration.ofDays(90))),
+            name, issuerKeys.getPublic()
+        );
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        this.issuer = certificate(builder, issuerKeys.getPrivate());
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ocsp", (exchange) -> {
+            requests.incrementAndGet();
+            try {
+                final byte[] response = respond(new OCSPReq(exchange.getRequestBody().readAllBytes()));
+                exchange.getResponseHeaders().add("Content-Type", "application/ocsp-response");
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            } catch (Exception x) {
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    public String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/ocsp";
+    }
+
+    public int requests() {
+        return requests.get();
+    }
+
+    /**
+     * @param signer the key responses are signed with from now on (e.g. not
+     *        the one of the issuer)
+     */
+    public void signer(final PrivateKey signer) {
+        this.signer = signer;
+    }
+
+    /**
+     * @return a leaf certificate issued by the stub issuer with the stub as
+     *         OCSP responder
+     */
+    public X509Certificate leaf(final String domain, final long serial) throws Exception {
+        final Instant now = Instant.now();
+        final JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+            issuer, BigInteger.valueOf(serial),
+            Date.from(now.minus(Duration.ofDays(1))), Date.from(now.plus(Duration.ofDays(90))),
+            new X500Name("CN=" + domain), KeyPairUtils.createKeyPair(2048).getPublic()
+        );
+        builder.addExtension(Extension.authorityInfoAccess, false, new AuthorityInformationAccess(
+            new AccessDescription(AccessDescription.id_ad_ocsp, new GeneralName(GeneralName.uniformResourceIdentifier, url()))
+        ));
+        return certificate(builder, issuerKeys.getPrivate());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private byte[] respond(final OCSPReq request) throws Exception {
+        final Instant now = Instant.now();
+        final BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(
+            new RespID(new JcaX509CertificateHolder(issuer).getSubject())
+        );
+        for (Req single: request.getRequestList()) {
+            builder.addResponse(
+                single.getCertID(), CertificateStatus.GOOD, Date.from(now), Date.from(now.plus(validity))
+            );
+        }
+        return new OCSPRespBuilder().build(
+            OCSPRespBuilder.SUCCESSFUL,
+            builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(signer), new X509CertificateHolder[0], new Date())
+        ).getEncoded();
+    }
+
+    private static X509Certificate certificate(final JcaX509v3CertificateBuilder builder, final PrivateKey key)
+    throws Exception {
+        return new JcaX509CertificateConverter().getCertificate(
+            builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(key))
+        );
+    }
+}
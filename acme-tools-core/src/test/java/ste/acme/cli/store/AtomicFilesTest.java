@@ -0,0 +1,107 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class AtomicFilesTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    @Test
+    public void replace_the_file() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("file.txt");
+
+        AtomicFiles.writeString(file, "one");
+        AtomicFiles.write(file, (out) -> out.write("two".getBytes()));
+        then(Files.readString(file)).isEqualTo("two");
+        AtomicFiles.replace(file, (tmp) -> Files.writeString(tmp, "three"));
+        then(Files.readString(file)).isEqualTo("three");
+
+        then(TMP.getRoot().list()).containsExactly("file.txt");
+    }
+
+    @Test
+    public void recognize_temporary_files() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("file.txt");
+
+        then(AtomicFiles.isTemporary(file.resolveSibling(".file.txt.3fa2b1c0.tmp"), file)).isTrue();
+        then(AtomicFiles.isTemporary(file.resolveSibling("sub/../.file.txt.3fa2b1c0.tmp"), file)).isTrue();
+        then(AtomicFiles.isTemporary(file, file)).isFalse();
+        then(AtomicFiles.isTemporary(file.resolveSibling(".file.txt.tmp"), file)).isFalse();
+        then(AtomicFiles.isTemporary(file.resolveSibling(".fileXtxt.3fa2b1c0.tmp"), file)).isFalse();
+        then(AtomicFiles.isTemporary(file.resolveSibling("sub/.file.txt.3fa2b1c0.tmp"), file)).isFalse();
+    }
+
+    @Test
+    public void remove_the_temporary_file_on_errors() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("file.txt");
+        AtomicFiles.writeString(file, "one");
+
+        thenThrownBy(() -> AtomicFiles.replace(file, (tmp) -> { throw new IOException("failed"); }))
+            .isInstanceOf(IOException.class)
+            .hasMessage("failed");
+        then(Files.readString(file)).isEqualTo("one");
+        then(TMP.getRoot().list()).containsExactly("file.txt");
+
+        thenThrownBy(() -> AtomicFiles.writeString(file.resolveSibling("missing").resolve("file.txt"), "one"))
+            .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void create_files_for_the_owner_only() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("secret.txt");
+
+        AtomicFiles.writeString(file, "secret", AtomicFiles.ownerOnly(file));
+
+        then(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rw-------");
+    }
+
+    @Test
+    public void keep_the_permissions_of_the_replaced_file() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("file.txt");
+        AtomicFiles.writeString(file, "one");
+
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        AtomicFiles.writeString(file, "two");
+        then(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rw-------");
+
+        //
+        // not limited by the umask either
+        //
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-rw-rw-"));
+        AtomicFiles.write(file, (out) -> out.write("three".getBytes()), AtomicFiles.ownerOnly(file));
+        then(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rw-rw-rw-");
+        then(Files.readString(file)).isEqualTo("three");
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openssl.PEMParser;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.shredzone.acme4j.util.KeyPairUtils;
+
+/**
+ *
+ */
+public class CertificateWriterTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private static final char[] SECRET = "1234567890".toCharArray();
+
+    private final List<X509Certificate> chain = new ArrayList<>(); // leaf + intermediate
+    private KeyPair keys;
+
+    @BeforeClass
+    public static void before_class() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void before() throws Exception {
+        try (FileInputStream in = new FileInputStream("src/test/resources/cert.pem")) {
+            CertificateFactory.getInstance("X.509").generateCertificates(in).forEach(
+                (certificate) -> chain.add((X509Certificate)certificate)
+            );
+        }
+        keys = KeyPairUtils.createKeyPair(2048);
+    }
+
+    @Test
+    public void sanity_check() throws Exception {
+        thenThrownBy(() -> new CertificateWriter(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("chain can not be null or empty");
+        thenThrownBy(() -> new CertificateWriter(List.of()))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("chain can not be null or empty");
+
+        final CertificateWriter writer = new CertificateWriter(chain);
+        final Path dir = TMP.getRoot().toPath();
+
+        thenThrownBy(() -> writer.executor(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("executor can not be null");
+        thenThrownBy(() -> writer.write(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("artifacts can not be null");
+        thenThrownBy(() -> writer.write(Map.of(Artifact.BUNDLE, dir.resolve("bundle.pem"))))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("a private key is needed for artifact BUNDLE");
+
+        writer.key(keys.getPrivate());
+        thenThrownBy(() -> writer.write(Map.of(Artifact.PKCS12, dir.resolve("domain.p12"))))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("an alias and a password are needed for artifact PKCS12");
+        then(dir.toFile().list()).isEmpty();
+    }
+
+    @Test
+    public void write_all_artifacts_with_the_full_chain() throws Exception {
+        final Path dir = TMP.getRoot().toPath();
+        final Map<Artifact, Path> artifacts = new EnumMap<>(Artifact.class);
+        for (Artifact artifact: Artifact.values()) {
+            artifacts.put(artifact, dir.resolve(artifact.fileName("example.com")));
+        }
+
+        final CertificateWriter writer = new CertificateWriter(chain);
+        writer.key(keys.getPrivate());
+        writer.keyStore("example.com", SECRET, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(artifacts.size());
+        try {
+            writer.executor(executor);
+            writer.write(artifacts);
+        } finally {
+            executor.shutdown();
+        }
+
+        then(dir.toFile().list()).containsExactlyInAnyOrder(
+            "example.com.crt", "example.com-fullchain.pem", "example.com-bundle.pem", "example.com.p12", "example.com.der"
+        );
+        then(certificates(artifacts.get(Artifact.LEAF))).containsExactly(chain.get(0));
+        then(certificates(artifacts.get(Artifact.FULLCHAIN))).containsExactlyElementsOf(chain);
+        then(certificates(artifacts.get(Artifact.DER))).containsExactly(chain.get(0));
+        then(Files.readString(artifacts.get(Artifact.BUNDLE))).endsWith(Files.readString(artifacts.get(Artifact.FULLCHAIN)));
+        try (PEMParser parser = new PEMParser(Files.newBufferedReader(artifacts.get(Artifact.BUNDLE)))) {
+            then(parser.readPemObject().getType()).endsWith("PRIVATE KEY");
+        }
+
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12", "BC");
+        try (InputStream in = Files.newInputStream(artifacts.get(Artifact.PKCS12))) {
+            keyStore.load(in, SECRET);
+        }
+        then(keyStore.getCertificateChain("example.com")).containsExactlyElementsOf(chain);
+        then(keyStore.getKey("example.com", SECRET)).isEqualTo(keys.getPrivate());
+    }
+
+    @Test
+    public void replace_existing_artifacts() throws Exception {
+        final Path leaf = TMP.getRoot().toPath().resolve("example.com.crt");
+        Files.writeString(leaf, "old certificate");
+
+        new CertificateWriter(chain).write(Map.of(Artifact.LEAF, leaf));
+
+        then(certificates(leaf)).containsExactly(chain.get(0));
+        then(TMP.getRoot().list()).containsExactly("example.com.crt");
+    }
+
+    @Test
+    public void artifacts_with_the_key_are_for_the_owner_only() throws Exception {
+        final Path dir = TMP.getRoot().toPath();
+        final Map<Artifact, Path> artifacts = new EnumMap<>(Artifact.class);
+        for (Artifact artifact: Artifact.values()) {
+            artifacts.put(artifact, dir.resolve(artifact.fileName("example.com")));
+        }
+
+        final CertificateWriter writer = new CertificateWriter(chain);
+        writer.key(keys.getPrivate());
+        writer.keyStore("example.com", SECRET, null);
+        writer.write(artifacts);
+
+        then(permissions(artifacts.get(Artifact.BUNDLE))).isEqualTo("rw-------");
+        then(permissions(artifacts.get(Artifact.PKCS12))).isEqualTo("rw-------");
+
+        //
+        // replaced files keep their permissions
+        //
+        Files.setPosixFilePermissions(artifacts.get(Artifact.BUNDLE), PosixFilePermissions.fromString("rw-r-----"));
+        Files.setPosixFilePermissions(artifacts.get(Artifact.PKCS12), PosixFilePermissions.fromString("rw-r-----"));
+        Files.setPosixFilePermissions(artifacts.get(Artifact.LEAF), PosixFilePermissions.fromString("rw-rw-r--"));
+        writer.write(artifacts);
+
+        then(permissions(artifacts.get(Artifact.BUNDLE))).isEqualTo("rw-r-----");
+        then(permissions(artifacts.get(Artifact.PKCS12))).isEqualTo("rw-r-----");
+        then(permissions(artifacts.get(Artifact.LEAF))).isEqualTo("rw-rw-r--");
+    }
+
+    @Test
+    public void all_artifacts_are_written_even_if_one_fails() throws Exception {
+        final Path dir = TMP.getRoot().toPath();
+        final Map<Artifact, Path> artifacts = new EnumMap<>(Artifact.class);
+        artifacts.put(Artifact.LEAF, dir.resolve("missing").resolve("example.com.crt"));
+        artifacts.put(Artifact.FULLCHAIN, dir.resolve("example.com-fullchain.pem"));
+
+        thenThrownBy(() -> new CertificateWriter(chain).write(artifacts))
+            .isInstanceOf(IOException.class);
+        then(certificates(artifacts.get(Artifact.FULLCHAIN))).containsExactlyElementsOf(chain);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private List<X509Certificate> certificates(final Path file) throws Exception {
+        final List<X509Certificate> certificates = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(file)) {
+            CertificateFactory.getInstance("X.509").generateCertificates(in).forEach(
+                (certificate) -> certificates.add((X509Certificate)certificate)
+            );
+        }
+        return certificates;
+    }
+
+    private static String permissions(final Path file) throws Exception {
+        return PosixFilePermissions.toString(Files.getPosixFilePermissions(file));
+    }
+}
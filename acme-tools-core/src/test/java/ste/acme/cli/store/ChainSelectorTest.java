@@ -0,0 +1,105 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.FileInputStream;
+import java.security.KeyPair;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Before;
+import org.junit.Test;
+import org.shredzone.acme4j.util.CertificateUtils;
+import org.shredzone.acme4j.util.KeyPairUtils;
+
+/**
+ *
+ */
+public class ChainSelectorTest {
+
+    private List<X509Certificate> crossSigned, shorter;
+
+    @Before
+    public void before() throws Exception {
+        final Instant now = Instant.now(), later = now.plus(Duration.ofDays(90));
+        final KeyPair x1 = KeyPairUtils.createKeyPair(2048), x2 = KeyPairUtils.createKeyPair(2048);
+
+        final X509Certificate leaf;
+        try (FileInputStream in = new FileInputStream("src/test/data/default/domain.crt")) {
+            leaf = (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(in);
+        }
+        final X509Certificate rootX1 = CertificateUtils.createTestRootCertificate("CN=Root X1", now, later, x1);
+        final X509Certificate rootX2 = CertificateUtils.createTestRootCertificate("CN=Root X2,O=Old CA", now, later, x2);
+        final X509Certificate intermediate = CertificateUtils.createTestIntermediateCertificate(
+            "CN=Intermediate", now, later, KeyPairUtils.createKeyPair(2048).getPublic(), rootX1, x1.getPrivate()
+        );
+        final X509Certificate x1ByX2 = CertificateUtils.createTestIntermediateCertificate(
+            "CN=Root X1", now, later, x1.getPublic(), rootX2, x2.getPrivate()
+        );
+
+        crossSigned = List.of(leaf, intermediate, x1ByX2);
+        shorter = List.of(leaf, intermediate);
+    }
+
+    @Test
+    public void sanity_check() {
+        thenThrownBy(() -> new ChainSelector(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("preference can not be null or blank");
+        thenThrownBy(() -> new ChainSelector(" "))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("preference can not be null or blank");
+        thenThrownBy(() -> new ChainSelector("shortest").select(List.of()))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("chains can not be null or empty");
+    }
+
+    @Test
+    public void select_the_shortest_chain() {
+        final ChainSelector selector = new ChainSelector("SHORTEST");
+
+        then(selector.shortest()).isTrue();
+        then(selector.select(List.of(crossSigned, shorter))).isEqualTo(1);
+        then(selector.select(List.of(shorter, crossSigned))).isZero();
+        then(selector.select(List.of(shorter, shorter))).isZero(); // the default one on ties
+        then(selector.select(List.of(crossSigned))).isZero();
+    }
+
+    @Test
+    public void select_by_issuer() {
+        then(new ChainSelector("Root X1").select(List.of(crossSigned, shorter))).isEqualTo(1);
+        then(new ChainSelector(" root x2 ").select(List.of(shorter, crossSigned))).isEqualTo(1);
+        then(new ChainSelector("Root X3").select(List.of(crossSigned, shorter))).isEqualTo(-1);
+        then(new ChainSelector("Root X1").shortest()).isFalse();
+    }
+
+    @Test
+    public void chain_issuer_and_size() throws Exception {
+        then(ChainSelector.issuer(crossSigned)).isEqualTo("Root X2");
+        then(ChainSelector.issuer(shorter)).isEqualTo("Root X1");
+        then(ChainSelector.size(crossSigned) - ChainSelector.size(shorter))
+            .isEqualTo(crossSigned.get(2).getEncoded().length);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.shredzone.acme4j.util.KeyPairUtils;
+
+/**
+ *
+ */
+public class KeyCacheTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    @Test
+    public void sanity_check() {
+        thenThrownBy(() -> new KeyCache(0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("capacity must be greater than 0");
+        thenThrownBy(() -> new KeyCache().read(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("file can not be null");
+    }
+
+    @Test
+    public void parse_each_key_once() throws Exception {
+        final KeyCache cache = new KeyCache();
+        final Path file = TMP.getRoot().toPath().resolve("domain.pem");
+        Files.copy(Path.of("src/test/data/default/domain.pem"), file);
+
+        final KeyPair keys = cache.read(file);
+        then(keys.getPrivate()).isNotNull();
+        then(cache.read(file)).isSameAs(keys);
+        then(cache.size()).isEqualTo(1);
+
+        //
+        // a changed file is parsed again
+        //
+        final KeyPair newKeys = KeyPairUtils.createKeyPair(2048);
+        write(file, newKeys);
+        then(cache.read(file).getPublic()).isEqualTo(newKeys.getPublic());
+        then(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void evict_the_least_recently_used_keys() throws Exception {
+        final KeyCache cache = new KeyCache(1);
+        final Path file1 = TMP.getRoot().toPath().resolve("key1.pem"),
+                   file2 = TMP.getRoot().toPath().resolve("key2.pem");
+        write(file1, KeyPairUtils.createKeyPair(2048));
+        write(file2, KeyPairUtils.createKeyPair(2048));
+
+        final KeyPair keys1 = cache.read(file1);
+        cache.read(file2);
+        then(cache.size()).isEqualTo(1);
+        then(cache.read(file1)).isNotSameAs(keys1).isNotNull();
+    }
+
+    @Test
+    public void error_if_not_a_key_pair() throws Exception {
+        final Path file = TMP.newFile("empty.pem").toPath();
+
+        thenThrownBy(() -> new KeyCache().read(file)).isInstanceOf(IOException.class);
+        thenThrownBy(() -> new KeyCache().read(Path.of("src/test/data/default/domain.crt")))
+            .isInstanceOf(IOException.class)
+            .hasMessage("no key pair in src/test/data/default/domain.crt");
+        thenThrownBy(() -> new KeyCache().read(file.resolveSibling("missing.pem"))).isInstanceOf(IOException.class);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static void write(final Path file, final KeyPair keys) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            KeyPairUtils.writeKeyPair(keys, writer);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.nio.file.Path;
+import java.security.Security;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class KeyStoreBenchmarkTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private static final char[] SECRET = "1234567890".toCharArray();
+
+    @BeforeClass
+    public static void before_class() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Test
+    public void sanity_check() throws Exception {
+        final Path dir = TMP.getRoot().toPath();
+
+        thenThrownBy(() -> new KeyStoreBenchmark(null, "PKCS12", SECRET))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("dir can not be null");
+        thenThrownBy(() -> new KeyStoreBenchmark(dir, null, SECRET))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("type can not be null");
+        thenThrownBy(() -> new KeyStoreBenchmark(dir, "PKCS12", null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("password can not be null");
+
+        final KeyStoreBenchmark benchmark = new KeyStoreBenchmark(dir, "PKCS12", SECRET);
+        thenThrownBy(() -> benchmark.rounds(0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("rounds must be greater than 0");
+        thenThrownBy(() -> benchmark.run(null, 0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("entries must be greater than 0");
+    }
+
+    @Test
+    public void store_and_load_keystores_of_growing_size() throws Exception {
+        final KeyStoreBenchmark benchmark = new KeyStoreBenchmark(TMP.getRoot().toPath(), "PKCS12", SECRET);
+        benchmark.rounds(1);
+
+        final KeyStoreProtection protection = KeyStoreProtection.of("PKCS12", null, null, 1024);
+        final KeyStoreBenchmark.Result small = benchmark.run(protection, 1);
+        final KeyStoreBenchmark.Result large = benchmark.run(protection, 5);
+
+        then(small.type()).isEqualTo("PKCS12");
+        then(small.protection()).isEqualTo(protection);
+        then(small.entries()).isEqualTo(1);
+        then(large.bytes()).isGreaterThan(small.bytes() * 4);
+        then(large.store()).isPositive();
+        then(large.load()).isPositive();
+        then(benchmark.run(null, 1).protection()).isEqualTo(KeyStoreProtection.defaults("PKCS12"));
+
+        then(TMP.getRoot().list()).isEmpty(); // keystores are removed
+    }
+}
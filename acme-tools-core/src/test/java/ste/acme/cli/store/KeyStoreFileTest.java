@@ -0,0 +1,283 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.util.Collections;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.MacData;
+import org.bouncycastle.asn1.pkcs.Pfx;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.shredzone.acme4j.util.KeyPairUtils;
+
+/**
+ *
+ */
+public class KeyStoreFileTest {
+
+    @Rule
+    public final TemporaryFolder TMP = new TemporaryFolder();
+
+    private static final char[] SECRET = "1234567890".toCharArray();
+
+    private Certificate[] chain;
+    private KeyPair keys;
+
+    @BeforeClass
+    public static void before_class() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Before
+    public void before() throws Exception {
+        try (FileInputStream in = new FileInputStream("src/test/data/default/domain.crt")) {
+            chain = new Certificate[] { CertificateFactory.getInstance("X.509").generateCertificate(in) };
+        }
+        keys = KeyPairUtils.createKeyPair(2048);
+    }
+
+    @Test
+    public void sanity_check() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.p12");
+
+        thenThrownBy(() -> new KeyStoreFile(null, "PKCS12", SECRET))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("file can not be null");
+        thenThrownBy(() -> new KeyStoreFile(file, null, SECRET))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("type can not be null");
+        thenThrownBy(() -> new KeyStoreFile(file, "PKCS12", null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("password can not be null");
+        thenThrownBy(() -> new KeyStoreFile(file, "PKCS12", SECRET).put("domain", keys.getPrivate(), chain))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("keystore not loaded");
+    }
+
+    @Test
+    public void update_aliases_in_existing_keystores() throws Exception {
+        for (String type: new String[] {"PKCS12", "JKS", "BCFKS"}) {
+            final Path file = TMP.getRoot().toPath().resolve("keystore." + type);
+
+            KeyStoreFile keyStore = new KeyStoreFile(file, type, SECRET);
+            keyStore.load(); // missing, empty
+            then(keyStore.keyStore().size()).isZero();
+            keyStore.put("one.com", keys.getPrivate(), chain);
+            keyStore.put("two.com", keys.getPrivate(), chain);
+            keyStore.store();
+
+            keyStore = new KeyStoreFile(file, type, SECRET);
+            keyStore.load();
+            keyStore.put("two.com", keys.getPrivate(), chain);
+            keyStore.put("three.com", keys.getPrivate(), chain);
+            then(keyStore.updated()).containsExactly("two.com", "three.com");
+            keyStore.store();
+
+            final KeyStore loaded = "JKS".equals(type) ? KeyStore.getInstance(type) : KeyStore.getInstance(type, "BC");
+            try (FileInputStream in = new FileInputStream(file.toFile())) {
+                loaded.load(in, SECRET);
+            }
+            then(Collections.list(loaded.aliases())).as(type).containsExactlyInAnyOrder("one.com", "two.com", "three.com");
+            then(loaded.getKey("three.com", SECRET)).isEqualTo(keys.getPrivate());
+            then(file.resolveSibling(file.getFileName() + ".tmp")).doesNotExist();
+        }
+    }
+
+    @Test
+    public void create_replaces_the_keystore() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.p12");
+
+        KeyStoreFile keyStore = new KeyStoreFile(file, "PKCS12", SECRET);
+        keyStore.load();
+        keyStore.put("one.com", keys.getPrivate(), chain);
+        keyStore.store();
+
+        keyStore = new KeyStoreFile(file, "PKCS12", SECRET);
+        keyStore.create();
+        keyStore.put("two.com", keys.getPrivate(), chain);
+        keyStore.store();
+
+        keyStore.load();
+        then(Collections.list(keyStore.keyStore().aliases())).containsExactly("two.com");
+    }
+
+    @Test
+    public void keep_the_permissions_of_the_keystore() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.p12");
+
+        KeyStoreFile keyStore = new KeyStoreFile(file, "PKCS12", SECRET);
+        keyStore.load();
+        keyStore.put("one.com", keys.getPrivate(), chain);
+        keyStore.store();
+        then(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rw-------");
+
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r-----"));
+        keyStore = new KeyStoreFile(file, "PKCS12", SECRET);
+        keyStore.load();
+        keyStore.store();
+        then(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rw-r-----");
+    }
+
+    @Test
+    public void pkcs12_with_default_and_given_protection() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.p12");
+
+        KeyStoreFile keyStore = new KeyStoreFile(file, "PKCS12", SECRET);
+        keyStore.create();
+        keyStore.put("one.com", keys.getPrivate(), chain);
+        keyStore.store();
+        then(Pfx.getInstance(Files.readAllBytes(file)).getMacData().getIterationCount()).isEqualTo(10000);
+
+        //
+        // existing keystores are re-protected as a whole
+        //
+        keyStore = new KeyStoreFile(file, "PKCS12", SECRET);
+        keyStore.protection(KeyStoreProtection.of("PKCS12", "PBEWithHmacSHA512AndAES_128", "HmacPBESHA1", 2048));
+        keyStore.load();
+        keyStore.put("two.com", keys.getPrivate(), chain);
+        keyStore.store();
+
+        final MacData mac = Pfx.getInstance(Files.readAllBytes(file)).getMacData();
+        then(mac.getIterationCount()).isEqualTo(2048);
+        then(mac.getMac().getAlgorithmId().getAlgorithm()).isEqualTo(OIWObjectIdentifiers.idSHA1);
+
+        final KeyStore loaded = KeyStore.getInstance("PKCS12", "BC");
+        try (FileInputStream in = new FileInputStream(file.toFile())) {
+            loaded.load(in, SECRET);
+        }
+        then(Collections.list(loaded.aliases())).containsExactlyInAnyOrder("one.com", "two.com");
+        then(loaded.getKey("one.com", SECRET)).isEqualTo(keys.getPrivate());
+
+        //
+        // without a protection existing keystores keep their own
+        //
+        keyStore = new KeyStoreFile(file, "PKCS12", SECRET);
+        keyStore.load();
+        keyStore.put("three.com", keys.getPrivate(), chain);
+        keyStore.store();
+        then(Pfx.getInstance(Files.readAllBytes(file)).getMacData().getIterationCount()).isEqualTo(2048);
+    }
+
+    @Test
+    public void pkcs12_with_any_protection_is_read_by_the_jdk() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.p12");
+
+        for (String encryption: KeyStoreProtection.PKCS12_ENCRYPTIONS) {
+            final KeyStoreFile keyStore = new KeyStoreFile(file, "PKCS12", SECRET);
+            keyStore.protection(KeyStoreProtection.of("PKCS12", encryption, "HmacPBESHA256", 1024));
+            keyStore.create();
+            keyStore.put("one.com", keys.getPrivate(), chain);
+            keyStore.keyStore().setCertificateEntry("ca", chain[0]);
+            keyStore.store();
+
+            final KeyStore loaded = KeyStore.getInstance("PKCS12", "SUN");
+            try (FileInputStream in = new FileInputStream(file.toFile())) {
+                loaded.load(in, SECRET);
+            }
+            then(Collections.list(loaded.aliases())).as(encryption).containsExactlyInAnyOrder("one.com", "ca");
+            then(loaded.getKey("one.com", SECRET)).as(encryption).isEqualTo(keys.getPrivate());
+            then(loaded.getCertificateChain("one.com")).as(encryption).containsExactly(chain);
+            then(loaded.isCertificateEntry("ca")).as(encryption).isTrue();
+        }
+        then(System.getProperty("keystore.pkcs12.macIterationCount")).isNull(); // nothing JVM wide
+    }
+
+    @Test
+    public void bcfks_with_given_protection() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.bcfks");
+
+        final KeyStoreFile keyStore = new KeyStoreFile(file, "BCFKS", SECRET);
+        keyStore.protection(KeyStoreProtection.of("BCFKS", "aes256_kwp", "HmacSHA3_512", 1024));
+        keyStore.create();
+        keyStore.put("one.com", keys.getPrivate(), chain);
+        keyStore.store();
+
+        final KeyStore loaded = KeyStore.getInstance("BCFKS", "BC");
+        try (FileInputStream in = new FileInputStream(file.toFile())) {
+            loaded.load(in, SECRET);
+        }
+        then(loaded.getKey("one.com", SECRET)).isEqualTo(keys.getPrivate());
+    }
+
+    @Test
+    public void bcfks_without_bouncy_castle_registered() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.bcfks");
+
+        //
+        // as when embedded
+        //
+        Security.removeProvider(BouncyCastleProvider.PROVIDER_NAME);
+        try {
+            KeyStoreFile keyStore = new KeyStoreFile(file, "BCFKS", SECRET);
+            keyStore.load();
+            keyStore.put("one.com", keys.getPrivate(), chain);
+            keyStore.store();
+
+            keyStore = new KeyStoreFile(file, "BCFKS", SECRET);
+            keyStore.load();
+            then(keyStore.keyStore().getKey("one.com", SECRET)).isEqualTo(keys.getPrivate());
+        } finally {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    @Test
+    public void jks_can_not_be_tuned() throws Exception {
+        final KeyStoreFile keyStore = new KeyStoreFile(TMP.getRoot().toPath().resolve("keystore.jks"), "JKS", SECRET);
+
+        thenThrownBy(() -> keyStore.protection(KeyStoreProtection.defaults("PKCS12")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("the protection of JKS keystores can not be tuned");
+        keyStore.protection(null); // nothing to do
+        then(keyStore.protection()).isNull();
+    }
+
+    @Test
+    public void load_with_wrong_password() throws Exception {
+        final Path file = TMP.getRoot().toPath().resolve("keystore.p12");
+
+        final KeyStoreFile keyStore = new KeyStoreFile(file, "PKCS12", SECRET);
+        keyStore.load();
+        keyStore.put("one.com", keys.getPrivate(), chain);
+        keyStore.store();
+        final byte[] content = Files.readAllBytes(file);
+
+        thenThrownBy(() -> new KeyStoreFile(file, "PKCS12", "wrong".toCharArray()).load())
+            .isInstanceOf(IOException.class);
+        then(Files.readAllBytes(file)).isEqualTo(content);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.store;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class KeyStoreProtectionTest {
+
+    @Test
+    public void sanity_check() {
+        thenThrownBy(() -> new KeyStoreProtection(null, "HmacPBESHA256", 10000))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("encryption can not be null");
+        thenThrownBy(() -> new KeyStoreProtection("PBEWithHmacSHA256AndAES_256", null, 10000))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("mac can not be null");
+        thenThrownBy(() -> new KeyStoreProtection("PBEWithHmacSHA256AndAES_256", "HmacPBESHA256", 0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("iterations must be between 1 and 5000000");
+        thenThrownBy(() -> new KeyStoreProtection("PBEWithHmacSHA256AndAES_256", "HmacPBESHA256", 5_000_001))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("iterations must be between 1 and 5000000");
+    }
+
+    @Test
+    public void defaults_by_keystore_type() {
+        then(KeyStoreProtection.defaults("pkcs12"))
+            .isEqualTo(new KeyStoreProtection("PBEWithHmacSHA256AndAES_256", "HmacPBESHA256", 10000));
+        then(KeyStoreProtection.defaults("BCFKS"))
+            .isEqualTo(new KeyStoreProtection("AES256_CCM", "HmacSHA512", 51200));
+        then(KeyStoreProtection.defaults("JKS")).isNull();
+    }
+
+    @Test
+    public void missing_values_are_taken_from_defaults() {
+        then(KeyStoreProtection.of("PKCS12", null, null, null)).isNull();
+        then(KeyStoreProtection.of("JKS", null, null, null)).isNull();
+        then(KeyStoreProtection.of("PKCS12", null, null, 2048))
+            .isEqualTo(new KeyStoreProtection("PBEWithHmacSHA256AndAES_256", "HmacPBESHA256", 2048));
+        then(KeyStoreProtection.of("PKCS12", "pbewithsha1anddesede", "HMACPBESHA1", null))
+            .isEqualTo(new KeyStoreProtection("PBEWithSHA1AndDESede", "HmacPBESHA1", 10000));
+        then(KeyStoreProtection.of("BCFKS", "AES256_KWP", null, null))
+            .isEqualTo(new KeyStoreProtection("AES256_KWP", "HmacSHA512", 51200));
+    }
+
+    @Test
+    public void unsupported_values() {
+        thenThrownBy(() -> KeyStoreProtection.of("JKS", null, null, 2048))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("the protection of JKS keystores can not be tuned");
+        thenThrownBy(() -> KeyStoreProtection.of("PKCS12", "AES256_CCM", null, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("encryption AES256_CCM is not supported by PKCS12 keystores; one of PBEWithHmacSHA256AndAES_256, ");
+        thenThrownBy(() -> KeyStoreProtection.of("BCFKS", null, "HmacPBESHA256", null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("mac HmacPBESHA256 is not supported by BCFKS keystores; one of HmacSHA512, HmacSHA3_512");
+    }
+}
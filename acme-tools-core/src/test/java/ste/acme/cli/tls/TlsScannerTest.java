@@ -0,0 +1,151 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.tls;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TlsScannerTest {
+
+    @Test
+    public void sanity_check() {
+        final TlsScanner scanner = new TlsScanner();
+
+        then(scanner.concurrency()).isEqualTo(TlsScanner.DEFAULT_CONCURRENCY);
+        then(scanner.timeout()).isEqualTo(TlsScanner.DEFAULT_TIMEOUT);
+        thenThrownBy(() -> scanner.concurrency(0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("concurrency must be greater than 0");
+        thenThrownBy(() -> scanner.timeout(Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("timeout must be a positive duration");
+        thenThrownBy(() -> scanner.scan(null, (result) -> {}))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("targets can not be null");
+        thenThrownBy(() -> scanner.scan(List.of(), null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("listener can not be null");
+    }
+
+    @Test
+    public void parse_targets() {
+        then(TlsScanner.Target.parse("example.com")).isEqualTo(new TlsScanner.Target("example.com", 443));
+        then(TlsScanner.Target.parse(" example.com:8443 ")).isEqualTo(new TlsScanner.Target("example.com", 8443));
+        then(TlsScanner.Target.parse("[::1]:8443")).isEqualTo(new TlsScanner.Target("::1", 8443));
+        then(TlsScanner.Target.parse("[::1]")).isEqualTo(new TlsScanner.Target("::1", 443));
+        then(TlsScanner.Target.parse("[::1]:8443").toString()).isEqualTo("[::1]:8443");
+
+        thenThrownBy(() -> TlsScanner.Target.parse("example.com:https"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("invalid port in target 'example.com:https'");
+        thenThrownBy(() -> TlsScanner.Target.parse("example.com:0"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("port must be between 1 and 65535");
+        thenThrownBy(() -> TlsScanner.Target.parse(" "))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("target can not be null or blank");
+    }
+
+    @Test
+    public void scan_many_endpoints_concurrently() throws Exception {
+        final List<TlsServerStub> servers = new ArrayList<>();
+        try (
+            TlsServerStub silent = new TlsServerStub("silent.com", Duration.ofDays(30), true);
+            ServerSocket closed = new ServerSocket(0)
+        ) {
+            final List<TlsScanner.Target> targets = new ArrayList<>();
+            for (int i = 0; i < 10; ++i) {
+                servers.add(new TlsServerStub("localhost", Duration.ofDays(10 + i), false));
+                targets.add(new TlsScanner.Target("localhost", servers.get(i).port()));
+            }
+            targets.add(new TlsScanner.Target("localhost", silent.port()));
+            final int closedPort = closed.getLocalPort(); closed.close();
+            targets.add(new TlsScanner.Target("127.0.0.1", closedPort));
+
+            final TlsScanner scanner = new TlsScanner();
+            scanner.concurrency(4);
+            scanner.timeout(Duration.ofMillis(1500));
+
+            final List<TlsScanner.Result> results = new ArrayList<>();
+            scanner.scan(targets, results::add);
+
+            then(results).hasSize(12);
+            final Map<TlsScanner.Target, TlsScanner.Result> byTarget = results.stream().collect(
+                Collectors.toMap(TlsScanner.Result::target, Function.identity())
+            );
+            for (int i = 0; i < 10; ++i) {
+                final TlsScanner.Result result = byTarget.get(targets.get(i));
+                then(result.error()).isNull();
+                then(result.chain()).containsExactly(servers.get(i).certificate);
+            }
+            then(byTarget.get(targets.get(10)).error()).isEqualTo("no handshake within 1500ms");
+            then(byTarget.get(targets.get(10)).chain()).isEmpty();
+            then(byTarget.get(targets.get(11)).error()).isNotNull();
+        } finally {
+            for (TlsServerStub server: servers) {
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    public void scan_endpoints_with_weak_chains() throws Exception {
+        //
+        // MD5 is disabled for certification paths by the JDK, the scanner
+        // must report such chains rather than fail the handshake
+        //
+        try (TlsServerStub weak = new TlsServerStub("localhost", Duration.ofDays(30), false, "MD5withRSA")) {
+            final TlsScanner.Target target = new TlsScanner.Target("localhost", weak.port());
+
+            final List<TlsScanner.Result> results = new ArrayList<>();
+            new TlsScanner().scan(List.of(target), results::add);
+
+            then(results).hasSize(1);
+            then(results.get(0).error()).isNull();
+            then(results.get(0).chain()).containsExactly(weak.certificate);
+            then(weak.certificate.getSigAlgName()).isEqualTo("MD5withRSA");
+        }
+    }
+
+    @Test
+    public void report_unknown_hosts() throws Exception {
+        final TlsScanner.Target TARGET = new TlsScanner.Target("nowhere.invalid", 443);
+
+        final List<TlsScanner.Result> results = new ArrayList<>();
+        new TlsScanner().scan(List.of(TARGET), results::add);
+
+        then(results).hasSize(1);
+        then(results.get(0).target()).isEqualTo(TARGET);
+        then(results.get(0).error()).startsWith("unknown host nowhere.invalid");
+        then(results.get(0).chain()).isEmpty();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * acme-tools
+ * ----------
+ *
+ * Copyright (C) 2024 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.acme.cli.tls;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.shredzone.acme4j.util.CertificateUtils;
+import org.shredzone.acme4j.util.KeyPairUtils;
+
+/**
+ * A local TLS server serving a self-signed certificate for the given name,
+ * signed with the given algorithm if any (e.g. a weak one); if silent, it
+ * accepts connections but never answers.
+ */
+public class TlsServerStub implements AutoCloseable {
+
+    public final X509Certificate certificate;
+
+    private final ServerSocket server;
+
+    public TlsServerStub(final String name, final Duration validity, final boolean silent) throws Exception {
+        this(name, validity, silent, null);
+    }
+
+    public TlsServerStub(
+        final String name, final Duration validity, final boolean silent, final String signatureAlgorithm
+    ) throws Exception {
+        final KeyPair keys = KeyPairUtils.createKeyPair(2048);
+        final Instant now = Instant.now();
+        if (signatureAlgorithm == null) {
+            certificate = CertificateUtils.createTestRootCertificate(
+                "CN=" + name, now.minus(Duration.ofDays(1)), now.plus(validity), keys
+            );
+        } else {
+            final X500Name subject = new X500Name("CN=" + name);
+            certificate = new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(
+                subject, BigInteger.valueOf(now.toEpochMilli()),
+                Date.from(now.minus(Duration.ofDays(1))), Date.from(now.plus(validity)), subject, keys.getPublic()
+            ).build(new JcaContentSignerBuilder(signatureAlgorithm).build(keys.getPrivate())));
+        }
+
+        if (silent) {
+            server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        } else {
+            final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(null, null);
+            keyStore.setKeyEntry(name, keys.getPrivate(), "secret".toCharArray(), new Certificate[] { certificate });
+            final KeyManagerFactory managers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            managers.init(keyStore, "secret".toCharArray());
+            final SSLContext context = SSLContext.getInstance("TLS");
+            context.init(managers.getKeyManagers(), null, null);
+            server = (SSLServerSocket)context.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        }
+
+        final Thread loop = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    final Socket socket = server.accept();
+                    if (socket instanceof SSLSocket tls) {
+                        new Thread(() -> {
+                            try (tls) {
+                                tls.startHandshake();
+                            } catch (IOException x) {
+                                // the client went away
+                            }
+                        }).start();
+                    }
+                } catch (IOException x) {
+                    // closed
+                }
+            }
+        });
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}